@@ -0,0 +1,84 @@
+package demo.dockable;
+
+import demo.dockable.richment.BatchEnrichmentAnalysis;
+import egps2.builtin.modules.voice.bean.AbstractParamsAssignerAndParser4VOICE;
+import egps2.builtin.modules.voice.fastmodvoice.DockableTabModuleFaceOfVoice;
+import egps2.builtin.modules.voice.fastmodvoice.OrganizedParameterGetter;
+import egps2.frame.ComputationalModuleFace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A dockable tab module for running GSEA over many ranked gene lists at once.
+ * The gene set library is indexed once and shared by all lists, the lists are scored
+ * in parallel, and the results are written to one long-format table with a list column.
+ */
+public class BatchPathwayEnrichment extends DockableTabModuleFaceOfVoice {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchPathwayEnrichment.class);
+
+    /**
+     * Constructor for the BatchPathwayEnrichment module
+     * @param cmf The computational module face
+     */
+    public BatchPathwayEnrichment(ComputationalModuleFace cmf) {
+        super(cmf);
+    }
+
+    /**
+     * Define parameters for the batch enrichment analysis
+     * @param designer The parameter designer used to define input parameters
+     */
+    @Override
+    protected void setParameter(AbstractParamsAssignerAndParser4VOICE designer) {
+        designer.addKeyValueEntryBean("input.geneset.gmt", "", "Input gmt format genesets from GSEAdb");
+        designer.addKeyValueEntryBean("input.result.dir.or.manifest", "", "A directory of tsv result files, or a manifest with one file path per line.\n# An optional second tab-separated column of the manifest is the list label.");
+        designer.addKeyValueEntryBean("symbol.col.name", "gene", "Gene symbol name");
+        designer.addKeyValueEntryBean("significant.col.name", "pValue", "Column name with p values");
+        designer.addKeyValueEntryBean("output.file.path", "", "Output file path of the consolidated table, eg. batch.gsea.tsv");
+        designer.addKeyValueEntryBean("^", "", "");
+        designer.addKeyValueEntryBean("gsea.permutations", "1000", "Number of gene permutations per gene set");
+        designer.addKeyValueEntryBean("output.top.k", "0", "Only keep the top K pathways of each list by |NES|, 0 for all pathways");
+        designer.addKeyValueEntryBean("thread.number", String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of ranked lists processed in parallel");
+    }
+
+    /**
+     * Execute the batch enrichment analysis process
+     * @param o The organized parameter getter containing user inputs
+     * @throws Exception If the analysis fails
+     */
+    @Override
+    protected void execute(OrganizedParameterGetter o) throws Exception {
+        String outputFileName = o.getSimplifiedString("output.file.path");
+        String inputGMTFileName = o.getSimplifiedString("input.geneset.gmt");
+        String inputDirOrManifest = o.getSimplifiedString("input.result.dir.or.manifest");
+        String geneSymbolColName = o.getSimplifiedString("symbol.col.name");
+        String significantColName = o.getSimplifiedString("significant.col.name");
+        int permutations = o.getSimplifiedInt("gsea.permutations");
+        int threads = o.getSimplifiedInt("thread.number");
+        int topK = o.getSimplifiedInt("output.top.k");
+
+        int numberOfLists = BatchEnrichmentAnalysis.performBatchGSEA(inputGMTFileName, inputDirOrManifest,
+                geneSymbolColName, significantColName, outputFileName, permutations, threads, topK);
+        log.trace("Batch GSEA processed {} ranked lists", numberOfLists);
+        appendText2Console("Finished Computation of " + numberOfLists + " ranked lists: " + outputFileName);
+    }
+
+    /**
+     * Get a short description of the module's functionality
+     * @return Description string
+     */
+    @Override
+    public String getShortDescription() {
+        return "Batch GSEA for many ranked gene lists against one gene set library";
+    }
+
+    /**
+     * Get the tab name for this module
+     * @return Tab name string
+     */
+    @Override
+    public String getTabName() {
+        return "5.2 Batch pathway enrichment";
+    }
+}
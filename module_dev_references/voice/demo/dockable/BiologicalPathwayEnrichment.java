@@ -1,6 +1,7 @@
 package demo.dockable;
 
 import demo.dockable.richment.EnrichmentAnalysis;
+import demo.dockable.richment.GeneIdMapper;
 import egps2.builtin.modules.voice.bean.AbstractParamsAssignerAndParser4VOICE;
 import egps2.builtin.modules.voice.fastmodvoice.DockableTabModuleFaceOfVoice;
 import egps2.builtin.modules.voice.fastmodvoice.OrganizedParameterGetter;
@@ -43,6 +44,12 @@ public class BiologicalPathwayEnrichment extends DockableTabModuleFaceOfVoice {
         designer.addKeyValueEntryBean("output.file.path", "", "Output file path, eg. out.result.tsv");
         designer.addKeyValueEntryBean("^", "", "");
         designer.addKeyValueEntryBean("p.value.cutoff", "0.05", "");
+        designer.addKeyValueEntryBean("output.top.k", "0", "Only keep the top K pathways in each output (ORA by p value, GSEA by |NES|), 0 for all pathways");
+        designer.addKeyValueEntryBean("redundancy.jaccard.cutoff", "0", "Cluster enriched pathways whose gene sets have Jaccard index >= cutoff, e.g. 0.5. 0 to skip");
+        designer.addKeyValueEntryBean("id.mapping.table", "", "Optional tsv table with header to translate gene identifiers, e.g. Entrez to symbol. Empty to skip");
+        designer.addKeyValueEntryBean("id.mapping.from.col", "entrez", "Column name of the identifiers to translate");
+        designer.addKeyValueEntryBean("id.mapping.to.col", "symbol", "Column name of the translated identifiers");
+        designer.addKeyValueEntryBean("id.mapping.apply.to", "gmt", "Which input uses the source identifiers: gmt or result");
     }
 
     /**
@@ -58,10 +65,30 @@ public class BiologicalPathwayEnrichment extends DockableTabModuleFaceOfVoice {
         String geneSymbolColName = o.getSimplifiedString("symbol.col.name");
         String significantColName = o.getSimplifiedString("significant.col.name");
         double pValueCutoff = o.getSimplifiedDouble("p.value.cutoff");
-        
+        int topK = o.getSimplifiedInt("output.top.k");
+        double redundancyJaccard = o.getSimplifiedDouble("redundancy.jaccard.cutoff");
+        String idMappingTable = o.getSimplifiedString("id.mapping.table");
+
+        GeneIdMapper gmtIdMapper = null;
+        GeneIdMapper resultIdMapper = null;
+        if (!idMappingTable.isEmpty()) {
+            GeneIdMapper idMapper = GeneIdMapper.load(idMappingTable,
+                    o.getSimplifiedString("id.mapping.from.col"), o.getSimplifiedString("id.mapping.to.col"));
+            log.trace("Loaded {} identifier mappings", idMapper.size());
+            String applyTo = o.getSimplifiedString("id.mapping.apply.to");
+            if ("gmt".equalsIgnoreCase(applyTo)) {
+                gmtIdMapper = idMapper;
+            } else if ("result".equalsIgnoreCase(applyTo)) {
+                resultIdMapper = idMapper;
+            } else {
+                throw new IllegalArgumentException("id.mapping.apply.to must be gmt or result: " + applyTo);
+            }
+        }
+
         // Perform pathway enrichment analysis using the provided inputs
         EnrichmentAnalysis.performEnrichmentAnalysis(inputGMTFileName, inputSignificantResultFileName,
-                geneSymbolColName, significantColName, outputFileName, pValueCutoff);
+                geneSymbolColName, significantColName, outputFileName, pValueCutoff, topK, redundancyJaccard,
+                gmtIdMapper, resultIdMapper);
         appendText2Console("Finished Computation: " + outputFileName);
     }
 
@@ -54,16 +54,31 @@ public class GuiMain extends ComputationalModuleFace {
 			listOfSubTabs.add(panel);
 			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
 		}
+		{
+			RandomFastqProducer panel = new RandomFastqProducer(this);
+			listOfSubTabs.add(panel);
+			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
+		}
 		{
 			SimpleAlignmentSimulator panel = new SimpleAlignmentSimulator(this);
 			listOfSubTabs.add(panel);
 			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
 		}
+		{
+			TreeEvolutionProducer panel = new TreeEvolutionProducer(this);
+			listOfSubTabs.add(panel);
+			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
+		}
 		{
 			SimpleExpressionProducer panel = new SimpleExpressionProducer(this);
 			listOfSubTabs.add(panel);
 			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
 		}
+		{
+			SingleCellCountProducer panel = new SingleCellCountProducer(this);
+			listOfSubTabs.add(panel);
+			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
+		}
 		{
 			GroupwiseStatisticalTest panel = new GroupwiseStatisticalTest(this);
 			listOfSubTabs.add(panel);
@@ -79,6 +94,16 @@ public class GuiMain extends ComputationalModuleFace {
 			listOfSubTabs.add(panel);
 			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
 		}
+		{
+			BatchPathwayEnrichment panel = new BatchPathwayEnrichment(this);
+			listOfSubTabs.add(panel);
+			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
+		}
+		{
+			PhenotypePathwayEnrichment panel = new PhenotypePathwayEnrichment(this);
+			listOfSubTabs.add(panel);
+			jTabbedPane.addTab(panel.getTabName(), null, panel, panel.getShortDescription());
+		}
 	}
 
 	/**
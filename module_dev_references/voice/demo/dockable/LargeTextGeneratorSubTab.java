@@ -1,5 +1,6 @@
 package demo.dockable;
 
+import demo.dockable.algo.ParallelFileFiller;
 import egps2.builtin.modules.voice.bean.AbstractParamsAssignerAndParser4VOICE;
 import egps2.builtin.modules.voice.fastmodvoice.DockableTabModuleFaceOfVoice;
 import egps2.builtin.modules.voice.fastmodvoice.OrganizedParameterGetter;
@@ -10,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * A dockable tab module for generating large text files in FASTQ format.
@@ -18,6 +20,8 @@ import java.io.IOException;
 public class LargeTextGeneratorSubTab extends DockableTabModuleFaceOfVoice {
 
     private static final Logger log = LoggerFactory.getLogger(LargeTextGeneratorSubTab.class);
+    /** Largest chunk, each writing thread holds one in a direct buffer */
+    private static final int MAX_CHUNK_MIB = 1024;
 
     /**
      * Constructor for the LargeTextGeneratorSubTab module
@@ -35,6 +39,12 @@ public class LargeTextGeneratorSubTab extends DockableTabModuleFaceOfVoice {
     protected void setParameter(AbstractParamsAssignerAndParser4VOICE designer) {
         designer.addKeyValueEntryBean("output.file.path","", "Output file location. E.g. 10GB_fastq.txt");
         designer.addKeyValueEntryBean("file.GiB.size","10", "The binary giga byte size, with GiB, note this is not GB");
+        designer.addKeyValueEntryBean("write.mode","parallel", "parallel: several threads write fixed-offset chunks through a FileChannel; buffered: one thread with a BufferedWriter");
+
+        designer.addKeyValueEntryBean("^", "Advanced writing parameters", "");
+        designer.addKeyValueEntryBean("thread.number", String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of writing threads, in the parallel mode");
+        designer.addKeyValueEntryBean("chunk.MiB.size","8", "Size of the chunk one thread writes at once, from 1 to 1024, in the parallel mode");
+        designer.addKeyValueEntryBean("sync.on.finish","T", "Whether to force the file to the device before measuring the throughput, in the parallel mode");
     }
 
     /**
@@ -56,6 +66,25 @@ public class LargeTextGeneratorSubTab extends DockableTabModuleFaceOfVoice {
 
         log.trace("Generating file: {} with line {}", fileName, length);
 
+        String writeMode = o.getSimplifiedString("write.mode").trim().toLowerCase();
+        if ("parallel".equals(writeMode)) {
+            int chunkMiB = o.getSimplifiedInt("chunk.MiB.size");
+            // Checked before the shift, which overflows an int from 2048 MiB on
+            if (chunkMiB < 1 || chunkMiB > MAX_CHUNK_MIB) {
+                throw new IllegalArgumentException("$chunk.MiB.size must be between 1 and " + MAX_CHUNK_MIB + ": " + chunkMiB);
+            }
+            ParallelFileFiller filler = new ParallelFileFiller(fileName,
+                    line.getBytes(StandardCharsets.US_ASCII), length,
+                    chunkMiB << 20,
+                    o.getSimplifiedInt("thread.number"),
+                    o.getSimplifiedBool("sync.on.finish"));
+            setText4Console(filler.fill());
+            return;
+        }
+        if (!"buffered".equals(writeMode)) {
+            throw new IllegalArgumentException("$write.mode must be parallel or buffered: " + writeMode);
+        }
+
         int bufferSize = 1024 * 1024; // 1MB buffer for efficient writing
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), bufferSize)) {
             // Write the same line repeatedly to reach the target file size
@@ -0,0 +1,102 @@
+package demo.dockable;
+
+import demo.dockable.richment.PhenotypePermutationGSEA;
+import demo.dockable.sigtest.DifferentialExpressionAnalyzer;
+import egps2.builtin.modules.voice.bean.AbstractParamsAssignerAndParser4VOICE;
+import egps2.builtin.modules.voice.fastmodvoice.DockableTabModuleFaceOfVoice;
+import egps2.builtin.modules.voice.fastmodvoice.OrganizedParameterGetter;
+import egps2.frame.ComputationalModuleFace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A dockable tab module for GSEA with sample-label permutations.
+ * The gene ranking is computed directly from the expression matrix with one of the group-wise
+ * statistical tests, and every permutation of the group labels recomputes that ranking.
+ */
+public class PhenotypePathwayEnrichment extends DockableTabModuleFaceOfVoice {
+
+    private static final Logger log = LoggerFactory.getLogger(PhenotypePathwayEnrichment.class);
+
+    DifferentialExpressionAnalyzer analyzer = new DifferentialExpressionAnalyzer();
+
+    /**
+     * Constructor for the PhenotypePathwayEnrichment module
+     * @param cmf The computational module face
+     */
+    public PhenotypePathwayEnrichment(ComputationalModuleFace cmf) {
+        super(cmf);
+    }
+
+    /**
+     * Define parameters for the phenotype-permutation GSEA
+     * @param designer The parameter designer used to define input parameters
+     */
+    @Override
+    protected void setParameter(AbstractParamsAssignerAndParser4VOICE designer) {
+        designer.addKeyValueEntryBean("input.geneset.gmt", "", "Input gmt format genesets from GSEAdb");
+        designer.addKeyValueEntryBean("input.expression.tsv", "", "Input the tsv file of the expression profile.\n# first column is the gene symbol, must have header line.");
+        designer.addKeyValueEntryBean("condition.or.group.1", "Ctrl_1;Ctrl_2;Ctrl_3", "The samples name of first condition or group.");
+        designer.addKeyValueEntryBean("condition.or.group.2", "Treat_1;Treat_2;Treat_3", "The samples name of second condition or group.");
+        {
+            Set<String> availableMethods = analyzer.getAvailableMethods();
+            StringBuilder builder = new StringBuilder("Statistic used to rank genes. Available methods are: ");
+            Iterator<String> iterator = availableMethods.iterator();
+            builder.append(iterator.next());
+            while (iterator.hasNext()) {
+                builder.append(",").append(iterator.next());
+            }
+            designer.addKeyValueEntryBean("analysis.method.name", "t-test", builder.toString());
+        }
+        designer.addKeyValueEntryBean("output.file.path", "", "Output file path, eg. out.phenotype.gsea.tsv");
+        designer.addKeyValueEntryBean("^", "", "");
+        designer.addKeyValueEntryBean("gsea.permutations", "1000", "Number of sample-label permutations");
+        designer.addKeyValueEntryBean("random.seed", "42", "Random seed, the same seed gives the same result at any thread number");
+        designer.addKeyValueEntryBean("thread.number", String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of threads running the permutations");
+    }
+
+    /**
+     * Execute the phenotype-permutation GSEA
+     * @param o The organized parameter getter containing user inputs
+     * @throws Exception If the analysis fails
+     */
+    @Override
+    protected void execute(OrganizedParameterGetter o) throws Exception {
+        String inputGMTFileName = o.getSimplifiedString("input.geneset.gmt");
+        String expressionFileName = o.getSimplifiedString("input.expression.tsv");
+        String[] group1Labels = o.getSimplifiedString("condition.or.group.1").split(";");
+        String[] group2Labels = o.getSimplifiedString("condition.or.group.2").split(";");
+        String methodName = o.getSimplifiedString("analysis.method.name");
+        String outputFileName = o.getSimplifiedString("output.file.path");
+        int permutations = o.getSimplifiedInt("gsea.permutations");
+        long seed = o.getSimplifiedInt("random.seed");
+        int threads = o.getSimplifiedInt("thread.number");
+
+        int numberOfSets = PhenotypePermutationGSEA.performPhenotypeGSEA(inputGMTFileName, expressionFileName,
+                group1Labels, group2Labels, analyzer.getMethod(methodName), outputFileName,
+                permutations, seed, threads);
+        log.trace("Phenotype-permutation GSEA reported {} gene sets", numberOfSets);
+        appendText2Console("Finished Computation: " + outputFileName);
+    }
+
+    /**
+     * Get a short description of the module's functionality
+     * @return Description string
+     */
+    @Override
+    public String getShortDescription() {
+        return "GSEA with sample-label permutations, ranking genes directly from the expression matrix";
+    }
+
+    /**
+     * Get the tab name for this module
+     * @return Tab name string
+     */
+    @Override
+    public String getTabName() {
+        return "5.3 Phenotype-permutation GSEA";
+    }
+}
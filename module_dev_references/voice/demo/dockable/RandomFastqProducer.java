@@ -0,0 +1,122 @@
+package demo.dockable;
+
+import com.google.common.base.Stopwatch;
+import demo.dockable.algo.FastqSimulator;
+import egps2.builtin.modules.voice.bean.AbstractParamsAssignerAndParser4VOICE;
+import egps2.builtin.modules.voice.fastmodvoice.DockableTabModuleFaceOfVoice;
+import egps2.builtin.modules.voice.fastmodvoice.OrganizedParameterGetter;
+import egps2.frame.ComputationalModuleFace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * A dockable tab module for generating randomized FASTQ files.
+ * Unlike the large text generator, every read is different, with modelled lengths and qualities,
+ * so the files can be used to benchmark FASTQ parsers and compressors.
+ */
+public class RandomFastqProducer extends DockableTabModuleFaceOfVoice {
+
+    private static final Logger log = LoggerFactory.getLogger(RandomFastqProducer.class);
+
+    /**
+     * Constructor for the RandomFastqProducer module
+     * @param cmf The computational module face
+     */
+    public RandomFastqProducer(ComputationalModuleFace cmf) {
+        super(cmf);
+    }
+
+    /**
+     * Define parameters for the FASTQ generation
+     * @param designer The parameter designer used to define input parameters
+     */
+    @Override
+    protected void setParameter(AbstractParamsAssignerAndParser4VOICE designer) {
+        designer.addKeyValueEntryBean("output.file.path", "", "Output file location, e.g. sim.fastq; in paired-end mode sim_R1.fastq and sim_R2.fastq are written");
+        designer.addKeyValueEntryBean("file.GiB.size", "10", "The binary giga byte size to reach, summed over both files in paired-end mode");
+        designer.addKeyValueEntryBean("paired.end", "F", "Whether to write read pairs from the two ends of each fragment");
+        designer.addKeyValueEntryBean("read.length.mean", "150", "Mean read length");
+        designer.addKeyValueEntryBean("read.length.sd", "0", "Standard deviation of the read length, 0 for fixed-length reads");
+
+        designer.addKeyValueEntryBean("^", "Advanced simulation parameters", "");
+        designer.addKeyValueEntryBean("read.length.min", "50", "Shortest read length");
+        designer.addKeyValueEntryBean("insert.size.mean", "350", "Mean fragment length, in paired-end mode");
+        designer.addKeyValueEntryBean("insert.size.sd", "50", "Standard deviation of the fragment length, in paired-end mode");
+        designer.addKeyValueEntryBean("quality.start", "36", "Mean Phred quality of the first cycle");
+        designer.addKeyValueEntryBean("quality.end", "24", "Mean Phred quality of the last cycle of a mean-length read");
+        designer.addKeyValueEntryBean("quality.sd", "4", "Standard deviation of the quality around the cycle mean; bases of quality 2 are written as N");
+        designer.addKeyValueEntryBean("random.seed", "42", "Random seed, the same seed gives the same files at any thread number");
+        designer.addKeyValueEntryBean("thread.number", String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of threads generating reads");
+    }
+
+    /**
+     * Execute the FASTQ generation
+     * @param o The organized parameter getter containing user inputs
+     * @throws Exception If generation fails
+     */
+    @Override
+    protected void execute(OrganizedParameterGetter o) throws Exception {
+        String fileName = o.getSimplifiedString("output.file.path");
+        long targetSizeBytes = 1024L * 1024 * 1024 * o.getSimplifiedInt("file.GiB.size");
+        boolean paired = o.getSimplifiedBool("paired.end");
+
+        FastqSimulator simulator = new FastqSimulator(
+                paired ? matePath(fileName, 1) : fileName,
+                paired ? matePath(fileName, 2) : null,
+                targetSizeBytes,
+                o.getSimplifiedDouble("read.length.mean"),
+                o.getSimplifiedDouble("read.length.sd"),
+                o.getSimplifiedInt("read.length.min"),
+                o.getSimplifiedDouble("insert.size.mean"),
+                o.getSimplifiedDouble("insert.size.sd"),
+                o.getSimplifiedDouble("quality.start"),
+                o.getSimplifiedDouble("quality.end"),
+                o.getSimplifiedDouble("quality.sd"),
+                o.getSimplifiedInt("random.seed"),
+                o.getSimplifiedInt("thread.number"));
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<String> ret = simulator.simulate();
+        stopwatch.stop();
+        log.trace("FASTQ generation took {}", stopwatch);
+        ret.add("Take time of  " + stopwatch.toString());
+
+        setText4Console(ret);
+    }
+
+    /**
+     * Get the file path of one mate, e.g. sim.fastq gives sim_R1.fastq
+     * @param fileName Output file path
+     * @param mate 1 or 2
+     * @return Path with _R1 or _R2 before the FASTQ extension
+     */
+    private static String matePath(String fileName, int mate) {
+        String tag = "_R" + mate;
+        for (String extension : new String[]{".fastq", ".fq", ".txt"}) {
+            if (fileName.endsWith(extension)) {
+                return fileName.substring(0, fileName.length() - extension.length()) + tag + extension;
+            }
+        }
+        return fileName + tag + ".fastq";
+    }
+
+    /**
+     * Get a short description of the module's functionality
+     * @return Description string
+     */
+    @Override
+    public String getShortDescription() {
+        return "Generate randomized single or paired-end fastq files with read-length and quality models";
+    }
+
+    /**
+     * Get the tab name for this module
+     * @return Tab name string
+     */
+    @Override
+    public String getTabName() {
+        return "1.2 Random fastq generator";
+    }
+}
@@ -36,6 +36,10 @@ public class SimpleAlignmentSimulator extends DockableTabModuleFaceOfVoice {
         designer.addKeyValueEntryBean("num.sequence","5", "Total number of sequence to output, including the reference.");
         designer.addKeyValueEntryBean("include.indel","F", "Whether include the INDEL (insertion and deletion).");
         designer.addKeyValueEntryBean("output.file.path","", "Output file path");
+        designer.addKeyValueEntryBean("alignment.mode","dp", "dp: realign the sequences by dynamic programming; truth: write the true alignment built from the simulated events, for large inputs; none: write only the sequences and the log");
+        designer.addKeyValueEntryBean("random.seed","42", "Random seed, the same seed gives the same sequences");
+        designer.addKeyValueEntryBean("output.gzip","F", "Whether to gzip the outputs and append .gz to their names, in the truth and none modes");
+        designer.addKeyValueEntryBean("thread.number", String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of threads simulating sequences, in the truth and none modes");
     }
 
     /**
@@ -49,6 +53,12 @@ public class SimpleAlignmentSimulator extends DockableTabModuleFaceOfVoice {
         String refSequence = o.getSimplifiedString("ref.sequence");
         int numSequence = o.getSimplifiedInt("num.sequence");
         boolean includeIndel = o.getSimplifiedBool("include.indel");
+        String alignmentMode = o.getSimplifiedString("alignment.mode").trim().toLowerCase();
+        if (!"dp".equals(alignmentMode) && !"truth".equals(alignmentMode) && !"none".equals(alignmentMode)) {
+            throw new IllegalArgumentException("$alignment.mode must be dp, truth or none: " + alignmentMode);
+        }
+        boolean streaming = !"dp".equals(alignmentMode);
+        String suffix = streaming && o.getSimplifiedBool("output.gzip") ? ".gz" : "";
 
         // Set default mutation probabilities
         double subProb = 0.02;  // Substitution probability
@@ -62,15 +72,31 @@ public class SimpleAlignmentSimulator extends DockableTabModuleFaceOfVoice {
         }
 
         // Define log file path for mutation records
-        String logPath = fileName + ".mutations.log";
+        String logPath = fileName + ".mutations.log" + suffix;
+        String sequencePath = fileName + suffix;
 
         // Create and configure the alignment simulator
         AlignmentSimulator simulator = new AlignmentSimulator(
                 refSequence, numSequence, includeIndel,
-                fileName, logPath, subProb, insProb, delProb
+                sequencePath, logPath, subProb, insProb, delProb,
+                o.getSimplifiedInt("random.seed")
         );
 
         // Run the simulation process
+        if ("truth".equals(alignmentMode)) {
+            String alignmentPath = fileName + ".true.aln.fasta" + suffix;
+            simulator.runStreamingSimulation(alignmentPath, o.getSimplifiedInt("thread.number"), !suffix.isEmpty());
+            setText4Console(Arrays.asList("Finished writing file: " + sequencePath,
+                    "True alignment written to: " + alignmentPath,
+                    "Mutation log written to: " + logPath));
+            return;
+        }
+        if ("none".equals(alignmentMode)) {
+            simulator.runStreamingSimulation(null, o.getSimplifiedInt("thread.number"), !suffix.isEmpty());
+            setText4Console(Arrays.asList("Finished writing file: " + sequencePath,
+                    "Mutation log written to: " + logPath));
+            return;
+        }
         simulator.runSimulation();
 
         // Report completion to console
@@ -39,6 +39,7 @@ public class SimpleExpressionProducer extends DockableTabModuleFaceOfVoice {
         designer.addKeyValueEntryBean("meta.info.type.number","2", "Conditions, 2 for control/case, 3 for ctrl/depletion/rescue.");
         designer.addKeyValueEntryBean("meta.info.label","Ctrl;Treat", "$meta.info.type.number 2 for two name, separate with char ;. Example like WT/KO");
         designer.addKeyValueEntryBean("output.file.path","", "The output file path.");
+        designer.addKeyValueEntryBean("output.format","tsv", "Output format: tsv, tsv.gz or binary (float32 matrix with a small header)");
 
         designer.addKeyValueEntryBean("^", "Advanced simulation parameters", "");
         designer.addKeyValueEntryBean("%1","Meta information", "");
@@ -49,6 +50,9 @@ public class SimpleExpressionProducer extends DockableTabModuleFaceOfVoice {
         designer.addKeyValueEntryBean("model.dispersion","0.02", "Dispersion parameter");
         designer.addKeyValueEntryBean("model.foldChangeMin","3.0", "Minimum fold change");
         designer.addKeyValueEntryBean("model.foldChangeMax","8.0", "Maximum fold change");
+        designer.addKeyValueEntryBean("%3","Reproducibility and performance", "");
+        designer.addKeyValueEntryBean("model.random.seed","42", "Random seed, the same seed gives the same profile at any thread number");
+        designer.addKeyValueEntryBean("thread.number",String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of threads generating gene blocks");
     }
 
     /**
@@ -59,6 +63,7 @@ public class SimpleExpressionProducer extends DockableTabModuleFaceOfVoice {
     @Override
     protected void execute(OrganizedParameterGetter o) throws Exception {
         String fileName = o.getSimplifiedString("output.file.path");
+        ExpressionProfileSimulator.OutputFormat format = parseOutputFormat(o.getSimplifiedString("output.format"));
         int typeNumber = o.getSimplifiedInt("meta.info.type.number");
         String str = o.getSimplifiedString("meta.info.label");
         String[] splits = EGPSStringUtil.split(str, ';');
@@ -82,19 +87,22 @@ public class SimpleExpressionProducer extends DockableTabModuleFaceOfVoice {
         double dispersion = o.getSimplifiedDouble("model.dispersion");
         double foldChangeMin = o.getSimplifiedDouble("model.foldChangeMin");
         double foldChangeMax = o.getSimplifiedDouble("model.foldChangeMax");
-        
+        long seed = o.getSimplifiedInt("model.random.seed");
+        int threads = o.getSimplifiedInt("thread.number");
+
         // Create and configure the expression profile simulator
         ExpressionProfileSimulator simulator = new ExpressionProfileSimulator(
                 numberOfGenes,
                 metaInfoLabels,
-                fileName, differentialRatio, baseMean , dispersion , foldChangeMin, foldChangeMax
+                fileName, differentialRatio, baseMean , dispersion , foldChangeMin, foldChangeMax,
+                seed, threads
         );
 
         // Start timing the simulation process
         Stopwatch stopwatch = Stopwatch.createStarted();
 
         // Generate the expression profile
-        List<String> ret = simulator.generateExpressionProfile();
+        List<String> ret = simulator.generateExpressionProfile(format);
 
         // Stop timing and add elapsed time to results
         stopwatch.stop();
@@ -104,6 +112,24 @@ public class SimpleExpressionProducer extends DockableTabModuleFaceOfVoice {
         setText4Console(ret);
     }
 
+    /**
+     * Parse the output format parameter
+     * @param formatName Format name: tsv, tsv.gz or binary
+     * @return Output format
+     */
+    private static ExpressionProfileSimulator.OutputFormat parseOutputFormat(String formatName) {
+        switch (formatName.trim().toLowerCase()) {
+            case "tsv":
+                return ExpressionProfileSimulator.OutputFormat.TSV;
+            case "tsv.gz":
+                return ExpressionProfileSimulator.OutputFormat.TSV_GZIP;
+            case "binary":
+                return ExpressionProfileSimulator.OutputFormat.BINARY;
+            default:
+                throw new IllegalArgumentException("$output.format must be tsv, tsv.gz or binary: " + formatName);
+        }
+    }
+
     /**
      * Get a short description of the module's functionality
      * @return Description string
@@ -0,0 +1,106 @@
+package demo.dockable;
+
+import com.google.common.base.Stopwatch;
+import demo.dockable.algo.SingleCellCountSimulator;
+import egps2.builtin.modules.voice.bean.AbstractParamsAssignerAndParser4VOICE;
+import egps2.builtin.modules.voice.fastmodvoice.DockableTabModuleFaceOfVoice;
+import egps2.builtin.modules.voice.fastmodvoice.OrganizedParameterGetter;
+import egps2.frame.ComputationalModuleFace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * A dockable tab module for simulating sparse single-cell count matrices.
+ * Only the non-zero counts are generated, and they are written directly as a
+ * Matrix Market file or as CSR arrays, so millions of cells fit on one workstation.
+ */
+public class SingleCellCountProducer extends DockableTabModuleFaceOfVoice {
+
+    private static final Logger log = LoggerFactory.getLogger(SingleCellCountProducer.class);
+
+    /**
+     * Constructor for the SingleCellCountProducer module
+     * @param cmf The computational module face
+     */
+    public SingleCellCountProducer(ComputationalModuleFace cmf) {
+        super(cmf);
+    }
+
+    /**
+     * Define parameters for the single-cell count simulation
+     * @param designer The parameter designer used to define input parameters
+     */
+    @Override
+    protected void setParameter(AbstractParamsAssignerAndParser4VOICE designer) {
+        designer.addKeyValueEntryBean("output.file.prefix", "", "The output file prefix, e.g. sim_10k writes sim_10k.mtx, sim_10k.genes.tsv and sim_10k.cells.tsv");
+        designer.addKeyValueEntryBean("output.format", "mtx", "Output format: mtx (Matrix Market, genes x cells) or csr (little-endian indptr/indices/data arrays, cells x genes)");
+        designer.addKeyValueEntryBean("model.cell.number", "10000", "The cell number");
+        designer.addKeyValueEntryBean("model.gene.number", "20000", "The gene number");
+        designer.addKeyValueEntryBean("model.cell.type.number", "5", "The number of cell types, each with its own marker genes");
+
+        designer.addKeyValueEntryBean("^", "Advanced simulation parameters", "");
+        designer.addKeyValueEntryBean("model.mean.library.size", "3000", "Mean number of counts per cell before dropout");
+        designer.addKeyValueEntryBean("model.dropout.midpoint", "0.0", "Log mean count at which half of the detected genes drop out");
+        designer.addKeyValueEntryBean("model.dropout.shape", "1.0", "Steepness of the dropout curve");
+        designer.addKeyValueEntryBean("model.random.seed", "42", "Random seed, the same seed gives the same matrix at any thread number");
+        designer.addKeyValueEntryBean("thread.number", String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of threads generating cell blocks");
+    }
+
+    /**
+     * Execute the single-cell count simulation
+     * @param o The organized parameter getter containing user inputs
+     * @throws Exception If simulation fails
+     */
+    @Override
+    protected void execute(OrganizedParameterGetter o) throws Exception {
+        String outputPrefix = o.getSimplifiedString("output.file.prefix");
+        String formatName = o.getSimplifiedString("output.format").trim().toLowerCase();
+        SingleCellCountSimulator.OutputFormat format;
+        if ("mtx".equals(formatName)) {
+            format = SingleCellCountSimulator.OutputFormat.MATRIX_MARKET;
+        } else if ("csr".equals(formatName)) {
+            format = SingleCellCountSimulator.OutputFormat.CSR;
+        } else {
+            throw new IllegalArgumentException("$output.format must be mtx or csr: " + formatName);
+        }
+
+        SingleCellCountSimulator simulator = new SingleCellCountSimulator(
+                o.getSimplifiedInt("model.gene.number"),
+                o.getSimplifiedInt("model.cell.number"),
+                o.getSimplifiedInt("model.cell.type.number"),
+                o.getSimplifiedDouble("model.mean.library.size"),
+                o.getSimplifiedDouble("model.dropout.midpoint"),
+                o.getSimplifiedDouble("model.dropout.shape"),
+                outputPrefix,
+                o.getSimplifiedInt("model.random.seed"),
+                o.getSimplifiedInt("thread.number"));
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<String> ret = simulator.simulate(format);
+        stopwatch.stop();
+        log.trace("Single-cell simulation took {}", stopwatch);
+        ret.add("Take time of  " + stopwatch.toString());
+
+        setText4Console(ret);
+    }
+
+    /**
+     * Get a short description of the module's functionality
+     * @return Description string
+     */
+    @Override
+    public String getShortDescription() {
+        return "Simulate sparse single-cell counts with zero inflation, written as Matrix Market or CSR";
+    }
+
+    /**
+     * Get the tab name for this module
+     * @return Tab name string
+     */
+    @Override
+    public String getTabName() {
+        return "3.2 Single-cell count producer";
+    }
+}
@@ -0,0 +1,100 @@
+package demo.dockable;
+
+import com.google.common.base.Stopwatch;
+import demo.dockable.algo.TreeEvolutionSimulator;
+import egps2.builtin.modules.voice.bean.AbstractParamsAssignerAndParser4VOICE;
+import egps2.builtin.modules.voice.fastmodvoice.DockableTabModuleFaceOfVoice;
+import egps2.builtin.modules.voice.fastmodvoice.OrganizedParameterGetter;
+import egps2.frame.ComputationalModuleFace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * A dockable tab module for evolving sequences along a guide tree.
+ * Descendants share the unchanged chunks of their ancestors, so large
+ * numbers of tips can be simulated with memory bounded by the mutations.
+ */
+public class TreeEvolutionProducer extends DockableTabModuleFaceOfVoice {
+
+    private static final Logger log = LoggerFactory.getLogger(TreeEvolutionProducer.class);
+
+    /**
+     * Constructor for the TreeEvolutionProducer module
+     * @param cmf The computational module face
+     */
+    public TreeEvolutionProducer(ComputationalModuleFace cmf) {
+        super(cmf);
+    }
+
+    /**
+     * Define parameters for the tree evolution simulation
+     * @param designer The parameter designer used to define input parameters
+     */
+    @Override
+    protected void setParameter(AbstractParamsAssignerAndParser4VOICE designer) {
+        designer.addKeyValueEntryBean("output.file.prefix", "", "The output file prefix, e.g. sim_tree writes sim_tree.fasta and sim_tree.tree.nwk");
+        designer.addKeyValueEntryBean("ref.sequence", "", "The root DNA sequence; leave empty to draw a random one of ref.length bases");
+        designer.addKeyValueEntryBean("ref.length", "10000", "Length of the random root sequence");
+        designer.addKeyValueEntryBean("tree.file", "", "Newick guide tree with branch lengths in substitutions per site; leave empty for a random coalescent tree");
+        designer.addKeyValueEntryBean("tip.number", "1000", "Number of tips of the random coalescent tree");
+        designer.addKeyValueEntryBean("tree.depth", "0.05", "Root-to-tip depth of the random coalescent tree, in expected mutations per site");
+        designer.addKeyValueEntryBean("include.indel", "T", "Whether include the INDEL (insertion and deletion).");
+
+        designer.addKeyValueEntryBean("^", "Advanced simulation parameters", "");
+        designer.addKeyValueEntryBean("indel.fraction", "0.1", "Fraction of the mutations that are single-base insertions or deletions, when INDELs are included");
+        designer.addKeyValueEntryBean("random.seed", "42", "Random seed, the same seed gives the same tips at any thread number");
+        designer.addKeyValueEntryBean("output.gzip", "F", "Whether to gzip the sequences and append .gz to their file name");
+        designer.addKeyValueEntryBean("thread.number", String.valueOf(Runtime.getRuntime().availableProcessors()), "Number of threads writing tips");
+    }
+
+    /**
+     * Execute the tree evolution simulation
+     * @param o The organized parameter getter containing user inputs
+     * @throws Exception If simulation fails
+     */
+    @Override
+    protected void execute(OrganizedParameterGetter o) throws Exception {
+        String treeFile = o.getSimplifiedString("tree.file").trim();
+        double indelFraction = o.getSimplifiedBool("include.indel") ? o.getSimplifiedDouble("indel.fraction") : 0;
+
+        TreeEvolutionSimulator simulator = new TreeEvolutionSimulator(
+                o.getSimplifiedString("ref.sequence").trim(),
+                o.getSimplifiedInt("ref.length"),
+                o.getSimplifiedInt("tip.number"),
+                treeFile.isEmpty() ? null : treeFile,
+                o.getSimplifiedDouble("tree.depth"),
+                indelFraction,
+                o.getSimplifiedString("output.file.prefix"),
+                o.getSimplifiedInt("random.seed"),
+                o.getSimplifiedInt("thread.number"),
+                o.getSimplifiedBool("output.gzip"));
+
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<String> ret = simulator.simulate();
+        stopwatch.stop();
+        log.trace("Tree evolution simulation took {}", stopwatch);
+        ret.add("Take time of  " + stopwatch.toString());
+
+        setText4Console(ret);
+    }
+
+    /**
+     * Get a short description of the module's functionality
+     * @return Description string
+     */
+    @Override
+    public String getShortDescription() {
+        return "Evolve sequences along a guide tree, sharing unchanged chunks between ancestors and descendants";
+    }
+
+    /**
+     * Get the tab name for this module
+     * @return Tab name string
+     */
+    @Override
+    public String getTabName() {
+        return "2.2 Tree evolution simulator";
+    }
+}
@@ -3,7 +3,11 @@ package demo.dockable.algo;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.random.RandomGenerator;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -11,9 +15,14 @@ import java.util.concurrent.ThreadLocalRandom;
  * A class for simulating sequence alignments with mutations.
  * This simulator generates multiple sequences based on a reference sequence,
  * introducing substitutions, insertions, and deletions according to specified probabilities.
- * It then performs multiple sequence alignment using a simplified global alignment algorithm.
+ * It then aligns every sequence to the reference with {@link PairwiseAligner} and merges the results.
+ *
+ * Alternatively, {@link #runStreamingSimulation(String, int, boolean)} simulates the sequences on worker
+ * threads, streams them to disk in order and can skip the realignment, building the true alignment from
+ * the simulated events themselves in time linear in the output.
  */
 public class AlignmentSimulator {
+
     private final String refSequence;
     private final int numSequences;
     private final boolean includeIndel;
@@ -22,6 +31,7 @@ public class AlignmentSimulator {
     private final double subProb;
     private final double insProb;
     private final double delProb;
+    private final long seed;
 
     /**
      * Constructor for AlignmentSimulator
@@ -37,6 +47,25 @@ public class AlignmentSimulator {
     public AlignmentSimulator(String refSequence, int numSequences, boolean includeIndel,
                               String outputFile, String outputLogPath,
                               double subProb, double insProb, double delProb) {
+        this(refSequence, numSequences, includeIndel, outputFile, outputLogPath, subProb, insProb, delProb,
+                ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Constructor for AlignmentSimulator with a random seed
+     * @param refSequence The reference sequence to base simulations on
+     * @param numSequences Number of sequences to generate
+     * @param includeIndel Whether to include insertions and deletions
+     * @param outputFile Path to output FASTA file
+     * @param outputLogPath Path to output mutation log file
+     * @param subProb Probability of substitution
+     * @param insProb Probability of insertion
+     * @param delProb Probability of deletion
+     * @param seed Random seed, the same seed gives the same sequences
+     */
+    public AlignmentSimulator(String refSequence, int numSequences, boolean includeIndel,
+                              String outputFile, String outputLogPath,
+                              double subProb, double insProb, double delProb, long seed) {
         this.refSequence = refSequence;
         this.numSequences = numSequences;
         this.includeIndel = includeIndel;
@@ -45,6 +74,7 @@ public class AlignmentSimulator {
         this.subProb = subProb;
         this.insProb = includeIndel ? insProb : 0.0;
         this.delProb = includeIndel ? delProb : 0.0;
+        this.seed = seed;
     }
 
     /**
@@ -66,7 +96,7 @@ public class AlignmentSimulator {
             sequences.get(0).add(c);
         }
 
-        RandomGenerator rand = ThreadLocalRandom.current();
+        long[] sequenceSeeds = sequenceSeeds();
 
         // Generate mutations for each non-reference sequence
         for (int seqIdx = 1; seqIdx < numSequences; seqIdx++) {
@@ -74,33 +104,29 @@ public class AlignmentSimulator {
             List<String> logs = mutationLogs.get(seqIdx);
             String seqName = "seq" + seqIdx;
 
-            int refPos = 0;
-            while (refPos < refSequence.length()) {
-                char refBase = refSequence.charAt(refPos);
-                double r = rand.nextDouble();
+            simulateSequence(new SplittableRandom(sequenceSeeds[seqIdx]), new MutationSink() {
+                @Override
+                public void match(int refPos, char base) {
+                    currentSeq.add(base);
+                }
+
+                @Override
+                public void substitution(int refPos, char refBase, char subBase) {
+                    currentSeq.add(subBase);
+                    logs.add(seqName + "\tSUB\t" + refPos + "\t" + refBase + "->" + subBase);
+                }
 
-                if (includeIndel && r < insProb) {
-                    // Insertion operation: insert a random base at current position
-                    char insBase = randomBase(rand);
+                @Override
+                public void insertion(int refPos, char insBase) {
                     currentSeq.add(insBase);
                     logs.add(seqName + "\tINS\t" + refPos + "\t" + insBase);
-                    // Note: After insertion, do not move reference position as insertion is relative to reference
-                } else if (includeIndel && r < insProb + delProb) {
-                    // Deletion operation: skip the current reference base
+                }
+
+                @Override
+                public void deletion(int refPos, char refBase) {
                     logs.add(seqName + "\tDEL\t" + refPos + "\t" + refBase);
-                    refPos++; // Move to next reference position
-                } else if (r < insProb + delProb + subProb) {
-                    // Substitution operation
-                    char subBase = randomDifferentBase(rand, refBase);
-                    currentSeq.add(subBase);
-                    logs.add(seqName + "\tSUB\t" + refPos + "\t" + refBase + "->" + subBase);
-                    refPos++;
-                } else {
-                    // Match: keep consistent with reference sequence
-                    currentSeq.add(refBase);
-                    refPos++;
                 }
-            }
+            });
             sequences.set(seqIdx, currentSeq);
         }
 
@@ -132,100 +158,378 @@ public class AlignmentSimulator {
     }
 
     /**
-     * Perform multiple sequence alignment using a simplified global alignment algorithm
-     * @param sequences List of sequences to align
+     * Run the simulation and write the true alignment instead of realigning the sequences.
+     * Same as {@link #runStreamingSimulation(String, int, boolean)} on all processors without compression.
+     * @param alignmentFile Path to output the true alignment in FASTA format
+     * @throws IOException If there's an error writing to files
      */
-    private void alignSequences(List<List<Character>> sequences) {
-        if (sequences.size() < 2) return;
+    public void runTruthSimulation(String alignmentFile) throws IOException {
+        runStreamingSimulation(alignmentFile, Runtime.getRuntime().availableProcessors(), false);
+    }
+
+    /**
+     * Simulate the sequences on worker threads and stream them to the output files in order.
+     *
+     * Every sequence is simulated from its own seed, so the output does not depend on the thread number.
+     * With an alignment file, sequences are simulated twice. The first pass records, for each reference
+     * position, the longest run of bases inserted before it; the second pass writes the ungapped
+     * sequence, its row of the alignment and its mutation log. Each position gets one reference column
+     * preceded by as many insertion columns as its longest run. Insertions of different sequences at the
+     * same position share those columns, left-justified; they are not homologous to each other.
+     *
+     * Only a bounded window of sequences is in flight, so memory depends on the window and the reference
+     * length, not on the number of sequences.
+     * @param alignmentFile Path to output the true alignment in FASTA format, or null to write only the sequences and the log
+     * @param threads Number of worker threads
+     * @param gzip Whether to gzip every output file
+     * @throws IOException If there's an error writing to files
+     */
+    public void runStreamingSimulation(String alignmentFile, int threads, boolean gzip) throws IOException {
+        int workers = Math.max(1, threads);
+        long[] sequenceSeeds = sequenceSeeds();
+        int[] insertionColumns = alignmentFile == null ? null : countInsertionColumns(sequenceSeeds, workers);
+
+        int refLength = refSequence.length();
+        // Sequence, alignment row and log, the log being about 20 bytes per mutation
+        long sequenceBytes = (long) refLength * (alignmentFile == null ? 1 : 3)
+                + (long) (refLength * (subProb + insProb + delProb) * 24) + 64;
+
+        try (OutputStream fasta = OrderedBlockWriter.openOutput(outputFile, gzip);
+             OutputStream alignment = alignmentFile == null ? null : OrderedBlockWriter.openOutput(alignmentFile, gzip);
+             OutputStream logOut = OrderedBlockWriter.openOutput(outputLogPath, gzip);
+             OrderedBlockWriter<SequenceBuffer> writer = new OrderedBlockWriter<>(workers, sequenceBytes,
+                     () -> new SequenceBuffer(insertionColumns), done -> {
+                 done.sequenceBytes.writeTo(fasta);
+                 if (alignment != null) {
+                     done.rowBytes.writeTo(alignment);
+                 }
+                 done.logBytes.writeTo(logOut);
+             }, "simulating sequences")) {
+            writeReference(fasta, alignment, insertionColumns);
+            for (int seqIdx = 1; seqIdx < numSequences; seqIdx++) {
+                int index = seqIdx;
+                writer.submit(buffer -> buffer.fill(index, sequenceSeeds[index]));
+            }
+            writer.finish();
+        }
+    }
 
-        List<Character> reference = sequences.get(0);
+    /**
+     * First pass of the true alignment: the longest insertion run before each reference position
+     * @param sequenceSeeds Seeds indexed by sequence
+     * @param workers Number of worker threads
+     * @return Number of insertion columns before each reference position
+     * @throws IOException If a worker thread failed or was interrupted
+     */
+    private int[] countInsertionColumns(long[] sequenceSeeds, int workers) throws IOException {
+        int refLength = refSequence.length();
+        int tasks = Math.max(1, Math.min(workers, numSequences - 1));
+        ExecutorService executor = Executors.newFixedThreadPool(tasks);
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < tasks; t++) {
+                int firstSeq = 1 + t;
+                futures.add(executor.submit(() -> {
+                    int[] columns = new int[refLength];
+                    for (int seqIdx = firstSeq; seqIdx < numSequences; seqIdx += tasks) {
+                        simulateSequence(new SplittableRandom(sequenceSeeds[seqIdx]), new MutationSink() {
+                            private int anchor = -1;
+                            private int run;
+
+                            @Override
+                            public void match(int refPos, char base) {
+                            }
+
+                            @Override
+                            public void substitution(int refPos, char refBase, char subBase) {
+                            }
+
+                            @Override
+                            public void insertion(int refPos, char insBase) {
+                                run = refPos == anchor ? run + 1 : 1;
+                                anchor = refPos;
+                                columns[refPos] = Math.max(columns[refPos], run);
+                            }
+
+                            @Override
+                            public void deletion(int refPos, char refBase) {
+                            }
+                        });
+                    }
+                    return columns;
+                }));
+            }
 
-        for (int seqIdx = 1; seqIdx < sequences.size(); seqIdx++) {
-            List<Character> currentSeq = sequences.get(seqIdx);
+            int[] insertionColumns = new int[refLength];
+            for (Future<int[]> future : futures) {
+                int[] columns = OrderedBlockWriter.await(future, "simulating sequences");
+                for (int refPos = 0; refPos < refLength; refPos++) {
+                    insertionColumns[refPos] = Math.max(insertionColumns[refPos], columns[refPos]);
+                }
+            }
+            return insertionColumns;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Write the reference to the sequence file and, if any, its row to the alignment file
+     * @param fasta Sequence output
+     * @param alignment Alignment output, or null
+     * @param insertionColumns Number of insertion columns before each reference position, or null
+     * @throws IOException If there's an error writing to files
+     */
+    private void writeReference(OutputStream fasta, OutputStream alignment, int[] insertionColumns) throws IOException {
+        int refLength = refSequence.length();
+        ByteBlock bytes = new ByteBlock(refLength + 16);
+        bytes.appendAscii(">seq.ref\n");
+        bytes.appendAscii(refSequence);
+        bytes.appendChar('\n');
+        bytes.writeTo(fasta);
+        if (alignment == null) {
+            return;
+        }
+        bytes.clear();
+        bytes.appendAscii(">seq.ref\n");
+        for (int refPos = 0; refPos < refLength; refPos++) {
+            for (int k = 0; k < insertionColumns[refPos]; k++) {
+                bytes.appendChar('-');
+            }
+            bytes.appendChar(refSequence.charAt(refPos));
+        }
+        bytes.appendChar('\n');
+        bytes.writeTo(alignment);
+    }
 
-            // Use dynamic programming for sequence alignment
-            AlignmentResult result = performAlignment(reference, currentSeq);
+    /**
+     * Reusable output of one simulated sequence: its FASTA record, its alignment row and its log lines
+     */
+    private final class SequenceBuffer implements MutationSink {
+        final ByteBlock sequenceBytes = new ByteBlock(refSequence.length() + 64);
+        final ByteBlock rowBytes;
+        final ByteBlock logBytes = new ByteBlock(1 << 12);
+        private final int[] insertionColumns;
+        private String seqName;
+        private int anchor;
+        private int inserted;
 
-            // Update reference and current sequences
-            sequences.set(0, result.alignedRef);
-            sequences.set(seqIdx, result.alignedSeq);
+        /**
+         * Constructor for SequenceBuffer
+         * @param insertionColumns Number of insertion columns before each reference position, or null without alignment
+         */
+        SequenceBuffer(int[] insertionColumns) {
+            this.insertionColumns = insertionColumns;
+            this.rowBytes = new ByteBlock(insertionColumns == null ? 16 : 2 * refSequence.length() + 64);
+        }
 
-            // Update other already aligned sequences
-            for (int i = 1; i < seqIdx; i++) {
-                sequences.set(i, insertGapsInSequence(sequences.get(i), result.refGapPositions));
+        /**
+         * Simulate one sequence into the buffers
+         * @param seqIdx Sequence index, from 1
+         * @param sequenceSeed Seed of this sequence
+         */
+        void fill(int seqIdx, long sequenceSeed) {
+            seqName = "seq" + seqIdx;
+            anchor = -1;
+            inserted = 0;
+            sequenceBytes.clear();
+            rowBytes.clear();
+            logBytes.clear();
+            sequenceBytes.appendAscii(">" + seqName + "\n");
+            if (insertionColumns != null) {
+                rowBytes.appendAscii(">" + seqName + "\n");
+            }
+            simulateSequence(new SplittableRandom(sequenceSeed), this);
+            sequenceBytes.appendChar('\n');
+            if (insertionColumns != null) {
+                rowBytes.appendChar('\n');
             }
+        }
+
+        /**
+         * Fill the insertion columns of a position that this sequence does not use, then write one column
+         * @param refPos Reference position about to be written
+         * @param column Character of the reference column
+         */
+        private void appendColumn(int refPos, char column) {
+            if (insertionColumns == null) {
+                return;
+            }
+            int used = refPos == anchor ? inserted : 0;
+            for (int k = used; k < insertionColumns[refPos]; k++) {
+                rowBytes.appendChar('-');
+            }
+            rowBytes.appendChar(column);
+        }
+
+        /**
+         * Append one mutation log line
+         * @param type Mutation type
+         * @param refPos Reference position
+         */
+        private void appendLogStart(String type, int refPos) {
+            logBytes.appendAscii(seqName);
+            logBytes.appendChar('\t');
+            logBytes.appendAscii(type);
+            logBytes.appendChar('\t');
+            logBytes.appendLong(refPos);
+            logBytes.appendChar('\t');
+        }
+
+        @Override
+        public void match(int refPos, char base) {
+            appendColumn(refPos, base);
+            sequenceBytes.appendChar(base);
+        }
+
+        @Override
+        public void substitution(int refPos, char refBase, char subBase) {
+            appendColumn(refPos, subBase);
+            sequenceBytes.appendChar(subBase);
+            appendLogStart("SUB", refPos);
+            logBytes.appendChar(refBase);
+            logBytes.appendAscii("->");
+            logBytes.appendChar(subBase);
+            logBytes.appendChar('\n');
+        }
 
-            reference = sequences.get(0); // Update reference sequence
+        @Override
+        public void insertion(int refPos, char insBase) {
+            inserted = refPos == anchor ? inserted + 1 : 1;
+            anchor = refPos;
+            if (insertionColumns != null) {
+                rowBytes.appendChar(insBase);
+            }
+            sequenceBytes.appendChar(insBase);
+            appendLogStart("INS", refPos);
+            logBytes.appendChar(insBase);
+            logBytes.appendChar('\n');
+        }
+
+        @Override
+        public void deletion(int refPos, char refBase) {
+            appendColumn(refPos, '-');
+            appendLogStart("DEL", refPos);
+            logBytes.appendChar(refBase);
+            logBytes.appendChar('\n');
         }
     }
 
     /**
-     * Perform alignment of two sequences
-     * @param seq1 First sequence
-     * @param seq2 Second sequence
-     * @return AlignmentResult containing the aligned sequences
+     * Derive one seed per sequence, so both simulation modes produce the same sequences
+     * @return Seeds indexed by sequence, index 0 is the reference and unused
      */
-    private AlignmentResult performAlignment(List<Character> seq1, List<Character> seq2) {
-        int m = seq1.size();
-        int n = seq2.size();
-
-        // Dynamic programming matrix
-        int[][] dp = new int[m + 1][n + 1];
-
-        // Initialization
-        for (int i = 0; i <= m; i++) dp[i][0] = i * (-1); // gap penalty
-        for (int j = 0; j <= n; j++) dp[0][j] = j * (-1);
-
-        // Fill the matrix
-        for (int i = 1; i <= m; i++) {
-            for (int j = 1; j <= n; j++) {
-                int match = dp[i-1][j-1] + (seq1.get(i-1).equals(seq2.get(j-1)) ? 2 : -1);
-                int delete = dp[i-1][j] - 1;
-                int insert = dp[i][j-1] - 1;
-                dp[i][j] = Math.max(Math.max(match, delete), insert);
-            }
+    private long[] sequenceSeeds() {
+        long[] sequenceSeeds = new long[numSequences];
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int seqIdx = 1; seqIdx < numSequences; seqIdx++) {
+            sequenceSeeds[seqIdx] = root.nextLong();
         }
+        return sequenceSeeds;
+    }
 
-        // Traceback to build alignment
-        List<Character> alignedSeq1 = new ArrayList<>();
-        List<Character> alignedSeq2 = new ArrayList<>();
-        List<Integer> refGapPositions = new ArrayList<>();
-
-        int i = m, j = n;
-        while (i > 0 || j > 0) {
-            if (i > 0 && j > 0 && dp[i][j] == dp[i-1][j-1] + (seq1.get(i-1).equals(seq2.get(j-1)) ? 2 : -1)) {
-                alignedSeq1.add(0, seq1.get(i-1));
-                alignedSeq2.add(0, seq2.get(j-1));
-                i--; j--;
-            } else if (i > 0 && dp[i][j] == dp[i-1][j] - 1) {
-                alignedSeq1.add(0, seq1.get(i-1));
-                alignedSeq2.add(0, '-');
-                i--;
+    /**
+     * Simulate the mutations of one sequence along the reference
+     * @param rand Random number generator
+     * @param sink Receiver of the events, in reference order
+     */
+    private void simulateSequence(RandomGenerator rand, MutationSink sink) {
+        int refPos = 0;
+        while (refPos < refSequence.length()) {
+            char refBase = refSequence.charAt(refPos);
+            double r = rand.nextDouble();
+
+            if (includeIndel && r < insProb) {
+                // Insertion operation: insert a random base at current position
+                sink.insertion(refPos, randomBase(rand));
+                // Note: After insertion, do not move reference position as insertion is relative to reference
+            } else if (includeIndel && r < insProb + delProb) {
+                // Deletion operation: skip the current reference base
+                sink.deletion(refPos, refBase);
+                refPos++; // Move to next reference position
+            } else if (r < insProb + delProb + subProb) {
+                // Substitution operation
+                sink.substitution(refPos, refBase, randomDifferentBase(rand, refBase));
+                refPos++;
             } else {
-                alignedSeq1.add(0, '-');
-                alignedSeq2.add(0, seq2.get(j-1));
-                refGapPositions.add(0, alignedSeq1.size() - 1);
-                j--;
+                // Match: keep consistent with reference sequence
+                sink.match(refPos, refBase);
+                refPos++;
             }
         }
+    }
+
+    /**
+     * Receiver of the simulated events of one sequence
+     */
+    private interface MutationSink {
+        /**
+         * The reference base is kept
+         * @param refPos Reference position
+         * @param base Reference base
+         */
+        void match(int refPos, char base);
 
-        return new AlignmentResult(alignedSeq1, alignedSeq2, refGapPositions);
+        /**
+         * The reference base is substituted
+         * @param refPos Reference position
+         * @param refBase Reference base
+         * @param subBase New base
+         */
+        void substitution(int refPos, char refBase, char subBase);
+
+        /**
+         * A base is inserted before the reference position
+         * @param refPos Reference position
+         * @param insBase Inserted base
+         */
+        void insertion(int refPos, char insBase);
+
+        /**
+         * The reference base is deleted
+         * @param refPos Reference position
+         * @param refBase Deleted base
+         */
+        void deletion(int refPos, char refBase);
     }
 
     /**
-     * Insert gaps at specified positions in a sequence
-     * @param sequence The sequence to insert gaps into
-     * @param gapPositions Positions where gaps should be inserted
-     * @return Sequence with gaps inserted
+     * Align every sequence to the reference with the banded linear-space aligner and merge the results
+     * @param sequences List of sequences to align, the reference first
      */
-    private List<Character> insertGapsInSequence(List<Character> sequence, List<Integer> gapPositions) {
-        List<Character> result = new ArrayList<>(sequence);
-        for (int pos : gapPositions) {
-            if (pos < result.size()) {
-                result.add(pos, '-');
+    private void alignSequences(List<List<Character>> sequences) {
+        if (sequences.size() < 2) return;
+
+        byte[] reference = toBytes(sequences.get(0));
+        byte[][] others = new byte[sequences.size() - 1][];
+        for (int seqIdx = 1; seqIdx < sequences.size(); seqIdx++) {
+            others[seqIdx - 1] = toBytes(sequences.get(seqIdx));
+        }
+
+        // Same scores as the former full-matrix alignment: match +2, mismatch -1, gap -1
+        PairwiseAligner aligner = new PairwiseAligner(2, -1, 0, 1);
+        byte[][] rows = aligner.alignToReference(reference, others, insProb + delProb);
+
+        for (int seqIdx = 0; seqIdx < rows.length; seqIdx++) {
+            List<Character> aligned = new ArrayList<>(rows[seqIdx].length);
+            for (byte base : rows[seqIdx]) {
+                aligned.add((char) base);
             }
+            sequences.set(seqIdx, aligned);
         }
-        return result;
+    }
+
+    /**
+     * Convert a list of characters to bytes
+     * @param sequence List of characters representing a sequence
+     * @return Byte representation of the sequence
+     */
+    private byte[] toBytes(List<Character> sequence) {
+        byte[] bytes = new byte[sequence.size()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) sequence.get(i).charValue();
+        }
+        return bytes;
     }
 
     /**
@@ -265,25 +569,4 @@ public class AlignmentSimulator {
         } while (base == original);
         return base;
     }
-
-    /**
-     * Class to hold alignment results
-     */
-    private static class AlignmentResult {
-        final List<Character> alignedRef;
-        final List<Character> alignedSeq;
-        final List<Integer> refGapPositions;
-
-        /**
-         * Constructor for AlignmentResult
-         * @param alignedRef Aligned reference sequence
-         * @param alignedSeq Aligned sequence
-         * @param refGapPositions Positions of gaps in reference sequence
-         */
-        AlignmentResult(List<Character> alignedRef, List<Character> alignedSeq, List<Integer> refGapPositions) {
-            this.alignedRef = alignedRef;
-            this.alignedSeq = alignedSeq;
-            this.refGapPositions = refGapPositions;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+package demo.dockable.algo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that simulators format their output blocks into.
+ * Numbers are written straight into the bytes, without String.format or temporary strings,
+ * and the buffer is reused from block to block.
+ */
+final class ByteBlock {
+
+    private byte[] bytes;
+    private int length;
+
+    /**
+     * Constructor for ByteBlock
+     * @param capacity Initial capacity in bytes
+     */
+    ByteBlock(int capacity) {
+        this.bytes = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * Drop the content and keep the memory
+     */
+    void clear() {
+        length = 0;
+    }
+
+    /**
+     * Get the number of bytes written
+     * @return Length in bytes
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Append one ASCII character
+     * @param c Character to append
+     */
+    void appendChar(char c) {
+        ensureCapacity(1);
+        bytes[length++] = (byte) c;
+    }
+
+    /**
+     * Append ASCII text
+     * @param text Text to append
+     */
+    void appendAscii(String text) {
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            bytes[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Append raw bytes
+     * @param source Bytes to append
+     * @param offset First byte to append
+     * @param count Number of bytes to append
+     */
+    void appendBytes(byte[] source, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(source, offset, bytes, length, count);
+        length += count;
+    }
+
+    /**
+     * Append an integer in decimal
+     * @param value Value to append
+     */
+    void appendLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                appendAscii(Long.toString(value));
+                return;
+            }
+            appendChar('-');
+            value = -value;
+        }
+        ensureCapacity(20);
+        int start = length;
+        do {
+            bytes[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Digits were written backwards
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte tmp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = tmp;
+        }
+    }
+
+    /**
+     * Append a value with two decimals, as "%.2f" does.
+     * "%.2f" rounds the shortest decimal form of the value half up, so 64.725 gives 64.73 although the
+     * double is slightly below it; values that close to half a cent, and very large ones, go through
+     * String.format. Negative values that round to zero keep their sign, "-0.00".
+     * @param value Value to append
+     */
+    void appendFixed2(double value) {
+        double cents = Math.abs(value) * 100;
+        if (Double.isNaN(value) || Double.isInfinite(value) || cents >= 1e11
+                || Math.abs(cents - Math.floor(cents) - 0.5) < 1e-3) {
+            appendAscii(String.format("%.2f", value));
+            return;
+        }
+        long scaled = Math.round(cents);
+        if (Double.doubleToRawLongBits(value) < 0) {
+            appendChar('-');
+        }
+        appendLong(scaled / 100);
+        int fraction = (int) (scaled % 100);
+        ensureCapacity(3);
+        bytes[length++] = '.';
+        bytes[length++] = (byte) ('0' + fraction / 10);
+        bytes[length++] = (byte) ('0' + fraction % 10);
+    }
+
+    /**
+     * Append an int, big-endian
+     * @param value Value to append
+     */
+    void appendIntBigEndian(int value) {
+        ensureCapacity(4);
+        bytes[length++] = (byte) (value >>> 24);
+        bytes[length++] = (byte) (value >>> 16);
+        bytes[length++] = (byte) (value >>> 8);
+        bytes[length++] = (byte) value;
+    }
+
+    /**
+     * Append an int, little-endian
+     * @param value Value to append
+     */
+    void appendIntLittleEndian(int value) {
+        ensureCapacity(4);
+        bytes[length++] = (byte) value;
+        bytes[length++] = (byte) (value >>> 8);
+        bytes[length++] = (byte) (value >>> 16);
+        bytes[length++] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Append a long, little-endian
+     * @param value Value to append
+     */
+    void appendLongLittleEndian(long value) {
+        appendIntLittleEndian((int) value);
+        appendIntLittleEndian((int) (value >>> 32));
+    }
+
+    /**
+     * Grow the buffer if needed
+     * @param extra Number of bytes about to be appended
+     */
+    private void ensureCapacity(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length + (bytes.length >> 1)));
+        }
+    }
+
+    /**
+     * Write the content to a stream
+     * @param out Output stream
+     * @throws IOException If there's an error writing
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    /**
+     * Write the content at the current position of a channel
+     * @param channel File channel
+     * @throws IOException If there's an error writing
+     */
+    void writeTo(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -2,17 +2,32 @@ package demo.dockable.algo;
 
 import com.google.common.collect.Lists;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.random.RandomGenerator;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Expression profile data simulator
  * Supports 2 types (case-ctrl, wild-type-mutant) or 3 types (wild-type-mutant-complementation) samples
- * Uses negative binomial distribution to simulate RNA-seq expression data
+ * Uses negative binomial distribution (see NegativeBinomialSampler) to simulate RNA-seq expression data
+ *
+ * Genes are generated in fixed-size blocks on several threads. Every block draws from its own
+ * SplittableRandom, split from the seed in block order, so a given seed produces the same
+ * profile at any thread number.
+ *
+ * The profile is streamed: worker threads generate and format whole gene blocks into reusable
+ * byte buffers, and the blocks are written in gene order, so the full matrix is never held in
+ * memory. The output is a TSV file, a gzip-compressed TSV file, or a binary matrix:
+ * <pre>
+ * int   magic 0x4558504D ("EXPM"), int version 1
+ * int   number of genes, int number of samples
+ * UTF   sample labels (DataOutputStream.writeUTF layout), one per sample
+ * float expression values, row-major by gene; all numbers big-endian
+ * </pre>
  */
 public class ExpressionProfileSimulator {
 
@@ -21,7 +36,9 @@ public class ExpressionProfileSimulator {
     private final List<String> sampleLabels;
     private final String outputFilePath;
     private final double differentialRatio; // Proportion of differentially expressed genes
-    private final RandomGenerator random;
+    private final long seed;
+    private final int threads;
+    private final int[][] typeGroups; // Sample indices of each type, in order of first appearance
 
     // Negative binomial distribution parameters
     private final double baseMean; // Base expression mean
@@ -29,6 +46,17 @@ public class ExpressionProfileSimulator {
     private final double foldChangeMin; // Minimum fold change
     private final double foldChangeMax; // Maximum fold change
 
+    /** Number of genes generated from one random stream */
+    static final int GENE_BLOCK_SIZE = 256;
+    private static final int BINARY_MAGIC = 0x4558504D;
+
+    /**
+     * Output format of the expression profile
+     */
+    public enum OutputFormat {
+        TSV, TSV_GZIP, BINARY
+    }
+
     /**
      * Constructor for ExpressionProfileSimulator with default parameters
      * @param numberOfGenes Number of genes to simulate
@@ -55,6 +83,29 @@ public class ExpressionProfileSimulator {
                                       String outputFilePath, double differentialRatio,
                                       double baseMean, double dispersion,
                                       double foldChangeMin, double foldChangeMax) {
+        this(numberOfGenes, sampleLabels, outputFilePath, differentialRatio, baseMean, dispersion,
+                foldChangeMin, foldChangeMax, ThreadLocalRandom.current().nextLong(),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for ExpressionProfileSimulator with custom parameters, seed and thread number
+     * @param numberOfGenes Number of genes to simulate
+     * @param sampleLabels Labels for the samples
+     * @param outputFilePath Path to output file
+     * @param differentialRatio Proportion of differentially expressed genes
+     * @param baseMean Base expression mean
+     * @param dispersion Dispersion parameter for negative binomial distribution
+     * @param foldChangeMin Minimum fold change
+     * @param foldChangeMax Maximum fold change
+     * @param seed Random seed, the same seed gives the same profile at any thread number
+     * @param threads Number of threads generating gene blocks
+     */
+    public ExpressionProfileSimulator(int numberOfGenes, List<String> sampleLabels,
+                                      String outputFilePath, double differentialRatio,
+                                      double baseMean, double dispersion,
+                                      double foldChangeMin, double foldChangeMax,
+                                      long seed, int threads) {
         this.numberOfGenes = numberOfGenes;
         this.numberOfSamples = sampleLabels.size();
         this.sampleLabels = new ArrayList<>(sampleLabels);
@@ -64,24 +115,40 @@ public class ExpressionProfileSimulator {
         this.dispersion = dispersion;
         this.foldChangeMin = foldChangeMin;
         this.foldChangeMax = foldChangeMax;
-        this.random = ThreadLocalRandom.current();
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+
+        Map<String, List<Integer>> groups = groupSamplesByType();
+        this.typeGroups = new int[groups.size()][];
+        int typeIdx = 0;
+        for (List<Integer> indices : groups.values()) {
+            typeGroups[typeIdx++] = indices.stream().mapToInt(Integer::intValue).toArray();
+        }
     }
 
     /**
-     * Generate expression profile data
+     * Generate expression profile data as a TSV file
      *
      * @return List of status messages
      * @throws IOException If there's an error writing to the output file
      */
     public List<String> generateExpressionProfile() throws IOException {
+        return generateExpressionProfile(OutputFormat.TSV);
+    }
+
+    /**
+     * Generate expression profile data, streaming gene blocks to the output file
+     *
+     * @param format Output format
+     * @return List of status messages
+     * @throws IOException If there's an error writing to the output file
+     */
+    public List<String> generateExpressionProfile(OutputFormat format) throws IOException {
         // Determine number of sample types
         int typeNumber = determineTypeNumber();
 
-        // Generate gene expression matrix
-        double[][] expressionMatrix = generateExpressionMatrix(typeNumber);
-
-        // Output to file
-        writeToFile(expressionMatrix);
+        // Generate and write gene blocks
+        writeProfile(typeNumber, format);
 
         int numDifferential = getDifferentialGeneCount();
 
@@ -92,6 +159,7 @@ public class ExpressionProfileSimulator {
         ret.add("Number of samples: " + numberOfSamples);
         ret.add("Number of sample types: " + typeNumber);
         ret.add("Differentially expressed genes ratio: " + (differentialRatio * 100) + "%");
+        ret.add("Random seed: " + seed);
 
         ret.add("Gene arrangement information:");
         ret.add("- Differentially expressed genes: Gene_1 to Gene_" + numDifferential + " (first " + numDifferential + ")");
@@ -115,27 +183,115 @@ public class ExpressionProfileSimulator {
     }
 
     /**
-     * Generate expression matrix
+     * Generate gene blocks on the worker threads and write them in gene order
      * @param typeNumber Number of sample types
-     * @return Matrix of gene expression values
+     * @param format Output format
+     * @throws IOException If there's an error writing to the file or a worker thread fails
      */
-    private double[][] generateExpressionMatrix(int typeNumber) {
-        double[][] matrix = new double[numberOfGenes][numberOfSamples];
+    private void writeProfile(int typeNumber, OutputFormat format) throws IOException {
+        int numBlocks = (numberOfGenes + GENE_BLOCK_SIZE - 1) / GENE_BLOCK_SIZE;
+        long bytesPerValue = format == OutputFormat.BINARY ? 4 : 10;
+        long blockBytes = Math.max(1, bytesPerValue * numberOfSamples * GENE_BLOCK_SIZE);
+
+        SplittableRandom root = new SplittableRandom(seed);
+        try (OutputStream out = OrderedBlockWriter.openOutput(outputFilePath, format == OutputFormat.TSV_GZIP);
+             OrderedBlockWriter<BlockBuffer> writer = new OrderedBlockWriter<>(threads, blockBytes,
+                     () -> new BlockBuffer((int) Math.min(Integer.MAX_VALUE - 16, blockBytes + 64)),
+                     buffer -> buffer.writeTo(out), "generating the expression profile")) {
+            writeHeader(out, format);
+            for (int block = 0; block < numBlocks; block++) {
+                int firstGene = block * GENE_BLOCK_SIZE;
+                // Split in block order, so every block gets the same stream at any thread number
+                SplittableRandom blockRandom = root.split();
+                writer.submit(buffer -> buffer.fill(firstGene, typeNumber, format, blockRandom));
+            }
+            writer.finish();
+        }
+    }
 
-        // Calculate number of differentially expressed genes
-        int numDifferential = (int) (numberOfGenes * differentialRatio);
+    /**
+     * Write the header line, or the binary header
+     * @param out Output stream
+     * @param format Output format
+     * @throws IOException If there's an error writing to the file
+     */
+    private void writeHeader(OutputStream out, OutputFormat format) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        if (format == OutputFormat.BINARY) {
+            DataOutputStream data = new DataOutputStream(header);
+            data.writeInt(BINARY_MAGIC);
+            data.writeInt(1);
+            data.writeInt(numberOfGenes);
+            data.writeInt(numberOfSamples);
+            for (String label : sampleLabels) {
+                data.writeUTF(label);
+            }
+            data.flush();
+        } else {
+            StringBuilder line = new StringBuilder("GeneID");
+            for (String label : sampleLabels) {
+                line.append('\t').append(label);
+            }
+            line.append('\n');
+            header.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        header.writeTo(out);
+    }
 
-        // First genes are differentially expressed
-        for (int geneIdx = 0; geneIdx < numDifferential; geneIdx++) {
-            generateGeneExpression(matrix, geneIdx, typeNumber, true);
+    /**
+     * Reusable buffer of one gene block: the values of the current gene and the formatted bytes of the block
+     */
+    private final class BlockBuffer {
+        private final double[] row = new double[numberOfSamples];
+        private final ByteBlock bytes;
+
+        /**
+         * Constructor for BlockBuffer
+         * @param capacity Initial byte capacity
+         */
+        BlockBuffer(int capacity) {
+            this.bytes = new ByteBlock(capacity);
         }
 
-        // Remaining genes are non-differentially expressed
-        for (int geneIdx = numDifferential; geneIdx < numberOfGenes; geneIdx++) {
-            generateGeneExpression(matrix, geneIdx, typeNumber, false);
+        /**
+         * Generate and format the genes of one block
+         * @param firstGene Index of the first gene of the block
+         * @param typeNumber Number of sample types
+         * @param format Output format
+         * @param random Random stream of the block
+         */
+        void fill(int firstGene, int typeNumber, OutputFormat format, SplittableRandom random) {
+            bytes.clear();
+            NegativeBinomialSampler sampler = new NegativeBinomialSampler(random);
+            int numDifferential = getDifferentialGeneCount();
+            int lastGene = Math.min(numberOfGenes, firstGene + GENE_BLOCK_SIZE);
+            for (int geneIdx = firstGene; geneIdx < lastGene; geneIdx++) {
+                // First genes are differentially expressed, remaining genes are not
+                generateGeneExpression(row, typeNumber, geneIdx < numDifferential, sampler);
+                if (format == OutputFormat.BINARY) {
+                    for (double value : row) {
+                        bytes.appendIntBigEndian(Float.floatToIntBits((float) value));
+                    }
+                } else {
+                    bytes.appendAscii("Gene_");
+                    bytes.appendLong(geneIdx + 1);
+                    for (double value : row) {
+                        bytes.appendChar('\t');
+                        bytes.appendFixed2(value);
+                    }
+                    bytes.appendChar('\n');
+                }
+            }
         }
 
-        return matrix;
+        /**
+         * Write the formatted block
+         * @param out Output stream
+         * @throws IOException If there's an error writing to the file
+         */
+        void writeTo(OutputStream out) throws IOException {
+            bytes.writeTo(out);
+        }
     }
 
     /**
@@ -148,57 +304,49 @@ public class ExpressionProfileSimulator {
 
     /**
      * Generate expression values for a single gene
-     * @param matrix Expression matrix to populate
-     * @param geneIdx Index of the gene
+     * @param row Expression row of the gene to populate
      * @param typeNumber Number of sample types
      * @param isDifferential Whether the gene is differentially expressed
+     * @param sampler Sampling engine of the gene block
      */
-    private void generateGeneExpression(double[][] matrix, int geneIdx, int typeNumber, boolean isDifferential) {
+    private void generateGeneExpression(double[] row, int typeNumber, boolean isDifferential, NegativeBinomialSampler sampler) {
         // Base expression level
-        double baseExpression = generateBaseExpression();
+        double baseExpression = generateBaseExpression(sampler);
 
         if (!isDifferential) {
             // Non-differential genes: similar expression levels across all samples
-            for (int sampleIdx = 0; sampleIdx < numberOfSamples; sampleIdx++) {
-                matrix[geneIdx][sampleIdx] = sampleNegativeBinomial(baseExpression, dispersion);
-            }
+            sampler.fillNegativeBinomial(row, baseExpression, dispersion);
         } else {
             // Differential genes: generate different expression levels by sample type
-            generateDifferentialExpression(matrix, geneIdx, typeNumber, baseExpression);
+            generateDifferentialExpression(row, typeNumber, baseExpression, sampler);
         }
     }
 
     /**
      * Generate differential expression
-     * @param matrix Expression matrix to populate
-     * @param geneIdx Index of the gene
+     * @param row Expression row of the gene to populate
      * @param typeNumber Number of sample types
      * @param baseExpression Base expression level
+     * @param sampler Sampling engine of the gene block
      */
-    private void generateDifferentialExpression(double[][] matrix, int geneIdx, int typeNumber, double baseExpression) {
+    private void generateDifferentialExpression(double[] row, int typeNumber, double baseExpression, NegativeBinomialSampler sampler) {
         // Generate fold changes
-        double[] foldChanges = generateFoldChanges(typeNumber);
-
-        // Group samples by type
-        Map<String, List<Integer>> typeGroups = groupSamplesByType();
+        double[] foldChanges = generateFoldChanges(typeNumber, sampler);
 
-        int typeIdx = 0;
-        for (Map.Entry<String, List<Integer>> entry : typeGroups.entrySet()) {
+        // Samples are grouped by type once, in the constructor
+        for (int typeIdx = 0; typeIdx < typeGroups.length; typeIdx++) {
             double adjustedMean = baseExpression * foldChanges[typeIdx];
-
-            for (int sampleIdx : entry.getValue()) {
-                matrix[geneIdx][sampleIdx] = sampleNegativeBinomial(adjustedMean, dispersion);
-            }
-            typeIdx++;
+            sampler.fillNegativeBinomial(row, typeGroups[typeIdx], adjustedMean, dispersion);
         }
     }
 
     /**
      * Generate fold change array
      * @param typeNumber Number of sample types
+     * @param random Sampling engine of the gene block
      * @return Array of fold changes for each type
      */
-    private double[] generateFoldChanges(int typeNumber) {
+    private double[] generateFoldChanges(int typeNumber, NegativeBinomialSampler random) {
         double[] foldChanges = new double[typeNumber];
 
         if (typeNumber == 2) {
@@ -244,9 +392,10 @@ public class ExpressionProfileSimulator {
 
     /**
      * Generate base expression level
+     * @param random Sampling engine of the gene block
      * @return Base expression level
      */
-    private double generateBaseExpression() {
+    private double generateBaseExpression(NegativeBinomialSampler random) {
         // Use log-normal distribution to generate base expression levels
         double logMean = Math.log(baseMean);
         double logStd = 0.5; // Reduce variability to make base expression more stable
@@ -254,110 +403,6 @@ public class ExpressionProfileSimulator {
         return Math.exp(logValue);
     }
 
-    /**
-     * Sample from negative binomial distribution
-     * Using Gamma-Poisson mixture model
-     * @param mean Mean of the distribution
-     * @param dispersion Dispersion parameter
-     * @return Sampled value
-     */
-    private double sampleNegativeBinomial(double mean, double dispersion) {
-        if (mean <= 0) return 0;
-
-        // Negative binomial distribution parameter conversion
-        double alpha = 1.0 / dispersion; // shape parameter
-        double beta = dispersion / mean;  // rate parameter
-
-        // First sample lambda from Gamma distribution
-        double lambda = sampleGamma(alpha, 1.0 / beta);
-
-        // Then sample from Poisson distribution
-        return samplePoisson(lambda);
-    }
-
-    /**
-     * Sample from Gamma distribution (using Marsaglia and Tsang method)
-     * @param alpha Shape parameter
-     * @param scale Scale parameter
-     * @return Sampled value
-     */
-    private double sampleGamma(double alpha, double scale) {
-        if (alpha < 1.0) {
-            return sampleGamma(alpha + 1.0, scale) * Math.pow(random.nextDouble(), 1.0 / alpha);
-        }
-
-        double d = alpha - 1.0 / 3.0;
-        double c = 1.0 / Math.sqrt(9.0 * d);
-
-        while (true) {
-            double x, v;
-            do {
-                x = random.nextGaussian();
-                v = 1.0 + c * x;
-            } while (v <= 0);
-
-            v = v * v * v;
-            double u = random.nextDouble();
-
-            if (u < 1.0 - 0.0331 * x * x * x * x) {
-                return d * v * scale;
-            }
-
-            if (Math.log(u) < 0.5 * x * x + d * (1.0 - v + Math.log(v))) {
-                return d * v * scale;
-            }
-        }
-    }
-
-    /**
-     * Sample from Poisson distribution
-     * @param lambda Lambda parameter
-     * @return Sampled value
-     */
-    private double samplePoisson(double lambda) {
-        if (lambda < 30) {
-            // Use Knuth's algorithm
-            double L = Math.exp(-lambda);
-            double p = 1.0;
-            int k = 0;
-
-            do {
-                k++;
-                p *= random.nextDouble();
-            } while (p > L);
-
-            return k - 1;
-        } else {
-            // Use normal approximation
-            return Math.max(0, random.nextGaussian() * Math.sqrt(lambda) + lambda);
-        }
-    }
-
-    /**
-     * Write data to file
-     * @param matrix Expression matrix to write
-     * @throws IOException If there's an error writing to the file
-     */
-    private void writeToFile(double[][] matrix) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))) {
-            // Write header
-            writer.write("GeneID");
-            for (String label : sampleLabels) {
-                writer.write("\t" + label);
-            }
-            writer.newLine();
-
-            // Write data
-            for (int geneIdx = 0; geneIdx < numberOfGenes; geneIdx++) {
-                writer.write("Gene_" + (geneIdx + 1));
-                for (int sampleIdx = 0; sampleIdx < numberOfSamples; sampleIdx++) {
-                    writer.write(String.format("\t%.2f", matrix[geneIdx][sampleIdx]));
-                }
-                writer.newLine();
-            }
-        }
-    }
-
     /**
      * Static method to generate sample labels
      * @param typeLabels Labels for each sample type
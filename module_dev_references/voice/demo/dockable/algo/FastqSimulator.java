@@ -0,0 +1,341 @@
+package demo.dockable.algo;
+
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Random FASTQ simulator
+ *
+ * Reads have uniformly random bases and a length drawn from a normal distribution truncated to
+ * [minimum, mean + 4 sd]. Qualities follow a per-cycle profile as on short-read instruments: the mean
+ * Phred score falls quadratically from the first to the last cycle of a mean-length read, with normal
+ * noise around it. The profile is turned into one 256-entry lookup table per cycle, so a quality
+ * costs one byte of randomness; bases called with quality 2 are written as N, as the instruments do.
+ * In paired-end mode a fragment is drawn with a normal insert size, read 1 is its start and read 2 the
+ * reverse complement of its end, so short inserts give overlapping mates.
+ *
+ * Reads are generated in blocks on several threads; each block draws from a SplittableRandom split
+ * from the seed in block order, so a given seed produces the same files at any thread number. Blocks
+ * are written in order until the target size is reached, so the files end at a block boundary.
+ */
+public class FastqSimulator {
+
+    /** Number of reads (or pairs) generated from one random stream */
+    static final int READ_BLOCK_SIZE = 4096;
+    private static final int MIN_QUALITY = 2;
+    private static final int MAX_QUALITY = 41;
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final String read1Path;
+    private final String read2Path;
+    private final long targetBytes;
+    private final double lengthMean;
+    private final double lengthSd;
+    private final int lengthMin;
+    private final int lengthMax;
+    private final double insertMean;
+    private final double insertSd;
+    private final long seed;
+    private final int threads;
+    /** Quality characters by cycle, indexed by one random byte */
+    private final byte[][] qualityTable;
+
+    /**
+     * Constructor for FastqSimulator
+     * @param read1Path Output path of the reads, or of read 1 in paired-end mode
+     * @param read2Path Output path of read 2, or null for single-end reads
+     * @param targetBytes Size to reach, summed over both files
+     * @param lengthMean Mean read length
+     * @param lengthSd Standard deviation of the read length, 0 for fixed-length reads
+     * @param lengthMin Shortest read length
+     * @param insertMean Mean fragment length in paired-end mode
+     * @param insertSd Standard deviation of the fragment length
+     * @param qualityStart Mean Phred quality of the first cycle
+     * @param qualityEnd Mean Phred quality of the last cycle of a mean-length read
+     * @param qualitySd Standard deviation of the quality around the cycle mean
+     * @param seed Random seed, the same seed gives the same files at any thread number
+     * @param threads Number of generating threads
+     */
+    public FastqSimulator(String read1Path, String read2Path, long targetBytes,
+                          double lengthMean, double lengthSd, int lengthMin,
+                          double insertMean, double insertSd,
+                          double qualityStart, double qualityEnd, double qualitySd,
+                          long seed, int threads) {
+        if (lengthMean < 1 || lengthSd < 0 || lengthMin < 1 || lengthMin > lengthMean) {
+            throw new IllegalArgumentException("The read length needs mean >= minimum >= 1 and sd >= 0");
+        }
+        this.read1Path = read1Path;
+        this.read2Path = read2Path;
+        this.targetBytes = targetBytes;
+        this.lengthMean = lengthMean;
+        this.lengthSd = lengthSd;
+        this.lengthMin = lengthMin;
+        this.lengthMax = (int) Math.round(lengthMean + 4 * lengthSd);
+        this.insertMean = insertMean;
+        this.insertSd = Math.max(0, insertSd);
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+        this.qualityTable = buildQualityTable(qualityStart, qualityEnd, Math.max(0, qualitySd));
+    }
+
+    /**
+     * Build the quality lookup table of every cycle
+     * @param start Mean quality of the first cycle
+     * @param end Mean quality of the last cycle of a mean-length read
+     * @param sd Standard deviation around the mean
+     * @return Table of 256 quality characters per cycle
+     */
+    private byte[][] buildQualityTable(double start, double end, double sd) {
+        byte[][] table = new byte[lengthMax][256];
+        double[] weight = new double[MAX_QUALITY + 1];
+        for (int cycle = 0; cycle < lengthMax; cycle++) {
+            double t = Math.min(1, cycle / Math.max(1, lengthMean - 1));
+            double mean = start - (start - end) * t * t;
+            byte[] row = table[cycle];
+            if (sd == 0) {
+                int q = (int) Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, Math.round(mean)));
+                Arrays.fill(row, (byte) (q + 33));
+                continue;
+            }
+            // Discretized normal, the tails folded onto the extreme qualities
+            double total = 0;
+            Arrays.fill(weight, 0);
+            for (int q = 0; q <= 2 * MAX_QUALITY; q++) {
+                double z = (q - mean) / sd;
+                double w = Math.exp(-0.5 * z * z);
+                weight[Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, q))] += w;
+                total += w;
+            }
+            int q = MIN_QUALITY;
+            double cumulative = weight[q] / total;
+            for (int k = 0; k < 256; k++) {
+                double u = (k + 0.5) / 256;
+                while (cumulative < u && q < MAX_QUALITY) {
+                    cumulative += weight[++q] / total;
+                }
+                row[k] = (byte) (q + 33);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Generate the reads and write them
+     * @return List of status messages
+     * @throws IOException If there's an error writing the files or a worker thread fails
+     */
+    public List<String> simulate() throws IOException {
+        boolean paired = read2Path != null;
+        long blockBytes = (long) READ_BLOCK_SIZE * (2L * lengthMax + 40) * (paired ? 2 : 1);
+
+        SplittableRandom root = new SplittableRandom(seed);
+        // One element each, so the sink below can add to them
+        long[] written = new long[1];
+        long[] bases = new long[1];
+        int[] blocks = new int[1];
+        long start = System.nanoTime();
+        try (FileChannel read1 = OrderedBlockWriter.openChannel(read1Path);
+             FileChannel read2 = paired ? OrderedBlockWriter.openChannel(read2Path) : null;
+             OrderedBlockWriter<ReadBlock> writer = new OrderedBlockWriter<>(threads, blockBytes,
+                     () -> new ReadBlock((int) Math.min(1 << 26, blockBytes), paired), done -> {
+                         done.read1Bytes.writeTo(read1);
+                         written[0] += done.read1Bytes.length();
+                         if (paired) {
+                             done.read2Bytes.writeTo(read2);
+                             written[0] += done.read2Bytes.length();
+                         }
+                         bases[0] += done.bases;
+                         blocks[0]++;
+                     }, "generating reads")) {
+            // Blocks still in flight once the target is reached are dropped, the files end on a block boundary
+            for (long block = 0; written[0] < targetBytes; block++) {
+                // Split in block order, so every block gets the same stream at any thread number
+                SplittableRandom blockRandom = root.split();
+                long firstRead = block * READ_BLOCK_SIZE;
+                writer.submit(buffer -> buffer.fill(firstRead, blockRandom));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<String> ret = Lists.newLinkedList();
+        ret.add("Finished writing file: " + read1Path);
+        if (paired) {
+            ret.add("Finished writing file: " + read2Path);
+        }
+        ret.add("Number of " + (paired ? "read pairs: " : "reads: ") + (long) blocks[0] * READ_BLOCK_SIZE);
+        ret.add("Number of bases: " + bases[0]);
+        ret.add(String.format("Written %d bytes at %.2f GB/s", written[0], written[0] / seconds / 1e9));
+        return ret;
+    }
+
+    /**
+     * Draw a read length
+     * @param random Random stream
+     * @return Length in [lengthMin, lengthMax]
+     */
+    private int nextLength(SplittableRandom random) {
+        if (lengthSd == 0) {
+            return (int) Math.round(lengthMean);
+        }
+        int length;
+        do {
+            length = (int) Math.round(lengthMean + lengthSd * random.nextGaussian());
+        } while (length < lengthMin || length > lengthMax);
+        return length;
+    }
+
+    /**
+     * Reusable buffers of one block of reads, owned by one window slot
+     */
+    private final class ReadBlock {
+        private final ByteBlock read1Bytes;
+        private final ByteBlock read2Bytes;
+        private byte[] fragment = new byte[1024];
+        private final byte[] sequence = new byte[lengthMax];
+        private final byte[] quality = new byte[lengthMax];
+        private long bases;
+        private long bits;
+        private int bitsLeft;
+
+        /**
+         * Constructor for ReadBlock
+         * @param capacity Initial byte capacity of each buffer
+         * @param paired Whether to keep a buffer for read 2
+         */
+        ReadBlock(int capacity, boolean paired) {
+            this.read1Bytes = new ByteBlock(paired ? capacity / 2 : capacity);
+            this.read2Bytes = paired ? new ByteBlock(capacity / 2) : null;
+        }
+
+        /**
+         * Generate and format the reads of one block
+         * @param firstRead Zero-based number of the first read of the block
+         * @param random Random stream of the block
+         */
+        void fill(long firstRead, SplittableRandom random) {
+            read1Bytes.clear();
+            if (read2Bytes != null) {
+                read2Bytes.clear();
+            }
+            bases = 0;
+            bitsLeft = 0;
+            for (int r = 0; r < READ_BLOCK_SIZE; r++) {
+                long readNumber = firstRead + r + 1;
+                int length1 = nextLength(random);
+                if (read2Bytes == null) {
+                    randomBases(fragment(length1), length1, random);
+                    appendRecord(read1Bytes, readNumber, 0, fragment, 0, length1, false, random);
+                    continue;
+                }
+                int length2 = nextLength(random);
+                int insert = (int) Math.max(Math.max(length1, length2), Math.round(insertMean + insertSd * random.nextGaussian()));
+                randomBases(fragment(insert), insert, random);
+                appendRecord(read1Bytes, readNumber, 1, fragment, 0, length1, false, random);
+                appendRecord(read2Bytes, readNumber, 2, fragment, insert - length2, length2, true, random);
+            }
+        }
+
+        /**
+         * Get the fragment buffer, grown to a length
+         * @param length Needed length
+         * @return Fragment buffer
+         */
+        private byte[] fragment(int length) {
+            if (fragment.length < length) {
+                fragment = new byte[Math.max(length, fragment.length * 2)];
+            }
+            return fragment;
+        }
+
+        /**
+         * Fill a buffer with uniform bases, 32 bases per random long
+         * @param target Buffer
+         * @param length Number of bases
+         * @param random Random stream
+         */
+        private void randomBases(byte[] target, int length, SplittableRandom random) {
+            long word = 0;
+            for (int i = 0; i < length; i++) {
+                if ((i & 31) == 0) {
+                    word = random.nextLong();
+                }
+                target[i] = BASES[(int) (word & 3)];
+                word >>>= 2;
+            }
+        }
+
+        /**
+         * Draw one quality character of a cycle, 8 random bits each
+         * @param cycle Zero-based cycle
+         * @param random Random stream
+         * @return Phred+33 character
+         */
+        private byte nextQuality(int cycle, SplittableRandom random) {
+            if (bitsLeft == 0) {
+                bits = random.nextLong();
+                bitsLeft = 8;
+            }
+            byte q = qualityTable[cycle][(int) (bits & 0xFF)];
+            bits >>>= 8;
+            bitsLeft--;
+            return q;
+        }
+
+        /**
+         * Append one FASTQ record
+         * @param out Output buffer
+         * @param readNumber One-based read number
+         * @param mate 1 or 2 in paired-end mode, 0 for single-end reads
+         * @param source Fragment bases
+         * @param from Start of the read in the fragment
+         * @param length Read length
+         * @param reverseComplement Whether the read is the reverse complement of the fragment
+         * @param random Random stream
+         */
+        private void appendRecord(ByteBlock out, long readNumber, int mate, byte[] source, int from, int length,
+                                  boolean reverseComplement, SplittableRandom random) {
+            for (int i = 0; i < length; i++) {
+                byte base = reverseComplement ? complement(source[from + length - 1 - i]) : source[from + i];
+                byte q = nextQuality(i, random);
+                quality[i] = q;
+                sequence[i] = q == MIN_QUALITY + 33 ? (byte) 'N' : base;
+            }
+            bases += length;
+
+            out.appendAscii("@sim.");
+            out.appendLong(readNumber);
+            if (mate > 0) {
+                out.appendChar('/');
+                out.appendChar((char) ('0' + mate));
+            }
+            out.appendChar('\n');
+            out.appendBytes(sequence, 0, length);
+            out.appendAscii("\n+\n");
+            out.appendBytes(quality, 0, length);
+            out.appendChar('\n');
+        }
+    }
+
+    /**
+     * Complement of a base
+     * @param base A, C, G or T
+     * @return Complementary base
+     */
+    private static byte complement(byte base) {
+        switch (base) {
+            case 'A':
+                return 'T';
+            case 'C':
+                return 'G';
+            case 'G':
+                return 'C';
+            default:
+                return 'A';
+        }
+    }
+}
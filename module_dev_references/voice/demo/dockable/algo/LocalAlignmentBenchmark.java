@@ -0,0 +1,159 @@
+package demo.dockable.algo;
+
+import java.io.ByteArrayOutputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmark of {@link LocalAlignmentScorer}: the striped Vector API kernel against the scalar recurrence.
+ *
+ * One query is scored against a set of unrelated random targets and a set of homologous targets derived
+ * from it by substitutions and indels. The two paths are first checked to give the same scores under
+ * several scoring schemes, then each is timed on both sets and reported in GCUPS (billions of DP cell
+ * updates per second), best of several rounds after a warm-up round.
+ *
+ * Run with --add-modules jdk.incubator.vector, as @eGPS.args does; without the module only the scalar
+ * path is timed. Arguments, all optional: sequence length, number of targets, rounds, random seed.
+ */
+public class LocalAlignmentBenchmark {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    /** Match, mismatch, gap open and gap extend; the first scheme is the timed one */
+    private static final int[][] SCHEMES = {{2, -3, 5, 2}, {1, -1, 0, 1}, {5, -4, 10, 1}, {3, -2, 2, 2}};
+
+    /**
+     * Main method to run the benchmark
+     * @param args Sequence length, number of targets, rounds and random seed, all optional
+     */
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int targetNumber = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] query = randomSequence(length, random);
+        byte[][] unrelated = new byte[targetNumber][];
+        byte[][] homologous = new byte[targetNumber][];
+        for (int t = 0; t < targetNumber; t++) {
+            unrelated[t] = randomSequence(length, random);
+            homologous[t] = mutate(query, 0.1, random);
+        }
+
+        boolean vectorAvailable = new LocalAlignmentScorer(1, -1, 1, 1).isVectorized();
+        System.out.println("Query length " + length + ", " + targetNumber + " targets per set, best of "
+                + rounds + " rounds");
+        if (!vectorAvailable) {
+            System.out.println("The jdk.incubator.vector module is not available; run with "
+                    + "--add-modules jdk.incubator.vector to time the vector path");
+        } else {
+            int differences = 0;
+            for (int[] scheme : SCHEMES) {
+                LocalAlignmentScorer scalar = new LocalAlignmentScorer(scheme[0], scheme[1], scheme[2], scheme[3], false);
+                LocalAlignmentScorer vector = new LocalAlignmentScorer(scheme[0], scheme[1], scheme[2], scheme[3]);
+                differences += countDifferences(scalar, vector, query, unrelated);
+                differences += countDifferences(scalar, vector, query, homologous);
+            }
+            System.out.println("Score differences between the paths over " + SCHEMES.length + " schemes: "
+                    + differences);
+        }
+
+        int[] scheme = SCHEMES[0];
+        LocalAlignmentScorer scalar = new LocalAlignmentScorer(scheme[0], scheme[1], scheme[2], scheme[3], false);
+        LocalAlignmentScorer vector = new LocalAlignmentScorer(scheme[0], scheme[1], scheme[2], scheme[3]);
+        report("Unrelated, scalar", scalar, query, unrelated, rounds);
+        report("Homologous, scalar", scalar, query, homologous, rounds);
+        if (vectorAvailable) {
+            report("Unrelated, vector (" + StripedScoreKernel.lanes() + " lanes)", vector, query, unrelated, rounds);
+            report("Homologous, vector (" + StripedScoreKernel.lanes() + " lanes)", vector, query, homologous, rounds);
+        }
+    }
+
+    /**
+     * Count the targets scored differently by two scorers
+     * @param expected Reference scorer
+     * @param actual Scorer under test
+     * @param query Query sequence
+     * @param targets Target sequences
+     * @return Number of differing scores
+     */
+    private static int countDifferences(LocalAlignmentScorer expected, LocalAlignmentScorer actual,
+                                        byte[] query, byte[][] targets) {
+        int[] reference = expected.scoreAll(query, targets);
+        int[] scores = actual.scoreAll(query, targets);
+        int differences = 0;
+        for (int t = 0; t < targets.length; t++) {
+            if (reference[t] != scores[t]) {
+                differences++;
+            }
+        }
+        return differences;
+    }
+
+    /**
+     * Time a scorer on a target set and print its throughput
+     * @param label Label of the line
+     * @param scorer Scorer to time
+     * @param query Query sequence
+     * @param targets Target sequences
+     * @param rounds Number of timed rounds, after one warm-up round
+     */
+    private static void report(String label, LocalAlignmentScorer scorer, byte[] query, byte[][] targets, int rounds) {
+        long cells = 0;
+        for (byte[] target : targets) {
+            cells += (long) query.length * target.length;
+        }
+        long checksum = 0;
+        long bestNanos = Long.MAX_VALUE;
+        for (int round = 0; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int score : scorer.scoreAll(query, targets)) {
+                checksum += score;
+            }
+            long nanos = System.nanoTime() - start;
+            if (round > 0) {
+                bestNanos = Math.min(bestNanos, nanos);
+            }
+        }
+        System.out.println(String.format("%-40s %8.3f GCUPS  %8.1f ms  (checksum %d)",
+                label, cells / (double) bestNanos, bestNanos / 1e6, checksum));
+    }
+
+    /**
+     * Draw a uniform random DNA sequence
+     * @param length Sequence length
+     * @param random Random stream
+     * @return Sequence as ASCII bytes
+     */
+    private static byte[] randomSequence(int length, SplittableRandom random) {
+        byte[] sequence = new byte[length];
+        for (int i = 0; i < length; i++) {
+            sequence[i] = BASES[random.nextInt(BASES.length)];
+        }
+        return sequence;
+    }
+
+    /**
+     * Derive a homologous sequence; a tenth of the changes are insertions and a tenth deletions
+     * @param source Source sequence
+     * @param rate Changes per base
+     * @param random Random stream
+     * @return Mutated sequence
+     */
+    private static byte[] mutate(byte[] source, double rate, SplittableRandom random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(source.length + 64);
+        for (byte base : source) {
+            if (random.nextDouble() >= rate) {
+                out.write(base);
+                continue;
+            }
+            double r = random.nextDouble();
+            if (r < 0.8) {
+                out.write(BASES[random.nextInt(BASES.length)]);
+            } else if (r < 0.9) {
+                out.write(base);
+                out.write(BASES[random.nextInt(BASES.length)]);
+            }
+        }
+        return out.toByteArray();
+    }
+}
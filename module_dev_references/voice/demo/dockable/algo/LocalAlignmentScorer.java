@@ -0,0 +1,141 @@
+package demo.dockable.algo;
+
+import java.util.Arrays;
+
+/**
+ * Smith-Waterman local alignment scores with affine gap costs, on byte-encoded sequences.
+ *
+ * When the jdk.incubator.vector module is available (run with --add-modules jdk.incubator.vector),
+ * scores are computed by the striped kernel of {@link StripedScoreKernel}; otherwise, or for queries
+ * too short to fill the lanes, by a scalar linear-space Gotoh recurrence. Both give the same score.
+ * A query profile is built once per query, so {@link #scoreAll(byte[], byte[][])} is the building block
+ * for all-vs-all comparisons of simulated sequence sets.
+ *
+ * Instances are not thread-safe; use one scorer per thread.
+ */
+public final class LocalAlignmentScorer {
+
+    private static final boolean VECTOR_API_PRESENT =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private final int match;
+    private final int mismatch;
+    private final int gapOpen;
+    private final int gapExtend;
+    private final boolean vectorized;
+    private final Object kernel;
+
+    private int[] scalarH = new int[0];
+    private int[] scalarE = new int[0];
+
+    /**
+     * Constructor for LocalAlignmentScorer, vectorized when possible
+     * @param match Score of two identical bases
+     * @param mismatch Score of two different bases, usually negative
+     * @param gapOpen Penalty for opening a gap, not negative
+     * @param gapExtend Penalty for each gap position, not negative
+     */
+    public LocalAlignmentScorer(int match, int mismatch, int gapOpen, int gapExtend) {
+        this(match, mismatch, gapOpen, gapExtend, true);
+    }
+
+    /**
+     * Constructor for LocalAlignmentScorer
+     * @param match Score of two identical bases
+     * @param mismatch Score of two different bases, usually negative
+     * @param gapOpen Penalty for opening a gap, not negative
+     * @param gapExtend Penalty for each gap position, not negative
+     * @param useVectorApi Whether to use the Vector API kernel when it is available
+     */
+    public LocalAlignmentScorer(int match, int mismatch, int gapOpen, int gapExtend, boolean useVectorApi) {
+        if (gapOpen < 0 || gapExtend < 0) {
+            throw new IllegalArgumentException("Gap penalties must not be negative.");
+        }
+        this.match = match;
+        this.mismatch = mismatch;
+        this.gapOpen = gapOpen;
+        this.gapExtend = gapExtend;
+        this.vectorized = useVectorApi && VECTOR_API_PRESENT;
+        // Referenced only here, so the kernel class is never loaded without the module
+        this.kernel = vectorized ? new StripedScoreKernel(match, mismatch, gapOpen, gapExtend) : null;
+    }
+
+    /**
+     * Whether scores are computed with the Vector API
+     * @return True if the striped kernel is in use
+     */
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * Compute the best local alignment score of two sequences
+     * @param query Query sequence
+     * @param target Target sequence
+     * @return Smith-Waterman score
+     */
+    public int score(byte[] query, byte[] target) {
+        return scoreAll(query, new byte[][]{target})[0];
+    }
+
+    /**
+     * Compute the best local alignment score of one query against many targets, building its profile once
+     * @param query Query sequence
+     * @param targets Target sequences
+     * @return Scores in target order
+     */
+    public int[] scoreAll(byte[] query, byte[][] targets) {
+        int[] scores = new int[targets.length];
+        if (vectorized && query.length >= 2 * StripedScoreKernel.lanes()) {
+            StripedScoreKernel.Profile profile = ((StripedScoreKernel) kernel).new Profile(query);
+            for (int t = 0; t < targets.length; t++) {
+                scores[t] = profile.score(targets[t]);
+            }
+            return scores;
+        }
+        for (int t = 0; t < targets.length; t++) {
+            scores[t] = scoreScalar(query, targets[t]);
+        }
+        return scores;
+    }
+
+    /**
+     * Compute the best local alignment score with the scalar recurrence
+     * @param query Query sequence
+     * @param target Target sequence
+     * @return Smith-Waterman score
+     */
+    public int scoreScalar(byte[] query, byte[] target) {
+        int m = query.length;
+        if (scalarH.length < m + 1) {
+            scalarH = new int[m + 1];
+            scalarE = new int[m + 1];
+        }
+        int[] h = scalarH;
+        int[] e = scalarE;
+        Arrays.fill(h, 0, m + 1, 0);
+        Arrays.fill(e, 0, m + 1, 0);
+        int openExtend = gapOpen + gapExtend;
+        int best = 0;
+
+        // Columns follow the target, rows the query
+        for (byte base : target) {
+            int diagonal = 0;
+            int f = 0;
+            for (int i = 1; i <= m; i++) {
+                int left = h[i];
+                int eValue = Math.max(e[i] - gapExtend, left - openExtend);
+                int value = diagonal + (query[i - 1] == base ? match : mismatch);
+                value = Math.max(Math.max(value, eValue), Math.max(f, 0));
+                diagonal = left;
+                h[i] = value;
+                e[i] = eValue;
+                f = Math.max(f - gapExtend, value - openExtend);
+                if (value > best) {
+                    best = value;
+                }
+            }
+        }
+        return best;
+    }
+}
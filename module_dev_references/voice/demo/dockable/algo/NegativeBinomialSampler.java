@@ -0,0 +1,386 @@
+package demo.dockable.algo;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Sampling engine for count data: gamma, Poisson and negative binomial (gamma-Poisson) variates
+ *
+ * - Gamma: Marsaglia and Tsang (2000), with the U^(1/shape) boost for shape below 1
+ * - Poisson: exact inversion for small means, PTRS transformed rejection (Hoermann 1993) for
+ *   large means, so high counts keep the exact distribution instead of a normal approximation
+ * - Negative binomial: Poisson with a gamma distributed mean of the requested mean and dispersion
+ *
+ * The engine holds a concrete SplittableRandom, so the hot loops make no interface calls. The
+ * batch methods fill all samples of a gene in one call: when the distribution is narrow enough
+ * compared with the number of samples, its cumulative distribution is tabulated once and every
+ * sample is drawn by exact inversion with a guide table; otherwise the samples are drawn one by one.
+ * An instance is not thread-safe; use one per thread or per gene block.
+ */
+public final class NegativeBinomialSampler {
+
+    /** Means below this use inversion, the others use PTRS */
+    private static final double INVERSION_LIMIT = 10.0;
+    /** Batches smaller than this are always drawn one by one */
+    private static final int TABLE_MIN_SAMPLES = 8;
+    private static final double HALF_LOG_TWO_PI = 0.5 * Math.log(2 * Math.PI);
+    private static final double[] LOG_FACTORIAL = new double[256];
+
+    static {
+        for (int k = 1; k < LOG_FACTORIAL.length; k++) {
+            LOG_FACTORIAL[k] = LOG_FACTORIAL[k - 1] + Math.log(k);
+        }
+    }
+
+    private final SplittableRandom random;
+
+    // Inversion table of the last batch: cumulative probabilities of tableStart, tableStart + 1, ...
+    private double[] cdf = new double[0];
+    private int[] guide = new int[0];
+    private long tableStart;
+    private int tableLength;
+
+    /**
+     * Constructor for NegativeBinomialSampler
+     * @param random Random stream owned by this sampler
+     */
+    public NegativeBinomialSampler(SplittableRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * Uniform value in [0, 1)
+     * @return Sampled value
+     */
+    public double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * Fair coin
+     * @return Sampled value
+     */
+    public boolean nextBoolean() {
+        return random.nextBoolean();
+    }
+
+    /**
+     * Standard normal value
+     * @return Sampled value
+     */
+    public double nextGaussian() {
+        return random.nextGaussian();
+    }
+
+    /**
+     * Sample from a gamma distribution
+     * @param shape Shape parameter
+     * @param scale Scale parameter
+     * @return Sampled value
+     */
+    public double nextGamma(double shape, double scale) {
+        if (shape < 1.0) {
+            double d = shape + 1.0 - 1.0 / 3.0;
+            return marsagliaTsang(d, 1.0 / Math.sqrt(9.0 * d)) * scale
+                    * Math.pow(random.nextDouble(), 1.0 / shape);
+        }
+        double d = shape - 1.0 / 3.0;
+        return marsagliaTsang(d, 1.0 / Math.sqrt(9.0 * d)) * scale;
+    }
+
+    /**
+     * Marsaglia and Tsang squeeze and rejection for a unit-scale gamma variate of shape d + 1/3
+     * @param d Shape minus one third
+     * @param c 1 / sqrt(9d)
+     * @return Sampled value
+     */
+    private double marsagliaTsang(double d, double c) {
+        while (true) {
+            double x, v;
+            do {
+                x = random.nextGaussian();
+                v = 1.0 + c * x;
+            } while (v <= 0);
+
+            v = v * v * v;
+            double u = random.nextDouble();
+            double xx = x * x;
+
+            if (u < 1.0 - 0.0331 * xx * xx) {
+                return d * v;
+            }
+            if (Math.log(u) < 0.5 * xx + d * (1.0 - v + Math.log(v))) {
+                return d * v;
+            }
+        }
+    }
+
+    /**
+     * Sample from a Poisson distribution
+     * @param mean Mean of the distribution
+     * @return Sampled count
+     */
+    public long nextPoisson(double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        return mean < INVERSION_LIMIT ? poissonInversion(mean) : poissonPTRS(mean);
+    }
+
+    /**
+     * Poisson by sequential inversion of the cumulative distribution
+     * @param mean Mean below INVERSION_LIMIT
+     * @return Sampled count
+     */
+    private long poissonInversion(double mean) {
+        double u = random.nextDouble();
+        double p = Math.exp(-mean);
+        double cumulative = p;
+        long k = 0;
+        while (u > cumulative) {
+            k++;
+            p *= mean / k;
+            cumulative += p;
+            if (p < 1e-300 && k > mean) {
+                // Only reachable through rounding of the tail
+                break;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * Poisson by the PTRS transformed rejection method with squeeze
+     * @param mean Mean of at least INVERSION_LIMIT
+     * @return Sampled count
+     */
+    private long poissonPTRS(double mean) {
+        double b = 0.931 + 2.53 * Math.sqrt(mean);
+        double a = -0.059 + 0.02483 * b;
+        double vr = 0.9277 - 3.6224 / (b - 2);
+        // Only needed by the rejection test, which most samples never reach
+        double invAlpha = 0;
+        double logMean = 0;
+
+        while (true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+
+            if (us >= 0.07 && v <= vr) {
+                return k;
+            }
+            if (k < 0 || (us < 0.013 && v > us)) {
+                continue;
+            }
+            if (invAlpha == 0) {
+                invAlpha = 1.1239 + 1.1328 / (b - 3.4);
+                logMean = Math.log(mean);
+            }
+            if (Math.log(v * invAlpha / (a / (us * us) + b)) <= -mean + k * logMean - logFactorial(k)) {
+                return k;
+            }
+        }
+    }
+
+    /**
+     * Sample from a negative binomial distribution as a gamma-Poisson mixture
+     * @param mean Mean of the distribution
+     * @param dispersion Dispersion, variance = mean + dispersion * mean^2; 0 or less gives Poisson
+     * @return Sampled count
+     */
+    public long nextNegativeBinomial(double mean, double dispersion) {
+        if (mean <= 0) {
+            return 0;
+        }
+        if (dispersion <= 0) {
+            return nextPoisson(mean);
+        }
+        return nextPoisson(nextGamma(1.0 / dispersion, mean * dispersion));
+    }
+
+    /**
+     * Fill all values with negative binomial counts of one mean
+     * @param counts Array to fill
+     * @param mean Mean of the distribution
+     * @param dispersion Dispersion, 0 or less gives Poisson
+     */
+    public void fillNegativeBinomial(double[] counts, double mean, double dispersion) {
+        fillNegativeBinomial(counts, null, counts.length, mean, dispersion);
+    }
+
+    /**
+     * Fill selected values with negative binomial counts of one mean
+     * @param counts Array to fill
+     * @param indices Indices of the values to fill
+     * @param mean Mean of the distribution
+     * @param dispersion Dispersion, 0 or less gives Poisson
+     */
+    public void fillNegativeBinomial(double[] counts, int[] indices, double mean, double dispersion) {
+        fillNegativeBinomial(counts, indices, indices.length, mean, dispersion);
+    }
+
+    /**
+     * Fill all values with negative binomial counts of one mean
+     * @param counts Array to fill
+     * @param mean Mean of the distribution
+     * @param dispersion Dispersion, 0 or less gives Poisson
+     */
+    public void fillNegativeBinomial(int[] counts, double mean, double dispersion) {
+        if (buildTable(mean, dispersion, counts.length)) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = (int) sampleTable();
+            }
+        } else {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = (int) Math.min(Integer.MAX_VALUE, nextNegativeBinomial(mean, dispersion));
+            }
+        }
+    }
+
+    /**
+     * Shared batch loop of the double[] variants
+     * @param counts Array to fill
+     * @param indices Indices to fill, or null for the first n values
+     * @param n Number of values to fill
+     * @param mean Mean of the distribution
+     * @param dispersion Dispersion, 0 or less gives Poisson
+     */
+    private void fillNegativeBinomial(double[] counts, int[] indices, int n, double mean, double dispersion) {
+        if (buildTable(mean, dispersion, n)) {
+            for (int i = 0; i < n; i++) {
+                counts[indices == null ? i : indices[i]] = sampleTable();
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                counts[indices == null ? i : indices[i]] = nextNegativeBinomial(mean, dispersion);
+            }
+        }
+    }
+
+    /**
+     * Build the inversion table of one distribution, when that is cheaper than sampling n values one by one.
+     * The probabilities are computed outward from the mode with the ratio P(k+1)/P(k), which needs no
+     * gamma functions, and each side stops once the probability falls below 1e-18 of the mode.
+     * The normalized cumulative sums then get a guide table, so a draw costs one uniform value.
+     * @param mean Mean of the distribution
+     * @param dispersion Dispersion, 0 or less gives Poisson
+     * @param n Number of values to draw
+     * @return True if the table is ready, false if the values should be drawn one by one
+     */
+    private boolean buildTable(double mean, double dispersion, int n) {
+        if (mean <= 0) {
+            tableStart = 0;
+            tableLength = 1;
+            ensureTableCapacity(1);
+            cdf[0] = 1.0;
+            guide[0] = 0;
+            return true;
+        }
+        if (n < TABLE_MIN_SAMPLES) {
+            return false;
+        }
+        int budget = 64 + 4 * n;
+
+        // P(k+1)/P(k) = (k + r) / (k + 1) * q, or mean / (k + 1) for Poisson
+        boolean poisson = dispersion <= 0;
+        double r = poisson ? 0 : 1.0 / dispersion;
+        double q = poisson ? 0 : mean / (r + mean);
+        long mode = poisson ? (long) mean : (r > 1 ? (long) ((r - 1) * mean / r) : 0);
+
+        // Upper side from the mode, written from the middle of the buffer
+        ensureTableCapacity(2 * budget);
+        int middle = budget;
+        int upper = middle;
+        cdf[upper] = 1.0;
+        double p = 1.0;
+        for (long k = mode; ; k++) {
+            p *= poisson ? mean / (k + 1) : (k + r) / (k + 1) * q;
+            if (p < 1e-18) {
+                break;
+            }
+            if (++upper - middle >= budget) {
+                return false;
+            }
+            cdf[upper] = p;
+        }
+        // Lower side, P(k-1)/P(k) = k / ((k - 1 + r) q), or k / mean for Poisson
+        int lower = middle;
+        p = 1.0;
+        for (long k = mode; k > 0; k--) {
+            p *= poisson ? k / mean : k / ((k - 1 + r) * q);
+            if (p < 1e-18) {
+                break;
+            }
+            if (upper - --lower >= budget) {
+                return false;
+            }
+            cdf[lower] = p;
+        }
+
+        tableStart = mode - (middle - lower);
+        tableLength = upper - lower + 1;
+        double total = 0;
+        for (int i = 0; i < tableLength; i++) {
+            total += cdf[lower + i];
+            cdf[i] = total;
+        }
+        double inverseTotal = 1.0 / total;
+        for (int i = 0; i < tableLength; i++) {
+            cdf[i] *= inverseTotal;
+        }
+        cdf[tableLength - 1] = 1.0;
+
+        int index = 0;
+        for (int j = 0; j < tableLength; j++) {
+            double threshold = (double) j / tableLength;
+            while (cdf[index] <= threshold) {
+                index++;
+            }
+            guide[j] = index;
+        }
+        return true;
+    }
+
+    /**
+     * Draw one value from the current inversion table
+     * @return Sampled count
+     */
+    private double sampleTable() {
+        double u = random.nextDouble();
+        int index = guide[(int) (u * tableLength)];
+        while (cdf[index] <= u) {
+            index++;
+        }
+        return tableStart + index;
+    }
+
+    /**
+     * Grow the table buffers if needed
+     * @param capacity Required capacity
+     */
+    private void ensureTableCapacity(int capacity) {
+        if (cdf.length < capacity) {
+            cdf = new double[capacity];
+            guide = new int[capacity];
+        }
+    }
+
+    /**
+     * Natural logarithm of k!
+     * @param k Non-negative integer
+     * @return log(k!)
+     */
+    static double logFactorial(long k) {
+        if (k < LOG_FACTORIAL.length) {
+            return LOG_FACTORIAL[(int) k];
+        }
+        // Stirling series for log Gamma(k + 1), accurate to double precision above 255
+        double x = k + 1.0;
+        double inv = 1.0 / x;
+        double inv2 = inv * inv;
+        return (x - 0.5) * Math.log(x) - x + HALF_LOG_TWO_PI
+                + inv * (1.0 / 12 - inv2 * (1.0 / 360 - inv2 * (1.0 / 1260)));
+    }
+}
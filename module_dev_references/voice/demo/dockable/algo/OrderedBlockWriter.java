@@ -0,0 +1,191 @@
+package demo.dockable.algo;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bounded window of output blocks that simulators fill on worker threads and write in submission order.
+ *
+ * Each window slot owns one reusable buffer, created on first use. Submitting a block when the window is
+ * full first waits for the oldest block and hands it to the writer, so its buffer is free again; memory
+ * is bounded by the window, not by the number of blocks. Callers that split random streams in submission
+ * order get the same output at any thread number.
+ *
+ * @param <B> Buffer type of one block
+ */
+final class OrderedBlockWriter<B> implements AutoCloseable {
+
+    /** Upper bound of the memory held by formatted blocks waiting to be written */
+    static final long BUFFER_BUDGET = 256L << 20;
+
+    /**
+     * Fills the buffer of one block, on a worker thread
+     * @param <B> Buffer type
+     */
+    interface BlockTask<B> {
+        /**
+         * Fill a buffer
+         * @param buffer Buffer of the window slot, holding a block that was already written
+         * @throws Exception If the block cannot be generated
+         */
+        void fill(B buffer) throws Exception;
+    }
+
+    /**
+     * Writes a filled buffer, on the submitting thread
+     * @param <B> Buffer type
+     */
+    interface BlockSink<B> {
+        /**
+         * Write a buffer
+         * @param buffer Filled buffer
+         * @throws IOException If there's an error writing
+         */
+        void write(B buffer) throws IOException;
+    }
+
+    private final int window;
+    private final Supplier<B> bufferFactory;
+    private final BlockSink<B> sink;
+    private final String activity;
+    private final List<B> buffers;
+    private final List<Future<B>> inFlight;
+    private final ExecutorService executor;
+    private long submitted;
+    private long written;
+
+    /**
+     * Constructor for OrderedBlockWriter
+     * @param threads Number of worker threads
+     * @param blockBytes Estimated size of one block, which sets the window within {@link #BUFFER_BUDGET}
+     * @param bufferFactory Creates the buffer of a window slot
+     * @param sink Writes the filled buffers in submission order
+     * @param activity What the blocks are for, e.g. "generating reads", used in error messages
+     */
+    OrderedBlockWriter(int threads, long blockBytes, Supplier<B> bufferFactory, BlockSink<B> sink, String activity) {
+        int workers = Math.max(1, threads);
+        this.window = (int) Math.max(2, Math.min(2L * workers, BUFFER_BUDGET / Math.max(1, blockBytes)));
+        this.bufferFactory = bufferFactory;
+        this.sink = sink;
+        this.activity = activity;
+        this.buffers = new ArrayList<>(window);
+        this.inFlight = new ArrayList<>(Collections.nCopies(window, null));
+        this.executor = Executors.newFixedThreadPool(Math.min(workers, window));
+    }
+
+    /**
+     * Start filling the next block, writing the oldest one first if the window is full
+     * @param task Fills the block
+     * @throws IOException If writing the oldest block fails or its worker failed
+     */
+    void submit(BlockTask<B> task) throws IOException {
+        if (submitted - written == window) {
+            writeOldest();
+        }
+        int slot = (int) (submitted % window);
+        if (slot == buffers.size()) {
+            buffers.add(bufferFactory.get());
+        }
+        B buffer = buffers.get(slot);
+        inFlight.set(slot, executor.submit(() -> {
+            task.fill(buffer);
+            return buffer;
+        }));
+        submitted++;
+    }
+
+    /**
+     * Write every block still in flight, oldest first
+     * @throws IOException If writing fails or a worker failed
+     */
+    void finish() throws IOException {
+        while (written < submitted) {
+            writeOldest();
+        }
+    }
+
+    /**
+     * Wait for the oldest block in flight and write it
+     * @throws IOException If writing fails or its worker failed
+     */
+    private void writeOldest() throws IOException {
+        int slot = (int) (written % window);
+        B buffer = await(inFlight.get(slot), activity);
+        inFlight.set(slot, null);
+        written++;
+        sink.write(buffer);
+    }
+
+    /**
+     * Stop the workers; blocks still in flight are dropped
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Wait for a worker result
+     * @param future Future of the result
+     * @param activity What the worker was doing, used in error messages
+     * @param <T> Result type
+     * @return The result
+     * @throws IOException If the worker failed or the wait was interrupted
+     */
+    static <T> T await(Future<T> future, String activity) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while " + activity, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error in " + activity + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Open an output file as a buffered stream
+     * @param path File path
+     * @param gzip Whether to compress the file
+     * @return Output stream
+     * @throws IOException If the file cannot be opened
+     */
+    static OutputStream openOutput(String path, boolean gzip) throws IOException {
+        OutputStream out = new FileOutputStream(path);
+        if (gzip) {
+            // Fastest level: the compressor runs on the writing thread and bounds the throughput
+            return new GZIPOutputStream(out, 1 << 16) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+        return new BufferedOutputStream(out, 1 << 16);
+    }
+
+    /**
+     * Open a file for writing from the start
+     * @param path File path
+     * @return File channel positioned at the start of an empty file
+     * @throws IOException If the file cannot be opened
+     */
+    static FileChannel openChannel(String path) throws IOException {
+        return FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
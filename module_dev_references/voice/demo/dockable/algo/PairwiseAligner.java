@@ -0,0 +1,607 @@
+package demo.dockable.algo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Global pairwise aligner on byte arrays with affine gap costs.
+ *
+ * A gap of length k scores -(gapOpen + k * gapExtend). The dynamic programming can be restricted
+ * to a band around the diagonal, see {@link #bandWidth(int, int, double)}, and the traceback follows
+ * Hirschberg: the problem is split at its middle row by one forward and one backward pass, so memory
+ * stays linear in the sequence length. Once the band of a sub-problem fits in a fixed budget it is solved
+ * with a traceback matrix over its band cells, which keeps banded runs from paying log(n) full passes.
+ *
+ * Instances are not thread-safe; use one aligner per thread.
+ */
+public final class PairwiseAligner {
+
+    /**
+     * Gap character in aligned sequences
+     */
+    public static final byte GAP = '-';
+    /**
+     * Operation consuming one base of both sequences
+     */
+    public static final byte MATCH = 0;
+    /**
+     * Operation consuming one base of the first sequence only
+     */
+    public static final byte DELETION = 1;
+    /**
+     * Operation consuming one base of the second sequence only
+     */
+    public static final byte INSERTION = 2;
+    /**
+     * Band width meaning the whole matrix is computed
+     */
+    public static final int NO_BAND = -1;
+
+    private static final int NEG = Integer.MIN_VALUE / 4;
+    private static final int TRACEBACK_CELLS = 1 << 24;
+
+    private static final int FROM_DIAGONAL = 0;
+    private static final int FROM_E = 1;
+    private static final int FROM_F = 2;
+    private static final int E_EXTENDED = 4;
+    private static final int F_EXTENDED = 8;
+
+    private final int match;
+    private final int mismatch;
+    private final int gapOpen;
+    private final int gapExtend;
+
+    // Per alignment state, reused between calls
+    private byte[] a;
+    private byte[] b;
+    private int bandLow;
+    private int bandHigh;
+    private int[] forwardH;
+    private int[] forwardE;
+    private int[] reverseH;
+    private int[] reverseE;
+    private byte[] traceback;
+    private int[] rowStart;
+    private byte[] operations;
+    private int operationCount;
+
+    /**
+     * Constructor for PairwiseAligner
+     * @param match Score of two identical bases
+     * @param mismatch Score of two different bases, usually negative
+     * @param gapOpen Penalty for opening a gap, not negative
+     * @param gapExtend Penalty for each gap position, not negative
+     */
+    public PairwiseAligner(int match, int mismatch, int gapOpen, int gapExtend) {
+        if (gapOpen < 0 || gapExtend < 0) {
+            throw new IllegalArgumentException("Gap penalties must not be negative.");
+        }
+        this.match = match;
+        this.mismatch = mismatch;
+        this.gapOpen = gapOpen;
+        this.gapExtend = gapExtend;
+    }
+
+    /**
+     * Get a band width that holds the alignment of two sequences related by a known indel rate.
+     * The net drift from the diagonal is a random walk, so the band grows with the square root of the length.
+     * @param lengthA Length of the first sequence
+     * @param lengthB Length of the second sequence
+     * @param indelRate Probability of an insertion or a deletion per position
+     * @return Band width beyond the diagonals of both sequence ends
+     */
+    public static int bandWidth(int lengthA, int lengthB, double indelRate) {
+        double drift = Math.sqrt(Math.max(lengthA, lengthB) * Math.max(0.0, indelRate));
+        return (int) Math.ceil(6 * drift) + 16;
+    }
+
+    /**
+     * Align two sequences globally
+     * @param first First sequence
+     * @param second Second sequence
+     * @param band Band width as returned by {@link #bandWidth(int, int, double)}, or {@link #NO_BAND}
+     * @return The optimal alignment within the band
+     */
+    public Alignment align(byte[] first, byte[] second, int band) {
+        int m = first.length;
+        int n = second.length;
+        this.a = first;
+        this.b = second;
+        if (band < 0) {
+            bandLow = -m;
+            bandHigh = n;
+        } else {
+            bandLow = Math.min(0, n - m) - band;
+            bandHigh = Math.max(0, n - m) + band;
+        }
+        if (forwardH == null || forwardH.length < n + 1) {
+            forwardH = new int[n + 1];
+            forwardE = new int[n + 1];
+            reverseH = new int[n + 1];
+            reverseE = new int[n + 1];
+        }
+        operations = new byte[m + n];
+        operationCount = 0;
+
+        solve(0, m, 0, n, false, false);
+
+        byte[] ops = Arrays.copyOf(operations, operationCount);
+        this.a = null;
+        this.b = null;
+        this.operations = null;
+        return new Alignment(first, second, ops, scoreOf(first, second, ops));
+    }
+
+    /**
+     * Align several sequences to a reference and merge them into one multiple alignment.
+     * Each reference base gets one column, preceded by as many columns as the longest insertion
+     * before it; insertions of different sequences at the same position share those columns, left-justified.
+     * @param reference Reference sequence
+     * @param sequences Sequences to align
+     * @param indelRate Expected indel rate per position, used for the band width
+     * @return Aligned rows, the reference first and then the sequences in order
+     */
+    public byte[][] alignToReference(byte[] reference, byte[][] sequences, double indelRate) {
+        int m = reference.length;
+        byte[][] operationsOf = new byte[sequences.length][];
+        int[] insertionColumns = new int[m + 1];
+        for (int s = 0; s < sequences.length; s++) {
+            int band = bandWidth(m, sequences[s].length, indelRate);
+            operationsOf[s] = align(reference, sequences[s], band).operations;
+            int refPos = 0;
+            int run = 0;
+            for (byte op : operationsOf[s]) {
+                if (op == INSERTION) {
+                    run++;
+                    insertionColumns[refPos] = Math.max(insertionColumns[refPos], run);
+                } else {
+                    run = 0;
+                    refPos++;
+                }
+            }
+        }
+
+        int width = m;
+        for (int count : insertionColumns) {
+            width += count;
+        }
+        byte[][] rows = new byte[sequences.length + 1][width];
+        int column = 0;
+        for (int refPos = 0; refPos <= m; refPos++) {
+            for (int k = 0; k < insertionColumns[refPos]; k++) {
+                rows[0][column++] = GAP;
+            }
+            if (refPos < m) {
+                rows[0][column++] = reference[refPos];
+            }
+        }
+
+        for (int s = 0; s < sequences.length; s++) {
+            byte[] row = rows[s + 1];
+            byte[] sequence = sequences[s];
+            int refPos = 0;
+            int seqPos = 0;
+            int run = 0;
+            column = 0;
+            for (byte op : operationsOf[s]) {
+                if (op == INSERTION) {
+                    row[column++] = sequence[seqPos++];
+                    run++;
+                    continue;
+                }
+                for (int k = run; k < insertionColumns[refPos]; k++) {
+                    row[column++] = GAP;
+                }
+                run = 0;
+                row[column++] = op == MATCH ? sequence[seqPos++] : GAP;
+                refPos++;
+            }
+            for (int k = run; k < insertionColumns[m]; k++) {
+                row[column++] = GAP;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Score a list of operations
+     * @param first First sequence
+     * @param second Second sequence
+     * @param ops Alignment operations
+     * @return Alignment score
+     */
+    private int scoreOf(byte[] first, byte[] second, byte[] ops) {
+        int score = 0;
+        int i = 0;
+        int j = 0;
+        byte previous = MATCH;
+        for (byte op : ops) {
+            if (op == MATCH) {
+                score += first[i++] == second[j++] ? match : mismatch;
+            } else {
+                score -= op == previous ? gapExtend : gapOpen + gapExtend;
+                if (op == DELETION) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            previous = op;
+        }
+        return score;
+    }
+
+    /**
+     * Score of aligning two bases
+     * @param x First base
+     * @param y Second base
+     * @return Match or mismatch score
+     */
+    private int substitution(byte x, byte y) {
+        return x == y ? match : mismatch;
+    }
+
+    /**
+     * Append the optimal path from (i0, j0) to (i1, j1).
+     * With startInGap the path starts inside a deletion whose opening was already paid, so its first
+     * move is a deletion. With endInGap the path's last move is a deletion that continues past (i1, j1).
+     * @param i0 First row
+     * @param i1 Last row
+     * @param j0 First column
+     * @param j1 Last column
+     * @param startInGap Whether the path starts inside a deletion
+     * @param endInGap Whether the path ends inside a deletion
+     */
+    private void solve(int i0, int i1, int j0, int j1, boolean startInGap, boolean endInGap) {
+        if (i1 - i0 <= 1 || bandCells(i0, i1, j0, j1) <= TRACEBACK_CELLS) {
+            solveWithTraceback(i0, i1, j0, j1, startInGap, endInGap);
+            return;
+        }
+
+        int middle = (i0 + i1) >>> 1;
+        forwardPass(i0, middle, j0, j1, startInGap);
+        reversePass(middle, i1, j0, j1, endInGap);
+
+        int lo = Math.max(j0, middle + bandLow);
+        int hi = Math.min(j1, middle + bandHigh);
+        int best = NEG;
+        int split = lo;
+        boolean throughGap = false;
+        for (int j = lo; j <= hi; j++) {
+            int open = forwardH[j] + reverseH[j];
+            if (open > best) {
+                best = open;
+                split = j;
+                throughGap = false;
+            }
+            // A deletion crossing the middle row was opened in both passes
+            int crossing = forwardE[j] + reverseE[j] + gapOpen;
+            if (crossing > best) {
+                best = crossing;
+                split = j;
+                throughGap = true;
+            }
+        }
+
+        solve(i0, middle, j0, split, startInGap, throughGap);
+        solve(middle, i1, split, j1, throughGap, endInGap);
+    }
+
+    /**
+     * Compute the scores of row last from (i0, j0) into forwardH and forwardE
+     * @param i0 First row
+     * @param last Row to stop at
+     * @param j0 First column
+     * @param j1 Last column
+     * @param startInGap Whether the path starts inside a deletion
+     */
+    private void forwardPass(int i0, int last, int j0, int j1, boolean startInGap) {
+        int[] h = forwardH;
+        int[] e = forwardE;
+        Arrays.fill(h, j0, j1 + 1, NEG);
+        Arrays.fill(e, j0, j1 + 1, NEG);
+        int openExtend = gapOpen + gapExtend;
+
+        h[j0] = startInGap ? NEG : 0;
+        e[j0] = startInGap ? 0 : NEG;
+        int rowHi = Math.min(j1, i0 + bandHigh);
+        int f = NEG;
+        int left = h[j0];
+        for (int j = j0 + 1; j <= rowHi; j++) {
+            f = Math.max(f - gapExtend, left - openExtend);
+            h[j] = f;
+            left = NEG;
+        }
+
+        for (int i = i0 + 1; i <= last; i++) {
+            int rowLo = Math.max(j0, i + bandLow);
+            rowHi = Math.min(j1, i + bandHigh);
+            byte x = a[i - 1];
+            int diagonal = NEG;
+            if (rowLo > j0) {
+                diagonal = h[rowLo - 1];
+                h[rowLo - 1] = NEG;
+                e[rowLo - 1] = NEG;
+            }
+            left = NEG;
+            f = NEG;
+            for (int j = rowLo; j <= rowHi; j++) {
+                int up = h[j];
+                int eValue = Math.max(e[j] - gapExtend, up - openExtend);
+                f = Math.max(f - gapExtend, left - openExtend);
+                int value = j > j0 ? diagonal + substitution(x, b[j - 1]) : NEG;
+                value = Math.max(value, Math.max(eValue, f));
+                diagonal = up;
+                h[j] = value;
+                e[j] = eValue;
+                left = value;
+            }
+        }
+    }
+
+    /**
+     * Compute the scores from row first to (i1, j1) into reverseH and reverseE.
+     * reverseE holds paths whose first move is a deletion, with its opening paid.
+     * @param first Row to stop at
+     * @param i1 Last row
+     * @param j0 First column
+     * @param j1 Last column
+     * @param endInGap Whether the path ends inside a deletion
+     */
+    private void reversePass(int first, int i1, int j0, int j1, boolean endInGap) {
+        int[] h = reverseH;
+        int[] e = reverseE;
+        Arrays.fill(h, j0, j1 + 1, NEG);
+        Arrays.fill(e, j0, j1 + 1, NEG);
+        int openExtend = gapOpen + gapExtend;
+
+        h[j1] = endInGap ? NEG : 0;
+        e[j1] = endInGap ? -gapOpen : NEG;
+        int rowLo = Math.max(j0, i1 + bandLow);
+        int f = NEG;
+        int right = h[j1];
+        for (int j = j1 - 1; j >= rowLo; j--) {
+            f = Math.max(f - gapExtend, right - openExtend);
+            h[j] = f;
+            right = NEG;
+        }
+
+        for (int i = i1 - 1; i >= first; i--) {
+            rowLo = Math.max(j0, i + bandLow);
+            int rowHi = Math.min(j1, i + bandHigh);
+            byte x = a[i];
+            int diagonal = NEG;
+            if (rowHi < j1) {
+                diagonal = h[rowHi + 1];
+                h[rowHi + 1] = NEG;
+                e[rowHi + 1] = NEG;
+            }
+            right = NEG;
+            f = NEG;
+            for (int j = rowHi; j >= rowLo; j--) {
+                int down = h[j];
+                int eValue = Math.max(e[j] - gapExtend, down - openExtend);
+                f = Math.max(f - gapExtend, right - openExtend);
+                int value = j < j1 ? diagonal + substitution(x, b[j]) : NEG;
+                value = Math.max(value, Math.max(eValue, f));
+                diagonal = down;
+                h[j] = value;
+                e[j] = eValue;
+                right = value;
+            }
+        }
+    }
+
+    /**
+     * Count the cells of a sub-problem that lie inside the band
+     * @param i0 First row
+     * @param i1 Last row
+     * @param j0 First column
+     * @param j1 Last column
+     * @return Number of cells
+     */
+    private long bandCells(int i0, int i1, int j0, int j1) {
+        long cells = 0;
+        for (int i = i0; i <= i1; i++) {
+            cells += Math.max(0, Math.min(j1, i + bandHigh) - Math.max(j0, i + bandLow) + 1);
+        }
+        return cells;
+    }
+
+    /**
+     * Solve a sub-problem with a traceback matrix over its band cells and append its operations
+     * @param i0 First row
+     * @param i1 Last row
+     * @param j0 First column
+     * @param j1 Last column
+     * @param startInGap Whether the path starts inside a deletion
+     * @param endInGap Whether the path ends inside a deletion
+     */
+    private void solveWithTraceback(int i0, int i1, int j0, int j1, boolean startInGap, boolean endInGap) {
+        int rows = i1 - i0 + 1;
+        if (rowStart == null || rowStart.length < rows) {
+            rowStart = new int[rows];
+        }
+        // Traceback index of cell (i, j) is rowStart[i - i0] + j
+        int cells = 0;
+        for (int r = 0; r < rows; r++) {
+            int rowLo = Math.max(j0, i0 + r + bandLow);
+            int rowHi = Math.min(j1, i0 + r + bandHigh);
+            rowStart[r] = cells - rowLo;
+            cells += Math.max(0, rowHi - rowLo + 1);
+        }
+        if (traceback == null || traceback.length < cells) {
+            traceback = new byte[cells];
+        }
+
+        int[] h = forwardH;
+        int[] e = forwardE;
+        Arrays.fill(h, j0, j1 + 1, NEG);
+        Arrays.fill(e, j0, j1 + 1, NEG);
+        int openExtend = gapOpen + gapExtend;
+
+        for (int i = i0; i <= i1; i++) {
+            int rowLo = Math.max(j0, i + bandLow);
+            int rowHi = Math.min(j1, i + bandHigh);
+            int base = rowStart[i - i0];
+            byte x = i > i0 ? a[i - 1] : 0;
+            int diagonal = NEG;
+            if (rowLo > j0) {
+                diagonal = h[rowLo - 1];
+                h[rowLo - 1] = NEG;
+                e[rowLo - 1] = NEG;
+            }
+            int left = NEG;
+            int f = NEG;
+            for (int j = rowLo; j <= rowHi; j++) {
+                if (i == i0 && j == j0) {
+                    h[j] = startInGap ? NEG : 0;
+                    e[j] = startInGap ? 0 : NEG;
+                    left = h[j];
+                    traceback[base + j] = 0;
+                    continue;
+                }
+                int bits = 0;
+                int up = h[j];
+                int eValue = e[j] - gapExtend;
+                int opened = up - openExtend;
+                if (eValue >= opened) {
+                    bits |= E_EXTENDED;
+                } else {
+                    eValue = opened;
+                }
+                f -= gapExtend;
+                opened = left - openExtend;
+                if (f >= opened) {
+                    bits |= F_EXTENDED;
+                } else {
+                    f = opened;
+                }
+                int value = i > i0 && j > j0 ? diagonal + substitution(x, b[j - 1]) : NEG;
+                int source = FROM_DIAGONAL;
+                if (eValue > value) {
+                    value = eValue;
+                    source = FROM_E;
+                }
+                if (f > value) {
+                    value = f;
+                    source = FROM_F;
+                }
+                diagonal = up;
+                h[j] = value;
+                e[j] = eValue;
+                left = value;
+                traceback[base + j] = (byte) (bits | source);
+            }
+        }
+
+        // Walk back from the end, collecting the operations in reverse
+        int start = operationCount;
+        int i = i1;
+        int j = j1;
+        int state = endInGap ? FROM_E : FROM_DIAGONAL;
+        while (i > i0 || j > j0) {
+            int bits = traceback[rowStart[i - i0] + j];
+            if (state == FROM_DIAGONAL) {
+                int source = bits & 3;
+                if (source == FROM_DIAGONAL) {
+                    operations[operationCount++] = MATCH;
+                    i--;
+                    j--;
+                } else {
+                    state = source;
+                }
+            } else if (state == FROM_E) {
+                operations[operationCount++] = DELETION;
+                state = (bits & E_EXTENDED) != 0 ? FROM_E : FROM_DIAGONAL;
+                i--;
+            } else {
+                operations[operationCount++] = INSERTION;
+                state = (bits & F_EXTENDED) != 0 ? FROM_F : FROM_DIAGONAL;
+                j--;
+            }
+        }
+        for (int lo = start, hi = operationCount - 1; lo < hi; lo++, hi--) {
+            byte tmp = operations[lo];
+            operations[lo] = operations[hi];
+            operations[hi] = tmp;
+        }
+    }
+
+    /**
+     * Result of a pairwise alignment
+     */
+    public static final class Alignment {
+        private final byte[] first;
+        private final byte[] second;
+        private final byte[] operations;
+        private final int score;
+
+        /**
+         * Constructor for Alignment
+         * @param first First sequence
+         * @param second Second sequence
+         * @param operations Alignment operations in order
+         * @param score Alignment score
+         */
+        Alignment(byte[] first, byte[] second, byte[] operations, int score) {
+            this.first = first;
+            this.second = second;
+            this.operations = operations;
+            this.score = score;
+        }
+
+        /**
+         * Get the alignment score
+         * @return Score
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Get the operations, one of MATCH, DELETION and INSERTION per column
+         * @return Copy of the operations
+         */
+        public byte[] getOperations() {
+            return operations.clone();
+        }
+
+        /**
+         * Get the first sequence with gaps
+         * @return Aligned first sequence
+         */
+        public byte[] getAlignedFirst() {
+            return gapped(first, INSERTION);
+        }
+
+        /**
+         * Get the second sequence with gaps
+         * @return Aligned second sequence
+         */
+        public byte[] getAlignedSecond() {
+            return gapped(second, DELETION);
+        }
+
+        /**
+         * Lay out a sequence along the operations
+         * @param sequence Sequence to lay out
+         * @param gapOperation Operation at which this sequence has a gap
+         * @return Aligned sequence
+         */
+        private byte[] gapped(byte[] sequence, byte gapOperation) {
+            byte[] aligned = new byte[operations.length];
+            int pos = 0;
+            for (int k = 0; k < operations.length; k++) {
+                aligned[k] = operations[k] == gapOperation ? GAP : sequence[pos++];
+            }
+            return aligned;
+        }
+
+        @Override
+        public String toString() {
+            return new String(getAlignedFirst(), StandardCharsets.US_ASCII) + "\n"
+                    + new String(getAlignedSecond(), StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package demo.dockable.algo;
+
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills a large file with a repeated record from several threads.
+ *
+ * The file is sized up front, cut into chunks that hold a whole number of records, and every worker
+ * claims the next chunk and writes it at its fixed offset with a positional FileChannel write, so the
+ * threads never share a file position or a lock. As every chunk holds the same bytes, each worker
+ * encodes its direct buffer once and then only issues writes; the throughput is that of the device
+ * and the page cache, not of a formatting thread.
+ */
+public class ParallelFileFiller {
+
+    private final String filePath;
+    private final byte[] record;
+    private final long recordNumber;
+    private final int chunkBytes;
+    private final int threads;
+    private final boolean syncOnFinish;
+
+    /**
+     * Constructor for ParallelFileFiller
+     * @param filePath Output file path
+     * @param record Record written over and over
+     * @param recordNumber Number of records in the file
+     * @param chunkBytes Size of the chunk a worker writes at once, rounded down to whole records
+     * @param threads Number of writing threads
+     * @param syncOnFinish Whether to force the content to the device before the clock stops
+     */
+    public ParallelFileFiller(String filePath, byte[] record, long recordNumber, int chunkBytes,
+                              int threads, boolean syncOnFinish) {
+        if (record.length == 0 || record.length > chunkBytes) {
+            throw new IllegalArgumentException("The chunk must hold at least one record");
+        }
+        this.filePath = filePath;
+        this.record = record;
+        this.recordNumber = recordNumber;
+        this.chunkBytes = chunkBytes / record.length * record.length;
+        this.threads = Math.max(1, threads);
+        this.syncOnFinish = syncOnFinish;
+    }
+
+    /**
+     * Write the file
+     * @return List of status messages with the sustained throughput
+     * @throws IOException If the file cannot be written
+     */
+    public List<String> fill() throws IOException {
+        long totalBytes = recordNumber * record.length;
+        long chunkNumber = (totalBytes + chunkBytes - 1) / chunkBytes;
+        AtomicLong nextChunk = new AtomicLong();
+        int workers = (int) Math.max(1, Math.min(threads, chunkNumber));
+
+        long start = System.nanoTime();
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "rw")) {
+            // Size the file once, so the workers never extend it concurrently
+            file.setLength(0);
+            file.setLength(totalBytes);
+            FileChannel channel = file.getChannel();
+
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            try {
+                List<Future<Long>> futures = Lists.newArrayList();
+                for (int w = 0; w < workers; w++) {
+                    futures.add(executor.submit(() -> writeChunks(channel, nextChunk, chunkNumber, totalBytes)));
+                }
+                for (Future<Long> future : futures) {
+                    await(future);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            if (syncOnFinish) {
+                channel.force(false);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<String> ret = Lists.newLinkedList();
+        ret.add("Finished writing file: " + filePath);
+        ret.add("Written " + totalBytes + " bytes in " + chunkNumber + " chunks by " + workers + " threads"
+                + (syncOnFinish ? ", synced to the device" : ", not synced (page cache included)"));
+        ret.add(String.format("Sustained throughput: %.2f GB/s (%.2f GiB/s) over %.2f s",
+                totalBytes / seconds / 1e9, totalBytes / seconds / (1L << 30), seconds));
+        return ret;
+    }
+
+    /**
+     * Worker loop: claim chunks until none is left and write each at its offset
+     * @param channel Shared file channel
+     * @param nextChunk Index of the next unclaimed chunk
+     * @param chunkNumber Number of chunks
+     * @param totalBytes File size
+     * @return Number of bytes written by this worker
+     * @throws IOException If a write fails
+     */
+    private long writeChunks(FileChannel channel, AtomicLong nextChunk, long chunkNumber, long totalBytes) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(chunkBytes);
+        while (chunk.hasRemaining()) {
+            chunk.put(record);
+        }
+        long written = 0;
+        for (long index = nextChunk.getAndIncrement(); index < chunkNumber; index = nextChunk.getAndIncrement()) {
+            long position = index * chunkBytes;
+            chunk.clear();
+            chunk.limit((int) Math.min(chunkBytes, totalBytes - position));
+            while (chunk.hasRemaining()) {
+                position += channel.write(chunk, position);
+            }
+            written += chunk.limit();
+        }
+        return written;
+    }
+
+    /**
+     * Wait for a worker
+     * @param future Future of the worker
+     * @throws IOException If the worker failed or the wait was interrupted
+     */
+    private static void await(Future<Long> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the file", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to write a chunk", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package demo.dockable.algo;
+
+import com.google.common.collect.Lists;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Sparse single-cell count simulator
+ *
+ * Every cell belongs to one of several cell types. A cell type has a relative expression profile:
+ * gamma distributed gene weights, with a small fraction of marker genes up-regulated in that type.
+ * The counts of a cell are a multinomial draw of its library size (log-normal around the mean
+ * library size) over the profile of its type, drawn with an alias table so the work is proportional
+ * to the library size and not to the number of genes. Every detected gene is then dropped with a
+ * gene-specific probability that falls logistically with the log mean count (as in Splatter),
+ * which gives the zero inflation typical of droplet data.
+ *
+ * Only non-zero entries are generated and the dense matrix never exists. Cells are generated in
+ * blocks on several threads; each block draws from a SplittableRandom split from the seed in block
+ * order, so a given seed produces the same files at any thread number. The output is either:
+ * - Matrix Market coordinate format, genes as rows and cells as columns (1-based, as 10x writes it)
+ * - CSR with cells as rows: prefix.indptr.bin (int64), prefix.indices.bin (int32, 0-based gene index)
+ *   and prefix.data.bin (int32 count), all little-endian
+ * plus prefix.genes.tsv and prefix.cells.tsv describing the rows and columns.
+ */
+public class SingleCellCountSimulator {
+
+    /**
+     * Output format of the count matrix
+     */
+    public enum OutputFormat {
+        MATRIX_MARKET, CSR
+    }
+
+    /** Number of cells generated from one random stream */
+    static final int CELL_BLOCK_SIZE = 256;
+    /** Gamma shape of the relative gene expression */
+    private static final double GENE_WEIGHT_SHAPE = 0.6;
+    /** Fraction of genes that are a marker of some cell type */
+    private static final double MARKER_FRACTION = 0.05;
+    /** Standard deviation of the log library size */
+    private static final double LIBRARY_SIZE_SDLOG = 0.5;
+    /** Room left for the entry count in the Matrix Market size line, which is rewritten at the end */
+    private static final int NNZ_FIELD_WIDTH = 20;
+
+    private final int numberOfGenes;
+    private final int numberOfCells;
+    private final int numberOfCellTypes;
+    private final double meanLibrarySize;
+    private final double dropoutMidpoint; // Log mean count where half of the detections drop out
+    private final double dropoutShape; // Steepness of the dropout curve
+    private final String outputPrefix;
+    private final long seed;
+    private final int threads;
+
+    // Model, built from the first split of the seed
+    private double[][] aliasProbability;
+    private int[][] alias;
+    private double[] meanCount;
+    private double[] dropout;
+    private int[] markerOf;
+
+    /**
+     * Constructor for SingleCellCountSimulator with default dropout parameters
+     * @param numberOfGenes Number of genes
+     * @param numberOfCells Number of cells
+     * @param numberOfCellTypes Number of cell types
+     * @param meanLibrarySize Mean number of counts per cell before dropout
+     * @param outputPrefix Prefix of the output files
+     * @param seed Random seed, the same seed gives the same files at any thread number
+     * @param threads Number of threads generating cell blocks
+     */
+    public SingleCellCountSimulator(int numberOfGenes, int numberOfCells, int numberOfCellTypes,
+                                    double meanLibrarySize, String outputPrefix, long seed, int threads) {
+        this(numberOfGenes, numberOfCells, numberOfCellTypes, meanLibrarySize, 0.0, 1.0,
+                outputPrefix, seed, threads);
+    }
+
+    /**
+     * Constructor for SingleCellCountSimulator
+     * @param numberOfGenes Number of genes
+     * @param numberOfCells Number of cells
+     * @param numberOfCellTypes Number of cell types
+     * @param meanLibrarySize Mean number of counts per cell before dropout
+     * @param dropoutMidpoint Log mean count at which half of the detections drop out
+     * @param dropoutShape Steepness of the dropout curve, larger is steeper
+     * @param outputPrefix Prefix of the output files
+     * @param seed Random seed, the same seed gives the same files at any thread number
+     * @param threads Number of threads generating cell blocks
+     */
+    public SingleCellCountSimulator(int numberOfGenes, int numberOfCells, int numberOfCellTypes,
+                                    double meanLibrarySize, double dropoutMidpoint, double dropoutShape,
+                                    String outputPrefix, long seed, int threads) {
+        if (numberOfGenes <= 0 || numberOfCells <= 0 || numberOfCellTypes <= 0) {
+            throw new IllegalArgumentException("Gene, cell and cell type numbers must be positive");
+        }
+        this.numberOfGenes = numberOfGenes;
+        this.numberOfCells = numberOfCells;
+        this.numberOfCellTypes = numberOfCellTypes;
+        this.meanLibrarySize = meanLibrarySize;
+        this.dropoutMidpoint = dropoutMidpoint;
+        this.dropoutShape = dropoutShape;
+        this.outputPrefix = outputPrefix;
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Simulate the counts and write the sparse matrix
+     * @param format Output format
+     * @return List of status messages
+     * @throws IOException If there's an error writing the output files
+     */
+    public List<String> simulate(OutputFormat format) throws IOException {
+        SplittableRandom root = new SplittableRandom(seed);
+        buildModel(root.split());
+        writeGenes();
+
+        long nnz = writeCells(root, format);
+
+        List<String> ret = Lists.newLinkedList();
+        ret.add("Single-cell count simulation completed: " + outputPrefix);
+        ret.add("Number of genes: " + numberOfGenes);
+        ret.add("Number of cells: " + numberOfCells);
+        ret.add("Number of cell types: " + numberOfCellTypes);
+        ret.add("Non-zero entries: " + nnz);
+        ret.add(String.format("Zero fraction: %.2f%%", 100.0 * (1.0 - (double) nnz / numberOfGenes / numberOfCells)));
+        ret.add("Random seed: " + seed);
+        if (format == OutputFormat.MATRIX_MARKET) {
+            ret.add("Matrix: " + outputPrefix + ".mtx (genes x cells)");
+        } else {
+            ret.add("Matrix: " + outputPrefix + ".indptr.bin / .indices.bin / .data.bin (CSR, cells x genes)");
+        }
+        ret.add("Rows and columns: " + outputPrefix + ".genes.tsv, " + outputPrefix + ".cells.tsv");
+        return ret;
+    }
+
+    /**
+     * Build the expression profiles, alias tables and dropout probabilities
+     * @param random Random stream of the model
+     */
+    private void buildModel(SplittableRandom random) {
+        NegativeBinomialSampler sampler = new NegativeBinomialSampler(random);
+        double[] baseWeight = new double[numberOfGenes];
+        double[] markerFold = new double[numberOfGenes];
+        markerOf = new int[numberOfGenes];
+        double markerProbability = numberOfCellTypes > 1 ? MARKER_FRACTION : 0;
+        for (int g = 0; g < numberOfGenes; g++) {
+            baseWeight[g] = sampler.nextGamma(GENE_WEIGHT_SHAPE, 1.0);
+            markerOf[g] = -1;
+            if (sampler.nextDouble() < markerProbability) {
+                markerOf[g] = random.nextInt(numberOfCellTypes);
+                markerFold[g] = Math.exp(1.0 + 0.5 * sampler.nextGaussian());
+            }
+        }
+
+        aliasProbability = new double[numberOfCellTypes][];
+        alias = new int[numberOfCellTypes][];
+        meanCount = new double[numberOfGenes];
+        double[] weights = new double[numberOfGenes];
+        for (int type = 0; type < numberOfCellTypes; type++) {
+            double total = 0;
+            for (int g = 0; g < numberOfGenes; g++) {
+                weights[g] = markerOf[g] == type ? baseWeight[g] * markerFold[g] : baseWeight[g];
+                total += weights[g];
+            }
+            for (int g = 0; g < numberOfGenes; g++) {
+                weights[g] /= total;
+                meanCount[g] += meanLibrarySize * weights[g] / numberOfCellTypes;
+            }
+            aliasProbability[type] = new double[numberOfGenes];
+            alias[type] = new int[numberOfGenes];
+            buildAliasTable(weights, aliasProbability[type], alias[type]);
+        }
+
+        dropout = new double[numberOfGenes];
+        for (int g = 0; g < numberOfGenes; g++) {
+            double logMean = Math.log(Math.max(meanCount[g], 1e-12));
+            dropout[g] = 1.0 / (1.0 + Math.exp(dropoutShape * (logMean - dropoutMidpoint)));
+        }
+    }
+
+    /**
+     * Build a Walker alias table with Vose's method
+     * @param weights Probabilities summing to one
+     * @param probability Receives the probability of keeping each column
+     * @param alias Receives the alias of each column
+     */
+    static void buildAliasTable(double[] weights, double[] probability, int[] alias) {
+        int n = weights.length;
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        double[] scaled = new double[n];
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // What is left is one up to rounding
+        while (largeCount > 0) {
+            int i = large[--largeCount];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+        while (smallCount > 0) {
+            int i = small[--smallCount];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+    }
+
+    /**
+     * Write the gene table: name, mean count, dropout probability and the cell type it marks
+     * @throws IOException If there's an error writing the file
+     */
+    private void writeGenes() throws IOException {
+        ByteBlock block = new ByteBlock(1 << 16);
+        try (OutputStream out = new FileOutputStream(outputPrefix + ".genes.tsv")) {
+            block.appendAscii("GeneID\tMean_count\tDropout\tMarker_of\n");
+            for (int g = 0; g < numberOfGenes; g++) {
+                block.appendAscii("Gene_");
+                block.appendLong(g + 1);
+                block.appendChar('\t');
+                block.appendFixed2(meanCount[g]);
+                block.appendChar('\t');
+                block.appendFixed2(dropout[g]);
+                block.appendChar('\t');
+                if (markerOf[g] < 0) {
+                    block.appendChar('-');
+                } else {
+                    block.appendAscii("Type_");
+                    block.appendLong(markerOf[g] + 1);
+                }
+                block.appendChar('\n');
+                if (block.length() > (1 << 16)) {
+                    block.writeTo(out);
+                    block.clear();
+                }
+            }
+            block.writeTo(out);
+        }
+    }
+
+    /**
+     * Generate cell blocks on the worker threads and write them in cell order
+     * @param root Random stream the blocks are split from
+     * @param format Output format
+     * @return Number of non-zero entries
+     * @throws IOException If there's an error writing the files or a worker thread fails
+     */
+    private long writeCells(SplittableRandom root, OutputFormat format) throws IOException {
+        int numBlocks = (numberOfCells + CELL_BLOCK_SIZE - 1) / CELL_BLOCK_SIZE;
+        long blockBytes = (long) (CELL_BLOCK_SIZE * Math.max(1.0, meanLibrarySize) * 16);
+
+        boolean matrixMarket = format == OutputFormat.MATRIX_MARKET;
+        long[] indptr = matrixMarket ? null : new long[numberOfCells + 1];
+        // One element, so the sink below can add to it
+        long[] nnz = new long[1];
+
+        try (FileChannel matrix = OrderedBlockWriter.openChannel(matrixMarket ? outputPrefix + ".mtx" : outputPrefix + ".indices.bin");
+             FileChannel data = matrixMarket ? null : OrderedBlockWriter.openChannel(outputPrefix + ".data.bin");
+             FileChannel cells = OrderedBlockWriter.openChannel(outputPrefix + ".cells.tsv");
+             OrderedBlockWriter<CellBlock> writer = new OrderedBlockWriter<>(threads, blockBytes,
+                     () -> new CellBlock((int) Math.min(1 << 24, blockBytes)), done -> {
+                 done.matrixBytes.writeTo(matrix);
+                 if (!matrixMarket) {
+                     done.dataBytes.writeTo(data);
+                     for (int i = 0; i < done.cellCount; i++) {
+                         indptr[done.firstCell + i + 1] = indptr[done.firstCell + i] + done.cellNnz[i];
+                     }
+                 }
+                 done.cellBytes.writeTo(cells);
+                 nnz[0] += done.nnz;
+             }, "simulating the single-cell counts")) {
+            if (matrixMarket) {
+                write(matrix, matrixMarketHeader(0));
+            }
+            write(cells, "CellID\tCell_type\tLibrary_size\tDetected_genes\n");
+
+            for (int block = 0; block < numBlocks; block++) {
+                int firstCell = block * CELL_BLOCK_SIZE;
+                // Split in block order, so every block gets the same stream at any thread number
+                SplittableRandom blockRandom = root.split();
+                writer.submit(buffer -> buffer.fill(firstCell, matrixMarket, blockRandom));
+            }
+            writer.finish();
+
+            if (matrixMarket) {
+                // The size line was written with room for the entry count, which is known only now
+                matrix.write(ByteBuffer.wrap(matrixMarketHeader(nnz[0]).getBytes(StandardCharsets.US_ASCII)), 0);
+            }
+        }
+
+        if (!matrixMarket) {
+            ByteBlock indptrBytes = new ByteBlock(8 * (numberOfCells + 1));
+            for (long offset : indptr) {
+                indptrBytes.appendLongLittleEndian(offset);
+            }
+            try (FileChannel channel = OrderedBlockWriter.openChannel(outputPrefix + ".indptr.bin")) {
+                indptrBytes.writeTo(channel);
+            }
+        }
+        return nnz[0];
+    }
+
+    /**
+     * Header of the Matrix Market file, always of the same length
+     * @param nnz Number of entries
+     * @return Header text
+     */
+    private String matrixMarketHeader(long nnz) {
+        StringBuilder header = new StringBuilder();
+        header.append("%%MatrixMarket matrix coordinate integer general\n");
+        header.append("% rows are genes, columns are cells\n");
+        header.append(numberOfGenes).append(' ').append(numberOfCells).append(' ');
+        String count = Long.toString(nnz);
+        header.append(count);
+        for (int i = count.length(); i < NNZ_FIELD_WIDTH; i++) {
+            header.append(' ');
+        }
+        header.append('\n');
+        return header.toString();
+    }
+
+    /**
+     * Write ASCII text at the current position of a channel
+     * @param channel File channel
+     * @param text Text to write
+     * @throws IOException If there's an error writing
+     */
+    private static void write(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reusable buffers of one cell block
+     */
+    private final class CellBlock {
+        private final int[] geneCounts = new int[numberOfGenes];
+        private final int[] cellNnz = new int[CELL_BLOCK_SIZE];
+        private int[] detected = new int[1024];
+        private final ByteBlock matrixBytes;
+        private final ByteBlock dataBytes;
+        private final ByteBlock cellBytes = new ByteBlock(CELL_BLOCK_SIZE * 40);
+        private int firstCell;
+        private int cellCount;
+        private long nnz;
+
+        /**
+         * Constructor for CellBlock
+         * @param capacity Initial byte capacity of the matrix buffer
+         */
+        CellBlock(int capacity) {
+            this.matrixBytes = new ByteBlock(capacity);
+            this.dataBytes = new ByteBlock(capacity / 2);
+        }
+
+        /**
+         * Generate and format the cells of one block
+         * @param firstCell Index of the first cell of the block
+         * @param matrixMarket Whether to format Matrix Market lines or CSR arrays
+         * @param random Random stream of the block
+         */
+        void fill(int firstCell, boolean matrixMarket, SplittableRandom random) {
+            matrixBytes.clear();
+            dataBytes.clear();
+            cellBytes.clear();
+            this.firstCell = firstCell;
+            this.cellCount = Math.min(CELL_BLOCK_SIZE, numberOfCells - firstCell);
+            this.nnz = 0;
+            double logMeanLibrary = Math.log(Math.max(1.0, meanLibrarySize)) - 0.5 * LIBRARY_SIZE_SDLOG * LIBRARY_SIZE_SDLOG;
+
+            for (int c = 0; c < cellCount; c++) {
+                int cell = firstCell + c;
+                int type = random.nextInt(numberOfCellTypes);
+                long librarySize = Math.max(1, Math.round(Math.exp(logMeanLibrary + LIBRARY_SIZE_SDLOG * random.nextGaussian())));
+                double[] probability = aliasProbability[type];
+                int[] typeAlias = alias[type];
+
+                // Multinomial draw of the library over the genes, one alias lookup per count
+                int detectedCount = 0;
+                for (long d = 0; d < librarySize; d++) {
+                    double u = random.nextDouble() * numberOfGenes;
+                    int column = (int) u;
+                    int gene = u - column < probability[column] ? column : typeAlias[column];
+                    if (geneCounts[gene]++ == 0) {
+                        if (detectedCount == detected.length) {
+                            detected = Arrays.copyOf(detected, detected.length * 2);
+                        }
+                        detected[detectedCount++] = gene;
+                    }
+                }
+                Arrays.sort(detected, 0, detectedCount);
+
+                int kept = 0;
+                for (int i = 0; i < detectedCount; i++) {
+                    int gene = detected[i];
+                    int count = geneCounts[gene];
+                    geneCounts[gene] = 0;
+                    if (random.nextDouble() < dropout[gene]) {
+                        continue;
+                    }
+                    kept++;
+                    if (matrixMarket) {
+                        matrixBytes.appendLong(gene + 1);
+                        matrixBytes.appendChar(' ');
+                        matrixBytes.appendLong(cell + 1);
+                        matrixBytes.appendChar(' ');
+                        matrixBytes.appendLong(count);
+                        matrixBytes.appendChar('\n');
+                    } else {
+                        matrixBytes.appendIntLittleEndian(gene);
+                        dataBytes.appendIntLittleEndian(count);
+                    }
+                }
+                cellNnz[c] = kept;
+                nnz += kept;
+
+                cellBytes.appendAscii("Cell_");
+                cellBytes.appendLong(cell + 1);
+                cellBytes.appendAscii("\tType_");
+                cellBytes.appendLong(type + 1);
+                cellBytes.appendChar('\t');
+                cellBytes.appendLong(librarySize);
+                cellBytes.appendChar('\t');
+                cellBytes.appendLong(kept);
+                cellBytes.appendChar('\n');
+            }
+        }
+    }
+}
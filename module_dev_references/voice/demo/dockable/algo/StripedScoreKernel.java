@@ -0,0 +1,174 @@
+package demo.dockable.algo;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Striped Smith-Waterman score kernel after Farrar (2007), on the incubating Vector API.
+ *
+ * The query is cut into as many segments as there are lanes, and lane l of vector k holds query
+ * position l * segmentLength + k. Lanes are then independent except for the vertical gap, which is
+ * handled by the lazy F loop that only runs while a gap still improves a cell.
+ * Scores are kept in int lanes, so long sequences cannot overflow.
+ *
+ * Only {@link LocalAlignmentScorer} loads this class, and only when the jdk.incubator.vector module
+ * is present, so the code base still runs without --add-modules jdk.incubator.vector.
+ */
+final class StripedScoreKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int NEG = Integer.MIN_VALUE / 4;
+    // Moves every lane one up; lane 0 is then filled from another vector
+    private static final VectorShuffle<Integer> SHIFT_UP = VectorShuffle.fromOp(SPECIES, lane -> Math.max(0, lane - 1));
+    private static final VectorMask<Integer> LANE_ZERO = VectorMask.fromLong(SPECIES, 1L);
+
+    private final int match;
+    private final int mismatch;
+    private final int gapOpen;
+    private final int gapExtend;
+
+    /**
+     * Constructor for StripedScoreKernel
+     * @param match Score of two identical bases
+     * @param mismatch Score of two different bases
+     * @param gapOpen Penalty for opening a gap
+     * @param gapExtend Penalty for each gap position
+     */
+    StripedScoreKernel(int match, int mismatch, int gapOpen, int gapExtend) {
+        this.match = match;
+        this.mismatch = mismatch;
+        this.gapOpen = gapOpen;
+        this.gapExtend = gapExtend;
+    }
+
+    /**
+     * Get the number of lanes per vector
+     * @return Lane count
+     */
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Query profile, built once per query and reused against every target
+     */
+    final class Profile {
+        private final byte[] query;
+        private final int segmentLength;
+        private final int[][] scores = new int[256][];
+        private final int[] hLoad;
+        private final int[] hStore;
+        private final int[] e;
+
+        /**
+         * Constructor for Profile
+         * @param query Query sequence
+         */
+        Profile(byte[] query) {
+            this.query = query;
+            this.segmentLength = (query.length + SPECIES.length() - 1) / SPECIES.length();
+            int size = segmentLength * SPECIES.length();
+            this.hLoad = new int[size];
+            this.hStore = new int[size];
+            this.e = new int[size];
+        }
+
+        /**
+         * Get the striped scores of the query against one target base, building them on first use
+         * @param base Target base
+         * @return Striped score row
+         */
+        private int[] scoresFor(byte base) {
+            int[] row = scores[base & 0xFF];
+            if (row == null) {
+                int lanes = SPECIES.length();
+                row = new int[segmentLength * lanes];
+                for (int k = 0; k < segmentLength; k++) {
+                    for (int lane = 0; lane < lanes; lane++) {
+                        int pos = lane * segmentLength + k;
+                        // Padding positions past the query end never score
+                        row[k * lanes + lane] = pos < query.length ? (query[pos] == base ? match : mismatch) : -gapOpen - gapExtend - match;
+                    }
+                }
+                scores[base & 0xFF] = row;
+            }
+            return row;
+        }
+
+        /**
+         * Compute the best local alignment score of the query against a target
+         * @param target Target sequence
+         * @return Smith-Waterman score
+         */
+        int score(byte[] target) {
+            int lanes = SPECIES.length();
+            int size = segmentLength * lanes;
+            int[] load = hLoad;
+            int[] store = hStore;
+            Arrays.fill(load, 0, size, 0);
+            Arrays.fill(e, 0, size, 0);
+
+            IntVector zero = IntVector.zero(SPECIES);
+            IntVector negative = IntVector.broadcast(SPECIES, NEG);
+            IntVector openExtend = IntVector.broadcast(SPECIES, gapOpen + gapExtend);
+            IntVector extend = IntVector.broadcast(SPECIES, gapExtend);
+            IntVector best = zero;
+            int last = (segmentLength - 1) * lanes;
+
+            for (byte base : target) {
+                int[] profile = scoresFor(base);
+                IntVector f = zero;
+                // H of the previous column, one query position up
+                IntVector h = IntVector.fromArray(SPECIES, load, last).rearrange(SHIFT_UP).blend(zero, LANE_ZERO);
+
+                for (int k = 0, offset = 0; k < segmentLength; k++, offset += lanes) {
+                    h = h.add(IntVector.fromArray(SPECIES, profile, offset));
+                    IntVector eValue = IntVector.fromArray(SPECIES, e, offset);
+                    h = h.max(eValue).max(f).max(zero);
+                    best = best.max(h);
+                    h.intoArray(store, offset);
+
+                    IntVector opened = h.sub(openExtend);
+                    eValue.sub(extend).max(opened).intoArray(e, offset);
+                    f = f.sub(extend).max(opened);
+                    h = IntVector.fromArray(SPECIES, load, offset);
+                }
+
+                // Lazy F loop: carry the vertical gap across segment boundaries while it still matters.
+                // Lane 0 has no segment above it, so it gets minus infinity
+                f = f.rearrange(SHIFT_UP).blend(negative, LANE_ZERO);
+                int k = 0;
+                int offset = 0;
+                while (true) {
+                    IntVector stored = IntVector.fromArray(SPECIES, store, offset);
+                    // An F at or below zero can no longer raise a local alignment cell
+                    if (!f.compare(VectorOperators.GT, stored.sub(openExtend).max(zero)).anyTrue()) {
+                        break;
+                    }
+                    stored = stored.max(f);
+                    stored.intoArray(store, offset);
+                    best = best.max(stored);
+                    IntVector.fromArray(SPECIES, e, offset).max(stored.sub(openExtend)).intoArray(e, offset);
+                    f = f.sub(extend);
+                    if (++k == segmentLength) {
+                        k = 0;
+                        offset = 0;
+                        f = f.rearrange(SHIFT_UP).blend(negative, LANE_ZERO);
+                    } else {
+                        offset += lanes;
+                    }
+                }
+
+                int[] swap = load;
+                load = store;
+                store = swap;
+            }
+            return best.reduceLanes(VectorOperators.MAX);
+        }
+    }
+}
@@ -0,0 +1,549 @@
+package demo.dockable.algo;
+
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Sequence evolution along a guide tree
+ *
+ * The reference is placed at the root and every child copies its parent and adds mutations along
+ * its branch. The number of events on a branch is Poisson with mean branch length x sequence length,
+ * so branch lengths are in expected events per site; events are substitutions, or insertions and
+ * deletions of single bases in the given proportion.
+ *
+ * A genome is an array of references to chunks of about CHUNK_SIZE bases. A child shares every chunk
+ * of its parent and copies only the chunks it mutates, so memory grows with the number of mutations
+ * on the live part of the tree rather than with sequences x length. The tree is walked depth first,
+ * so only the ancestors of the current node and their pending children are alive.
+ *
+ * The guide tree is read from a Newick file or drawn from the coalescent, scaled to the requested
+ * root-to-tip depth. Mutations are drawn on the calling thread in depth-first order, so a given seed
+ * produces the same tips at any thread number; the tips are formatted on worker threads and written
+ * in tree order with a bounded number in flight. Output: prefix.fasta and prefix.tree.nwk.
+ */
+public class TreeEvolutionSimulator {
+
+    /** Number of bases per chunk when the reference is cut */
+    static final int CHUNK_SIZE = 256;
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final byte[] reference;
+    private final int tipNumber;
+    private final String treeFile;
+    private final double treeDepth;
+    private final double indelFraction;
+    private final String outputPrefix;
+    private final long seed;
+    private final int threads;
+    private final boolean gzip;
+
+    private long mutationEvents;
+    private long copiedChunks;
+
+    /**
+     * Constructor for TreeEvolutionSimulator
+     * @param refSequence Sequence at the root, or empty for a random sequence of refLength bases
+     * @param refLength Length of the random root sequence
+     * @param tipNumber Number of tips of the coalescent tree, ignored with a tree file
+     * @param treeFile Newick file with branch lengths in events per site, or null for a coalescent tree
+     * @param treeDepth Root-to-tip depth of the coalescent tree, in expected events per site
+     * @param indelFraction Fraction of events that are insertions or deletions
+     * @param outputPrefix Prefix of the output files
+     * @param seed Random seed, the same seed gives the same files at any thread number
+     * @param threads Number of threads formatting tips
+     * @param gzip Whether to gzip the FASTA output
+     */
+    public TreeEvolutionSimulator(String refSequence, int refLength, int tipNumber, String treeFile,
+                                  double treeDepth, double indelFraction, String outputPrefix,
+                                  long seed, int threads, boolean gzip) {
+        if (treeFile == null && tipNumber < 2) {
+            throw new IllegalArgumentException("The tip number must be at least 2");
+        }
+        if (indelFraction < 0 || indelFraction > 1) {
+            throw new IllegalArgumentException("The indel fraction must be between 0 and 1");
+        }
+        if (refSequence == null || refSequence.isEmpty()) {
+            SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+            this.reference = new byte[refLength];
+            for (int i = 0; i < refLength; i++) {
+                reference[i] = BASES[random.nextInt(BASES.length)];
+            }
+        } else {
+            this.reference = refSequence.toUpperCase().getBytes(StandardCharsets.US_ASCII);
+        }
+        this.tipNumber = tipNumber;
+        this.treeFile = treeFile;
+        this.treeDepth = treeDepth;
+        this.indelFraction = indelFraction;
+        this.outputPrefix = outputPrefix;
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+        this.gzip = gzip;
+    }
+
+    /**
+     * Evolve the sequences along the tree and write the tips
+     * @return List of status messages
+     * @throws IOException If the tree cannot be read or the outputs cannot be written
+     */
+    public List<String> simulate() throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        GuideTree tree = treeFile == null
+                ? GuideTree.coalescent(tipNumber, treeDepth, random.split())
+                : GuideTree.parseNewick(new String(Files.readAllBytes(Paths.get(treeFile)), StandardCharsets.UTF_8));
+
+        String treePath = outputPrefix + ".tree.nwk";
+        Files.write(Paths.get(treePath), tree.toNewick().getBytes(StandardCharsets.UTF_8));
+
+        String fastaPath = outputPrefix + ".fasta" + (gzip ? ".gz" : "");
+        int tips = evolve(tree, random, fastaPath);
+
+        List<String> ret = Lists.newLinkedList();
+        ret.add("Tree evolution simulation completed: " + fastaPath);
+        ret.add("Guide tree written to: " + treePath);
+        ret.add("Number of tips: " + tips);
+        ret.add("Root sequence length: " + reference.length);
+        ret.add("Mutation events: " + mutationEvents);
+        ret.add("Chunks copied on write: " + copiedChunks + " of " + CHUNK_SIZE + " bases");
+        return ret;
+    }
+
+    /**
+     * Walk the tree depth first, mutating along the branches, and stream the tips in order
+     * @param tree Guide tree
+     * @param random Random stream of the mutations
+     * @param fastaPath Output FASTA path
+     * @return Number of tips written
+     * @throws IOException If there's an error writing the output
+     */
+    private int evolve(GuideTree tree, SplittableRandom random, String fastaPath) throws IOException {
+        NegativeBinomialSampler sampler = new NegativeBinomialSampler(random);
+        // Buffers grow on their own when indels make a tip longer than this estimate
+        long tipBytes = (long) (reference.length * (1 + indelFraction)) + 64;
+
+        // Pending nodes with the genome of their parent
+        int[] stackNode = new int[64];
+        Genome[] stackGenome = new Genome[64];
+        int depth = 0;
+        stackNode[depth] = tree.root;
+        stackGenome[depth++] = Genome.of(reference);
+
+        int tips = 0;
+        try (OutputStream out = OrderedBlockWriter.openOutput(fastaPath, gzip);
+             OrderedBlockWriter<ByteBlock> writer = new OrderedBlockWriter<>(threads, tipBytes,
+                     () -> new ByteBlock((int) Math.min(Integer.MAX_VALUE - 16, tipBytes)),
+                     buffer -> buffer.writeTo(out), "writing tips")) {
+            while (depth > 0) {
+                int node = stackNode[--depth];
+                Genome genome = mutate(stackGenome[depth], tree.branchLength[node], sampler);
+                stackGenome[depth] = null;
+
+                if (tree.firstChild[node] < 0) {
+                    String name = tree.nameOf(node);
+                    writer.submit(buffer -> {
+                        buffer.clear();
+                        buffer.appendChar('>');
+                        buffer.appendAscii(name);
+                        buffer.appendChar('\n');
+                        genome.appendTo(buffer);
+                        buffer.appendChar('\n');
+                    });
+                    tips++;
+                    continue;
+                }
+
+                // Push the children right to left, so the leftmost is evolved first
+                int childCount = 0;
+                for (int child = tree.firstChild[node]; child >= 0; child = tree.nextSibling[child]) {
+                    childCount++;
+                }
+                if (depth + childCount > stackNode.length) {
+                    int capacity = Math.max(stackNode.length * 2, depth + childCount);
+                    stackNode = Arrays.copyOf(stackNode, capacity);
+                    stackGenome = Arrays.copyOf(stackGenome, capacity);
+                }
+                int index = depth + childCount;
+                for (int child = tree.firstChild[node]; child >= 0; child = tree.nextSibling[child]) {
+                    index--;
+                    stackNode[index] = child;
+                    stackGenome[index] = genome;
+                }
+                depth += childCount;
+            }
+
+            writer.finish();
+        }
+        return tips;
+    }
+
+    /**
+     * Add the mutations of one branch to a copy of the parent genome
+     * @param parent Genome at the start of the branch
+     * @param branchLength Branch length in expected events per site
+     * @param sampler Random source
+     * @return Genome at the end of the branch, the parent itself when nothing happened
+     */
+    private Genome mutate(Genome parent, double branchLength, NegativeBinomialSampler sampler) {
+        if (branchLength <= 0 || parent.length == 0) {
+            return parent;
+        }
+        int events = (int) Math.min(Integer.MAX_VALUE - 8, sampler.nextPoisson(branchLength * parent.length));
+        if (events == 0) {
+            return parent;
+        }
+        mutationEvents += events;
+
+        long[] positions = new long[events];
+        for (int k = 0; k < events; k++) {
+            positions[k] = (long) (sampler.nextDouble() * parent.length);
+        }
+        Arrays.sort(positions);
+
+        Genome genome = parent.copy();
+        double insertionBound = 1 - indelFraction + indelFraction / 2;
+        int c = genome.count - 1;
+        long start = genome.length - genome.chunks[c].length;
+        int owned = -1;
+        // Right to left, so an indel never shifts the positions still to be applied
+        for (int k = events - 1; k >= 0; k--) {
+            long p = positions[k];
+            while (p < start) {
+                c--;
+                start -= genome.chunks[c].length;
+            }
+            byte[] chunk = genome.chunks[c];
+            int offset = (int) (p - start);
+            if (offset >= chunk.length) {
+                // The base was removed by a deletion at the same position
+                continue;
+            }
+
+            double r = sampler.nextDouble();
+            if (r < 1 - indelFraction) {
+                if (owned != c) {
+                    chunk = chunk.clone();
+                    genome.chunks[c] = chunk;
+                    owned = c;
+                    copiedChunks++;
+                }
+                byte base;
+                do {
+                    base = BASES[(int) (sampler.nextDouble() * BASES.length)];
+                } while (base == chunk[offset]);
+                chunk[offset] = base;
+            } else if (r < insertionBound) {
+                byte[] grown = new byte[chunk.length + 1];
+                System.arraycopy(chunk, 0, grown, 0, offset);
+                grown[offset] = BASES[(int) (sampler.nextDouble() * BASES.length)];
+                System.arraycopy(chunk, offset, grown, offset + 1, chunk.length - offset);
+                genome.length++;
+                copiedChunks++;
+                if (grown.length > 2 * CHUNK_SIZE) {
+                    int half = grown.length / 2;
+                    genome.insertChunk(c + 1, Arrays.copyOfRange(grown, half, grown.length));
+                    genome.chunks[c] = Arrays.copyOf(grown, half);
+                    // Later positions may still fall in the right half
+                    c++;
+                    start += half;
+                } else {
+                    genome.chunks[c] = grown;
+                }
+                owned = c;
+            } else {
+                byte[] shrunk = new byte[chunk.length - 1];
+                System.arraycopy(chunk, 0, shrunk, 0, offset);
+                System.arraycopy(chunk, offset + 1, shrunk, offset, chunk.length - offset - 1);
+                genome.chunks[c] = shrunk;
+                genome.length--;
+                copiedChunks++;
+                owned = c;
+            }
+        }
+        return genome;
+    }
+
+    /**
+     * Genome as shared chunks. A genome is only modified by the branch that creates it, and is
+     * read-only once its children or the writer see it.
+     */
+    private static final class Genome {
+        byte[][] chunks;
+        int count;
+        long length;
+
+        /**
+         * Constructor for Genome
+         * @param chunks Chunk references, shared with the parent
+         * @param count Number of chunks in use
+         * @param length Total number of bases
+         */
+        private Genome(byte[][] chunks, int count, long length) {
+            this.chunks = chunks;
+            this.count = count;
+            this.length = length;
+        }
+
+        /**
+         * Cut a sequence into chunks
+         * @param sequence Root sequence
+         * @return Root genome
+         */
+        static Genome of(byte[] sequence) {
+            int count = Math.max(1, (sequence.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            byte[][] chunks = new byte[count][];
+            for (int c = 0; c < count; c++) {
+                int from = Math.min(sequence.length, c * CHUNK_SIZE);
+                chunks[c] = Arrays.copyOfRange(sequence, from, Math.min(sequence.length, from + CHUNK_SIZE));
+            }
+            return new Genome(chunks, count, sequence.length);
+        }
+
+        /**
+         * Copy the chunk references, not the chunks
+         * @return New genome sharing every chunk
+         */
+        Genome copy() {
+            return new Genome(Arrays.copyOf(chunks, count + 4), count, length);
+        }
+
+        /**
+         * Insert a chunk reference
+         * @param index Position of the new chunk
+         * @param chunk New chunk
+         */
+        void insertChunk(int index, byte[] chunk) {
+            if (count == chunks.length) {
+                chunks = Arrays.copyOf(chunks, count + Math.max(4, count >> 3));
+            }
+            System.arraycopy(chunks, index, chunks, index + 1, count - index);
+            chunks[index] = chunk;
+            count++;
+        }
+
+        /**
+         * Append the sequence to a buffer
+         * @param buffer Output buffer
+         */
+        void appendTo(ByteBlock buffer) {
+            for (int c = 0; c < count; c++) {
+                buffer.appendBytes(chunks[c], 0, chunks[c].length);
+            }
+        }
+    }
+
+    /**
+     * Rooted guide tree in arrays: children as first-child / next-sibling lists
+     */
+    static final class GuideTree {
+        int root;
+        int size;
+        int[] parent;
+        int[] firstChild;
+        int[] lastChild;
+        int[] nextSibling;
+        double[] branchLength;
+        String[] name;
+
+        /**
+         * Constructor for GuideTree
+         * @param capacity Expected number of nodes
+         */
+        GuideTree(int capacity) {
+            capacity = Math.max(4, capacity);
+            parent = new int[capacity];
+            firstChild = new int[capacity];
+            lastChild = new int[capacity];
+            nextSibling = new int[capacity];
+            branchLength = new double[capacity];
+            name = new String[capacity];
+        }
+
+        /**
+         * Add a node without parent
+         * @return Node index
+         */
+        int addNode() {
+            if (size == parent.length) {
+                int capacity = size * 2;
+                parent = Arrays.copyOf(parent, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                lastChild = Arrays.copyOf(lastChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                branchLength = Arrays.copyOf(branchLength, capacity);
+                name = Arrays.copyOf(name, capacity);
+            }
+            parent[size] = -1;
+            firstChild[size] = -1;
+            lastChild[size] = -1;
+            nextSibling[size] = -1;
+            return size++;
+        }
+
+        /**
+         * Append a child after the existing children of a node
+         * @param node Parent node
+         * @param child Child node
+         */
+        void addChild(int node, int child) {
+            parent[child] = node;
+            if (lastChild[node] < 0) {
+                firstChild[node] = child;
+            } else {
+                nextSibling[lastChild[node]] = child;
+            }
+            lastChild[node] = child;
+        }
+
+        /**
+         * Get the label of a node
+         * @param node Node index
+         * @return Its name, or a generated one
+         */
+        String nameOf(int node) {
+            return name[node] != null ? name[node] : "node" + node;
+        }
+
+        /**
+         * Draw a tree from the Kingman coalescent and scale it to a root-to-tip depth
+         * @param tips Number of tips
+         * @param depth Root-to-tip depth
+         * @param random Random stream
+         * @return Ultrametric tree
+         */
+        static GuideTree coalescent(int tips, double depth, SplittableRandom random) {
+            GuideTree tree = new GuideTree(2 * tips - 1);
+            double[] height = new double[2 * tips - 1];
+            int[] lineages = new int[tips];
+            for (int i = 0; i < tips; i++) {
+                lineages[i] = tree.addNode();
+                tree.name[lineages[i]] = "tip" + (i + 1);
+            }
+            double time = 0;
+            for (int k = tips; k > 1; k--) {
+                // In double: k * (k - 1) overflows an int beyond 46,341 lineages
+                time += -Math.log(1 - random.nextDouble()) / (k * (k - 1.0) / 2);
+                int i = random.nextInt(k);
+                int j = random.nextInt(k - 1);
+                if (j >= i) {
+                    j++;
+                }
+                int node = tree.addNode();
+                height[node] = time;
+                tree.addChild(node, lineages[i]);
+                tree.addChild(node, lineages[j]);
+                lineages[Math.min(i, j)] = node;
+                lineages[Math.max(i, j)] = lineages[k - 1];
+            }
+            tree.root = lineages[0];
+            double scale = depth / height[tree.root];
+            for (int node = 0; node < tree.size; node++) {
+                if (tree.parent[node] >= 0) {
+                    tree.branchLength[node] = (height[tree.parent[node]] - height[node]) * scale;
+                }
+            }
+            return tree;
+        }
+
+        /**
+         * Parse a Newick tree without recursion, so deep trees are fine.
+         * Quoted labels and comments are not supported.
+         * @param text Newick text
+         * @return Tree, unnamed tips get generated names
+         */
+        static GuideTree parseNewick(String text) {
+            GuideTree tree = new GuideTree(1024);
+            tree.root = tree.addNode();
+            int current = tree.root;
+            int i = 0;
+            int n = text.length();
+            while (i < n) {
+                char c = text.charAt(i);
+                if (c == '(') {
+                    int child = tree.addNode();
+                    tree.addChild(current, child);
+                    current = child;
+                    i++;
+                } else if (c == ',') {
+                    if (tree.parent[current] < 0) {
+                        throw new IllegalArgumentException("Unbalanced Newick tree at character " + i);
+                    }
+                    int sibling = tree.addNode();
+                    tree.addChild(tree.parent[current], sibling);
+                    current = sibling;
+                    i++;
+                } else if (c == ')') {
+                    if (tree.parent[current] < 0) {
+                        throw new IllegalArgumentException("Unbalanced Newick tree at character " + i);
+                    }
+                    current = tree.parent[current];
+                    i++;
+                } else if (c == ':') {
+                    int end = i + 1;
+                    while (end < n && "(),:;".indexOf(text.charAt(end)) < 0) {
+                        end++;
+                    }
+                    double length = Double.parseDouble(text.substring(i + 1, end).trim());
+                    if (!(length >= 0) || Double.isInfinite(length)) {
+                        throw new IllegalArgumentException("Invalid Newick branch length at character " + i + ": " + length);
+                    }
+                    tree.branchLength[current] = length;
+                    i = end;
+                } else if (c == ';') {
+                    break;
+                } else if (Character.isWhitespace(c)) {
+                    i++;
+                } else {
+                    int end = i;
+                    while (end < n && "(),:;".indexOf(text.charAt(end)) < 0) {
+                        end++;
+                    }
+                    tree.name[current] = text.substring(i, end).trim();
+                    i = end;
+                }
+            }
+            if (current != tree.root) {
+                throw new IllegalArgumentException("Unbalanced Newick tree");
+            }
+            return tree;
+        }
+
+        /**
+         * Write the tree in Newick format without recursion
+         * @return Newick text
+         */
+        String toNewick() {
+            StringBuilder sb = new StringBuilder();
+            int node = root;
+            // Descend to the first child, write tips, climb back when a subtree is done
+            while (true) {
+                if (firstChild[node] >= 0) {
+                    sb.append('(');
+                    node = firstChild[node];
+                    continue;
+                }
+                sb.append(nameOf(node));
+                while (true) {
+                    if (node != root) {
+                        sb.append(':').append(branchLength[node]);
+                    }
+                    if (node == root) {
+                        return sb.append(";\n").toString();
+                    }
+                    if (nextSibling[node] >= 0) {
+                        sb.append(',');
+                        node = nextSibling[node];
+                        break;
+                    }
+                    node = parent[node];
+                    sb.append(')');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package demo.dockable.richment;
+
+import demo.dockable.richment.EnrichmentAnalysis.GSEAResult;
+import demo.dockable.richment.EnrichmentAnalysis.GeneSet;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Batch GSEA (Gene Set Enrichment Analysis) over many ranked gene lists.
+ *
+ * The gene dictionary and the gene set index are built once from the GMT file and shared
+ * by all lists. Each list is then parsed, ranked and scored on a worker thread, and all
+ * results are written to one long-format table in the order of the input lists. At most
+ * LISTS_PER_WORKER lists per worker are in flight, so a slow list holds back only the results
+ * of that window and not those of every later list.
+ *
+ * The scoring follows {@link EnrichmentAnalysis#performGSEA(List, Map, int)}: genes are ranked
+ * by p-value, hits are weighted by |-log10(p)| and the null distribution comes from gene
+ * permutations. The kernels only visit the hits of a gene set, so one permutation costs
+ * O(k log k) for a set with k hits instead of O(N) for a ranked list of N genes.
+ *
+ * Every gene set gets its own generator seeded with 42, as in the single-list analysis, and sets
+ * without hits are reported too. Enrichment scores and leading edges are the same as those of
+ * {@code performGSEA}; the permutations place k hits instead of shuffling the whole list, so
+ * p-values and NES agree within the permutation error rather than digit for digit.
+ */
+public class BatchEnrichmentAnalysis {
+
+    /** Ranked lists in flight per worker thread, scored or waiting to be written */
+    private static final int LISTS_PER_WORKER = 2;
+
+    /**
+     * Gene dictionary and integer-encoded gene sets shared by all ranked lists
+     */
+    public static class GeneSetIndex {
+        public final Map<String, Integer> geneToId;
+        public final String[] setNames;
+        public final String[] setDescriptions;
+        public final int[] setSizes;
+        public final int[][] setMembers;
+
+        /**
+         * Constructor for GeneSetIndex
+         * @param geneToId Map of gene names to dense integer ids
+         * @param setNames Names of the gene sets
+         * @param setDescriptions Descriptions of the gene sets
+         * @param setSizes Number of genes in each gene set
+         * @param setMembers Gene ids of each gene set
+         */
+        GeneSetIndex(Map<String, Integer> geneToId, String[] setNames, String[] setDescriptions,
+                     int[] setSizes, int[][] setMembers) {
+            this.geneToId = geneToId;
+            this.setNames = setNames;
+            this.setDescriptions = setDescriptions;
+            this.setSizes = setSizes;
+            this.setMembers = setMembers;
+        }
+
+        /**
+         * Build the index from gene sets
+         * @param geneSets List of gene sets, e.g. from {@link EnrichmentAnalysis#readGMTFile(String)}
+         * @return The shared index
+         */
+        public static GeneSetIndex build(List<GeneSet> geneSets) {
+            Map<String, Integer> geneToId = new HashMap<>();
+            int size = geneSets.size();
+            String[] names = new String[size];
+            String[] descriptions = new String[size];
+            int[] sizes = new int[size];
+            int[][] members = new int[size][];
+
+            for (int s = 0; s < size; s++) {
+                GeneSet geneSet = geneSets.get(s);
+                names[s] = geneSet.name;
+                descriptions[s] = geneSet.description;
+                sizes[s] = geneSet.genes.size();
+
+                int[] ids = new int[geneSet.genes.size()];
+                int i = 0;
+                for (String gene : geneSet.genes) {
+                    Integer id = geneToId.get(gene);
+                    if (id == null) {
+                        id = geneToId.size();
+                        geneToId.put(gene, id);
+                    }
+                    ids[i++] = id;
+                }
+                members[s] = ids;
+            }
+
+            return new GeneSetIndex(geneToId, names, descriptions, sizes, members);
+        }
+
+        /**
+         * Get the number of distinct genes in the dictionary
+         * @return Dictionary size
+         */
+        public int getGeneCount() {
+            return geneToId.size();
+        }
+
+        /**
+         * Get the number of gene sets
+         * @return Number of gene sets
+         */
+        public int getSetCount() {
+            return setNames.length;
+        }
+    }
+
+    /**
+     * One input ranked list: a label used in the output table and the result file path
+     */
+    public static class RankedListSource {
+        public final String label;
+        public final String fileName;
+
+        /**
+         * Constructor for RankedListSource
+         * @param label Label of the list in the output table
+         * @param fileName Path to the significant result file
+         */
+        public RankedListSource(String label, String fileName) {
+            this.label = label;
+            this.fileName = fileName;
+        }
+    }
+
+    /**
+     * A ranked list mapped onto the shared index.
+     * Genes are ranked by ascending p-value; genes absent from the dictionary still take a rank.
+     */
+    static class RankedList {
+        final String[] rankedGenes;
+        final double[] weightAtRank;
+        final int[] rankOfGene;
+
+        /**
+         * Constructor for RankedList
+         * @param rankedGenes Gene names in rank order
+         * @param weightAtRank Hit weight of the gene at each rank
+         * @param rankOfGene Rank of each dictionary gene, -1 if absent from the list
+         */
+        RankedList(String[] rankedGenes, double[] weightAtRank, int[] rankOfGene) {
+            this.rankedGenes = rankedGenes;
+            this.weightAtRank = weightAtRank;
+            this.rankOfGene = rankOfGene;
+        }
+
+        /**
+         * Rank gene scores against the shared index
+         * @param geneScores Map of gene names to their p-values
+         * @param index The shared gene set index
+         * @return The ranked list
+         */
+        static RankedList rank(Map<String, Double> geneScores, GeneSetIndex index) {
+            List<Map.Entry<String, Double>> entries = new ArrayList<>(geneScores.entrySet());
+            entries.sort(Comparator.comparingDouble(Map.Entry::getValue));
+
+            int n = entries.size();
+            String[] rankedGenes = new String[n];
+            double[] weightAtRank = new double[n];
+            int[] rankOfGene = new int[index.getGeneCount()];
+            Arrays.fill(rankOfGene, -1);
+
+            for (int r = 0; r < n; r++) {
+                Map.Entry<String, Double> entry = entries.get(r);
+                rankedGenes[r] = entry.getKey();
+                weightAtRank[r] = Math.abs(-Math.log10(entry.getValue()));
+                Integer id = index.geneToId.get(entry.getKey());
+                if (id != null) {
+                    rankOfGene[id] = r;
+                }
+            }
+
+            return new RankedList(rankedGenes, weightAtRank, rankOfGene);
+        }
+
+        /**
+         * Get the number of ranked genes
+         * @return Length of the ranked list
+         */
+        int size() {
+            return rankedGenes.length;
+        }
+    }
+
+    /**
+     * Reusable scratch buffers of one worker, sized for the list being scored
+     */
+    static class KernelBuffers {
+        int[] permutation = new int[0];
+        int[] hitRanks = new int[0];
+        double[] hitWeights = new double[0];
+        double[] setWeights = new double[0];
+        long[] sortKeys = new long[0];
+        int[] swaps = new int[0];
+
+        /**
+         * Make the buffers large enough for a list and reset the permutation to identity
+         * @param listSize Length of the ranked list
+         * @param maxSetSize Largest gene set size
+         */
+        void prepare(int listSize, int maxSetSize) {
+            if (permutation.length != listSize) {
+                permutation = new int[listSize];
+            }
+            for (int i = 0; i < listSize; i++) {
+                permutation[i] = i;
+            }
+            if (hitRanks.length < maxSetSize) {
+                hitRanks = new int[maxSetSize];
+                hitWeights = new double[maxSetSize];
+                setWeights = new double[maxSetSize];
+                sortKeys = new long[maxSetSize];
+                swaps = new int[maxSetSize];
+            }
+        }
+    }
+
+    /**
+     * Read ranked list sources from a directory or a manifest file.
+     * A directory contributes every regular file in name order. A manifest has one
+     * result file per line, optionally followed by a tab and a label; relative paths
+     * are resolved against the manifest directory, and lines starting with # are skipped.
+     * @param dirOrManifest Path to the directory or manifest file
+     * @return List of ranked list sources
+     * @throws IOException If there's an error reading the manifest
+     */
+    public static List<RankedListSource> readSources(String dirOrManifest) throws IOException {
+        List<RankedListSource> sources = new ArrayList<>();
+        File input = new File(dirOrManifest);
+
+        if (input.isDirectory()) {
+            File[] files = input.listFiles(File::isFile);
+            if (files == null) {
+                throw new IOException("Could not list directory: " + dirOrManifest);
+            }
+            Arrays.sort(files, Comparator.comparing(File::getName));
+            for (File file : files) {
+                sources.add(new RankedListSource(stripExtension(file.getName()), file.getPath()));
+            }
+            return sources;
+        }
+
+        File baseDir = input.getAbsoluteFile().getParentFile();
+        try (BufferedReader reader = new BufferedReader(new FileReader(input))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                File file = new File(parts[0].trim());
+                if (!file.isAbsolute()) {
+                    file = new File(baseDir, parts[0].trim());
+                }
+                String label = parts.length > 1 ? parts[1].trim() : stripExtension(file.getName());
+                sources.add(new RankedListSource(label, file.getPath()));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Run GSEA for every ranked list and write one consolidated long-format table
+     * @param gmtFileName Path to GMT file
+     * @param dirOrManifest Directory of result files or a manifest listing them
+     * @param geneSymbolColName Name of gene symbol column
+     * @param significantColName Name of significance column
+     * @param outputFileName Output file path
+     * @param permutations Number of permutations for significance testing
+     * @param threads Number of worker threads
+     * @param topK Keep only the best K pathways of each list by |NES|; 0 or less keeps every pathway
+     * @return Number of ranked lists processed
+     * @throws IOException If there's an error reading or writing files
+     */
+    public static int performBatchGSEA(String gmtFileName, String dirOrManifest,
+                                       String geneSymbolColName, String significantColName,
+                                       String outputFileName, int permutations, int threads,
+                                       int topK) throws IOException {
+        List<GeneSet> geneSets = EnrichmentAnalysis.readGMTFile(gmtFileName);
+        GeneSetIndex index = GeneSetIndex.build(geneSets);
+        List<RankedListSource> sources = readSources(dirOrManifest);
+
+        int workers = Math.max(1, Math.min(threads, sources.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        ThreadLocal<KernelBuffers> buffers = ThreadLocal.withInitial(KernelBuffers::new);
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(outputFileName)))) {
+            int window = workers * LISTS_PER_WORKER;
+            List<Future<List<GSEAResult>>> inFlight = new ArrayList<>(Collections.nCopies(window, null));
+            for (int i = 0; i < Math.min(window, sources.size()); i++) {
+                inFlight.set(i, submitList(executor, sources.get(i), index, geneSymbolColName,
+                        significantColName, permutations, topK, buffers));
+            }
+
+            writer.println("List\tPathway\tDescription\tEnrichment_Score\tNormalized_ES\t" +
+                    "P_value\tFDR\tSize\tLeading_Edge");
+
+            // Write in input order, starting the list one window ahead as each list is written
+            for (int i = 0; i < sources.size(); i++) {
+                int slot = i % window;
+                List<GSEAResult> results = getResult(inFlight.get(slot), sources.get(i));
+                inFlight.set(slot, null);
+                if (i + window < sources.size()) {
+                    inFlight.set(slot, submitList(executor, sources.get(i + window), index, geneSymbolColName,
+                            significantColName, permutations, topK, buffers));
+                }
+                String label = sources.get(i).label;
+                for (GSEAResult result : results) {
+                    writer.printf("%s\t%s\t%s\t%.6f\t%.6f\t%.6e\t%.6e\t%d\t%s%n",
+                            label,
+                            result.pathwayName,
+                            result.description,
+                            result.enrichmentScore,
+                            result.normalizedES,
+                            result.pValue,
+                            result.fdr,
+                            result.size,
+                            result.leadingEdge);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return sources.size();
+    }
+
+    /**
+     * Start reading, ranking and scoring one ranked list on a worker thread
+     * @param executor Worker pool
+     * @param source The ranked list
+     * @param index The shared gene set index
+     * @param geneSymbolColName Name of gene symbol column
+     * @param significantColName Name of significance column
+     * @param permutations Number of permutations for significance testing
+     * @param topK Keep only the best K pathways by |NES|; 0 or less keeps every pathway
+     * @param buffers Scratch buffers of each worker
+     * @return Future of the results of the list
+     */
+    private static Future<List<GSEAResult>> submitList(ExecutorService executor, RankedListSource source,
+                                                       GeneSetIndex index, String geneSymbolColName,
+                                                       String significantColName, int permutations, int topK,
+                                                       ThreadLocal<KernelBuffers> buffers) {
+        return executor.submit(() -> {
+            Map<String, Double> geneScores = EnrichmentAnalysis.readSignificantResults(source.fileName,
+                    geneSymbolColName, significantColName, 1.0);
+            RankedList rankedList = RankedList.rank(geneScores, index);
+            return scoreRankedList(index, rankedList, permutations, topK, buffers.get());
+        });
+    }
+
+    /**
+     * Score all gene sets against one ranked list
+     * @param index The shared gene set index
+     * @param rankedList The ranked list
+     * @param permutations Number of permutations for significance testing
+     * @param topK Number of best rows by |NES| to keep with exact BH FDR; 0 or less keeps all rows
+     * @param buffers Scratch buffers of the calling worker
+     * @return GSEA results with FDR, sorted by absolute enrichment score (or by |NES| for top K)
+     */
+    static List<GSEAResult> scoreRankedList(GeneSetIndex index, RankedList rankedList,
+                                            int permutations, int topK, KernelBuffers buffers) {
+        int n = rankedList.size();
+        int maxSetSize = 0;
+        for (int[] members : index.setMembers) {
+            maxSetSize = Math.max(maxSetSize, members.length);
+        }
+        buffers.prepare(n, maxSetSize);
+
+        List<GSEAResult> results = new ArrayList<>();
+        TopKResultSink<GSEAResult> sink = topK > 0
+                ? new TopKResultSink<>(topK, TopKResultSink.Order.ABS_SCORE, index.getSetCount()) : null;
+
+        for (int s = 0; s < index.getSetCount(); s++) {
+            // Fixed seed per set, as in the single-list analysis, so a set does not depend on the sets before it
+            Random random = new Random(42);
+            // A set without hits is kept: its running sum is a pure decline to -1, with p-value 1
+            int k = collectHits(index.setMembers[s], rankedList, buffers);
+
+            int[] hitRanks = buffers.hitRanks;
+            double[] hitWeights = buffers.hitWeights;
+            double totalWeight = 0.0;
+            for (int i = 0; i < k; i++) {
+                totalWeight += hitWeights[i];
+            }
+            double missStep = n > k ? 1.0 / (n - k) : 0.0;
+
+            double actualES = computeES(hitRanks, hitWeights, k, n, totalWeight, missStep);
+            int peakHits = findLeadingEdgeHits(hitRanks, k, n, missStep);
+
+            // Permute gene positions: the k hits keep their own weights at k random ranks
+            System.arraycopy(hitWeights, 0, buffers.setWeights, 0, k);
+            int moreThanActual = 0;
+            double permESSum = 0.0;
+            for (int p = 0; p < permutations; p++) {
+                drawRandomRanks(buffers, k, n, random);
+                double permES = computeES(hitRanks, hitWeights, k, n, totalWeight, missStep);
+                permESSum += permES;
+                if (Math.abs(permES) >= Math.abs(actualES)) {
+                    moreThanActual++;
+                }
+            }
+
+            double pValue = (double) moreThanActual / permutations;
+            double meanPermES = permutations > 0 ? permESSum / permutations : 0.0;
+            double normalizedES = actualES / (meanPermES != 0 ? Math.abs(meanPermES) : 1.0);
+
+            int setIndex = s;
+            Supplier<GSEAResult> row = () -> {
+                // Observed hits are restored because the permutations overwrote the hit buffers
+                collectHits(index.setMembers[setIndex], rankedList, buffers);
+                StringJoiner leadingEdge = new StringJoiner(";");
+                for (int i = 0; i < peakHits; i++) {
+                    leadingEdge.add(rankedList.rankedGenes[buffers.hitRanks[i]]);
+                }
+                return new GSEAResult(index.setNames[setIndex], index.setDescriptions[setIndex], actualES,
+                        normalizedES, pValue, index.setSizes[setIndex], leadingEdge.toString());
+            };
+            if (sink != null) {
+                sink.offer(pValue, normalizedES, row);
+            } else {
+                results.add(row.get());
+            }
+        }
+
+        if (sink != null) {
+            return sink.finish((result, fdr) -> result.fdr = fdr);
+        }
+        results.sort((r1, r2) -> Double.compare(Math.abs(r2.enrichmentScore), Math.abs(r1.enrichmentScore)));
+        EnrichmentAnalysis.calculateGSEAFDR(results);
+        return results;
+    }
+
+    /**
+     * Collect the ranks and weights of the genes of a set that appear in the ranked list
+     * @param members Gene ids of the set
+     * @param rankedList The ranked list
+     * @param buffers Buffers receiving hit ranks and weights, sorted by rank
+     * @return Number of hits
+     */
+    static int collectHits(int[] members, RankedList rankedList, KernelBuffers buffers) {
+        int[] hitRanks = buffers.hitRanks;
+        int k = 0;
+        for (int id : members) {
+            int rank = rankedList.rankOfGene[id];
+            if (rank >= 0) {
+                hitRanks[k++] = rank;
+            }
+        }
+        Arrays.sort(hitRanks, 0, k);
+        for (int i = 0; i < k; i++) {
+            buffers.hitWeights[i] = rankedList.weightAtRank[hitRanks[i]];
+        }
+        return k;
+    }
+
+    /**
+     * Place the k hits of a set at random distinct ranks, each keeping its own weight.
+     * A partial Fisher-Yates shuffle on the permutation buffer draws the ranks, then the (rank, hit)
+     * pairs are sorted by rank. The swaps are undone afterwards, so every draw starts from the identity
+     * and depends only on the random number generator.
+     * @param buffers Worker buffers; hitRanks and hitWeights receive the permuted hits sorted by rank,
+     *                setWeights holds the observed weights
+     * @param k Number of hits
+     * @param n Length of the ranked list
+     * @param random Random number generator
+     */
+    private static void drawRandomRanks(KernelBuffers buffers, int k, int n, Random random) {
+        int[] permutation = buffers.permutation;
+        long[] sortKeys = buffers.sortKeys;
+        int[] swaps = buffers.swaps;
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(n - i);
+            swaps[i] = j;
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+            sortKeys[i] = ((long) permutation[i] << 32) | i;
+        }
+        Arrays.sort(sortKeys, 0, k);
+        for (int i = 0; i < k; i++) {
+            buffers.hitRanks[i] = (int) (sortKeys[i] >>> 32);
+            buffers.hitWeights[i] = buffers.setWeights[(int) sortKeys[i]];
+        }
+        for (int i = k - 1; i >= 0; i--) {
+            int j = swaps[i];
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+    }
+
+    /**
+     * Core running-sum kernel over hits only.
+     * Between two hits the running sum declines linearly, so its maximum is reached right
+     * after a hit and its minimum right before a hit or at the end of the list.
+     * @param hitRanks Ranks of the hits in ascending order
+     * @param hitWeights Weights of the hits in the same order
+     * @param k Number of hits
+     * @param n Length of the ranked list
+     * @param totalWeight Sum of the hit weights
+     * @param missStep Decrement for each gene that is not in the set
+     * @return Enrichment score
+     */
+    static double computeES(int[] hitRanks, double[] hitWeights, int k, int n,
+                                    double totalWeight, double missStep) {
+        double runningSum = 0.0;
+        double maxES = 0.0;
+        double minES = 0.0;
+        int previousRank = -1;
+
+        for (int i = 0; i < k; i++) {
+            int rank = hitRanks[i];
+            runningSum -= (rank - previousRank - 1) * missStep;
+            if (runningSum < minES) minES = runningSum;
+            runningSum += hitWeights[i] / totalWeight;
+            if (runningSum > maxES) maxES = runningSum;
+            previousRank = rank;
+        }
+        runningSum -= (n - previousRank - 1) * missStep;
+        if (runningSum < minES) minES = runningSum;
+
+        return Math.abs(maxES) > Math.abs(minES) ? maxES : minES;
+    }
+
+    /**
+     * Locate the leading edge peak with the unweighted walk used by the single-list analysis
+     * @param hitRanks Ranks of the hits in ascending order
+     * @param k Number of hits
+     * @param n Length of the ranked list
+     * @param missStep Decrement for each gene that is not in the set
+     * @return Number of leading hits up to and including the peak
+     */
+    static int findLeadingEdgeHits(int[] hitRanks, int k, int n, double missStep) {
+        double runningSum = 0.0;
+        double maxRunningSum = 0.0;
+        double minRunningSum = 0.0;
+        int peakHits = 0;
+        int previousRank = -1;
+
+        for (int i = 0; i <= k; i++) {
+            int rank = i < k ? hitRanks[i] : n;
+            int misses = rank - previousRank - 1;
+            if (misses > 0) {
+                runningSum -= misses * missStep;
+                if (runningSum < minRunningSum) {
+                    minRunningSum = runningSum;
+                    if (Math.abs(minRunningSum) > Math.abs(maxRunningSum)) {
+                        peakHits = i;
+                    }
+                }
+            }
+            if (i == k) {
+                break;
+            }
+            runningSum += 1.0 / k;
+            if (runningSum > maxRunningSum) {
+                maxRunningSum = runningSum;
+                peakHits = i + 1;
+            }
+            previousRank = rank;
+        }
+        return peakHits;
+    }
+
+    /**
+     * Wait for one list and rethrow its failure with the list name attached
+     * @param future Pending result of the list
+     * @param source The list source
+     * @return GSEA results of the list
+     * @throws IOException If the list could not be read or scored
+     */
+    private static List<GSEAResult> getResult(Future<List<GSEAResult>> future, RankedListSource source)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing: " + source.fileName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error in computation of " + source.fileName + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Remove the last extension from a file name
+     * @param fileName File name
+     * @return File name without extension
+     */
+    private static String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
@@ -120,6 +120,17 @@ public class EnrichmentAnalysis {
      * @throws IOException If there's an error reading the file
      */
     public static List<GeneSet> readGMTFile(String gmtFileName) throws IOException {
+        return readGMTFile(gmtFileName, null);
+    }
+
+    /**
+     * Read gene sets from a GMT file, translating gene identifiers while parsing
+     * @param gmtFileName Path to the GMT file
+     * @param idMapper Identifier mapper, or null to keep the identifiers as they are
+     * @return List of GeneSet objects
+     * @throws IOException If there's an error reading the file
+     */
+    public static List<GeneSet> readGMTFile(String gmtFileName, GeneIdMapper idMapper) throws IOException {
         List<GeneSet> geneSets = new ArrayList<>();
 
         try (BufferedReader reader = new BufferedReader(new FileReader(gmtFileName))) {
@@ -133,8 +144,9 @@ public class EnrichmentAnalysis {
 
                     // From column 3 onwards are gene list
                     for (int i = 2; i < parts.length; i++) {
-                        if (!parts[i].trim().isEmpty()) {
-                            genes.add(parts[i].trim());
+                        String gene = parts[i].trim();
+                        if (!gene.isEmpty()) {
+                            genes.add(idMapper == null ? gene : idMapper.map(gene));
                         }
                     }
 
@@ -159,6 +171,23 @@ public class EnrichmentAnalysis {
      */
     public static Map<String, Double> readSignificantResults(String fileName, String geneSymbolColName,
                                                              String significantColName, double pValueThreshold) throws IOException {
+        return readSignificantResults(fileName, geneSymbolColName, significantColName, pValueThreshold, null);
+    }
+
+    /**
+     * Read significant gene results from a file, translating gene identifiers while parsing.
+     * When several identifiers map to the same gene, the smallest p-value is kept.
+     * @param fileName Path to the results file
+     * @param geneSymbolColName Name of the gene symbol column
+     * @param significantColName Name of the significance column (e.g., p-value)
+     * @param pValueThreshold Threshold for considering a gene significant
+     * @param idMapper Identifier mapper, or null to keep the identifiers as they are
+     * @return Map of gene names to their significance scores
+     * @throws IOException If there's an error reading the file
+     */
+    public static Map<String, Double> readSignificantResults(String fileName, String geneSymbolColName,
+                                                             String significantColName, double pValueThreshold,
+                                                             GeneIdMapper idMapper) throws IOException {
         Map<String, Double> geneScores = new HashMap<>();
 
         try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
@@ -191,7 +220,11 @@ public class EnrichmentAnalysis {
                     try {
                         double pValue = Double.parseDouble(parts[pValueColIndex]);
                         if (pValue <= pValueThreshold) {
-                            geneScores.put(geneName, pValue);
+                            if (idMapper == null) {
+                                geneScores.put(geneName, pValue);
+                            } else {
+                                geneScores.merge(idMapper.map(geneName), pValue, Math::min);
+                            }
                         }
                     } catch (NumberFormatException e) {
                         // Skip rows that cannot be parsed
@@ -253,6 +286,48 @@ public class EnrichmentAnalysis {
         return results;
     }
 
+    /**
+     * Perform ORA and stream the results into a top K sink.
+     * Overlaps are counted without materializing intersection sets, and the gene list
+     * string is only built for rows that enter the sink.
+     * @param geneSets List of gene sets to analyze
+     * @param significantGenes Set of significant genes
+     * @param backgroundGenes Set of background genes
+     * @param sink Sink keeping the best rows by p-value
+     */
+    public static void performORA(List<GeneSet> geneSets, Set<String> significantGenes,
+                                  Set<String> backgroundGenes, TopKResultSink<EnrichmentResult> sink) {
+        int N = backgroundGenes.size(); // Total number of genes
+        int K = significantGenes.size(); // Total number of significant genes
+
+        for (GeneSet geneSet : geneSets) {
+            int n = 0;
+            int k = 0;
+            for (String gene : geneSet.genes) {
+                if (backgroundGenes.contains(gene)) {
+                    n++;
+                    if (significantGenes.contains(gene)) {
+                        k++;
+                    }
+                }
+            }
+
+            double pValue = k > 0 ? calculateHypergeometricPValue(k, n, K, N) : 1.0;
+            int genesInPathway = n;
+            int significantGenesInPathway = k;
+            sink.offer(pValue, pValue, () -> {
+                StringJoiner genesInSet = new StringJoiner(";");
+                for (String gene : geneSet.genes) {
+                    if (backgroundGenes.contains(gene) && significantGenes.contains(gene)) {
+                        genesInSet.add(gene);
+                    }
+                }
+                return new EnrichmentResult(geneSet.name, geneSet.description, genesInPathway,
+                        significantGenesInPathway, K, N, pValue, genesInSet.toString());
+            });
+        }
+    }
+
     /**
      * Perform GSEA (Gene Set Enrichment Analysis)
      * @param geneSets List of gene sets to analyze
@@ -290,6 +365,28 @@ public class EnrichmentAnalysis {
         return results;
     }
 
+    /**
+     * Perform GSEA and stream the results into a top K sink
+     * @param geneSets List of gene sets to analyze
+     * @param geneScores Map of gene names to their scores
+     * @param permutations Number of permutations for significance testing
+     * @param sink Sink keeping the best rows, e.g. by absolute normalized enrichment score
+     */
+    public static void performGSEA(List<GeneSet> geneSets, Map<String, Double> geneScores,
+                                   int permutations, TopKResultSink<GSEAResult> sink) {
+        List<String> rankedGeneList = geneScores.entrySet().stream()
+                .sorted((e1, e2) -> Double.compare(-Math.log10(e2.getValue()), -Math.log10(e1.getValue())))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        for (GeneSet geneSet : geneSets) {
+            GSEAResult result = calculateEnrichmentScore(geneSet, rankedGeneList, geneScores, permutations);
+            if (result != null) {
+                sink.offer(result.pValue, result.normalizedES, () -> result);
+            }
+        }
+    }
+
     /**
      * Calculate enrichment score
      * @param geneSet Gene set to analyze
@@ -536,21 +633,18 @@ public class EnrichmentAnalysis {
     }
 
     /**
-     * Calculate FDR for GSEA results
+     * Calculate FDR for GSEA results using Benjamini-Hochberg ranked by p-value.
+     * The results keep their order, which is usually by absolute enrichment score.
      * @param results List of GSEA results
      */
-    private static void calculateGSEAFDR(List<GSEAResult> results) {
-        int n = results.size();
-        for (int i = 0; i < n; i++) {
-            double fdr = results.get(i).pValue * n / (i + 1);
-            results.get(i).fdr = Math.min(1.0, fdr);
+    static void calculateGSEAFDR(List<GSEAResult> results) {
+        double[] pValues = new double[results.size()];
+        for (int i = 0; i < pValues.length; i++) {
+            pValues[i] = results.get(i).pValue;
         }
-
-        // Ensure FDR is monotonic
-        for (int i = n - 2; i >= 0; i--) {
-            if (results.get(i).fdr > results.get(i + 1).fdr) {
-                results.get(i).fdr = results.get(i + 1).fdr;
-            }
+        double[] fdr = TopKResultSink.benjaminiHochberg(pValues);
+        for (int i = 0; i < pValues.length; i++) {
+            results.get(i).fdr = fdr[i];
         }
     }
 
@@ -626,17 +720,84 @@ public class EnrichmentAnalysis {
     public static void performEnrichmentAnalysis(String gmtFileName, String significantResultFileName,
                                                  String geneSymbolColName, String significantColName,
                                                  String outputFileName, double pValueThreshold) throws IOException {
+        performEnrichmentAnalysis(gmtFileName, significantResultFileName, geneSymbolColName,
+                significantColName, outputFileName, pValueThreshold, 0);
+    }
+
+    /**
+     * Main enrichment analysis method with bounded outputs
+     * @param gmtFileName Path to GMT file
+     * @param significantResultFileName Path to significant results file
+     * @param geneSymbolColName Name of gene symbol column
+     * @param significantColName Name of significance column
+     * @param outputFileName Output file path
+     * @param pValueThreshold P-value threshold for significance
+     * @param topK Keep only the best K pathways per output (by p-value for ORA, by |NES| for GSEA);
+     *             0 or less writes every pathway
+     * @throws IOException If there's an error reading or writing files
+     */
+    public static void performEnrichmentAnalysis(String gmtFileName, String significantResultFileName,
+                                                 String geneSymbolColName, String significantColName,
+                                                 String outputFileName, double pValueThreshold,
+                                                 int topK) throws IOException {
+        performEnrichmentAnalysis(gmtFileName, significantResultFileName, geneSymbolColName,
+                significantColName, outputFileName, pValueThreshold, topK, 0);
+    }
+
+    /**
+     * Main enrichment analysis method with bounded outputs and redundancy clustering
+     * @param gmtFileName Path to GMT file
+     * @param significantResultFileName Path to significant results file
+     * @param geneSymbolColName Name of gene symbol column
+     * @param significantColName Name of significance column
+     * @param outputFileName Output file path
+     * @param pValueThreshold P-value threshold for significance
+     * @param topK Keep only the best K pathways per output (by p-value for ORA, by |NES| for GSEA);
+     *             0 or less writes every pathway
+     * @param redundancyJaccard Jaccard threshold for clustering redundant enriched terms
+     *                          (p-value at or below the threshold); 0 or less skips clustering
+     * @throws IOException If there's an error reading or writing files
+     */
+    public static void performEnrichmentAnalysis(String gmtFileName, String significantResultFileName,
+                                                 String geneSymbolColName, String significantColName,
+                                                 String outputFileName, double pValueThreshold,
+                                                 int topK, double redundancyJaccard) throws IOException {
+        performEnrichmentAnalysis(gmtFileName, significantResultFileName, geneSymbolColName,
+                significantColName, outputFileName, pValueThreshold, topK, redundancyJaccard, null, null);
+    }
+
+    /**
+     * Main enrichment analysis method with bounded outputs, redundancy clustering and identifier mapping
+     * @param gmtFileName Path to GMT file
+     * @param significantResultFileName Path to significant results file
+     * @param geneSymbolColName Name of gene symbol column
+     * @param significantColName Name of significance column
+     * @param outputFileName Output file path
+     * @param pValueThreshold P-value threshold for significance
+     * @param topK Keep only the best K pathways per output (by p-value for ORA, by |NES| for GSEA);
+     *             0 or less writes every pathway
+     * @param redundancyJaccard Jaccard threshold for clustering redundant enriched terms
+     *                          (p-value at or below the threshold); 0 or less skips clustering
+     * @param gmtIdMapper Mapper applied to the GMT genes, or null
+     * @param resultIdMapper Mapper applied to the genes of the results file, or null
+     * @throws IOException If there's an error reading or writing files
+     */
+    public static void performEnrichmentAnalysis(String gmtFileName, String significantResultFileName,
+                                                 String geneSymbolColName, String significantColName,
+                                                 String outputFileName, double pValueThreshold,
+                                                 int topK, double redundancyJaccard,
+                                                 GeneIdMapper gmtIdMapper, GeneIdMapper resultIdMapper) throws IOException {
 
         if (out == null) {
             out = UnifiedPrinterBuilder.getDefaultPrinter();
         }
         System.out.println("Starting enrichment analysis: " + gmtFileName);
-        List<GeneSet> geneSets = readGMTFile(gmtFileName);
+        List<GeneSet> geneSets = readGMTFile(gmtFileName, gmtIdMapper);
         System.out.println("Read " + geneSets.size() + " gene sets");
 
         System.out.println("Starting to read significant results file: " + significantResultFileName);
         Map<String, Double> geneScores = readSignificantResults(significantResultFileName,
-                geneSymbolColName, significantColName, 1.0);
+                geneSymbolColName, significantColName, 1.0, resultIdMapper);
         System.out.println("Read " + geneScores.size() + " gene scores");
 
         // Get significant genes (p < pValueThreshold)
@@ -658,23 +819,53 @@ public class EnrichmentAnalysis {
 
         // Perform ORA analysis
         System.out.println("Starting ORA analysis...");
-        List<EnrichmentResult> oraResults = performORA(geneSets, significantGenes, backgroundGenes, 1.0); // Output all results
-        System.out.println("ORA analysis completed, analyzed " + oraResults.size() + " gene sets");
+        List<EnrichmentResult> oraResults;
+        if (topK > 0) {
+            TopKResultSink<EnrichmentResult> oraSink = new TopKResultSink<>(topK, TopKResultSink.Order.P_VALUE, geneSets.size());
+            performORA(geneSets, significantGenes, backgroundGenes, oraSink);
+            oraResults = oraSink.finish((result, fdr) -> result.fdr = fdr);
+        } else {
+            oraResults = performORA(geneSets, significantGenes, backgroundGenes, 1.0); // Output all results
+        }
+        System.out.println("ORA analysis completed, analyzed " + geneSets.size() + " gene sets");
 
         // Save ORA results
         String oraOutputFile = outputFileName.replace(".tsv", "_ORA.tsv");
         saveORAResults(oraResults, oraOutputFile);
         System.out.println("ORA results saved to: " + oraOutputFile);
 
+        if (redundancyJaccard > 0) {
+            List<PathwayRedundancyClustering.PathwayCluster> oraClusters = PathwayRedundancyClustering
+                    .clusterORAResults(oraResults, geneSets, pValueThreshold, redundancyJaccard);
+            String oraClusterFile = outputFileName.replace(".tsv", "_ORA_clusters.tsv");
+            PathwayRedundancyClustering.saveClusters(oraClusters, oraClusterFile);
+            System.out.println("ORA redundancy clusters saved to: " + oraClusterFile);
+        }
+
         // Perform GSEA analysis
         System.out.println("Starting GSEA analysis...");
-        List<GSEAResult> gseaResults = performGSEA(geneSets, geneScores, 1000);
+        List<GSEAResult> gseaResults;
+        if (topK > 0) {
+            TopKResultSink<GSEAResult> gseaSink = new TopKResultSink<>(topK, TopKResultSink.Order.ABS_SCORE, geneSets.size());
+            performGSEA(geneSets, geneScores, 1000, gseaSink);
+            gseaResults = gseaSink.finish((result, fdr) -> result.fdr = fdr);
+        } else {
+            gseaResults = performGSEA(geneSets, geneScores, 1000);
+        }
         System.out.println("GSEA analysis completed, found " + gseaResults.size() + " pathway results");
 
         // Save GSEA results
         String gseaOutputFile = outputFileName.replace(".tsv", "_GSEA.tsv");
         saveGSEAResults(gseaResults, gseaOutputFile);
         System.out.println("GSEA results saved to: " + gseaOutputFile);
+
+        if (redundancyJaccard > 0) {
+            List<PathwayRedundancyClustering.PathwayCluster> gseaClusters = PathwayRedundancyClustering
+                    .clusterGSEAResults(gseaResults, geneSets, pValueThreshold, redundancyJaccard);
+            String gseaClusterFile = outputFileName.replace(".tsv", "_GSEA_clusters.tsv");
+            PathwayRedundancyClustering.saveClusters(gseaClusters, gseaClusterFile);
+            System.out.println("GSEA redundancy clusters saved to: " + gseaClusterFile);
+        }
     }
 
     /**
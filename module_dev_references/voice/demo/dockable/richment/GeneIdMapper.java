@@ -0,0 +1,452 @@
+package demo.dockable.richment;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Gene identifier mapping (e.g. Entrez, Ensembl, symbol) backed by a minimal perfect hash.
+ *
+ * A mapping table is a tab-separated file with a header line; two of its columns are chosen as
+ * the source and target identifiers. The first time a table is used, the source identifiers are
+ * placed into a minimal perfect hash (hash and displace: keys are grouped into buckets, and each
+ * bucket gets a displacement so that all its keys land on free slots). The slot table, the keys and
+ * the values are written to a binary cache next to the mapping table. Later loads only memory-map
+ * that cache, which takes milliseconds even for hundreds of thousands of entries.
+ *
+ * {@link #lookup(CharSequence)} hashes the characters directly and compares against the mapped
+ * key characters, so it does not allocate. Mapped values are decoded once per slot and reused.
+ * When a source identifier occurs on several rows, the first row wins.
+ */
+public class GeneIdMapper {
+
+    private static final int MAGIC = 0x47494D31; // "GIM1"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+    /** Average number of keys per bucket */
+    private static final int BUCKET_LOAD = 2;
+    /** Displacements tried per bucket before the whole table is rebuilt with another seed */
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int numBuckets;
+    private final long hashSeed;
+    private final int bucketsOffset;
+    private final int keyOffsetsOffset;
+    private final int valueOffsetsOffset;
+    private final int keyCharsOffset;
+    private final int valueCharsOffset;
+    private final String[] decodedValues;
+
+    /**
+     * Constructor for GeneIdMapper
+     * @param buffer Buffer holding the serialized table
+     */
+    private GeneIdMapper(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.hashSeed = buffer.getLong(4 + 8);
+        this.size = buffer.getInt(4 + 8 + 8);
+        this.numBuckets = buffer.getInt(4 + 8 + 8 + 4);
+        this.bucketsOffset = HEADER_BYTES;
+        this.keyOffsetsOffset = bucketsOffset + 4 * numBuckets;
+        this.valueOffsetsOffset = keyOffsetsOffset + 4 * (size + 1);
+        this.keyCharsOffset = valueOffsetsOffset + 4 * (size + 1);
+        this.valueCharsOffset = keyCharsOffset + 2 * buffer.getInt(keyOffsetsOffset + 4 * size);
+        this.decodedValues = new String[size];
+    }
+
+    /**
+     * Load a mapping table, building the binary cache when it is missing or stale
+     * @param mappingFileName Path to the tab-separated mapping table with a header line
+     * @param fromColName Header name of the source identifier column
+     * @param toColName Header name of the target identifier column
+     * @return The mapper
+     * @throws IOException If there's an error reading the table or the cache
+     */
+    public static GeneIdMapper load(String mappingFileName, String fromColName, String toColName) throws IOException {
+        File mappingFile = new File(mappingFileName);
+        File cacheFile = new File(mappingFileName + "." + fromColName + "2" + toColName + ".mph");
+        long sourceStamp = mappingFile.length() * 31 + mappingFile.lastModified();
+
+        if (cacheFile.isFile()) {
+            GeneIdMapper mapper = mapCache(cacheFile, sourceStamp);
+            if (mapper != null) {
+                return mapper;
+            }
+        }
+
+        ByteBuffer built = build(mappingFileName, fromColName, toColName, sourceStamp);
+        try {
+            File tmpFile = new File(cacheFile.getPath() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer source = built.duplicate();
+                source.position(0);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            GeneIdMapper mapper = mapCache(cacheFile, sourceStamp);
+            return mapper != null ? mapper : new GeneIdMapper(built);
+        } catch (IOException e) {
+            // A read-only location only loses the cache, the table is still usable from memory
+            return new GeneIdMapper(built);
+        }
+    }
+
+    /**
+     * Memory-map a cache file
+     * @param cacheFile The cache file
+     * @param sourceStamp Stamp of the current mapping table
+     * @return The mapper over the mapped file, or null if the file is stale, truncated or in another format
+     * @throws IOException If the file cannot be mapped
+     */
+    private static GeneIdMapper mapCache(File cacheFile, long sourceStamp) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return isValidCache(buffer, sourceStamp) ? new GeneIdMapper(buffer) : null;
+        }
+    }
+
+    /**
+     * Check the header of a cache and that its length matches the layout the header describes,
+     * before any offset is decoded from it
+     * @param buffer Mapped cache file
+     * @param sourceStamp Stamp of the current mapping table
+     * @return Whether the cache can be used
+     */
+    private static boolean isValidCache(ByteBuffer buffer, long sourceStamp) {
+        long length = buffer.capacity();
+        if (length < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getLong(4) != sourceStamp) {
+            return false;
+        }
+        int size = buffer.getInt(4 + 8 + 8);
+        int numBuckets = buffer.getInt(4 + 8 + 8 + 4);
+        if (size < 0 || numBuckets < 1) {
+            return false;
+        }
+        long keyOffsetsOffset = HEADER_BYTES + 4L * numBuckets;
+        long valueOffsetsOffset = keyOffsetsOffset + 4L * (size + 1);
+        long charsOffset = valueOffsetsOffset + 4L * (size + 1);
+        if (charsOffset > length) {
+            return false;
+        }
+        int keyChars = buffer.getInt((int) (keyOffsetsOffset + 4L * size));
+        int valueChars = buffer.getInt((int) (valueOffsetsOffset + 4L * size));
+        return keyChars >= 0 && valueChars >= 0 && charsOffset + 2L * keyChars + 2L * valueChars == length;
+    }
+
+    /**
+     * Read the mapping table and build the serialized minimal perfect hash
+     * @param mappingFileName Path to the mapping table
+     * @param fromColName Header name of the source identifier column
+     * @param toColName Header name of the target identifier column
+     * @param sourceStamp Stamp of the table used to detect stale caches
+     * @return Buffer holding the serialized table
+     * @throws IOException If there's an error reading the file
+     */
+    private static ByteBuffer build(String mappingFileName, String fromColName, String toColName,
+                                    long sourceStamp) throws IOException {
+        List<String> keys = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(mappingFileName))) {
+            String headerLine = reader.readLine();
+            if (headerLine == null) {
+                throw new IllegalArgumentException("Empty mapping table: " + mappingFileName);
+            }
+            String[] headers = headerLine.split("\t");
+            int fromIndex = -1;
+            int toIndex = -1;
+            for (int i = 0; i < headers.length; i++) {
+                if (headers[i].trim().equals(fromColName)) {
+                    fromIndex = i;
+                }
+                if (headers[i].trim().equals(toColName)) {
+                    toIndex = i;
+                }
+            }
+            if (fromIndex == -1 || toIndex == -1) {
+                throw new IllegalArgumentException("Could not find specified column names");
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (parts.length <= Math.max(fromIndex, toIndex)) {
+                    continue;
+                }
+                String from = parts[fromIndex].trim();
+                String to = parts[toIndex].trim();
+                if (!from.isEmpty() && !to.isEmpty() && seen.add(from)) {
+                    keys.add(from);
+                    values.add(to);
+                }
+            }
+        }
+
+        int n = keys.size();
+        int numBuckets = Math.max(1, (n + BUCKET_LOAD - 1) / BUCKET_LOAD);
+        long hashSeed = 0x9E3779B97F4A7C15L;
+        int[] slotOfKey;
+        int[] bucketSeeds = new int[numBuckets];
+        while ((slotOfKey = placeKeys(keys, numBuckets, hashSeed, bucketSeeds)) == null) {
+            hashSeed = mix64(hashSeed + 1);
+        }
+
+        int[] keyAtSlot = new int[n];
+        for (int i = 0; i < n; i++) {
+            keyAtSlot[slotOfKey[i]] = i;
+        }
+        long keyChars = 0;
+        long valueChars = 0;
+        for (int i = 0; i < n; i++) {
+            keyChars += keys.get(i).length();
+            valueChars += values.get(i).length();
+        }
+
+        long totalBytes = HEADER_BYTES + 4L * numBuckets + 8L * (n + 1) + 2 * (keyChars + valueChars);
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mapping table is too large: " + mappingFileName);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) totalBytes);
+        buffer.putInt(MAGIC).putLong(sourceStamp).putLong(hashSeed).putInt(n).putInt(numBuckets);
+        for (int seed : bucketSeeds) {
+            buffer.putInt(seed);
+        }
+        int offset = 0;
+        for (int slot = 0; slot < n; slot++) {
+            buffer.putInt(offset);
+            offset += keys.get(keyAtSlot[slot]).length();
+        }
+        buffer.putInt(offset);
+        offset = 0;
+        for (int slot = 0; slot < n; slot++) {
+            buffer.putInt(offset);
+            offset += values.get(keyAtSlot[slot]).length();
+        }
+        buffer.putInt(offset);
+        for (int slot = 0; slot < n; slot++) {
+            String key = keys.get(keyAtSlot[slot]);
+            for (int i = 0; i < key.length(); i++) {
+                buffer.putChar(key.charAt(i));
+            }
+        }
+        for (int slot = 0; slot < n; slot++) {
+            String value = values.get(keyAtSlot[slot]);
+            for (int i = 0; i < value.length(); i++) {
+                buffer.putChar(value.charAt(i));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Place all keys with hash and displace.
+     * Buckets are processed from largest to smallest; a bucket seed d >= 0 puts its keys at
+     * (h1 + d * h2) mod n, and single-key buckets are stored as -(slot + 1) into any free slot.
+     * @param keys Source identifiers
+     * @param numBuckets Number of buckets
+     * @param hashSeed Global hash seed
+     * @param bucketSeeds Receives the seed of each bucket
+     * @return Slot of each key, or null if a bucket could not be placed
+     */
+    private static int[] placeKeys(List<String> keys, int numBuckets, long hashSeed, int[] bucketSeeds) {
+        int n = keys.size();
+        long[] hashes = new long[n];
+        int[] bucketSizes = new int[numBuckets];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(keys.get(i), hashSeed);
+            bucketSizes[bucketOf(hashes[i], numBuckets)]++;
+        }
+
+        // Keys grouped by bucket, via counting sort
+        int[] bucketStarts = new int[numBuckets + 1];
+        for (int b = 0; b < numBuckets; b++) {
+            bucketStarts[b + 1] = bucketStarts[b] + bucketSizes[b];
+        }
+        int[] fill = Arrays.copyOf(bucketStarts, numBuckets);
+        int[] keysByBucket = new int[n];
+        for (int i = 0; i < n; i++) {
+            keysByBucket[fill[bucketOf(hashes[i], numBuckets)]++] = i;
+        }
+
+        Integer[] bucketOrder = new Integer[numBuckets];
+        for (int b = 0; b < numBuckets; b++) {
+            bucketOrder[b] = b;
+        }
+        Arrays.sort(bucketOrder, (a, b) -> Integer.compare(bucketSizes[b], bucketSizes[a]));
+
+        boolean[] taken = new boolean[n];
+        int[] slotOfKey = new int[n];
+        int[] candidate = new int[0];
+        int nextFree = 0;
+
+        for (int b : bucketOrder) {
+            int size = bucketSizes[b];
+            int start = bucketStarts[b];
+            if (size == 0) {
+                bucketSeeds[b] = 0;
+            } else if (size == 1) {
+                while (taken[nextFree]) {
+                    nextFree++;
+                }
+                taken[nextFree] = true;
+                slotOfKey[keysByBucket[start]] = nextFree;
+                bucketSeeds[b] = -(nextFree + 1);
+            } else {
+                if (candidate.length < size) {
+                    candidate = new int[size];
+                }
+                int d = 0;
+                for (; d < MAX_DISPLACEMENT; d++) {
+                    boolean ok = true;
+                    for (int i = 0; i < size && ok; i++) {
+                        int slot = slotOf(hashes[keysByBucket[start + i]], d, n);
+                        if (taken[slot]) {
+                            ok = false;
+                        }
+                        for (int j = 0; j < i && ok; j++) {
+                            if (candidate[j] == slot) {
+                                ok = false;
+                            }
+                        }
+                        candidate[i] = slot;
+                    }
+                    if (ok) {
+                        break;
+                    }
+                }
+                if (d == MAX_DISPLACEMENT) {
+                    return null;
+                }
+                for (int i = 0; i < size; i++) {
+                    taken[candidate[i]] = true;
+                    slotOfKey[keysByBucket[start + i]] = candidate[i];
+                }
+                bucketSeeds[b] = d;
+            }
+        }
+        return slotOfKey;
+    }
+
+    /**
+     * Find the slot of an identifier without allocating
+     * @param id Source identifier
+     * @return Slot index, or -1 if the identifier is not in the table
+     */
+    public int lookup(CharSequence id) {
+        if (size == 0) {
+            return -1;
+        }
+        long h = hash(id, hashSeed);
+        int seed = buffer.getInt(bucketsOffset + 4 * bucketOf(h, numBuckets));
+        int slot = seed < 0 ? -seed - 1 : slotOf(h, seed, size);
+
+        int from = buffer.getInt(keyOffsetsOffset + 4 * slot);
+        int to = buffer.getInt(keyOffsetsOffset + 4 * (slot + 1));
+        if (to - from != id.length()) {
+            return -1;
+        }
+        int position = keyCharsOffset + 2 * from;
+        for (int i = 0; i < id.length(); i++) {
+            if (buffer.getChar(position + 2 * i) != id.charAt(i)) {
+                return -1;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Get the target identifier of a slot; the string is decoded once and then reused
+     * @param slot Slot index from {@link #lookup(CharSequence)}
+     * @return Target identifier
+     */
+    public String getValue(int slot) {
+        String value = decodedValues[slot];
+        if (value == null) {
+            int from = buffer.getInt(valueOffsetsOffset + 4 * slot);
+            int to = buffer.getInt(valueOffsetsOffset + 4 * (slot + 1));
+            char[] chars = new char[to - from];
+            int position = valueCharsOffset + 2 * from;
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = buffer.getChar(position + 2 * i);
+            }
+            value = new String(chars);
+            decodedValues[slot] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Translate an identifier
+     * @param id Source identifier
+     * @return Target identifier, or the input itself when it is not in the table
+     */
+    public String map(String id) {
+        int slot = lookup(id);
+        return slot < 0 ? id : getValue(slot);
+    }
+
+    /**
+     * Get the number of source identifiers
+     * @return Table size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 64-bit hash of a character sequence
+     * @param id Characters to hash
+     * @param seed Hash seed
+     * @return Hash value
+     */
+    private static long hash(CharSequence id, long seed) {
+        long h = seed;
+        for (int i = 0; i < id.length(); i++) {
+            h = (h ^ id.charAt(i)) * 0x100000001B3L;
+        }
+        return mix64(h ^ id.length());
+    }
+
+    /**
+     * Bucket of a hash
+     * @param h Hash value
+     * @param numBuckets Number of buckets
+     * @return Bucket index
+     */
+    private static int bucketOf(long h, int numBuckets) {
+        return (int) ((h >>> 32) % numBuckets);
+    }
+
+    /**
+     * Slot of a hash under a displacement
+     * @param h Hash value
+     * @param displacement Bucket displacement
+     * @param n Number of slots
+     * @return Slot index
+     */
+    private static int slotOf(long h, int displacement, int n) {
+        long h2 = mix64(h) | 1L;
+        return (int) Long.remainderUnsigned(h + displacement * h2, n);
+    }
+
+    /**
+     * 64-bit finalizer of SplitMix64
+     * @param z Input value
+     * @return Mixed value
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
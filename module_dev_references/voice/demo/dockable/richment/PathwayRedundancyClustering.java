@@ -0,0 +1,349 @@
+package demo.dockable.richment;
+
+import demo.dockable.richment.EnrichmentAnalysis.GeneSet;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Redundancy clustering of enriched pathways with MinHash and locality-sensitive hashing.
+ *
+ * Each gene set gets a MinHash signature whose agreement rate estimates the Jaccard index.
+ * The signatures are cut into bands and every band is hashed into buckets, so only gene
+ * sets sharing a bucket become candidate pairs. Candidates whose exact Jaccard index reaches
+ * the threshold are merged with union-find, and the term with the smallest p-value represents
+ * each cluster. The work grows with the number of gene sets times the signature length,
+ * instead of with the number of all pairs.
+ *
+ * Recall is capped in large buckets: a gene set is compared only with the last bucketWindow
+ * members of each of its buckets (DEFAULT_BUCKET_WINDOW unless given), so a redundant pair
+ * further apart than that in every shared bucket is never compared, though the two sets may
+ * still end up in one cluster through other members. Buckets grow large when many sets have
+ * a Jaccard index just below the threshold; a window of 0 or less compares every bucket
+ * member, which is exact for the LSH candidates but quadratic in such buckets.
+ */
+public class PathwayRedundancyClustering {
+
+    /** Default MinHash signature length */
+    public static final int DEFAULT_NUM_HASHES = 128;
+
+    /** Default number of earlier bucket members a gene set is compared with */
+    public static final int DEFAULT_BUCKET_WINDOW = 64;
+
+    /**
+     * A cluster of redundant enriched terms
+     */
+    public static class PathwayCluster {
+        public String representative;
+        public double representativePValue;
+        public List<String> members;
+
+        /**
+         * Constructor for PathwayCluster
+         * @param representative Name of the representative term
+         * @param representativePValue P-value of the representative term
+         * @param members Names of all terms in the cluster, best first
+         */
+        public PathwayCluster(String representative, double representativePValue, List<String> members) {
+            this.representative = representative;
+            this.representativePValue = representativePValue;
+            this.members = members;
+        }
+    }
+
+    /**
+     * Compute MinHash signatures for gene sets
+     * @param geneSets Gene sets to sign
+     * @param numHashes Signature length
+     * @return One signature per gene set
+     */
+    public static int[][] computeSignatures(List<GeneSet> geneSets, int numHashes) {
+        long[] seeds = new long[numHashes];
+        SplittableRandom random = new SplittableRandom(42); // Fixed seed for reproducibility
+        for (int i = 0; i < numHashes; i++) {
+            seeds[i] = random.nextLong();
+        }
+
+        int[][] signatures = new int[geneSets.size()][];
+        for (int s = 0; s < signatures.length; s++) {
+            int[] signature = new int[numHashes];
+            Arrays.fill(signature, Integer.MAX_VALUE);
+            for (String gene : geneSets.get(s).genes) {
+                long base = gene.hashCode() * 0x9E3779B97F4A7C15L;
+                for (int i = 0; i < numHashes; i++) {
+                    int h = (int) (mix64(base ^ seeds[i]) >>> 33);
+                    if (h < signature[i]) {
+                        signature[i] = h;
+                    }
+                }
+            }
+            signatures[s] = signature;
+        }
+        return signatures;
+    }
+
+    /**
+     * Cluster redundant gene sets
+     * @param geneSets Gene sets of the enriched terms
+     * @param pValues P-values of the enriched terms, used to pick representatives
+     * @param jaccardThreshold Minimum Jaccard index for two terms to be redundant
+     * @param numHashes MinHash signature length
+     * @return Clusters sorted by representative p-value
+     */
+    public static List<PathwayCluster> cluster(List<GeneSet> geneSets, double[] pValues,
+                                               double jaccardThreshold, int numHashes) {
+        return cluster(geneSets, pValues, jaccardThreshold, numHashes, DEFAULT_BUCKET_WINDOW);
+    }
+
+    /**
+     * Cluster redundant gene sets
+     * @param geneSets Gene sets of the enriched terms
+     * @param pValues P-values of the enriched terms, used to pick representatives
+     * @param jaccardThreshold Minimum Jaccard index for two terms to be redundant
+     * @param numHashes MinHash signature length
+     * @param bucketWindow Number of earlier bucket members a gene set is compared with; 0 or less compares all
+     * @return Clusters sorted by representative p-value
+     */
+    public static List<PathwayCluster> cluster(List<GeneSet> geneSets, double[] pValues,
+                                               double jaccardThreshold, int numHashes, int bucketWindow) {
+        int size = geneSets.size();
+        int[][] signatures = computeSignatures(geneSets, numHashes);
+        int rows = chooseRowsPerBand(numHashes, jaccardThreshold);
+        int bands = numHashes / rows;
+
+        int[] parent = new int[size];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int band = 0; band < bands; band++) {
+            buckets.clear();
+            for (int s = 0; s < size; s++) {
+                long key = band;
+                for (int r = band * rows; r < (band + 1) * rows; r++) {
+                    key = mix64(key * 31 + signatures[s][r]);
+                }
+                List<Integer> bucket = buckets.computeIfAbsent(key, k -> new ArrayList<>());
+                // Compare with the most recent bucket members only, which keeps large buckets linear
+                int from = bucketWindow > 0 ? Math.max(0, bucket.size() - bucketWindow) : 0;
+                for (int i = from; i < bucket.size(); i++) {
+                    int other = bucket.get(i);
+                    if (find(parent, s) != find(parent, other)
+                            && jaccard(geneSets.get(s).genes, geneSets.get(other).genes) >= jaccardThreshold) {
+                        union(parent, s, other, pValues);
+                    }
+                }
+                bucket.add(s);
+            }
+        }
+
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int s = 0; s < size; s++) {
+            groups.computeIfAbsent(find(parent, s), k -> new ArrayList<>()).add(s);
+        }
+
+        List<PathwayCluster> clusters = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : groups.entrySet()) {
+            List<Integer> memberIndices = entry.getValue();
+            memberIndices.sort(Comparator.comparingDouble(i -> pValues[i]));
+            List<String> members = new ArrayList<>();
+            for (int i : memberIndices) {
+                members.add(geneSets.get(i).name);
+            }
+            int best = memberIndices.get(0);
+            clusters.add(new PathwayCluster(geneSets.get(best).name, pValues[best], members));
+        }
+        clusters.sort(Comparator.comparingDouble(c -> c.representativePValue));
+        return clusters;
+    }
+
+    /**
+     * Cluster the enriched terms of an ORA result
+     * @param results ORA results
+     * @param geneSets All gene sets, used to look up the genes of each term
+     * @param pValueThreshold Only terms with p-value at or below this are clustered
+     * @param jaccardThreshold Minimum Jaccard index for two terms to be redundant
+     * @return Clusters sorted by representative p-value
+     */
+    public static List<PathwayCluster> clusterORAResults(List<EnrichmentAnalysis.EnrichmentResult> results,
+                                                         List<GeneSet> geneSets, double pValueThreshold,
+                                                         double jaccardThreshold) {
+        Map<String, GeneSet> byName = indexByName(geneSets);
+        List<GeneSet> enriched = new ArrayList<>();
+        List<Double> pValues = new ArrayList<>();
+        for (EnrichmentAnalysis.EnrichmentResult result : results) {
+            GeneSet geneSet = byName.get(result.pathwayName);
+            if (geneSet != null && result.pValue <= pValueThreshold) {
+                enriched.add(geneSet);
+                pValues.add(result.pValue);
+            }
+        }
+        return cluster(enriched, toArray(pValues), jaccardThreshold, DEFAULT_NUM_HASHES);
+    }
+
+    /**
+     * Cluster the enriched terms of a GSEA result
+     * @param results GSEA results
+     * @param geneSets All gene sets, used to look up the genes of each term
+     * @param pValueThreshold Only terms with p-value at or below this are clustered
+     * @param jaccardThreshold Minimum Jaccard index for two terms to be redundant
+     * @return Clusters sorted by representative p-value
+     */
+    public static List<PathwayCluster> clusterGSEAResults(List<EnrichmentAnalysis.GSEAResult> results,
+                                                          List<GeneSet> geneSets, double pValueThreshold,
+                                                          double jaccardThreshold) {
+        Map<String, GeneSet> byName = indexByName(geneSets);
+        List<GeneSet> enriched = new ArrayList<>();
+        List<Double> pValues = new ArrayList<>();
+        for (EnrichmentAnalysis.GSEAResult result : results) {
+            GeneSet geneSet = byName.get(result.pathwayName);
+            if (geneSet != null && result.pValue <= pValueThreshold) {
+                enriched.add(geneSet);
+                pValues.add(result.pValue);
+            }
+        }
+        return cluster(enriched, toArray(pValues), jaccardThreshold, DEFAULT_NUM_HASHES);
+    }
+
+    /**
+     * Save clusters to a file, one row per cluster with its representative
+     * @param clusters Clusters to save
+     * @param outputFileName Output file path
+     * @throws IOException If there's an error writing to the file
+     */
+    public static void saveClusters(List<PathwayCluster> clusters, String outputFileName) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(outputFileName))) {
+            writer.println("Cluster\tRepresentative\tRepresentative_P_value\tCluster_size\tMembers");
+            int id = 1;
+            for (PathwayCluster cluster : clusters) {
+                writer.printf("%d\t%s\t%.6e\t%d\t%s%n",
+                        id++,
+                        cluster.representative,
+                        cluster.representativePValue,
+                        cluster.members.size(),
+                        String.join(";", cluster.members));
+            }
+        }
+    }
+
+    /**
+     * Choose the band height so that the LSH threshold (1/b)^(1/r) is closest to the Jaccard threshold
+     * @param numHashes Signature length
+     * @param jaccardThreshold Target Jaccard threshold
+     * @return Rows per band, a divisor of numHashes
+     */
+    static int chooseRowsPerBand(int numHashes, double jaccardThreshold) {
+        int bestRows = 1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int rows = 1; rows <= numHashes; rows++) {
+            if (numHashes % rows != 0) {
+                continue;
+            }
+            int bands = numHashes / rows;
+            double lshThreshold = Math.pow(1.0 / bands, 1.0 / rows);
+            // Prefer a slightly lower LSH threshold: false candidates are removed by the exact check
+            double distance = Math.abs(lshThreshold - 0.9 * jaccardThreshold);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestRows = rows;
+            }
+        }
+        return bestRows;
+    }
+
+    /**
+     * Exact Jaccard index of two gene sets
+     * @param a First gene set
+     * @param b Second gene set
+     * @return Jaccard index
+     */
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.size() > b.size()) {
+            Set<String> tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int intersection = 0;
+        for (String gene : a) {
+            if (b.contains(gene)) {
+                intersection++;
+            }
+        }
+        int union = a.size() + b.size() - intersection;
+        return union == 0 ? 0.0 : (double) intersection / union;
+    }
+
+    /**
+     * Find the root of an element with path halving
+     * @param parent Union-find parent array
+     * @param i Element
+     * @return Root element
+     */
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Merge two clusters, keeping the root with the smaller p-value
+     * @param parent Union-find parent array
+     * @param a First element
+     * @param b Second element
+     * @param pValues P-values of the elements
+     */
+    private static void union(int[] parent, int a, int b, double[] pValues) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (pValues[rootB] < pValues[rootA]) {
+            parent[rootA] = rootB;
+        } else {
+            parent[rootB] = rootA;
+        }
+    }
+
+    /**
+     * 64-bit finalizer of SplitMix64
+     * @param z Input value
+     * @return Mixed value
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Index gene sets by name
+     * @param geneSets Gene sets
+     * @return Map of names to gene sets
+     */
+    private static Map<String, GeneSet> indexByName(List<GeneSet> geneSets) {
+        Map<String, GeneSet> byName = new HashMap<>();
+        for (GeneSet geneSet : geneSets) {
+            byName.put(geneSet.name, geneSet);
+        }
+        return byName;
+    }
+
+    /**
+     * Convert boxed p-values to an array
+     * @param values Boxed values
+     * @return Primitive array
+     */
+    private static double[] toArray(List<Double> values) {
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,431 @@
+package demo.dockable.richment;
+
+import demo.dockable.richment.BatchEnrichmentAnalysis.GeneSetIndex;
+import demo.dockable.richment.BatchEnrichmentAnalysis.KernelBuffers;
+import demo.dockable.richment.BatchEnrichmentAnalysis.RankedList;
+import demo.dockable.richment.EnrichmentAnalysis.GSEAResult;
+import demo.dockable.richment.EnrichmentAnalysis.GeneSet;
+import demo.dockable.sigtest.AdvancedDifferentialExpressionAnalyzer;
+import demo.dockable.sigtest.ExpressionData;
+import demo.dockable.sigtest.StatisticalTest;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * GSEA with sample-label (phenotype) permutations.
+ *
+ * Instead of reading a finished ranking, the gene ranking is computed from the expression
+ * matrix with a {@link StatisticalTest} kernel of the differential expression engine. Each
+ * permutation shuffles the group labels, recomputes the per-gene p-values, re-ranks the genes
+ * and evaluates every gene set, so the null distribution keeps the gene-gene correlation.
+ *
+ * Genes are ranked and weighted as in {@link EnrichmentAnalysis#performGSEA(List, Map, int)}.
+ * The p-value and NES use the standard sign-matched null: the observed score is compared with,
+ * and normalized by, the permutation scores of the same sign.
+ *
+ * Permutations run in fixed chunks on a thread pool. Every permutation has its own seed and the
+ * chunk sums are merged in chunk order, so results do not depend on the number of threads.
+ */
+public class PhenotypePermutationGSEA {
+
+    /** Number of permutations accumulated together before merging */
+    private static final int CHUNK_SIZE = 32;
+
+    private final GeneSetIndex index;
+    private final double[][] expressionMatrix;
+    private final String[] geneNames;
+    private final int[] geneIds;
+    private final int[] group1Indices;
+    private final int[] group2Indices;
+    private final StatisticalTest test;
+
+    /**
+     * Constructor for PhenotypePermutationGSEA
+     * @param geneSets Gene sets to analyze
+     * @param data Expression data, rows are genes and columns are samples
+     * @param group1Indices Column indices of the first group
+     * @param group2Indices Column indices of the second group
+     * @param test Statistical test used to score each gene
+     */
+    public PhenotypePermutationGSEA(List<GeneSet> geneSets, ExpressionData data,
+                                    int[] group1Indices, int[] group2Indices, StatisticalTest test) {
+        this.index = GeneSetIndex.build(geneSets);
+        this.expressionMatrix = data.expressionMatrix;
+        this.geneNames = data.geneNames;
+        this.group1Indices = group1Indices;
+        this.group2Indices = group2Indices;
+        this.test = test;
+
+        this.geneIds = new int[geneNames.length];
+        for (int g = 0; g < geneNames.length; g++) {
+            Integer id = index.geneToId.get(geneNames[g]);
+            geneIds[g] = id == null ? -1 : id;
+        }
+    }
+
+    /**
+     * Per-thread buffers reused by every permutation of a worker
+     */
+    private class RankBuffers {
+        final int[] originalOrder;
+        final int[] sampleOrder;
+        final double[] group1 = new double[group1Indices.length];
+        final double[] group2 = new double[group2Indices.length];
+        final double[] pValues = new double[geneNames.length];
+        final int[] order = new int[geneNames.length];
+        final int[] mergeBuffer = new int[geneNames.length];
+        final RankedList rankedList;
+        final KernelBuffers kernel = new KernelBuffers();
+
+        RankBuffers() {
+            originalOrder = new int[group1Indices.length + group2Indices.length];
+            System.arraycopy(group1Indices, 0, originalOrder, 0, group1Indices.length);
+            System.arraycopy(group2Indices, 0, originalOrder, group1Indices.length, group2Indices.length);
+            sampleOrder = originalOrder.clone();
+            int[] rankOfGene = new int[index.getGeneCount()];
+            rankedList = new RankedList(new String[geneNames.length], new double[geneNames.length], rankOfGene);
+        }
+    }
+
+    /**
+     * Sums of one chunk of permutations, per gene set
+     */
+    private static class NullStatistics {
+        final int[] positiveCount;
+        final int[] negativeCount;
+        final double[] positiveSum;
+        final double[] negativeSum;
+        final int[] positiveExceed;
+        final int[] negativeExceed;
+
+        NullStatistics(int setCount) {
+            positiveCount = new int[setCount];
+            negativeCount = new int[setCount];
+            positiveSum = new double[setCount];
+            negativeSum = new double[setCount];
+            positiveExceed = new int[setCount];
+            negativeExceed = new int[setCount];
+        }
+
+        void add(NullStatistics other) {
+            for (int s = 0; s < positiveCount.length; s++) {
+                positiveCount[s] += other.positiveCount[s];
+                negativeCount[s] += other.negativeCount[s];
+                positiveSum[s] += other.positiveSum[s];
+                negativeSum[s] += other.negativeSum[s];
+                positiveExceed[s] += other.positiveExceed[s];
+                negativeExceed[s] += other.negativeExceed[s];
+            }
+        }
+    }
+
+    /**
+     * Run the analysis
+     * @param permutations Number of sample-label permutations
+     * @param seed Random seed; the same seed gives the same result at any thread count
+     * @param threads Number of worker threads
+     * @return GSEA results sorted by absolute enrichment score, with FDR
+     * @throws IOException If a worker fails
+     */
+    public List<GSEAResult> run(int permutations, long seed, int threads) throws IOException {
+        int setCount = index.getSetCount();
+
+        // Observed ranking with the real labels
+        RankBuffers observedBuffers = new RankBuffers();
+        rankGenes(observedBuffers);
+        double[] observedES = new double[setCount];
+        int[] hitCounts = new int[setCount];
+        scoreAllSets(observedBuffers, observedES, hitCounts);
+
+        int chunks = (permutations + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int workers = Math.max(1, Math.min(threads, chunks));
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        ThreadLocal<RankBuffers> buffers = ThreadLocal.withInitial(RankBuffers::new);
+        NullStatistics total = new NullStatistics(setCount);
+
+        try {
+            List<Future<NullStatistics>> futures = new ArrayList<>();
+            for (int c = 0; c < chunks; c++) {
+                int from = c * CHUNK_SIZE;
+                int to = Math.min(permutations, from + CHUNK_SIZE);
+                futures.add(executor.submit(() -> runChunk(from, to, seed, observedES, hitCounts, buffers.get())));
+            }
+            for (Future<NullStatistics> future : futures) {
+                total.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while permuting sample labels", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error in computation: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Leading edges come from the observed ranking
+        List<GSEAResult> results = new ArrayList<>();
+        RankedList rankedList = observedBuffers.rankedList;
+        KernelBuffers kernel = observedBuffers.kernel;
+        for (int s = 0; s < setCount; s++) {
+            int k = hitCounts[s];
+            if (k == 0) {
+                continue;
+            }
+            double es = observedES[s];
+            double pValue;
+            double normalizedES;
+            if (es >= 0) {
+                pValue = total.positiveCount[s] > 0 ? (double) total.positiveExceed[s] / total.positiveCount[s] : 1.0;
+                double mean = total.positiveCount[s] > 0 ? total.positiveSum[s] / total.positiveCount[s] : 0.0;
+                normalizedES = mean != 0 ? es / mean : es;
+            } else {
+                pValue = total.negativeCount[s] > 0 ? (double) total.negativeExceed[s] / total.negativeCount[s] : 1.0;
+                double mean = total.negativeCount[s] > 0 ? total.negativeSum[s] / total.negativeCount[s] : 0.0;
+                normalizedES = mean != 0 ? es / Math.abs(mean) : es;
+            }
+
+            BatchEnrichmentAnalysis.collectHits(index.setMembers[s], rankedList, kernel);
+            double missStep = geneNames.length > k ? 1.0 / (geneNames.length - k) : 0.0;
+            int peakHits = BatchEnrichmentAnalysis.findLeadingEdgeHits(kernel.hitRanks, k, geneNames.length, missStep);
+            StringJoiner leadingEdge = new StringJoiner(";");
+            for (int i = 0; i < peakHits; i++) {
+                leadingEdge.add(rankedList.rankedGenes[kernel.hitRanks[i]]);
+            }
+
+            results.add(new GSEAResult(index.setNames[s], index.setDescriptions[s], es, normalizedES,
+                    pValue, index.setSizes[s], leadingEdge.toString()));
+        }
+
+        results.sort((r1, r2) -> Double.compare(Math.abs(r2.enrichmentScore), Math.abs(r1.enrichmentScore)));
+        EnrichmentAnalysis.calculateGSEAFDR(results);
+        return results;
+    }
+
+    /**
+     * Run one chunk of permutations
+     * @param from First permutation index, inclusive
+     * @param to Last permutation index, exclusive
+     * @param seed Base random seed
+     * @param observedES Observed enrichment scores
+     * @param hitCounts Number of hits of each set, identical for every ranking
+     * @param buffers Buffers of the calling worker
+     * @return Null statistics of the chunk
+     */
+    private NullStatistics runChunk(int from, int to, long seed, double[] observedES, int[] hitCounts,
+                                    RankBuffers buffers) {
+        int setCount = index.getSetCount();
+        NullStatistics statistics = new NullStatistics(setCount);
+        double[] permES = new double[setCount];
+        int[] permHits = new int[setCount];
+
+        for (int p = from; p < to; p++) {
+            // Start from the real labels so each permutation only depends on its own seed
+            System.arraycopy(buffers.originalOrder, 0, buffers.sampleOrder, 0, buffers.sampleOrder.length);
+            shuffleLabels(buffers.sampleOrder, new SplittableRandom(seed + 0x9E3779B97F4A7C15L * (p + 1)));
+            rankGenes(buffers);
+            scoreAllSets(buffers, permES, permHits);
+
+            for (int s = 0; s < setCount; s++) {
+                if (hitCounts[s] == 0) {
+                    continue;
+                }
+                double es = permES[s];
+                if (es >= 0) {
+                    statistics.positiveCount[s]++;
+                    statistics.positiveSum[s] += es;
+                    if (observedES[s] >= 0 && es >= observedES[s]) {
+                        statistics.positiveExceed[s]++;
+                    }
+                } else {
+                    statistics.negativeCount[s]++;
+                    statistics.negativeSum[s] += es;
+                    if (observedES[s] < 0 && es <= observedES[s]) {
+                        statistics.negativeExceed[s]++;
+                    }
+                }
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Shuffle the pooled sample columns; the first group takes the leading columns
+     * @param sampleOrder Pooled sample columns, shuffled in place
+     * @param random Random number generator of the permutation
+     */
+    private static void shuffleLabels(int[] sampleOrder, SplittableRandom random) {
+        for (int i = sampleOrder.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = sampleOrder[i];
+            sampleOrder[i] = sampleOrder[j];
+            sampleOrder[j] = tmp;
+        }
+    }
+
+    /**
+     * Score every gene with the current labels and rebuild the ranked list in place
+     * @param buffers Buffers holding the current labels and receiving the ranking
+     */
+    private void rankGenes(RankBuffers buffers) {
+        int n1 = group1Indices.length;
+        int[] sampleOrder = buffers.sampleOrder;
+        double[] pValues = buffers.pValues;
+        int[] order = buffers.order;
+
+        for (int g = 0; g < geneNames.length; g++) {
+            double[] row = expressionMatrix[g];
+            for (int i = 0; i < n1; i++) {
+                buffers.group1[i] = row[sampleOrder[i]];
+            }
+            for (int i = 0; i < buffers.group2.length; i++) {
+                buffers.group2[i] = row[sampleOrder[n1 + i]];
+            }
+            double pValue = test.calculatePValue(buffers.group1, buffers.group2);
+            // Undefined statistics (e.g. constant genes) rank last
+            pValues[g] = Double.isNaN(pValue) ? 1.0 : pValue;
+            order[g] = g;
+        }
+        sortByPValue(order, pValues, buffers.mergeBuffer);
+
+        RankedList rankedList = buffers.rankedList;
+        Arrays.fill(rankedList.rankOfGene, -1);
+        for (int r = 0; r < order.length; r++) {
+            int g = order[r];
+            rankedList.rankedGenes[r] = geneNames[g];
+            rankedList.weightAtRank[r] = Math.abs(-Math.log10(pValues[g]));
+            if (geneIds[g] >= 0) {
+                rankedList.rankOfGene[geneIds[g]] = r;
+            }
+        }
+    }
+
+    /**
+     * Compute the enrichment score of every gene set against the current ranking
+     * @param buffers Buffers holding the current ranking
+     * @param es Receives the enrichment score of each set
+     * @param hits Receives the number of hits of each set
+     */
+    private void scoreAllSets(RankBuffers buffers, double[] es, int[] hits) {
+        RankedList rankedList = buffers.rankedList;
+        KernelBuffers kernel = buffers.kernel;
+        int n = geneNames.length;
+        if (kernel.hitRanks.length == 0) {
+            int maxSetSize = 0;
+            for (int[] members : index.setMembers) {
+                maxSetSize = Math.max(maxSetSize, members.length);
+            }
+            kernel.prepare(n, maxSetSize);
+        }
+
+        for (int s = 0; s < index.getSetCount(); s++) {
+            int k = BatchEnrichmentAnalysis.collectHits(index.setMembers[s], rankedList, kernel);
+            hits[s] = k;
+            if (k == 0) {
+                es[s] = 0.0;
+                continue;
+            }
+            double totalWeight = 0.0;
+            for (int i = 0; i < k; i++) {
+                totalWeight += kernel.hitWeights[i];
+            }
+            double missStep = n > k ? 1.0 / (n - k) : 0.0;
+            es[s] = BatchEnrichmentAnalysis.computeES(kernel.hitRanks, kernel.hitWeights, k, n, totalWeight, missStep);
+        }
+    }
+
+    /**
+     * Stable bottom-up merge sort of gene indices by ascending p-value
+     * @param order Gene indices, sorted in place
+     * @param pValues P-values of the genes
+     * @param buffer Scratch array of the same length
+     */
+    static void sortByPValue(int[] order, double[] pValues, int[] buffer) {
+        int n = order.length;
+        int[] source = order;
+        int[] target = buffer;
+        for (int width = 1; width < n; width *= 2) {
+            for (int low = 0; low < n; low += 2 * width) {
+                int mid = Math.min(low + width, n);
+                int high = Math.min(low + 2 * width, n);
+                int i = low;
+                int j = mid;
+                int k = low;
+                while (i < mid && j < high) {
+                    target[k++] = pValues[source[j]] < pValues[source[i]] ? source[j++] : source[i++];
+                }
+                while (i < mid) {
+                    target[k++] = source[i++];
+                }
+                while (j < high) {
+                    target[k++] = source[j++];
+                }
+            }
+            int[] tmp = source;
+            source = target;
+            target = tmp;
+        }
+        if (source != order) {
+            System.arraycopy(source, 0, order, 0, n);
+        }
+    }
+
+    /**
+     * Read the inputs, run the phenotype-permutation GSEA and save the results
+     * @param gmtFileName Path to GMT file
+     * @param expressionFileName Path to the expression matrix, first column is the gene name
+     * @param group1Labels Sample names of the first group
+     * @param group2Labels Sample names of the second group
+     * @param test Statistical test used to score each gene
+     * @param outputFileName Output file path
+     * @param permutations Number of sample-label permutations
+     * @param seed Random seed
+     * @param threads Number of worker threads
+     * @return Number of gene sets reported
+     * @throws IOException If there's an error reading or writing files
+     */
+    public static int performPhenotypeGSEA(String gmtFileName, String expressionFileName,
+                                           String[] group1Labels, String[] group2Labels,
+                                           StatisticalTest test, String outputFileName,
+                                           int permutations, long seed, int threads) throws IOException {
+        List<GeneSet> geneSets = EnrichmentAnalysis.readGMTFile(gmtFileName);
+        ExpressionData data = new AdvancedDifferentialExpressionAnalyzer().readExpressionData(expressionFileName);
+        if (data == null) {
+            throw new IllegalArgumentException("Empty input file, Please check your data");
+        }
+
+        PhenotypePermutationGSEA analysis = new PhenotypePermutationGSEA(geneSets, data,
+                findSampleIndices(data.sampleNames, group1Labels),
+                findSampleIndices(data.sampleNames, group2Labels), test);
+        List<GSEAResult> results = analysis.run(permutations, seed, threads);
+        EnrichmentAnalysis.saveGSEAResults(results, outputFileName);
+        return results.size();
+    }
+
+    /**
+     * Find sample indices in the data
+     * @param sampleNames Array of sample names in the data
+     * @param targetLabels Array of target sample labels to find
+     * @return Array of indices corresponding to the target labels
+     */
+    private static int[] findSampleIndices(String[] sampleNames, String[] targetLabels) {
+        int[] indices = new int[targetLabels.length];
+        for (int i = 0; i < targetLabels.length; i++) {
+            indices[i] = -1;
+            for (int j = 0; j < sampleNames.length; j++) {
+                if (sampleNames[j].equals(targetLabels[i])) {
+                    indices[i] = j;
+                    break;
+                }
+            }
+            if (indices[i] == -1) {
+                throw new IllegalArgumentException("Sample not found: " + targetLabels[i]);
+            }
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,267 @@
+package demo.dockable.richment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Streaming result sink that keeps only the best K enrichment rows.
+ *
+ * Every offered p-value is recorded in a growing {@code double[]}, so the Benjamini-Hochberg
+ * FDR of the retained rows is exact with respect to all tested pathways. The rows themselves
+ * live in a primitive binary heap of size K whose root is the worst retained row; a row is only
+ * materialized when it enters the heap. Memory is K rows plus one double per pathway.
+ *
+ * @param <T> Result row type, e.g. {@link EnrichmentAnalysis.EnrichmentResult}
+ */
+public class TopKResultSink<T> {
+
+    /**
+     * Ordering used to decide which rows are the best
+     */
+    public enum Order {
+        /** Smallest p-value first */
+        P_VALUE,
+        /** Largest absolute score (e.g. NES) first */
+        ABS_SCORE
+    }
+
+    private final int capacity;
+    private final Order order;
+
+    private double[] pValues;
+    private int count;
+
+    // Heap arrays, a min-heap on (key, -sequence): the root is the worst retained row
+    private double[] heapKeys;
+    private int[] heapSequences;
+    private Object[] heapRows;
+    private int heapSize;
+
+    /**
+     * Constructor for TopKResultSink
+     * @param capacity Maximum number of rows to keep (K)
+     * @param order Ordering used to select and sort the rows
+     * @param expectedSize Expected number of offered rows, used to size the p-value array
+     */
+    public TopKResultSink(int capacity, Order order, int expectedSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the top K sink must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.order = order;
+        this.pValues = new double[Math.max(16, expectedSize)];
+        int heapLength = Math.min(capacity, Math.max(16, expectedSize));
+        this.heapKeys = new double[heapLength];
+        this.heapSequences = new int[heapLength];
+        this.heapRows = new Object[heapLength];
+    }
+
+    /**
+     * Offer one tested pathway to the sink
+     * @param pValue P-value of the pathway, always recorded for FDR
+     * @param score Score used by {@link Order#ABS_SCORE}, ignored for {@link Order#P_VALUE}
+     * @param rowFactory Creates the row; only called when the row enters the top K
+     * @return Whether the row was retained
+     */
+    public boolean offer(double pValue, double score, Supplier<T> rowFactory) {
+        if (count == pValues.length) {
+            pValues = Arrays.copyOf(pValues, count * 2);
+        }
+        int sequence = count;
+        pValues[count++] = pValue;
+
+        double key = order == Order.P_VALUE ? -pValue : Math.abs(score);
+        if (heapSize < capacity) {
+            ensureHeapCapacity();
+            int i = heapSize++;
+            heapKeys[i] = key;
+            heapSequences[i] = sequence;
+            heapRows[i] = rowFactory.get();
+            siftUp(i);
+            return true;
+        }
+
+        // Only a strictly better key displaces the root; earlier rows win ties
+        if (key <= heapKeys[0]) {
+            return false;
+        }
+        heapKeys[0] = key;
+        heapSequences[0] = sequence;
+        heapRows[0] = rowFactory.get();
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * Get the number of rows offered so far
+     * @return Number of tested pathways
+     */
+    public int getOfferedCount() {
+        return count;
+    }
+
+    /**
+     * Finish the stream: compute BH FDR over all offered p-values and return the retained rows
+     * @param fdrSetter Receives each retained row with its FDR
+     * @return Retained rows, best first
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> finish(ObjDoubleConsumer<T> fdrSetter) {
+        double[] sortedPValues = Arrays.copyOf(pValues, count);
+        Arrays.sort(sortedPValues);
+        double[] qValues = sortedQValues(sortedPValues);
+
+        Integer[] slots = new Integer[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            slots[i] = i;
+        }
+        Arrays.sort(slots, (a, b) -> compareSlots(b, a));
+
+        List<T> rows = new ArrayList<>(heapSize);
+        for (int slot : slots) {
+            T row = (T) heapRows[slot];
+            double pValue = pValues[heapSequences[slot]];
+            fdrSetter.accept(row, qValues[lastIndexOf(sortedPValues, pValue)]);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Benjamini-Hochberg FDR of p-values in any order, ranking them by p-value; tied p-values share one FDR.
+     * This is the definition used for the retained rows, so full and top K outputs agree.
+     * @param pValues P-values of all tested pathways
+     * @return FDR of every p-value, in the same order
+     */
+    static double[] benjaminiHochberg(double[] pValues) {
+        double[] sortedPValues = pValues.clone();
+        Arrays.sort(sortedPValues);
+        double[] qValues = sortedQValues(sortedPValues);
+        double[] fdr = new double[pValues.length];
+        for (int i = 0; i < pValues.length; i++) {
+            fdr[i] = qValues[lastIndexOf(sortedPValues, pValues[i])];
+        }
+        return fdr;
+    }
+
+    /**
+     * Benjamini-Hochberg on sorted p-values, made monotonic from the tail
+     * @param sortedPValues P-values in ascending order
+     * @return FDR at every position of the sorted p-values
+     */
+    private static double[] sortedQValues(double[] sortedPValues) {
+        int n = sortedPValues.length;
+        double[] qValues = new double[n];
+        for (int i = n - 1; i >= 0; i--) {
+            double fdr = Math.min(1.0, sortedPValues[i] * n / (i + 1));
+            qValues[i] = i == n - 1 ? fdr : Math.min(fdr, qValues[i + 1]);
+        }
+        return qValues;
+    }
+
+    /**
+     * Find the last index of a value in a sorted array, so tied p-values share one FDR
+     * @param sorted Sorted array
+     * @param value Value known to be present
+     * @return Last index holding the value
+     */
+    private static int lastIndexOf(double[] sorted, double value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(sorted[mid], value) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Compare two heap slots; a negative result means slot a is worse than slot b
+     * @param a First slot
+     * @param b Second slot
+     * @return Comparison result
+     */
+    private int compareSlots(int a, int b) {
+        int c = Double.compare(heapKeys[a], heapKeys[b]);
+        if (c != 0) {
+            return c;
+        }
+        // A later row is worse than an earlier one with the same key
+        return Integer.compare(heapSequences[b], heapSequences[a]);
+    }
+
+    /**
+     * Move a slot towards the root while it is worse than its parent
+     * @param i Slot index
+     */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compareSlots(i, parent) >= 0) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    /**
+     * Move a slot towards the leaves while a child is worse
+     * @param i Slot index
+     */
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= heapSize) {
+                break;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < heapSize && compareSlots(right, left) < 0) {
+                worst = right;
+            }
+            if (compareSlots(worst, i) >= 0) {
+                break;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    /**
+     * Swap two heap slots
+     * @param a First slot
+     * @param b Second slot
+     */
+    private void swap(int a, int b) {
+        double key = heapKeys[a];
+        heapKeys[a] = heapKeys[b];
+        heapKeys[b] = key;
+        int sequence = heapSequences[a];
+        heapSequences[a] = heapSequences[b];
+        heapSequences[b] = sequence;
+        Object row = heapRows[a];
+        heapRows[a] = heapRows[b];
+        heapRows[b] = row;
+    }
+
+    /**
+     * Grow the heap arrays when they are full, never beyond the capacity
+     */
+    private void ensureHeapCapacity() {
+        if (heapSize < heapKeys.length) {
+            return;
+        }
+        int length = (int) Math.min(capacity, 2L * heapKeys.length);
+        heapKeys = Arrays.copyOf(heapKeys, length);
+        heapSequences = Arrays.copyOf(heapSequences, length);
+        heapRows = Arrays.copyOf(heapRows, length);
+    }
+}
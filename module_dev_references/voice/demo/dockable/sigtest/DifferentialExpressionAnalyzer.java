@@ -186,6 +186,20 @@ public class DifferentialExpressionAnalyzer {
     public Set<String> getAvailableMethods() {
         return methods.keySet();
     }
+
+    /**
+     * Get a statistical method by name
+     * @param methodName Statistical method name
+     * @return The statistical test
+     * @throws IllegalArgumentException If the method name is unknown
+     */
+    public StatisticalTest getMethod(String methodName) {
+        StatisticalTest method = methods.get(methodName);
+        if (method == null) {
+            throw new IllegalArgumentException("Unknown method name: " + methodName);
+        }
+        return method;
+    }
     
     /**
      * Main method example
@@ -0,0 +1,355 @@
+package demo.floating.work;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Per-column statistics of an alignment: residue counts, Shannon entropy, gap fraction, consensus and conservation.
+ *
+ * Sequences are rows of one byte per residue. Every byte is mapped to a symbol of a small alphabet, nucleotides
+ * or amino acids, chosen from the data, with one symbol for unknown residues and one for gaps; positions past the
+ * end of a shorter row count as gaps. Counting runs in parallel over blocks of columns, each block reading every
+ * row front to back and writing only its own counters.
+ *
+ * The statistics cover the included rows. Editing a row only touches the columns whose symbol changed, and
+ * including or excluding rows adds or subtracts just those rows, so neither recounts the alignment.
+ */
+public class AlignmentColumnStatistics {
+
+    /**
+     * Residue symbols counted per column
+     */
+    public enum Alphabet {
+        /** A, C, G, T (U counted as T) */
+        NUCLEOTIDE("ACGT", 'N'),
+        /** The twenty standard amino acids */
+        PROTEIN("ACDEFGHIKLMNPQRSTVWY", 'X');
+
+        private final String residues;
+        private final char unknown;
+
+        /**
+         * Constructor for Alphabet
+         * @param residues Residue symbols, upper case
+         * @param unknown Character shown for residues outside the alphabet
+         */
+        Alphabet(String residues, char unknown) {
+            this.residues = residues;
+            this.unknown = unknown;
+        }
+    }
+
+    /** Columns per parallel task; a block of counters stays in cache while every row passes over it */
+    private static final int BLOCK_SIZE = 2048;
+
+    private final byte[][] rows;
+    private final boolean[] included;
+    private int includedCount;
+    private int columnCount;
+
+    private final Alphabet alphabet;
+    /** Symbol of every byte value */
+    private final byte[] symbolOf = new byte[256];
+    /** Character shown for every symbol */
+    private final byte[] symbolChars;
+    private final int symbolCount;
+    private final int unknownSymbol;
+    private final int gapSymbol;
+
+    private int[] counts;
+    private float[] entropy;
+    private float[] gapFraction;
+    private byte[] consensus;
+    private boolean[] conserved;
+
+    /**
+     * Constructor for AlignmentColumnStatistics, counting all rows
+     * @param rows Aligned sequences, one byte per residue; the array is referenced, and edits go through
+     *             {@link #updateSequence(int, byte[])}
+     */
+    public AlignmentColumnStatistics(byte[][] rows) {
+        this.rows = rows;
+        this.included = new boolean[rows.length];
+        Arrays.fill(included, true);
+        this.includedCount = rows.length;
+
+        this.alphabet = detectAlphabet(rows);
+        String residues = alphabet.residues;
+        this.symbolCount = residues.length() + 2;
+        this.unknownSymbol = residues.length();
+        this.gapSymbol = residues.length() + 1;
+        this.symbolChars = new byte[symbolCount];
+        Arrays.fill(symbolOf, (byte) unknownSymbol);
+        for (int s = 0; s < residues.length(); s++) {
+            char residue = residues.charAt(s);
+            symbolChars[s] = (byte) residue;
+            symbolOf[residue] = (byte) s;
+            symbolOf[Character.toLowerCase(residue)] = (byte) s;
+        }
+        if (alphabet == Alphabet.NUCLEOTIDE) {
+            symbolOf['U'] = symbolOf['T'];
+            symbolOf['u'] = symbolOf['T'];
+        }
+        symbolChars[unknownSymbol] = (byte) alphabet.unknown;
+        symbolChars[gapSymbol] = '-';
+        symbolOf['-'] = (byte) gapSymbol;
+        symbolOf['.'] = (byte) gapSymbol;
+
+        recount();
+    }
+
+    /**
+     * Use nucleotides if every residue is one, amino acids otherwise
+     * @param rows Aligned sequences
+     * @return Alphabet of the alignment
+     */
+    private static Alphabet detectAlphabet(byte[][] rows) {
+        boolean[] nucleotide = new boolean[256];
+        for (char c : "ACGTUNacgtun-.".toCharArray()) {
+            nucleotide[c] = true;
+        }
+        boolean allNucleotides = Arrays.stream(rows).parallel().allMatch(row -> {
+            for (byte residue : row) {
+                if (!nucleotide[residue & 0xFF]) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        return allNucleotides ? Alphabet.NUCLEOTIDE : Alphabet.PROTEIN;
+    }
+
+    /**
+     * Count all included rows from scratch
+     */
+    private void recount() {
+        int length = 0;
+        for (byte[] row : rows) {
+            length = Math.max(length, row.length);
+        }
+        columnCount = length;
+        counts = new int[columnCount * symbolCount];
+        entropy = new float[columnCount];
+        gapFraction = new float[columnCount];
+        consensus = new byte[columnCount];
+        conserved = new boolean[columnCount];
+
+        int[] rowIndexes = IntStream.range(0, rows.length).filter(i -> included[i]).toArray();
+        int blocks = (columnCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(columnCount, start + BLOCK_SIZE);
+            countRows(rowIndexes, 1, start, end);
+            summarize(start, end);
+        });
+    }
+
+    /**
+     * Add or subtract rows in a range of columns
+     * @param rowIndexes Rows to count
+     * @param sign 1 to add the rows, -1 to subtract them
+     * @param start First column
+     * @param end Column after the last
+     */
+    private void countRows(int[] rowIndexes, int sign, int start, int end) {
+        for (int i : rowIndexes) {
+            byte[] row = rows[i];
+            int residueEnd = Math.min(end, row.length);
+            for (int column = start; column < residueEnd; column++) {
+                counts[column * symbolCount + symbolOf[row[column] & 0xFF]] += sign;
+            }
+            for (int column = Math.max(start, residueEnd); column < end; column++) {
+                counts[column * symbolCount + gapSymbol] += sign;
+            }
+        }
+    }
+
+    /**
+     * Derive entropy, gap fraction, consensus and conservation from the counts of a range of columns
+     * @param start First column
+     * @param end Column after the last
+     */
+    private void summarize(int start, int end) {
+        for (int column = start; column < end; column++) {
+            int base = column * symbolCount;
+            int gaps = counts[base + gapSymbol];
+            int residues = includedCount - gaps;
+            int best = gapSymbol;
+            double sum = 0;
+            for (int s = 0; s < gapSymbol; s++) {
+                int count = counts[base + s];
+                if (count > 0) {
+                    double p = (double) count / residues;
+                    sum -= p * Math.log(p);
+                    if (best == gapSymbol || count > counts[base + best]) {
+                        best = s;
+                    }
+                }
+            }
+            entropy[column] = (float) (sum / Math.log(2));
+            gapFraction[column] = includedCount > 0 ? (float) gaps / includedCount : 0;
+            consensus[column] = symbolChars[best];
+            conserved[column] = includedCount > 0 && best != unknownSymbol && best != gapSymbol
+                    && counts[base + best] == includedCount;
+        }
+    }
+
+    /**
+     * Replace a row, updating only the columns whose symbol changes.
+     * A row longer than the alignment widens it, which recounts everything.
+     * @param row Row index
+     * @param sequence New sequence; it is referenced, not copied
+     */
+    public void updateSequence(int row, byte[] sequence) {
+        byte[] old = rows[row];
+        rows[row] = sequence;
+        if (sequence.length > columnCount) {
+            recount();
+            return;
+        }
+        if (!included[row]) {
+            return;
+        }
+        int length = Math.max(old.length, sequence.length);
+        for (int column = 0; column < length; column++) {
+            int oldSymbol = column < old.length ? symbolOf[old[column] & 0xFF] : gapSymbol;
+            int newSymbol = column < sequence.length ? symbolOf[sequence[column] & 0xFF] : gapSymbol;
+            if (oldSymbol != newSymbol) {
+                counts[column * symbolCount + oldSymbol]--;
+                counts[column * symbolCount + newSymbol]++;
+                summarize(column, column + 1);
+            }
+        }
+    }
+
+    /**
+     * Choose which rows are counted, adding and subtracting only the rows that change
+     * @param included Whether each row is counted
+     */
+    public void setIncluded(boolean[] included) {
+        int[] added = IntStream.range(0, rows.length).filter(i -> included[i] && !this.included[i]).toArray();
+        int[] removed = IntStream.range(0, rows.length).filter(i -> !included[i] && this.included[i]).toArray();
+        if (added.length == 0 && removed.length == 0) {
+            return;
+        }
+        System.arraycopy(included, 0, this.included, 0, rows.length);
+        includedCount += added.length - removed.length;
+        // Past half of the rows, counting the included ones again reads less
+        if (added.length + removed.length > includedCount) {
+            recount();
+            return;
+        }
+        int blocks = (columnCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            int start = block * BLOCK_SIZE;
+            int end = Math.min(columnCount, start + BLOCK_SIZE);
+            countRows(added, 1, start, end);
+            countRows(removed, -1, start, end);
+            summarize(start, end);
+        });
+    }
+
+    /**
+     * Check whether a row is counted
+     * @param row Row index
+     * @return Whether it is included
+     */
+    public boolean isIncluded(int row) {
+        return included[row];
+    }
+
+    /**
+     * Get the number of counted rows
+     * @return Included row count
+     */
+    public int getIncludedCount() {
+        return includedCount;
+    }
+
+    /**
+     * Get the number of columns, the length of the longest row
+     * @return Column count
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Get the alphabet the residues are counted in
+     * @return Nucleotides or amino acids
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Get the number of symbols: the residues of the alphabet, then unknown, then gap
+     * @return Symbol count
+     */
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    /**
+     * Get the character of a symbol
+     * @param symbol Symbol index
+     * @return Residue, the unknown residue or '-'
+     */
+    public char getSymbol(int symbol) {
+        return (char) symbolChars[symbol];
+    }
+
+    /**
+     * Get how many included rows have a symbol in a column
+     * @param column Column index
+     * @param symbol Symbol index
+     * @return Count
+     */
+    public int getCount(int column, int symbol) {
+        return counts[column * symbolCount + symbol];
+    }
+
+    /**
+     * Get the Shannon entropy of the residues in a column, ignoring gaps
+     * @param column Column index
+     * @return Entropy in bits, from 0 up to the log2 of the number of residue symbols
+     */
+    public float getEntropy(int column) {
+        return entropy[column];
+    }
+
+    /**
+     * Get the highest possible entropy, of a column with every residue symbol equally often
+     * @return Entropy in bits
+     */
+    public double getMaxEntropy() {
+        return Math.log(gapSymbol) / Math.log(2);
+    }
+
+    /**
+     * Get the fraction of included rows with a gap in a column
+     * @param column Column index
+     * @return Gap fraction from 0 to 1
+     */
+    public float getGapFraction(int column) {
+        return gapFraction[column];
+    }
+
+    /**
+     * Get the most frequent residue of a column
+     * @param column Column index
+     * @return Residue character, '-' if the column holds only gaps
+     */
+    public byte getConsensus(int column) {
+        return consensus[column];
+    }
+
+    /**
+     * Check whether every included row has the same known residue in a column
+     * @param column Column index
+     * @return Whether the column is conserved
+     */
+    public boolean isConserved(int column) {
+        return conserved[column];
+    }
+}
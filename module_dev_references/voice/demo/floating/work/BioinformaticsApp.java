@@ -7,13 +7,15 @@ import java.beans.PropertyVetoException;
 /**
  * Main application panel for bioinformatics tools.
  * This class manages multiple internal frames for different bioinformatics visualizations
- * including multiple sequence alignment, MA plots, heatmaps, and image displays.
+ * including multiple sequence alignment, MA plots, volcano plots, heatmaps, and image displays.
  */
 public class BioinformaticsApp extends JPanel {
     private JDesktopPane desktopPane;
     private MSAInternalFrame msaFrame;
     private MAPlotInternalFrame maPlotFrame;
+    private VolcanoPlotInternalFrame volcanoPlotFrame;
     private HeatmapInternalFrame heatmapFrame;
+    private LargeHeatmapInternalFrame largeHeatmapFrame;
     private ImageInternalFrame imageFrame;
     
     /**
@@ -41,8 +43,10 @@ public class BioinformaticsApp extends JPanel {
         SwingUtilities.invokeLater(() -> {
             showMSAFrame();
             showMAPlotFrame();
+            showVolcanoPlotFrame();
             showHeatmapFrame();
             showImageFrame();
+            showLargeHeatmapFrame();
         });
 
     }
@@ -91,6 +95,24 @@ public class BioinformaticsApp extends JPanel {
         }
     }
     
+    /**
+     * Show the Volcano Plot frame
+     */
+    private void showVolcanoPlotFrame() {
+        if (volcanoPlotFrame == null || volcanoPlotFrame.isClosed()) {
+            volcanoPlotFrame = new VolcanoPlotInternalFrame();
+            desktopPane.add(volcanoPlotFrame);
+            volcanoPlotFrame.setLocation(200, 200);
+        }
+        volcanoPlotFrame.setVisible(true);
+        volcanoPlotFrame.toFront();
+        try {
+            volcanoPlotFrame.setSelected(true);
+        } catch (java.beans.PropertyVetoException e) {
+            // Ignore
+        }
+    }
+    
     /**
      * Show the Heatmap frame
      */
@@ -127,6 +149,24 @@ public class BioinformaticsApp extends JPanel {
         }
     }
     
+    /**
+     * Show the Large Heatmap frame
+     */
+    private void showLargeHeatmapFrame() {
+        if (largeHeatmapFrame == null || largeHeatmapFrame.isClosed()) {
+            largeHeatmapFrame = new LargeHeatmapInternalFrame();
+            desktopPane.add(largeHeatmapFrame);
+            largeHeatmapFrame.setLocation(170, 170);
+        }
+        largeHeatmapFrame.setVisible(true);
+        largeHeatmapFrame.toFront();
+        try {
+            largeHeatmapFrame.setSelected(true);
+        } catch (java.beans.PropertyVetoException e) {
+            // Ignore
+        }
+    }
+    
     /**
      * Arrange windows in a grid layout
      */
@@ -134,10 +174,12 @@ public class BioinformaticsApp extends JPanel {
         JInternalFrame[] frames = desktopPane.getAllFrames();
         if (frames.length == 0) return;
         
+        // Two columns, as many rows as needed
+        int rows = (frames.length + 1) / 2;
         int frameWidth = desktopPane.getWidth() / 2;
-        int frameHeight = desktopPane.getHeight() / 2;
+        int frameHeight = desktopPane.getHeight() / Math.max(2, rows);
         
-        for (int i = 0; i < frames.length && i < 4; i++) {
+        for (int i = 0; i < frames.length; i++) {
             int x = (i % 2) * frameWidth;
             int y = (i / 2) * frameHeight;
             frames[i].setBounds(x, y, frameWidth, frameHeight);
@@ -0,0 +1,158 @@
+package demo.floating.work;
+
+import java.awt.Color;
+
+/**
+ * Precomputed color map from a value range to packed ARGB colors.
+ *
+ * The palette is sampled once into a table of 256 or 1024 entries, so mapping a value is one
+ * multiplication and one array read, without normalizing into floats or allocating a Color.
+ * Heatmaps write the packed ints straight into the DataBufferInt of a BufferedImage.
+ * Values outside the range are clamped; NaN gets its own color.
+ */
+public final class ColorLookupTable {
+
+    /**
+     * Color palettes, given by evenly spaced anchor colors that are linearly interpolated
+     */
+    public enum Palette {
+        /** Diverging: blue (low) - white (middle) - red (high), as the heatmaps have always drawn */
+        BLUE_WHITE_RED(new int[]{0x0000FF, 0xFFFFFF, 0xFF0000}),
+        /** Diverging, colorblind-safe: purple - white - green */
+        PURPLE_WHITE_GREEN(new int[]{0x762A83, 0xF7F7F7, 0x1B7837}),
+        /** Sequential: white to red */
+        WHITE_RED(new int[]{0xFFFFFF, 0xFF0000}),
+        /** Sequential, perceptually uniform */
+        VIRIDIS(new int[]{0x440154, 0x482878, 0x3E4A89, 0x31688E, 0x26828E, 0x1F9E89, 0x35B779, 0x6DCD59, 0xB4DE2C, 0xFDE725});
+
+        private final int[] anchors;
+
+        /**
+         * Constructor for Palette
+         * @param anchors RGB anchor colors from low to high
+         */
+        Palette(int[] anchors) {
+            this.anchors = anchors;
+        }
+    }
+
+    /** Table size for drawing: more levels than a display can show */
+    public static final int DEFAULT_SIZE = 1024;
+    private static final int NAN_COLOR = 0xFF808080;
+
+    private final int[] table;
+    private final double minValue;
+    private final double maxValue;
+    private final double scale;
+
+    /**
+     * Constructor for ColorLookupTable
+     * @param palette Palette to sample
+     * @param size Number of entries, e.g. 256 or 1024
+     * @param minValue Value mapped to the first entry
+     * @param maxValue Value mapped to the last entry
+     */
+    public ColorLookupTable(Palette palette, int size, double minValue, double maxValue) {
+        if (size < 2) {
+            throw new IllegalArgumentException("A color lookup table needs at least 2 entries");
+        }
+        this.table = new int[size];
+        int[] anchors = palette.anchors;
+        for (int k = 0; k < size; k++) {
+            double position = (double) k / (size - 1) * (anchors.length - 1);
+            int segment = Math.min(anchors.length - 2, (int) position);
+            double t = position - segment;
+            int from = anchors[segment];
+            int to = anchors[segment + 1];
+            int red = interpolate(from >> 16 & 0xFF, to >> 16 & 0xFF, t);
+            int green = interpolate(from >> 8 & 0xFF, to >> 8 & 0xFF, t);
+            int blue = interpolate(from & 0xFF, to & 0xFF, t);
+            table[k] = 0xFF000000 | red << 16 | green << 8 | blue;
+        }
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        // A flat range maps everything to the first entry
+        this.scale = maxValue > minValue ? size / (maxValue - minValue) : 0;
+    }
+
+    /**
+     * Interpolate one channel
+     * @param from Channel at t = 0
+     * @param to Channel at t = 1
+     * @param t Position in [0, 1]
+     * @return Rounded channel value
+     */
+    private static int interpolate(int from, int to, double t) {
+        return (int) Math.round(from + (to - from) * t);
+    }
+
+    /**
+     * Get the packed color of a value
+     * @param value Value to map
+     * @return ARGB color, opaque
+     */
+    public int argb(double value) {
+        double position = (value - minValue) * scale;
+        if (position >= 0) {
+            return table[position < table.length ? (int) position : table.length - 1];
+        }
+        // Below the range, or NaN
+        return value != value ? NAN_COLOR : table[0];
+    }
+
+    /**
+     * Map a run of values into packed colors
+     * @param values Values to map
+     * @param from First value
+     * @param count Number of values
+     * @param pixels Destination, e.g. the DataBufferInt of an image
+     * @param offset First destination index
+     */
+    public void fill(double[] values, int from, int count, int[] pixels, int offset) {
+        for (int k = 0; k < count; k++) {
+            pixels[offset + k] = argb(values[from + k]);
+        }
+    }
+
+    /**
+     * Get the color of a value as an AWT color, for the few places that need one
+     * @param value Value to map
+     * @return Color
+     */
+    public Color color(double value) {
+        return new Color(argb(value), true);
+    }
+
+    /**
+     * Get the packed color of an entry
+     * @param index Entry index
+     * @return ARGB color
+     */
+    public int entry(int index) {
+        return table[index];
+    }
+
+    /**
+     * Get the number of entries
+     * @return Table size
+     */
+    public int size() {
+        return table.length;
+    }
+
+    /**
+     * Get the value mapped to the first entry
+     * @return Low end of the range
+     */
+    public double getMinValue() {
+        return minValue;
+    }
+
+    /**
+     * Get the value mapped to the last entry
+     * @return High end of the range
+     */
+    public double getMaxValue() {
+        return maxValue;
+    }
+}
@@ -0,0 +1,126 @@
+package demo.floating.work;
+
+/**
+ * Result of a hierarchical clustering: the binary tree of merges and the leaf order it induces.
+ *
+ * Nodes 0 to n - 1 are the leaves, node n + k is the cluster made by merge k. Merges are in
+ * ascending height, each joining two earlier nodes, and the last one is the root.
+ */
+public class Dendrogram {
+    private final int leafCount;
+    private final int[] left;
+    private final int[] right;
+    private final double[] heights;
+    private final int[] leafOrder;
+    /** Position of every node along the leaf axis, leaves at 0, 1, 2... in leaf order */
+    private final double[] positions;
+
+    /**
+     * Constructor for Dendrogram
+     * @param leafCount Number of leaves
+     * @param left First node of every merge
+     * @param right Second node of every merge
+     * @param heights Height of every merge, ascending
+     */
+    public Dendrogram(int leafCount, int[] left, int[] right, double[] heights) {
+        this.leafCount = leafCount;
+        this.left = left;
+        this.right = right;
+        this.heights = heights;
+        this.leafOrder = new int[leafCount];
+        this.positions = new double[leafCount + heights.length];
+
+        // Leaves from left to right by a depth-first walk from the root, without recursion
+        int count = 0;
+        if (leafCount == 1) {
+            leafOrder[count++] = 0;
+        } else if (leafCount > 1) {
+            int[] stack = new int[leafCount];
+            int top = 0;
+            stack[top++] = leafCount + heights.length - 1;
+            while (top > 0) {
+                int node = stack[--top];
+                if (node < leafCount) {
+                    leafOrder[count++] = node;
+                } else {
+                    stack[top++] = right[node - leafCount];
+                    stack[top++] = left[node - leafCount];
+                }
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            positions[leafOrder[k]] = k;
+        }
+        for (int k = 0; k < heights.length; k++) {
+            positions[leafCount + k] = (positions[left[k]] + positions[right[k]]) / 2;
+        }
+    }
+
+    /**
+     * Get the number of leaves
+     * @return Leaf count
+     */
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * Get the number of merges
+     * @return Merge count, one less than the leaves
+     */
+    public int getMergeCount() {
+        return heights.length;
+    }
+
+    /**
+     * Get the first node of a merge
+     * @param merge Merge index
+     * @return Node
+     */
+    public int getLeft(int merge) {
+        return left[merge];
+    }
+
+    /**
+     * Get the second node of a merge
+     * @param merge Merge index
+     * @return Node
+     */
+    public int getRight(int merge) {
+        return right[merge];
+    }
+
+    /**
+     * Get the height of a node
+     * @param node Node
+     * @return Merge height, 0 for a leaf
+     */
+    public double getHeight(int node) {
+        return node < leafCount ? 0 : heights[node - leafCount];
+    }
+
+    /**
+     * Get the height of the root
+     * @return Largest merge height, 0 without merges
+     */
+    public double getMaxHeight() {
+        return heights.length == 0 ? 0 : heights[heights.length - 1];
+    }
+
+    /**
+     * Get the position of a node along the leaf axis
+     * @param node Node
+     * @return Leaf rank for a leaf, the middle of its two children for a merge
+     */
+    public double getPosition(int node) {
+        return positions[node];
+    }
+
+    /**
+     * Get the leaves in drawing order
+     * @return Leaf order; the array is shared, not copied
+     */
+    public int[] getLeafOrder() {
+        return leafOrder;
+    }
+}
@@ -2,6 +2,7 @@ package demo.floating.work;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Internal frame for Heatmap visualization.
@@ -10,6 +11,9 @@ import java.awt.*;
 public class HeatmapInternalFrame extends JInternalFrame {
     private HeatmapPanel heatmapPanel;
     private JToolBar toolBar;
+    private JComboBox<HierarchicalClustering.Linkage> linkageComboBox;
+    private JComboBox<PackedDistanceMatrix.Metric> metricComboBox;
+    private JButton clusterButton;
     
     /**
      * Constructor for HeatmapInternalFrame
@@ -40,7 +44,38 @@ public class HeatmapInternalFrame extends JInternalFrame {
         refreshButton.setFont(MyFontConfig.getDefaultFont());
         refreshButton.addActionListener(e -> refreshData());
         
+        JButton zoomInButton = new JButton("Zoom In");
+        zoomInButton.setFont(MyFontConfig.getDefaultFont());
+        zoomInButton.addActionListener(e -> heatmapPanel.setCellSize(Math.min(80, heatmapPanel.getCellSize() * 2)));
+        
+        JButton zoomOutButton = new JButton("Zoom Out");
+        zoomOutButton.setFont(MyFontConfig.getDefaultFont());
+        zoomOutButton.addActionListener(e -> heatmapPanel.setCellSize(Math.max(1, heatmapPanel.getCellSize() / 2)));
+        
+        JComboBox<ColorLookupTable.Palette> paletteComboBox = new JComboBox<>(ColorLookupTable.Palette.values());
+        paletteComboBox.setFont(MyFontConfig.getDefaultFont());
+        paletteComboBox.addActionListener(e ->
+                heatmapPanel.setPalette((ColorLookupTable.Palette) paletteComboBox.getSelectedItem()));
+        
+        linkageComboBox = new JComboBox<>(HierarchicalClustering.Linkage.values());
+        linkageComboBox.setFont(MyFontConfig.getDefaultFont());
+        
+        metricComboBox = new JComboBox<>(new PackedDistanceMatrix.Metric[]{
+                PackedDistanceMatrix.Metric.EUCLIDEAN, PackedDistanceMatrix.Metric.CORRELATION});
+        metricComboBox.setFont(MyFontConfig.getDefaultFont());
+        
+        clusterButton = new JButton("Cluster");
+        clusterButton.setFont(MyFontConfig.getDefaultFont());
+        clusterButton.addActionListener(e -> clusterData());
+        
         toolBar.add(refreshButton);
+        toolBar.add(zoomInButton);
+        toolBar.add(zoomOutButton);
+        toolBar.add(paletteComboBox);
+        toolBar.addSeparator();
+        toolBar.add(linkageComboBox);
+        toolBar.add(metricComboBox);
+        toolBar.add(clusterButton);
     }
     
     /**
@@ -49,6 +84,7 @@ public class HeatmapInternalFrame extends JInternalFrame {
     private void setupLayout() {
         setLayout(new BorderLayout());
         add(new JScrollPane(heatmapPanel), BorderLayout.CENTER);
+        add(heatmapPanel.getOverview(), BorderLayout.EAST);
         add(toolBar, BorderLayout.SOUTH);
     }
     
@@ -81,4 +117,40 @@ public class HeatmapInternalFrame extends JInternalFrame {
         heatmapPanel.setData(data, rowLabels, colLabels);
         heatmapPanel.repaint();
     }
+    
+    /**
+     * Cluster the rows and the columns of the shown data in the background, then reorder the heatmap
+     */
+    private void clusterData() {
+        double[][] data = heatmapPanel.getData();
+        if (data == null || data.length == 0) {
+            return;
+        }
+        HierarchicalClustering clustering = new HierarchicalClustering(
+                (HierarchicalClustering.Linkage) linkageComboBox.getSelectedItem(),
+                (PackedDistanceMatrix.Metric) metricComboBox.getSelectedItem());
+        clusterButton.setEnabled(false);
+        new SwingWorker<Dendrogram[], Void>() {
+            @Override
+            protected Dendrogram[] doInBackground() {
+                return new Dendrogram[]{clustering.clusterRows(data), clustering.clusterColumns(data)};
+            }
+            
+            @Override
+            protected void done() {
+                clusterButton.setEnabled(true);
+                try {
+                    Dendrogram[] dendrograms = get();
+                    // The data may have been refreshed meanwhile
+                    if (heatmapPanel.getData() == data) {
+                        heatmapPanel.setClustering(dendrograms[0], dendrograms[1]);
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(HeatmapInternalFrame.this, "Clustering failed: " + cause.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
 }
\ No newline at end of file
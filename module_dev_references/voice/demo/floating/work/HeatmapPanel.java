@@ -4,12 +4,26 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 
 /**
  * Heatmap panel - for displaying gene expression or other numerical data heatmaps.
  * This panel provides visualization capabilities for 2D numerical data with interactive features
  * such as tooltips and color scaling.
+ *
+ * The cell grid is rendered into image tiles that are cached until the data or the cell size changes,
+ * so a repaint only copies tiles. Moving the mouse repaints the old and the new tooltip rectangles.
+ * Tiles, the color scale and the legend are filled as packed ints from a {@link ColorLookupTable}.
+ * Rows and columns can be reordered by a hierarchical clustering, whose dendrograms are drawn
+ * on the left of the row labels and above the column labels.
+ * An {@link OverviewMinimap} of the whole grid, see {@link #getOverview()}, is rebuilt in the background
+ * when the data, the order or the palette changes.
  */
 public class HeatmapPanel extends JPanel implements MouseMotionListener {
     private double[][] data;
@@ -17,8 +31,39 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
     private String[] columnLabels;
     private double minValue, maxValue;
     private final int MARGIN = 60;
-    private final int CELL_SIZE = 20;
+    private final int DEFAULT_CELL_SIZE = 20;
+    private final int TILE_SIZE = 256;
+    // 64 tiles of 256 x 256 pixels, 16 MB, cover several screens
+    private final int MAX_CACHED_TILES = 64;
+    // Below this size the cell borders would hide the cells
+    private final int MIN_BORDERED_CELL_SIZE = 4;
+    private final int DENDROGRAM_SIZE = 80;
+    private final int BORDER_COLOR = Color.LIGHT_GRAY.getRGB();
+    private final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+    private final Font SCALE_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 9);
+    private final Font LEGEND_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+    private final Color TOOLTIP_BACKGROUND = new Color(255, 255, 200, 230);
+    private int cellSize = DEFAULT_CELL_SIZE;
+    private Dendrogram rowDendrogram;
+    private Dendrogram columnDendrogram;
+    /** Data row and data column shown at every position */
+    private int[] rowOrder = new int[0];
+    private int[] columnOrder = new int[0];
+    private ColorLookupTable.Palette palette = ColorLookupTable.Palette.BLUE_WHITE_RED;
+    private ColorLookupTable colorTable;
+    private BufferedImage colorScaleImage;
+    private BufferedImage legendBarImage;
     private Point mousePosition;
+    private Rectangle tooltipBounds;
+    private final OverviewMinimap overview = new OverviewMinimap(256, 512, new Dimension(120, 200));
+    
+    /** Rendered tiles of the cell grid by (tile row, tile column), least recently used first */
+    private final Map<Long, BufferedImage> tileCache = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
     
     /**
      * Constructor for HeatmapPanel
@@ -36,6 +81,40 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
         setLayout(new BorderLayout());
         setPreferredSize(new Dimension(400, 300));
         setBackground(Color.WHITE);
+        overview.setView(this, this::getCellGridBounds);
+    }
+    
+    /**
+     * Get the overview of the whole grid, to be placed beside the scroll pane of this panel
+     * @return Overview component
+     */
+    public OverviewMinimap getOverview() {
+        return overview;
+    }
+    
+    /**
+     * Rebuild the overview from the current data, order and palette
+     */
+    private void updateOverview() {
+        double[][] overviewData = data;
+        int[] overviewRows = rowOrder;
+        int[] overviewColumns = columnOrder;
+        ColorLookupTable overviewColors = colorTable;
+        int rows = overviewData == null ? 0 : overviewData.length;
+        int columns = rows == 0 ? 0 : overviewData[0].length;
+        overview.setData(rows, columns,
+                (row, column) -> overviewColors.argb(overviewData[overviewRows[row]][overviewColumns[column]]));
+    }
+    
+    /**
+     * Get the rectangle covered by the cells, for the overview
+     * @return Cell grid bounds, or null without data
+     */
+    private Rectangle getCellGridBounds() {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        return new Rectangle(getGridX(), getGridY(), data[0].length * cellSize, data.length * cellSize);
     }
     
     /**
@@ -60,6 +139,119 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
             }
         }
         
+        setClustering(null, null);
+    }
+    
+    /**
+     * Get the data shown
+     * @return 2D data array, in the original order
+     */
+    public double[][] getData() {
+        return data;
+    }
+    
+    /**
+     * Order the rows and columns by a clustering of the current data and draw its dendrograms
+     * @param rowDendrogram Clustering of the rows, or null for the original row order
+     * @param columnDendrogram Clustering of the columns, or null for the original column order
+     */
+    public void setClustering(Dendrogram rowDendrogram, Dendrogram columnDendrogram) {
+        this.rowDendrogram = rowDendrogram;
+        this.columnDendrogram = columnDendrogram;
+        int rows = data == null ? 0 : data.length;
+        int columns = rows == 0 ? 0 : data[0].length;
+        rowOrder = rowDendrogram != null ? rowDendrogram.getLeafOrder() : identityOrder(rows);
+        columnOrder = columnDendrogram != null ? columnDendrogram.getLeafOrder() : identityOrder(columns);
+        dataChanged();
+        updateOverview();
+    }
+    
+    /**
+     * Create the original order
+     * @param length Number of rows or columns
+     * @return 0, 1, 2...
+     */
+    private static int[] identityOrder(int length) {
+        int[] order = new int[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+    
+    /**
+     * Get the x coordinate of the cell grid
+     * @return Left edge, after the row dendrogram and the row labels
+     */
+    private int getGridX() {
+        return MARGIN + 80 + (rowDendrogram != null ? DENDROGRAM_SIZE : 0);
+    }
+    
+    /**
+     * Get the y coordinate of the cell grid
+     * @return Top edge, after the column dendrogram and the column labels
+     */
+    private int getGridY() {
+        return MARGIN + (columnDendrogram != null ? DENDROGRAM_SIZE : 0);
+    }
+    
+    /**
+     * Set the size of a cell, which zooms the heatmap
+     * @param cellSize Cell width and height in pixels, at least 1
+     */
+    public void setCellSize(int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+        dataChanged();
+    }
+    
+    /**
+     * Get the size of a cell
+     * @return Cell width and height in pixels
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+    
+    /**
+     * Set the color palette
+     * @param palette Palette of the cells and the color scale
+     */
+    public void setPalette(ColorLookupTable.Palette palette) {
+        this.palette = palette;
+        dataChanged();
+        updateOverview();
+    }
+    
+    /**
+     * Drop the rendered tiles and resize the panel to the grid after the data, the cell size or the palette changed
+     */
+    private void dataChanged() {
+        tileCache.clear();
+        colorTable = new ColorLookupTable(palette, ColorLookupTable.DEFAULT_SIZE, minValue, maxValue);
+        // Color scale, maximum at the top
+        colorScaleImage = new BufferedImage(15, 100, BufferedImage.TYPE_INT_RGB);
+        int[] scalePixels = ((DataBufferInt) colorScaleImage.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < 100; i++) {
+            Arrays.fill(scalePixels, i * 15, (i + 1) * 15,
+                    colorTable.argb(minValue + (maxValue - minValue) * (1.0 - i / 100.0)));
+        }
+        // Legend bar, minimum on the left
+        legendBarImage = new BufferedImage(80, 10, BufferedImage.TYPE_INT_RGB);
+        int[] legendPixels = ((DataBufferInt) legendBarImage.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < 80; i++) {
+            int color = colorTable.argb(minValue + i / 80.0 * (maxValue - minValue));
+            for (int y = 0; y < 10; y++) {
+                legendPixels[y * 80 + i] = color;
+            }
+        }
+        tooltipBounds = computeTooltipBounds();
+        if (data != null && data.length > 0) {
+            // Row labels on the left, color scale on the right
+            int width = getGridX() + data[0].length * cellSize + 80;
+            int height = getGridY() + data.length * cellSize + MARGIN;
+            setPreferredSize(new Dimension(Math.max(400, width), Math.max(300, height)));
+            revalidate();
+        }
         repaint();
     }
     
@@ -114,7 +306,7 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
             }
         }
         
-        repaint();
+        setClustering(null, null);
     }
     
     @Override
@@ -129,10 +321,20 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
             return;
         }
         
-        drawHeatmap(g2d);
-        drawLabels(g2d);
-        drawColorScale(g2d);
-        drawLegend(g2d);
+        // Only what intersects the clip is drawn, so a tooltip repaint touches a few tiles
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        drawHeatmap(g2d, clip);
+        drawLabels(g2d, clip);
+        drawDendrograms(g2d, clip);
+        if (clip.intersects(getWidth() - 40, MARGIN, 40, 110)) {
+            drawColorScale(g2d);
+        }
+        if (clip.intersects(getWidth() - 125, 15, 111, 61)) {
+            drawLegend(g2d);
+        }
         drawTooltip(g2d);
         
         g2d.dispose();
@@ -152,88 +354,206 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
     }
     
     /**
-     * Draw the main heatmap
+     * Draw the main heatmap from the cached tiles
      * @param g2d Graphics2D object for drawing
+     * @param clip Area to repaint
      */
-    private void drawHeatmap(Graphics2D g2d) {
-        int startX = MARGIN + 80; // Space for row labels
-        int startY = MARGIN;
-        
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[i].length; j++) {
-                int x = startX + j * CELL_SIZE;
-                int y = startY + i * CELL_SIZE;
-                
-                // Calculate color
-                Color cellColor = getColorForValue(data[i][j]);
-                g2d.setColor(cellColor);
-                g2d.fillRect(x, y, CELL_SIZE, CELL_SIZE);
-                
-                // Draw border
-                g2d.setColor(Color.LIGHT_GRAY);
-                g2d.drawRect(x, y, CELL_SIZE, CELL_SIZE);
+    private void drawHeatmap(Graphics2D g2d, Rectangle clip) {
+        int startX = getGridX(); // Space for row labels
+        int startY = getGridY();
+        if (data.length == 0) {
+            return;
+        }
+        int gridWidth = getGridWidth();
+        int gridHeight = getGridHeight();
+        
+        if (clip.x + clip.width < startX || clip.y + clip.height < startY) {
+            return;
+        }
+        int firstTileColumn = Math.max(0, (clip.x - startX) / TILE_SIZE);
+        int lastTileColumn = Math.min((gridWidth - 1) / TILE_SIZE, (clip.x + clip.width - startX) / TILE_SIZE);
+        int firstTileRow = Math.max(0, (clip.y - startY) / TILE_SIZE);
+        int lastTileRow = Math.min((gridHeight - 1) / TILE_SIZE, (clip.y + clip.height - startY) / TILE_SIZE);
+        
+        for (int tileRow = firstTileRow; tileRow <= lastTileRow; tileRow++) {
+            for (int tileColumn = firstTileColumn; tileColumn <= lastTileColumn; tileColumn++) {
+                long key = ((long) tileRow << 32) | tileColumn;
+                BufferedImage tile = tileCache.get(key);
+                if (tile == null) {
+                    tile = renderTile(tileRow, tileColumn);
+                    tileCache.put(key, tile);
+                }
+                g2d.drawImage(tile, startX + tileColumn * TILE_SIZE, startY + tileRow * TILE_SIZE, null);
             }
         }
     }
     
     /**
-     * Calculate color based on value
-     * @param value Data value to map to a color
-     * @return Color corresponding to the value
+     * Get the width of the cell grid
+     * @return Width in pixels, with the last border line sticking out one pixel
+     */
+    private int getGridWidth() {
+        return data[0].length * cellSize + (cellSize >= MIN_BORDERED_CELL_SIZE ? 1 : 0);
+    }
+    
+    /**
+     * Get the height of the cell grid
+     * @return Height in pixels, with the last border line sticking out one pixel
+     */
+    private int getGridHeight() {
+        return data.length * cellSize + (cellSize >= MIN_BORDERED_CELL_SIZE ? 1 : 0);
+    }
+    
+    /**
+     * Render the cells that fall in one tile of the grid, writing packed colors into the tile raster.
+     * One pixel line is filled per cell row, then copied for the other lines of the row.
+     * @param tileRow Tile row
+     * @param tileColumn Tile column
+     * @return Tile image, transparent outside the grid
      */
-    private Color getColorForValue(double value) {
-        // Normalize value to [0, 1] range
-        double normalized = (value - minValue) / (maxValue - minValue);
-        
-        // Use blue-white-red color spectrum
-        if (normalized < 0.5) {
-            // Blue to white
-            float ratio = (float) (normalized * 2);
-            int blue = 255;
-            int green = (int) (255 * ratio);
-            int red = (int) (255 * ratio);
-            return new Color(red, green, blue);
-        } else {
-            // White to red
-            float ratio = (float) ((normalized - 0.5) * 2);
-            int red = 255;
-            int green = (int) (255 * (1 - ratio));
-            int blue = (int) (255 * (1 - ratio));
-            return new Color(red, green, blue);
+    private BufferedImage renderTile(int tileRow, int tileColumn) {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+        int tileX = tileColumn * TILE_SIZE;
+        int tileY = tileRow * TILE_SIZE;
+        int width = Math.min(TILE_SIZE, getGridWidth() - tileX);
+        int height = Math.min(TILE_SIZE, getGridHeight() - tileY);
+        boolean borders = cellSize >= MIN_BORDERED_CELL_SIZE;
+        int columns = data[0].length;
+        
+        // Cell column and border flag of every pixel column
+        int[] cellColumn = new int[width];
+        boolean[] borderColumn = new boolean[width];
+        for (int x = 0; x < width; x++) {
+            int gridX = tileX + x;
+            cellColumn[x] = columnOrder[Math.min(columns - 1, gridX / cellSize)];
+            borderColumn[x] = borders && gridX % cellSize == 0;
+        }
+        
+        int lineRow = -1;
+        int lineOffset = 0;
+        for (int y = 0; y < height; y++) {
+            int gridY = tileY + y;
+            int offset = y * TILE_SIZE;
+            if (borders && gridY % cellSize == 0) {
+                Arrays.fill(pixels, offset, offset + width, BORDER_COLOR);
+                continue;
+            }
+            int row = rowOrder[Math.min(data.length - 1, gridY / cellSize)];
+            if (row == lineRow) {
+                System.arraycopy(pixels, lineOffset, pixels, offset, width);
+                continue;
+            }
+            double[] dataRow = data[row];
+            int lastColumn = -1;
+            int color = 0;
+            for (int x = 0; x < width; x++) {
+                if (borderColumn[x]) {
+                    pixels[offset + x] = BORDER_COLOR;
+                    continue;
+                }
+                if (cellColumn[x] != lastColumn) {
+                    lastColumn = cellColumn[x];
+                    color = colorTable.argb(dataRow[lastColumn]);
+                }
+                pixels[offset + x] = color;
+            }
+            lineRow = row;
+            lineOffset = offset;
         }
+        return tile;
     }
     
     /**
      * Draw labels for rows and columns
      * @param g2d Graphics2D object for drawing
+     * @param clip Area to repaint
      */
-    private void drawLabels(Graphics2D g2d) {
+    private void drawLabels(Graphics2D g2d, Rectangle clip) {
         g2d.setColor(Color.BLACK);
-        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+        g2d.setFont(LABEL_FONT);
         
-        int startX = MARGIN + 80;
-        int startY = MARGIN;
+        int startX = getGridX();
+        int startY = getGridY();
         
-        // Draw column labels (sample names)
-        for (int j = 0; j < columnLabels.length; j++) {
-            int x = startX + j * CELL_SIZE + CELL_SIZE / 2;
+        // Draw column labels (sample names); rotated, the start of a long label dips into the first rows
+        for (int j = 0; clip.y < startY + MARGIN && j < columnLabels.length; j++) {
+            int x = startX + j * cellSize + cellSize / 2;
             int y = startY - 5;
             
             // Rotate text
             Graphics2D g2dRotated = (Graphics2D) g2d.create();
             g2dRotated.rotate(-Math.PI / 4, x, y);
             FontMetrics fm = g2dRotated.getFontMetrics();
-            g2dRotated.drawString(columnLabels[j], x - fm.stringWidth(columnLabels[j]) / 2, y);
+            String label = columnLabels[columnOrder[j]];
+            g2dRotated.drawString(label, x - fm.stringWidth(label) / 2, y);
             g2dRotated.dispose();
         }
         
-        // Draw row labels (gene names)
-        for (int i = 0; i < rowLabels.length; i++) {
+        // Draw row labels (gene names) of the rows in the clip
+        if (clip.x >= startX) {
+            return;
+        }
+        int firstRow = Math.max(0, (clip.y - startY) / cellSize - 1);
+        int lastRow = Math.min(rowLabels.length - 1, (clip.y + clip.height - startY) / cellSize + 1);
+        for (int i = firstRow; i <= lastRow; i++) {
             int x = startX - 5;
-            int y = startY + i * CELL_SIZE + CELL_SIZE / 2 + 3;
+            int y = startY + i * cellSize + cellSize / 2 + 3;
             
             FontMetrics fm = g2d.getFontMetrics();
-            g2d.drawString(rowLabels[i], x - fm.stringWidth(rowLabels[i]), y);
+            String label = rowLabels[rowOrder[i]];
+            g2d.drawString(label, x - fm.stringWidth(label), y);
+        }
+    }
+    
+    /**
+     * Draw the dendrograms of the clustered rows and columns, skipping merges outside the clip
+     * @param g2d Graphics2D object for drawing
+     * @param clip Area to repaint
+     */
+    private void drawDendrograms(Graphics2D g2d, Rectangle clip) {
+        g2d.setColor(Color.DARK_GRAY);
+        Line2D.Double line = new Line2D.Double();
+        // Leaves touch the labels, the root is DENDROGRAM_SIZE - 10 pixels away
+        if (rowDendrogram != null && clip.x < DENDROGRAM_SIZE) {
+            double scale = rowDendrogram.getMaxHeight() > 0 ? (DENDROGRAM_SIZE - 10) / rowDendrogram.getMaxHeight() : 0;
+            double leafY = getGridY() + cellSize / 2.0;
+            for (int k = 0; k < rowDendrogram.getMergeCount(); k++) {
+                int left = rowDendrogram.getLeft(k);
+                int right = rowDendrogram.getRight(k);
+                double y1 = leafY + rowDendrogram.getPosition(left) * cellSize;
+                double y2 = leafY + rowDendrogram.getPosition(right) * cellSize;
+                if (Math.max(y1, y2) < clip.y || Math.min(y1, y2) > clip.y + clip.height) {
+                    continue;
+                }
+                double x = DENDROGRAM_SIZE - rowDendrogram.getHeight(rowDendrogram.getLeafCount() + k) * scale;
+                line.setLine(x, y1, x, y2);
+                g2d.draw(line);
+                line.setLine(x, y1, DENDROGRAM_SIZE - rowDendrogram.getHeight(left) * scale, y1);
+                g2d.draw(line);
+                line.setLine(x, y2, DENDROGRAM_SIZE - rowDendrogram.getHeight(right) * scale, y2);
+                g2d.draw(line);
+            }
+        }
+        if (columnDendrogram != null && clip.y < DENDROGRAM_SIZE) {
+            double scale = columnDendrogram.getMaxHeight() > 0 ? (DENDROGRAM_SIZE - 10) / columnDendrogram.getMaxHeight() : 0;
+            double leafX = getGridX() + cellSize / 2.0;
+            for (int k = 0; k < columnDendrogram.getMergeCount(); k++) {
+                int left = columnDendrogram.getLeft(k);
+                int right = columnDendrogram.getRight(k);
+                double x1 = leafX + columnDendrogram.getPosition(left) * cellSize;
+                double x2 = leafX + columnDendrogram.getPosition(right) * cellSize;
+                if (Math.max(x1, x2) < clip.x || Math.min(x1, x2) > clip.x + clip.width) {
+                    continue;
+                }
+                double y = DENDROGRAM_SIZE - columnDendrogram.getHeight(columnDendrogram.getLeafCount() + k) * scale;
+                line.setLine(x1, y, x2, y);
+                g2d.draw(line);
+                line.setLine(x1, y, x1, DENDROGRAM_SIZE - columnDendrogram.getHeight(left) * scale);
+                g2d.draw(line);
+                line.setLine(x2, y, x2, DENDROGRAM_SIZE - columnDendrogram.getHeight(right) * scale);
+                g2d.draw(line);
+            }
         }
     }
     
@@ -247,20 +567,15 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
         int scaleHeight = 100;
         int scaleWidth = 15;
         
-        // Draw color bar
-        for (int i = 0; i < scaleHeight; i++) {
-            double value = minValue + (maxValue - minValue) * (1.0 - (double) i / scaleHeight);
-            Color color = getColorForValue(value);
-            g2d.setColor(color);
-            g2d.fillRect(scaleX, scaleY + i, scaleWidth, 1);
-        }
+        // Draw color bar, prepared with the color table
+        g2d.drawImage(colorScaleImage, scaleX, scaleY, scaleWidth, scaleHeight, null);
         
         // Draw border
         g2d.setColor(Color.BLACK);
         g2d.drawRect(scaleX, scaleY, scaleWidth, scaleHeight);
         
         // Draw scale labels
-        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 9));
+        g2d.setFont(SCALE_FONT);
         String maxLabel = String.format("%.1f", maxValue);
         String minLabel = String.format("%.1f", minValue);
         String midLabel = String.format("%.1f", (maxValue + minValue) / 2);
@@ -275,41 +590,69 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
      * @param g2d Graphics2D object for drawing
      */
     private void drawTooltip(Graphics2D g2d) {
-        if (mousePosition == null || data == null) return;
+        String tooltip = getTooltipText();
+        if (tooltip == null || tooltipBounds == null) return;
+        
+        // The bounds include the one-pixel border on the right and bottom
+        int tooltipX = tooltipBounds.x;
+        int tooltipY = tooltipBounds.y;
+        int tooltipWidth = tooltipBounds.width - 1;
+        int tooltipHeight = tooltipBounds.height - 1;
+        
+        g2d.setFont(LEGEND_FONT);
+        g2d.setColor(TOOLTIP_BACKGROUND);
+        g2d.fillRect(tooltipX, tooltipY, tooltipWidth, tooltipHeight);
+        g2d.setColor(Color.BLACK);
+        g2d.drawRect(tooltipX, tooltipY, tooltipWidth, tooltipHeight);
+        g2d.drawString(tooltip, tooltipX + 5, tooltipY + tooltipHeight - 5);
+    }
+    
+    /**
+     * Get the text of the tooltip for the cell under the mouse
+     * @return Tooltip text, or null outside the cells
+     */
+    private String getTooltipText() {
+        if (mousePosition == null || data == null || data.length == 0) return null;
         
-        int startX = MARGIN + 80;
-        int startY = MARGIN;
+        int startX = getGridX();
+        int startY = getGridY();
+        if (mousePosition.x < startX || mousePosition.y < startY) return null;
         
         // Calculate the cell where the mouse is located
-        int col = (mousePosition.x - startX) / CELL_SIZE;
-        int row = (mousePosition.y - startY) / CELL_SIZE;
+        int col = (mousePosition.x - startX) / cellSize;
+        int row = (mousePosition.y - startY) / cellSize;
         
-        if (row >= 0 && row < data.length && col >= 0 && col < data[0].length) {
-            String tooltip = String.format("%s - %s: %.2f", 
-                rowLabels[row], columnLabels[col], data[row][col]);
-            
-            // Draw tooltip background
-            FontMetrics fm = g2d.getFontMetrics();
-            int tooltipWidth = fm.stringWidth(tooltip) + 10;
-            int tooltipHeight = fm.getHeight() + 5;
-            
-            int tooltipX = mousePosition.x + 10;
-            int tooltipY = mousePosition.y - 10;
-            
-            // Ensure tooltip is within panel bounds
-            if (tooltipX + tooltipWidth > getWidth()) {
-                tooltipX = mousePosition.x - tooltipWidth - 10;
-            }
-            if (tooltipY - tooltipHeight < 0) {
-                tooltipY = mousePosition.y + 20;
-            }
-            
-            g2d.setColor(new Color(255, 255, 200, 230));
-            g2d.fillRect(tooltipX, tooltipY - tooltipHeight, tooltipWidth, tooltipHeight);
-            g2d.setColor(Color.BLACK);
-            g2d.drawRect(tooltipX, tooltipY - tooltipHeight, tooltipWidth, tooltipHeight);
-            g2d.drawString(tooltip, tooltipX + 5, tooltipY - 5);
+        if (row < data.length && col < data[0].length) {
+            row = rowOrder[row];
+            col = columnOrder[col];
+            return String.format("%s - %s: %.2f", rowLabels[row], columnLabels[col], data[row][col]);
         }
+        return null;
+    }
+    
+    /**
+     * Compute the area the tooltip covers at the current mouse position
+     * @return Tooltip rectangle including its border, or null if there is no tooltip
+     */
+    private Rectangle computeTooltipBounds() {
+        String tooltip = getTooltipText();
+        if (tooltip == null) return null;
+        
+        FontMetrics fm = getFontMetrics(LEGEND_FONT);
+        int tooltipWidth = fm.stringWidth(tooltip) + 10;
+        int tooltipHeight = fm.getHeight() + 5;
+        
+        int tooltipX = mousePosition.x + 10;
+        int tooltipY = mousePosition.y - 10;
+        
+        // Ensure tooltip is within panel bounds
+        if (tooltipX + tooltipWidth > getWidth()) {
+            tooltipX = mousePosition.x - tooltipWidth - 10;
+        }
+        if (tooltipY - tooltipHeight < 0) {
+            tooltipY = mousePosition.y + 20;
+        }
+        return new Rectangle(tooltipX, tooltipY - tooltipHeight, tooltipWidth + 1, tooltipHeight + 1);
     }
     
     @Override
@@ -320,7 +663,15 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
     @Override
     public void mouseMoved(MouseEvent e) {
         mousePosition = e.getPoint();
-        repaint();
+        Rectangle oldBounds = tooltipBounds;
+        tooltipBounds = computeTooltipBounds();
+        // Only the old and the new tooltip areas need repainting
+        if (oldBounds != null) {
+            repaint(oldBounds);
+        }
+        if (tooltipBounds != null) {
+            repaint(tooltipBounds);
+        }
     }
     
     /**
@@ -339,17 +690,12 @@ public class HeatmapPanel extends JPanel implements MouseMotionListener {
         g2d.drawRect(legendX - 5, legendY - 5, 110, 60);
         
         // Set font
-        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        g2d.setFont(LEGEND_FONT);
         
         // Color bar
         int colorBarWidth = 80;
         int colorBarHeight = 10;
-        for (int i = 0; i < colorBarWidth; i++) {
-            double ratio = (double) i / colorBarWidth;
-            Color color = getColorForValue(minValue + ratio * (maxValue - minValue));
-            g2d.setColor(color);
-            g2d.fillRect(legendX + i, legendY + 10, 1, colorBarHeight);
-        }
+        g2d.drawImage(legendBarImage, legendX, legendY + 10, colorBarWidth, colorBarHeight, null);
         
         // Labels
         g2d.setColor(Color.BLACK);
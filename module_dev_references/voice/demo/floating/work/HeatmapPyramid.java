@@ -0,0 +1,195 @@
+package demo.floating.work;
+
+import java.util.stream.IntStream;
+
+/**
+ * Multi-resolution aggregates of a numerical matrix, for drawing heatmaps too large to draw cell by cell.
+ *
+ * Level 0 is the matrix itself. Each cell of level k summarizes a block of 2^k x 2^k cells of the
+ * matrix by its mean and its maximum, and is computed from the four cells below it, weighted by the
+ * number of matrix cells they cover at the right and bottom edges. All levels above 0 together take
+ * a third of the size of the matrix per aggregate, in floats. Levels are built in parallel over rows.
+ */
+public class HeatmapPyramid {
+
+    /**
+     * How the cells of a block are summarized
+     */
+    public enum Aggregation {
+        MEAN, MAX
+    }
+
+    private final double[][] data;
+    private final int rows;
+    private final int columns;
+    private final double minValue;
+    private final double maxValue;
+    /** Means and maxima by level, row-major; index 0 is unused, level 0 being the data */
+    private final float[][] means;
+    private final float[][] maxima;
+
+    /**
+     * Constructor for HeatmapPyramid, building every level. This takes a while on large matrices
+     * and should run outside the event dispatch thread.
+     * @param data Matrix, rows of equal length; it is referenced, not copied
+     */
+    public HeatmapPyramid(double[][] data) {
+        this.data = data;
+        this.rows = data.length;
+        this.columns = rows == 0 ? 0 : data[0].length;
+
+        int levels = 1;
+        while (((rows - 1) >> (levels - 1)) > 0 || ((columns - 1) >> (levels - 1)) > 0) {
+            levels++;
+        }
+        means = new float[levels][];
+        maxima = new float[levels][];
+
+        double[] rowMin = new double[rows];
+        double[] rowMax = new double[rows];
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double value : data[i]) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            rowMin[i] = min;
+            rowMax[i] = max;
+        });
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < rows; i++) {
+            min = Math.min(min, rowMin[i]);
+            max = Math.max(max, rowMax[i]);
+        }
+        this.minValue = rows == 0 ? 0 : min;
+        this.maxValue = rows == 0 ? 0 : max;
+
+        for (int level = 1; level < levels; level++) {
+            buildLevel(level);
+        }
+    }
+
+    /**
+     * Build one level from the level below it
+     * @param level Level to build, at least 1
+     */
+    private void buildLevel(int level) {
+        int levelRows = getRows(level);
+        int levelColumns = getColumns(level);
+        int belowRows = getRows(level - 1);
+        int belowColumns = getColumns(level - 1);
+        int belowSize = 1 << (level - 1);
+        float[] mean = new float[levelRows * levelColumns];
+        float[] max = new float[levelRows * levelColumns];
+        float[] belowMean = means[level - 1];
+        float[] belowMax = maxima[level - 1];
+
+        IntStream.range(0, levelRows).parallel().forEach(i -> {
+            for (int j = 0; j < levelColumns; j++) {
+                double sum = 0;
+                double weight = 0;
+                double blockMax = Double.NEGATIVE_INFINITY;
+                for (int bi = 2 * i; bi <= 2 * i + 1 && bi < belowRows; bi++) {
+                    // Matrix rows covered by this cell of the level below
+                    int spanRows = Math.min(belowSize, rows - bi * belowSize);
+                    for (int bj = 2 * j; bj <= 2 * j + 1 && bj < belowColumns; bj++) {
+                        int spanColumns = Math.min(belowSize, columns - bj * belowSize);
+                        double cellMean;
+                        double cellMax;
+                        if (level == 1) {
+                            cellMean = cellMax = data[bi][bj];
+                        } else {
+                            cellMean = belowMean[bi * belowColumns + bj];
+                            cellMax = belowMax[bi * belowColumns + bj];
+                        }
+                        double w = (double) spanRows * spanColumns;
+                        sum += cellMean * w;
+                        weight += w;
+                        blockMax = Math.max(blockMax, cellMax);
+                    }
+                }
+                mean[i * levelColumns + j] = (float) (sum / weight);
+                max[i * levelColumns + j] = (float) blockMax;
+            }
+        });
+        means[level] = mean;
+        maxima[level] = max;
+    }
+
+    /**
+     * Get the number of levels, the last one being a single cell
+     * @return Level count
+     */
+    public int getLevelCount() {
+        return means.length;
+    }
+
+    /**
+     * Get the number of rows of a level
+     * @param level Level
+     * @return Rows of blocks of 2^level matrix rows
+     */
+    public int getRows(int level) {
+        return (rows + (1 << level) - 1) >> level;
+    }
+
+    /**
+     * Get the number of columns of a level
+     * @param level Level
+     * @return Columns of blocks of 2^level matrix columns
+     */
+    public int getColumns(int level) {
+        return (columns + (1 << level) - 1) >> level;
+    }
+
+    /**
+     * Get the summaries of a level above 0
+     * @param level Level, at least 1
+     * @param aggregation Mean or maximum
+     * @return Row-major values, getColumns(level) per row
+     */
+    public float[] getLevel(int level, Aggregation aggregation) {
+        return aggregation == Aggregation.MEAN ? means[level] : maxima[level];
+    }
+
+    /**
+     * Get the summary of one block
+     * @param level Level
+     * @param row Block row in the level
+     * @param column Block column in the level
+     * @param aggregation Mean or maximum
+     * @return Summary value, the matrix value at level 0
+     */
+    public double getValue(int level, int row, int column, Aggregation aggregation) {
+        if (level == 0) {
+            return data[row][column];
+        }
+        return getLevel(level, aggregation)[row * getColumns(level) + column];
+    }
+
+    /**
+     * Get the matrix
+     * @return Level 0
+     */
+    public double[][] getData() {
+        return data;
+    }
+
+    /**
+     * Get the smallest matrix value
+     * @return Minimum
+     */
+    public double getMinValue() {
+        return minValue;
+    }
+
+    /**
+     * Get the largest matrix value
+     * @return Maximum
+     */
+    public double getMaxValue() {
+        return maxValue;
+    }
+}
@@ -0,0 +1,221 @@
+package demo.floating.work;
+
+import java.util.Arrays;
+
+/**
+ * Agglomerative hierarchical clustering of the rows or the columns of a matrix.
+ *
+ * The pairwise distances are computed in parallel into a {@link PackedDistanceMatrix}, which is then
+ * updated in place by the Lance-Williams formula of the linkage. Merges are found with the
+ * nearest-neighbor chain: follow nearest neighbors from any cluster until two clusters are each
+ * other's nearest neighbor, merge them and continue from the rest of the chain. For reducible
+ * linkages (average, complete, Ward) this gives the same tree as merging the closest pair every
+ * time, in O(n^2) time after the distances and with no memory besides the matrix.
+ */
+public class HierarchicalClustering {
+
+    /**
+     * Distance between two clusters
+     */
+    public enum Linkage {
+        /** Mean distance between their members (UPGMA) */
+        AVERAGE,
+        /** Largest distance between their members */
+        COMPLETE,
+        /** Increase in within-cluster variance when merged */
+        WARD
+    }
+
+    private final Linkage linkage;
+    private final PackedDistanceMatrix.Metric metric;
+
+    /**
+     * Constructor for HierarchicalClustering
+     * @param linkage Distance between two clusters
+     * @param metric Distance between two items, Euclidean or correlation
+     */
+    public HierarchicalClustering(Linkage linkage, PackedDistanceMatrix.Metric metric) {
+        this.linkage = linkage;
+        this.metric = metric;
+    }
+
+    /**
+     * Cluster the rows of a matrix
+     * @param data Matrix, rows of equal length
+     * @return Dendrogram with a leaf per row
+     */
+    public Dendrogram clusterRows(double[][] data) {
+        return cluster(data);
+    }
+
+    /**
+     * Cluster the columns of a matrix
+     * @param data Matrix, rows of equal length
+     * @return Dendrogram with a leaf per column
+     */
+    public Dendrogram clusterColumns(double[][] data) {
+        int columns = data.length == 0 ? 0 : data[0].length;
+        double[][] transposed = new double[columns][data.length];
+        for (int i = 0; i < data.length; i++) {
+            for (int j = 0; j < columns; j++) {
+                transposed[j][i] = data[i][j];
+            }
+        }
+        return cluster(transposed);
+    }
+
+    /**
+     * Cluster items by the nearest-neighbor chain
+     * @param items Items, rows of equal length
+     * @return Dendrogram with a leaf per item
+     */
+    private Dendrogram cluster(double[][] items) {
+        int n = items.length;
+        if (n < 2) {
+            return new Dendrogram(n, new int[0], new int[0], new double[0]);
+        }
+        // Ward updates squared Euclidean distances; one minus the correlation already is one, halved
+        boolean squared = linkage == Linkage.WARD;
+        PackedDistanceMatrix distances = new PackedDistanceMatrix(items,
+                squared && metric == PackedDistanceMatrix.Metric.EUCLIDEAN ? PackedDistanceMatrix.Metric.SQUARED_EUCLIDEAN : metric);
+
+        int[] sizes = new int[n];
+        Arrays.fill(sizes, 1);
+        // Active clusters, each represented by one of its items, and where they are in the array
+        int[] active = new int[n];
+        int[] activeIndex = new int[n];
+        for (int i = 0; i < n; i++) {
+            active[i] = i;
+            activeIndex[i] = i;
+        }
+        int activeCount = n;
+        int[] chain = new int[n];
+        int chainLength = 0;
+
+        int[] mergedFirst = new int[n - 1];
+        int[] mergedSecond = new int[n - 1];
+        double[] mergedHeight = new double[n - 1];
+
+        for (int step = 0; step < n - 1; step++) {
+            if (chainLength == 0) {
+                chain[chainLength++] = active[0];
+            }
+            int a;
+            int b;
+            float best;
+            while (true) {
+                a = chain[chainLength - 1];
+                // On ties the previous cluster wins, which keeps the chain from cycling
+                int previous = chainLength > 1 ? chain[chainLength - 2] : (active[0] != a ? active[0] : active[1]);
+                b = previous;
+                best = distances.get(a, previous);
+                for (int k = 0; k < activeCount; k++) {
+                    int c = active[k];
+                    if (c != a) {
+                        float distance = distances.get(a, c);
+                        if (distance < best) {
+                            best = distance;
+                            b = c;
+                        }
+                    }
+                }
+                if (chainLength > 1 && b == chain[chainLength - 2]) {
+                    break;
+                }
+                chain[chainLength++] = b;
+            }
+            chainLength -= 2;
+
+            // The merged cluster takes the place of the lower item
+            int keep = Math.min(a, b);
+            int drop = Math.max(a, b);
+            int sizeA = sizes[a];
+            int sizeB = sizes[b];
+            for (int k = 0; k < activeCount; k++) {
+                int c = active[k];
+                if (c == a || c == b) {
+                    continue;
+                }
+                double toA = distances.get(c, a);
+                double toB = distances.get(c, b);
+                double updated;
+                switch (linkage) {
+                    case AVERAGE:
+                        updated = (sizeA * toA + sizeB * toB) / (sizeA + sizeB);
+                        break;
+                    case COMPLETE:
+                        updated = Math.max(toA, toB);
+                        break;
+                    default:
+                        int sizeC = sizes[c];
+                        updated = ((sizeA + sizeC) * toA + (sizeB + sizeC) * toB - sizeC * (double) best)
+                                / (sizeA + sizeB + sizeC);
+                        break;
+                }
+                distances.set(c, keep, (float) updated);
+            }
+            sizes[keep] = sizeA + sizeB;
+            int last = active[--activeCount];
+            active[activeIndex[drop]] = last;
+            activeIndex[last] = activeIndex[drop];
+
+            mergedFirst[step] = a;
+            mergedSecond[step] = b;
+            mergedHeight[step] = squared ? Math.sqrt(Math.max(0, best)) : best;
+        }
+        return toDendrogram(n, mergedFirst, mergedSecond, mergedHeight);
+    }
+
+    /**
+     * Sort the merges by height and name the clusters they make. The chain finds merges out of height
+     * order, but never a merge before the ones that made its two clusters, so a stable sort keeps them after.
+     * @param n Number of items
+     * @param first Representative item of one merged cluster, by merge
+     * @param second Representative item of the other merged cluster, by merge
+     * @param height Merge heights
+     * @return Dendrogram
+     */
+    private static Dendrogram toDendrogram(int n, int[] first, int[] second, double[] height) {
+        Integer[] order = new Integer[n - 1];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(height[x], height[y]));
+
+        // Union-find over the items; the root of a set knows the node of its cluster
+        int[] parent = new int[n];
+        int[] node = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            node[i] = i;
+        }
+        int[] left = new int[n - 1];
+        int[] right = new int[n - 1];
+        double[] heights = new double[n - 1];
+        for (int k = 0; k < order.length; k++) {
+            int merge = order[k];
+            int rootA = find(parent, first[merge]);
+            int rootB = find(parent, second[merge]);
+            left[k] = Math.min(node[rootA], node[rootB]);
+            right[k] = Math.max(node[rootA], node[rootB]);
+            heights[k] = height[merge];
+            parent[rootA] = rootB;
+            node[rootB] = n + k;
+        }
+        return new Dendrogram(n, left, right, heights);
+    }
+
+    /**
+     * Find the root of an item, halving the path on the way
+     * @param parent Parent of every item
+     * @param item Item
+     * @return Root item of its set
+     */
+    private static int find(int[] parent, int item) {
+        while (parent[item] != item) {
+            parent[item] = parent[parent[item]];
+            item = parent[item];
+        }
+        return item;
+    }
+}
@@ -0,0 +1,173 @@
+package demo.floating.work;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+/**
+ * Internal frame for browsing genome-scale heatmaps.
+ * Provides a zoomable, scrollable level-of-detail heatmap with toolbar controls.
+ */
+public class LargeHeatmapInternalFrame extends JInternalFrame {
+    private ZoomableHeatmapPanel heatmapPanel;
+    private JScrollPane scrollPane;
+    private JToolBar toolBar;
+    private JComboBox<String> sizeComboBox;
+    private JLabel statusLabel;
+
+    private static final int[][] DEMO_SIZES = {{2000, 100}, {20000, 500}, {60000, 1000}};
+
+    /**
+     * Constructor for LargeHeatmapInternalFrame
+     * Creates a new internal frame and loads the smallest demo matrix
+     */
+    public LargeHeatmapInternalFrame() {
+        super("Large Heatmap", true, true, true, true);
+        initializeComponents();
+        setupLayout();
+        setSize(700, 500);
+        setVisible(true);
+
+        loadDemoData();
+    }
+
+    /**
+     * Initialize components including heatmap panel and toolbar
+     */
+    private void initializeComponents() {
+        heatmapPanel = new ZoomableHeatmapPanel();
+        heatmapPanel.addPropertyChangeListener("pyramid", e -> updateStatus());
+        scrollPane = new JScrollPane(heatmapPanel);
+        scrollPane.getViewport().addChangeListener(e -> updateStatus());
+
+        toolBar = new JToolBar("Large Heatmap Tools");
+        toolBar.setFloatable(false);
+
+        sizeComboBox = new JComboBox<>();
+        for (int[] size : DEMO_SIZES) {
+            sizeComboBox.addItem(String.format("%,d x %,d", size[0], size[1]));
+        }
+        sizeComboBox.setFont(MyFontConfig.getDefaultFont());
+
+        JButton loadButton = new JButton("Load Demo");
+        loadButton.setFont(MyFontConfig.getDefaultFont());
+        loadButton.addActionListener(e -> loadDemoData());
+
+        JButton zoomInButton = new JButton("Zoom In");
+        zoomInButton.setFont(MyFontConfig.getDefaultFont());
+        zoomInButton.addActionListener(e -> heatmapPanel.zoomIn());
+
+        JButton zoomOutButton = new JButton("Zoom Out");
+        zoomOutButton.setFont(MyFontConfig.getDefaultFont());
+        zoomOutButton.addActionListener(e -> heatmapPanel.zoomOut());
+
+        JButton fitButton = new JButton("Fit");
+        fitButton.setFont(MyFontConfig.getDefaultFont());
+        fitButton.addActionListener(e -> heatmapPanel.fitToWindow());
+
+        JComboBox<HeatmapPyramid.Aggregation> aggregationComboBox = new JComboBox<>(HeatmapPyramid.Aggregation.values());
+        aggregationComboBox.setFont(MyFontConfig.getDefaultFont());
+        aggregationComboBox.setToolTipText("Summary of the cells behind a pixel when zoomed out");
+        aggregationComboBox.addActionListener(e ->
+                heatmapPanel.setAggregation((HeatmapPyramid.Aggregation) aggregationComboBox.getSelectedItem()));
+
+        JComboBox<ColorLookupTable.Palette> paletteComboBox = new JComboBox<>(ColorLookupTable.Palette.values());
+        paletteComboBox.setFont(MyFontConfig.getDefaultFont());
+        paletteComboBox.addActionListener(e ->
+                heatmapPanel.setPalette((ColorLookupTable.Palette) paletteComboBox.getSelectedItem()));
+
+        statusLabel = new JLabel();
+        statusLabel.setFont(MyFontConfig.getDefaultFont());
+
+        toolBar.add(sizeComboBox);
+        toolBar.add(loadButton);
+        toolBar.addSeparator();
+        toolBar.add(zoomInButton);
+        toolBar.add(zoomOutButton);
+        toolBar.add(fitButton);
+        toolBar.add(aggregationComboBox);
+        toolBar.add(paletteComboBox);
+        toolBar.addSeparator();
+        toolBar.add(statusLabel);
+    }
+
+    /**
+     * Set up the layout for the internal frame
+     */
+    private void setupLayout() {
+        setLayout(new BorderLayout());
+        add(scrollPane, BorderLayout.CENTER);
+        add(toolBar, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Show the zoom and the pyramid level in the toolbar
+     */
+    private void updateStatus() {
+        statusLabel.setText(String.format(" Zoom %.3g px/cell, level %d%s", heatmapPanel.getZoom(),
+                heatmapPanel.getCurrentLevel(), heatmapPanel.isPyramidReady() ? "" : " (building)"));
+    }
+
+    /**
+     * Generate the selected demo matrix in the background and show it
+     */
+    private void loadDemoData() {
+        int[] size = DEMO_SIZES[sizeComboBox.getSelectedIndex()];
+        statusLabel.setText(" Generating matrix...");
+        new SwingWorker<double[][], Void>() {
+            @Override
+            protected double[][] doInBackground() {
+                return createDemoMatrix(size[0], size[1]);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    double[][] data = get();
+                    String[] rowLabels = new String[data.length];
+                    String[] colLabels = new String[size[1]];
+                    for (int i = 0; i < rowLabels.length; i++) {
+                        rowLabels[i] = "Gene " + (i + 1);
+                    }
+                    for (int j = 0; j < colLabels.length; j++) {
+                        colLabels[j] = "Sample " + (j + 1);
+                    }
+                    heatmapPanel.setData(data, rowLabels, colLabels);
+                    heatmapPanel.fitToWindow();
+                    updateStatus();
+                } catch (InterruptedException | ExecutionException e) {
+                    statusLabel.setText(" Failed to generate the matrix");
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Create an expression-like matrix: gene modules up in sample groups, plus noise
+     * @param rows Number of genes
+     * @param cols Number of samples
+     * @return Matrix of rows x cols
+     */
+    private static double[][] createDemoMatrix(int rows, int cols) {
+        double[][] data = new double[rows][];
+        int modules = 12;
+        int groups = 6;
+        IntStream.range(0, rows).parallel().forEach(i -> {
+            SplittableRandom random = new SplittableRandom(i);
+            int module = (int) ((long) i * modules / rows);
+            double[] row = new double[cols];
+            for (int j = 0; j < cols; j++) {
+                int group = j * groups / cols;
+                double value = random.nextGaussian();
+                if (module % groups == group) {
+                    value += 3;
+                }
+                row[j] = value;
+            }
+            data[i] = row;
+        });
+        return data;
+    }
+}
@@ -10,6 +10,8 @@ import java.awt.*;
 public class MAPlotInternalFrame extends JInternalFrame {
     private MAPlotPanel maPlotPanel;
     private JToolBar toolBar;
+    private JComboBox<Integer> geneCountComboBox;
+    private JLabel selectionLabel;
     
     /**
      * Constructor for MAPlotInternalFrame
@@ -40,7 +42,33 @@ public class MAPlotInternalFrame extends JInternalFrame {
         refreshButton.setFont(MyFontConfig.getDefaultFont());
         refreshButton.addActionListener(e -> refreshData());
         
+        JButton resetViewButton = new JButton("Reset View");
+        resetViewButton.setFont(MyFontConfig.getDefaultFont());
+        resetViewButton.setToolTipText("Drag to pan, scroll to zoom, double-click to reset");
+        resetViewButton.addActionListener(e -> maPlotPanel.resetView());
+        
+        geneCountComboBox = new JComboBox<>(new Integer[]{1000, 100000, 500000});
+        geneCountComboBox.setFont(MyFontConfig.getDefaultFont());
+        geneCountComboBox.setToolTipText("Number of genes in the sample data");
+        
+        JComboBox<ScatterPlotPanel.RenderMode> renderModeComboBox = new JComboBox<>(ScatterPlotPanel.RenderMode.values());
+        renderModeComboBox.setFont(MyFontConfig.getDefaultFont());
+        renderModeComboBox.addActionListener(e ->
+                maPlotPanel.setRenderMode((ScatterPlotPanel.RenderMode) renderModeComboBox.getSelectedItem()));
+        
+        selectionLabel = new JLabel();
+        selectionLabel.setFont(MyFontConfig.getDefaultFont());
+        maPlotPanel.addPropertyChangeListener("selectedPoint", e -> {
+            int gene = (Integer) e.getNewValue();
+            selectionLabel.setText(gene < 0 ? "" : " " + maPlotPanel.describePoint(gene));
+        });
+        
         toolBar.add(refreshButton);
+        toolBar.add(resetViewButton);
+        toolBar.add(geneCountComboBox);
+        toolBar.add(renderModeComboBox);
+        toolBar.addSeparator();
+        toolBar.add(selectionLabel);
     }
     
     /**
@@ -57,7 +85,7 @@ public class MAPlotInternalFrame extends JInternalFrame {
      */
     private void refreshData() {
         // Generate sample data
-        int numGenes = 1000;
+        int numGenes = (Integer) geneCountComboBox.getSelectedItem();
         double[] logFC = new double[numGenes];
         double[] avgExpression = new double[numGenes];
         boolean[] significant = new boolean[numGenes];
@@ -69,6 +97,5 @@ public class MAPlotInternalFrame extends JInternalFrame {
         }
         
         maPlotPanel.setData(logFC, avgExpression, significant);
-        maPlotPanel.repaint();
     }
 }
\ No newline at end of file
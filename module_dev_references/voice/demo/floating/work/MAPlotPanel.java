@@ -1,94 +1,72 @@
 package demo.floating.work;
 
-import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
  * MA Plot panel - for gene expression data comparison visualization
  * M = log2(A/B), A = (log2(A) + log2(B))/2
- * 
+ *
  * This panel displays an MA plot, which is a common visualization in gene expression analysis.
  * The plot shows the log fold change (M) on the y-axis versus the average expression (A) on the x-axis.
  * This visualization helps identify genes with significant differential expression.
+ *
+ * Genes are drawn progressively in the background by {@link ScatterPlotPanel}; with many genes the
+ * non-significant ones are shaded by density and only the significant ones are drawn as arrows on top.
  */
-public class MAPlotPanel extends JPanel {
-    private List<MAPoint> dataPoints;
-    private double minM, maxM, minA, maxA;
-    private final int MARGIN = 50;
-    
-    /**
-     * Data structure for MA plot points
-     */
-    private static class MAPoint {
-        double m; // log fold change
-        double a; // average expression
-        boolean significant; // significant difference
-        
-        /**
-         * Constructor for MAPoint
-         * @param m log fold change value
-         * @param a average expression value
-         * @param significant whether the point represents a significant difference
-         */
-        MAPoint(double m, double a, boolean significant) {
-            this.m = m;
-            this.a = a;
-            this.significant = significant;
-        }
-    }
+public class MAPlotPanel extends ScatterPlotPanel {
+    private final Color UP_COLOR = new Color(255, 100, 100, 180);
+    private final Color DOWN_COLOR = new Color(100, 100, 255, 180);
+    private final Color NEUTRAL_COLOR = new Color(150, 150, 150, 100);
     
     /**
      * Constructor for MAPlotPanel
      */
     public MAPlotPanel() {
-        initializeUI();
-        dataPoints = new ArrayList<>();
+        super();
     }
     
     /**
-     * Initialize the user interface components
+     * Set data for MA plot
+     * @param logFC log fold change values
+     * @param avgExpression average expression values
+     * @param significant significance flags
      */
-    private void initializeUI() {
-        setLayout(new BorderLayout());
-        setPreferredSize(new Dimension(400, 300));
-        setBackground(Color.WHITE);
+    public void setData(double[] logFC, double[] avgExpression, boolean[] significant) {
+        setData(logFC, avgExpression, significant, null);
     }
     
     /**
-     * Set data for MA plot
+     * Set data for MA plot, with names shown when hovering a gene
      * @param logFC log fold change values
      * @param avgExpression average expression values
      * @param significant significance flags
+     * @param geneNames gene names, or null to number the genes
      */
-    public void setData(double[] logFC, double[] avgExpression, boolean[] significant) {
-        dataPoints.clear();
-        
+    public void setData(double[] logFC, double[] avgExpression, boolean[] significant, String[] geneNames) {
+        int length = 0;
         if (logFC != null && avgExpression != null && significant != null) {
-            int length = Math.min(Math.min(logFC.length, avgExpression.length), significant.length);
-            
-            for (int i = 0; i < length; i++) {
-                dataPoints.add(new MAPoint(logFC[i], avgExpression[i], significant[i]));
-            }
-            
-            calculateBounds();
+            length = Math.min(Math.min(logFC.length, avgExpression.length), significant.length);
         }
-        
-        repaint();
+        setPoints(Arrays.copyOf(avgExpression == null ? new double[0] : avgExpression, length),
+                Arrays.copyOf(logFC == null ? new double[0] : logFC, length),
+                Arrays.copyOf(significant == null ? new boolean[0] : significant, length), geneNames);
     }
     
     /**
      * Load sample data - generate realistic MA plot distribution
      */
     public void loadSampleData() {
-        dataPoints.clear();
+        int count = 2000;
+        double[] logFC = new double[count];
+        double[] avgExpression = new double[count];
+        boolean[] significantFlags = new boolean[count];
         Random random = new Random(42); // Fixed seed for reproducible results
         
         // Generate simulated gene expression data with realistic MA plot characteristics
-        for (int i = 0; i < 2000; i++) {
+        for (int i = 0; i < count; i++) {
             // A value (average expression) - using a wide distribution
             double a = Math.max(0, random.nextGaussian() * 3 + 6); // Mean 6, std 3, min 0
             
@@ -116,174 +94,53 @@ public class MAPlotPanel extends JPanel {
                 m += random.nextGaussian() * 3; // Technical noise for low expression genes
             }
             
-            dataPoints.add(new MAPoint(m, a, significant));
+            logFC[i] = m;
+            avgExpression[i] = a;
+            significantFlags[i] = significant;
         }
         
-        calculateBounds();
-        repaint();
-    }
-    
-    /**
-     * Calculate data boundaries for proper scaling
-     */
-    private void calculateBounds() {
-        if (dataPoints.isEmpty()) return;
-        
-        minM = maxM = dataPoints.get(0).m;
-        minA = maxA = dataPoints.get(0).a;
-        
-        for (MAPoint point : dataPoints) {
-            minM = Math.min(minM, point.m);
-            maxM = Math.max(maxM, point.m);
-            minA = Math.min(minA, point.a);
-            maxA = Math.max(maxA, point.a);
-        }
-        
-        // Add some margins
-        double mRange = maxM - minM;
-        double aRange = maxA - minA;
-        minM -= mRange * 0.1;
-        maxM += mRange * 0.1;
-        minA -= aRange * 0.1;
-        maxA += aRange * 0.1;
+        setData(logFC, avgExpression, significantFlags);
     }
     
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g.create();
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        if (dataPoints.isEmpty()) {
-            drawNoDataMessage(g2d);
-            g2d.dispose();
-            return;
-        }
-        
-        drawAxes(g2d);
-        drawDataPoints(g2d);
-        drawThresholdLines(g2d);
-        drawLegend(g2d);
-        
-        g2d.dispose();
+    public String describePoint(int gene) {
+        return String.format("%s: M = %.3f, A = %.3f%s", getPointName(gene), yValues[gene], xValues[gene],
+                significant[gene] ? " (significant)" : "");
     }
     
-    /**
-     * Draw no data message when no data is available
-     * @param g2d Graphics2D object for drawing
-     */
-    private void drawNoDataMessage(Graphics2D g2d) {
-        String message = "Click import button to load data";
-        FontMetrics fm = g2d.getFontMetrics();
-        int x = (getWidth() - fm.stringWidth(message)) / 2;
-        int y = getHeight() / 2;
-        g2d.setColor(Color.GRAY);
-        g2d.drawString(message, x, y);
+    @Override
+    protected String getXAxisLabel() {
+        return "A (Average Expression)";
     }
     
-    /**
-     * Draw coordinate axes
-     * @param g2d Graphics2D object for drawing
-     */
-    private void drawAxes(Graphics2D g2d) {
-        int width = getWidth();
-        int height = getHeight();
-        
-        g2d.setColor(Color.BLACK);
-        g2d.setStroke(new BasicStroke(1));
-        
-        // X-axis (A - average expression)
-        g2d.drawLine(MARGIN, height - MARGIN, width - MARGIN, height - MARGIN);
-        
-        // Y-axis (M - log fold change)
-        g2d.drawLine(MARGIN, MARGIN, MARGIN, height - MARGIN);
-        
-        // Draw axis labels
-        g2d.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 12));
-        
-        // X-axis label
-        String xLabel = "A (Average Expression)";
-        FontMetrics fm = g2d.getFontMetrics();
-        int xLabelX = (width - fm.stringWidth(xLabel)) / 2;
-        g2d.drawString(xLabel, xLabelX, height - 10);
-        
-        // Y-axis label (rotated 90 degrees)
-        Graphics2D g2dRotated = (Graphics2D) g2d.create();
-        g2dRotated.rotate(-Math.PI / 2, 15, height / 2);
-        String yLabel = "M (Log2 Fold Change)";
-        int yLabelX = -fm.stringWidth(yLabel) / 2;
-        g2dRotated.drawString(yLabel, yLabelX, 0);
-        g2dRotated.dispose();
-        
-        // Draw ticks
-        drawTicks(g2d);
+    @Override
+    protected String getYAxisLabel() {
+        return "M (Log2 Fold Change)";
     }
     
-    /**
-     * Draw axis ticks and labels
-     * @param g2d Graphics2D object for drawing
-     */
-    private void drawTicks(Graphics2D g2d) {
-        int width = getWidth();
-        int height = getHeight();
-        
-        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
-        g2d.setColor(Color.GRAY);
-        
-        // X-axis ticks
-        for (int i = 0; i <= 5; i++) {
-            double aValue = minA + (maxA - minA) * i / 5.0;
-            int x = MARGIN + (width - 2 * MARGIN) * i / 5;
-            g2d.drawLine(x, height - MARGIN, x, height - MARGIN + 5);
-            g2d.drawString(String.format("%.1f", aValue), x - 10, height - MARGIN + 20);
-        }
-        
-        // Y-axis ticks
-        for (int i = 0; i <= 5; i++) {
-            double mValue = minM + (maxM - minM) * i / 5.0;
-            int y = height - MARGIN - (height - 2 * MARGIN) * i / 5;
-            g2d.drawLine(MARGIN - 5, y, MARGIN, y);
-            g2d.drawString(String.format("%.1f", mValue), 5, y + 3);
-        }
+    @Override
+    protected BufferedImage[] createGlyphs() {
+        return new BufferedImage[]{
+                createGlyph(UP_COLOR, createArrow(GLYPH_RADIUS, GLYPH_RADIUS, true)),
+                createGlyph(DOWN_COLOR, createArrow(GLYPH_RADIUS, GLYPH_RADIUS, false)),
+                createGlyph(NEUTRAL_COLOR, createArrow(GLYPH_RADIUS, GLYPH_RADIUS, true)),
+                createGlyph(NEUTRAL_COLOR, createArrow(GLYPH_RADIUS, GLYPH_RADIUS, false))};
     }
     
-    /**
-     * Draw data points as arrows
-     * @param g2d Graphics2D object for drawing
-     */
-    private void drawDataPoints(Graphics2D g2d) {
-        int width = getWidth();
-        int height = getHeight();
-        
-        for (MAPoint point : dataPoints) {
-            // Calculate screen coordinates
-            int x = MARGIN + (int) ((point.a - minA) / (maxA - minA) * (width - 2 * MARGIN));
-            int y = height - MARGIN - (int) ((point.m - minM) / (maxM - minM) * (height - 2 * MARGIN));
-            
-            // Set color based on significance and direction
-            if (point.significant) {
-                if (point.m > 0) {
-                    g2d.setColor(new Color(255, 100, 100, 180)); // Red - upregulated
-                } else {
-                    g2d.setColor(new Color(100, 100, 255, 180)); // Blue - downregulated
-                }
-            } else {
-                g2d.setColor(new Color(150, 150, 150, 100)); // Gray - no significant difference
-            }
-            
-            // Draw arrow
-            drawArrow(g2d, x, y, point.m > 0);
-        }
+    @Override
+    protected int getGlyphIndex(int gene) {
+        // Set color based on significance and direction
+        return (significant[gene] ? 0 : 2) + (yValues[gene] > 0 ? 0 : 1);
     }
     
     /**
-     * Draw an arrow at the specified position
-     * @param g2d Graphics2D object for drawing
+     * Create an arrow at the specified position
      * @param x X-coordinate
      * @param y Y-coordinate
      * @param upward Whether the arrow should point upward
+     * @return Arrow polygon
      */
-    private void drawArrow(Graphics2D g2d, int x, int y, boolean upward) {
+    private Polygon createArrow(int x, int y, boolean upward) {
         int[] xPoints, yPoints;
         
         if (upward) {
@@ -296,31 +153,31 @@ public class MAPlotPanel extends JPanel {
             yPoints = new int[]{y + 3, y - 2, y - 2};
         }
         
-        g2d.fillPolygon(xPoints, yPoints, 3);
+        return new Polygon(xPoints, yPoints, 3);
     }
     
     /**
      * Draw threshold lines
      * @param g2d Graphics2D object for drawing
      */
-    private void drawThresholdLines(Graphics2D g2d) {
+    @Override
+    protected void drawGuides(Graphics2D g2d) {
         int width = getWidth();
-        int height = getHeight();
         
         g2d.setColor(new Color(255, 0, 0, 100));
         g2d.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5}, 0));
         
         // Draw M = 0 line (no change)
-        if (minM <= 0 && maxM >= 0) {
-            int y = height - MARGIN - (int) ((0 - minM) / (maxM - minM) * (height - 2 * MARGIN));
+        if (minY <= 0 && maxY >= 0) {
+            int y = toScreenY(0);
             g2d.drawLine(MARGIN, y, width - MARGIN, y);
         }
         
         // Draw significance threshold lines (M = ±1.5)
         double[] thresholds = {1.5, -1.5};
         for (double threshold : thresholds) {
-            if (minM <= threshold && maxM >= threshold) {
-                int y = height - MARGIN - (int) ((threshold - minM) / (maxM - minM) * (height - 2 * MARGIN));
+            if (minY <= threshold && maxY >= threshold) {
+                int y = toScreenY(threshold);
                 g2d.drawLine(MARGIN, y, width - MARGIN, y);
             }
         }
@@ -330,7 +187,8 @@ public class MAPlotPanel extends JPanel {
      * Draw legend
      * @param g2d Graphics2D object for drawing
      */
-    private void drawLegend(Graphics2D g2d) {
+    @Override
+    protected void drawLegend(Graphics2D g2d) {
         int width = getWidth();
         int legendX = width - 150;
         int legendY = 20;
@@ -346,19 +204,19 @@ public class MAPlotPanel extends JPanel {
         
         // Upregulated genes
         g2d.setColor(new Color(255, 100, 100));
-        drawArrow(g2d, legendX + 10, legendY + 10, true);
+        g2d.fill(createArrow(legendX + 10, legendY + 10, true));
         g2d.setColor(Color.BLACK);
         g2d.drawString("Upregulated", legendX + 20, legendY + 15);
         
         // Downregulated genes
         g2d.setColor(new Color(100, 100, 255));
-        drawArrow(g2d, legendX + 10, legendY + 30, false);
+        g2d.fill(createArrow(legendX + 10, legendY + 30, false));
         g2d.setColor(Color.BLACK);
         g2d.drawString("Downregulated", legendX + 20, legendY + 35);
         
         // No significant difference
         g2d.setColor(new Color(150, 150, 150));
-        drawArrow(g2d, legendX + 10, legendY + 50, true);
+        g2d.fill(createArrow(legendX + 10, legendY + 50, true));
         g2d.setColor(Color.BLACK);
         g2d.drawString("No significant", legendX + 20, legendY + 55);
         g2d.drawString("difference", legendX + 20, legendY + 68);
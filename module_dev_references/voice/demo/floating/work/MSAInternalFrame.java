@@ -1,7 +1,12 @@
 package demo.floating.work;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
 
 /**
  * Internal frame for Multiple Sequence Alignment visualization.
@@ -10,6 +15,11 @@ import java.awt.*;
 public class MSAInternalFrame extends JInternalFrame {
     private MultipleSequenceAlignmentPanel msaPanel;
     private JToolBar toolBar;
+    private JComboBox<String> sizeComboBox;
+    private JTextField filterField;
+    
+    /** Sample sizes as {sequences, columns}; the first is the built-in sample */
+    private static final int[][] DEMO_SIZES = {{5, 12}, {100, 10000}, {1000, 50000}};
     
     /**
      * Constructor for MSAInternalFrame
@@ -40,7 +50,39 @@ public class MSAInternalFrame extends JInternalFrame {
         refreshButton.setFont(MyFontConfig.getDefaultFont());
         refreshButton.addActionListener(e -> refreshData());
         
+        sizeComboBox = new JComboBox<>();
+        for (int[] size : DEMO_SIZES) {
+            sizeComboBox.addItem(String.format("%,d x %,d", size[0], size[1]));
+        }
+        sizeComboBox.setFont(MyFontConfig.getDefaultFont());
+        sizeComboBox.setToolTipText("Sequences x columns of the sample alignment");
+        
+        JLabel filterLabel = new JLabel(" Filter: ");
+        filterLabel.setFont(MyFontConfig.getDefaultFont());
+        filterField = new JTextField(10);
+        filterField.setFont(MyFontConfig.getDefaultFont());
+        filterField.setToolTipText("Show only sequences whose name contains this text; the column tracks follow");
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+            
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+            
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+        });
+        
         toolBar.add(refreshButton);
+        toolBar.add(sizeComboBox);
+        toolBar.add(filterLabel);
+        toolBar.add(filterField);
     }
     
     /**
@@ -48,7 +90,8 @@ public class MSAInternalFrame extends JInternalFrame {
      */
     private void setupLayout() {
         setLayout(new BorderLayout());
-        add(new JScrollPane(msaPanel), BorderLayout.CENTER);
+        // The panel scrolls its alignment itself
+        add(msaPanel, BorderLayout.CENTER);
         add(toolBar, BorderLayout.SOUTH);
     }
     
@@ -56,6 +99,12 @@ public class MSAInternalFrame extends JInternalFrame {
      * Refresh the MSA data with new sample data
      */
     private void refreshData() {
+        int[] size = DEMO_SIZES[sizeComboBox.getSelectedIndex()];
+        if (sizeComboBox.getSelectedIndex() > 0) {
+            loadGeneratedData(size[0], size[1]);
+            return;
+        }
+        
         // Load sample data
         String[] sequences = {
             "ATCGATCGATCG",
@@ -74,6 +123,74 @@ public class MSAInternalFrame extends JInternalFrame {
         };
         
         msaPanel.setSequences(sequences, labels);
-        msaPanel.repaint();
+        applyFilter();
+    }
+    
+    /**
+     * Show only the sequences matching the filter text
+     */
+    private void applyFilter() {
+        msaPanel.setLabelFilter(filterField.getText());
+    }
+    
+    /**
+     * Generate a sample alignment in the background and show it
+     * @param count Number of sequences
+     * @param length Number of columns
+     */
+    private void loadGeneratedData(int count, int length) {
+        new SwingWorker<byte[][], Void>() {
+            @Override
+            protected byte[][] doInBackground() {
+                return createDemoAlignment(count, length);
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    byte[][] rows = get();
+                    String[] labels = new String[rows.length];
+                    for (int i = 0; i < labels.length; i++) {
+                        labels[i] = "Sequence " + (i + 1);
+                    }
+                    msaPanel.setAlignment(rows, labels);
+                    applyFilter();
+                } catch (InterruptedException | ExecutionException e) {
+                    JOptionPane.showMessageDialog(MSAInternalFrame.this, "Failed to generate the alignment",
+                            "Multiple Sequence Alignment", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+    
+    /**
+     * Create an alignment-like sample: copies of a random reference with substitutions and gaps
+     * @param count Number of sequences
+     * @param length Number of columns
+     * @return Aligned sequences, one byte per residue
+     */
+    private static byte[][] createDemoAlignment(int count, int length) {
+        byte[] nucleotides = {'A', 'T', 'C', 'G'};
+        byte[] reference = new byte[length];
+        SplittableRandom referenceRandom = new SplittableRandom(42);
+        for (int j = 0; j < length; j++) {
+            reference[j] = nucleotides[referenceRandom.nextInt(4)];
+        }
+        
+        byte[][] rows = new byte[count][];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            SplittableRandom random = new SplittableRandom(i);
+            byte[] row = reference.clone();
+            for (int j = 0; j < length; j++) {
+                double r = random.nextDouble();
+                if (r < 0.0002) {
+                    row[j] = '-';
+                } else if (r < 0.0005) {
+                    row[j] = nucleotides[random.nextInt(4)];
+                }
+            }
+            rows[i] = row;
+        });
+        return rows;
     }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package demo.floating.work;
 
+import demo.dockable.algo.PairwiseAligner;
+
 import javax.swing.*;
+import java.nio.charset.StandardCharsets;
 import java.awt.*;
 import java.util.HashMap;
 import java.util.Map;
@@ -9,11 +12,20 @@ import java.util.Map;
  * Multiple Sequence Alignment visualization panel.
  * Displays DNA/protein sequence alignments with color coding for identical columns
  * and conservation indicators.
+ *
+ * The alignment is kept as one byte per residue and painted by a single {@link SequenceAlignmentView},
+ * which draws only the visible cells, so alignments of thousands of sequences and tens of thousands of
+ * columns open at once and scroll smoothly. Column statistics come from an {@link AlignmentColumnStatistics}
+ * that editing or filtering sequences updates incrementally.
  */
 public class MultipleSequenceAlignmentPanel extends JPanel {
-    private String[] sequences;
-    private String[] labels;
-    private JPanel sequenceDisplayPanel;
+    private byte[][] sequences = new byte[0][];
+    private String[] labels = new String[0];
+    private AlignmentColumnStatistics statistics;
+    /** Rows displayed, after the label filter */
+    private int[] shownRows = new int[0];
+    private SequenceAlignmentView alignmentView;
+    private OverviewMinimap overview;
     private JScrollPane scrollPane;
     
     // Nucleotide color mapping
@@ -26,6 +38,11 @@ public class MultipleSequenceAlignmentPanel extends JPanel {
         NUCLEOTIDE_COLORS.put('-', Color.LIGHT_GRAY);         // Gap
     }
     
+    // Overview colors: residues matching the consensus, other residues, gaps
+    private static final int MATCH_RGB = 0xC8D2E1;
+    private static final int MISMATCH_RGB = 0xD2461E;
+    private static final int GAP_RGB = 0xFFFFFF;
+    
     /**
      * Constructor for MultipleSequenceAlignmentPanel
      * Initializes the UI components
@@ -41,17 +58,27 @@ public class MultipleSequenceAlignmentPanel extends JPanel {
         setLayout(new BorderLayout());
         setPreferredSize(new Dimension(400, 300));
         
-        // Create sequence display panel
-        sequenceDisplayPanel = new JPanel();
-        sequenceDisplayPanel.setLayout(new BoxLayout(sequenceDisplayPanel, BoxLayout.Y_AXIS));
-        sequenceDisplayPanel.setBackground(Color.WHITE);
+        // Create sequence display grid, with the names and the column statistics tracks as headers
+        alignmentView = new SequenceAlignmentView(NUCLEOTIDE_COLORS);
         
-        // Create scroll panel
-        scrollPane = new JScrollPane(sequenceDisplayPanel);
+        // Create scroll panel; scrolling copies the visible cells and paints only the uncovered strip
+        scrollPane = new JScrollPane(alignmentView);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+        scrollPane.setRowHeaderView(alignmentView.getRowHeader());
+        scrollPane.setColumnHeaderView(alignmentView.getColumnHeader());
+        scrollPane.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+        scrollPane.getRowHeader().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+        scrollPane.getColumnHeader().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+        scrollPane.setCorner(ScrollPaneConstants.UPPER_LEFT_CORNER, alignmentView.getHeaderCorner());
+        
+        // Overview of the whole alignment above it
+        overview = new OverviewMinimap(1024, 128, new Dimension(400, 60));
+        overview.setView(alignmentView, () -> new Rectangle(alignmentView.getPreferredSize()));
         
+        add(overview, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
+        add(createLegendPanel(), BorderLayout.SOUTH);
     }
     
     /**
@@ -60,164 +87,147 @@ public class MultipleSequenceAlignmentPanel extends JPanel {
      * @param labels sequence labels
      */
     public void setSequences(String[] sequences, String[] labels) {
-        this.sequences = sequences;
-        this.labels = labels;
+        byte[][] rows = new byte[sequences == null ? 0 : sequences.length][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = sequences[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        setAlignment(rows, labels);
+    }
+    
+    /**
+     * Set aligned sequences to display, one byte per residue
+     * @param sequences aligned sequences; they are referenced, not copied
+     * @param labels sequence labels, or null to number the sequences
+     */
+    public void setAlignment(byte[][] sequences, String[] labels) {
+        this.sequences = sequences == null ? new byte[0][] : sequences;
+        this.labels = new String[this.sequences.length];
+        for (int i = 0; i < this.labels.length; i++) {
+            this.labels[i] = (labels != null && i < labels.length) ? labels[i] : "Seq" + (i + 1);
+        }
         displaySequences();
     }
     
     /**
-     * Display sequence alignment results
+     * Align unaligned sequences to the first one and display the result
+     * @param sequences unaligned sequences, the first is the reference
+     * @param labels sequence labels
+     * @param indelRate expected indel rate per position, which sets the alignment band
      */
-    private void displaySequences() {
-        sequenceDisplayPanel.removeAll();
-        
-        if (sequences == null || sequences.length == 0) {
-            JLabel noDataLabel = new JLabel("No sequence data available");
-            noDataLabel.setFont(MyFontConfig.getDefaultFont());
-            noDataLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            sequenceDisplayPanel.add(noDataLabel);
+    public void setUnalignedSequences(String[] sequences, String[] labels, double indelRate) {
+        if (sequences == null || sequences.length < 2) {
+            setSequences(sequences, labels);
             return;
         }
-        
-        int maxLength = getMaxSequenceLength();
-        boolean[] conservedPositions = findConservedPositions(maxLength);
-        
-        // Add sequence names and sequence display
-        for (int i = 0; i < sequences.length; i++) {
-            String label = (labels != null && i < labels.length) ? labels[i] : "Seq" + (i + 1);
-            JPanel sequencePanel = createSequencePanel(label, sequences[i], conservedPositions);
-            sequenceDisplayPanel.add(sequencePanel);
-            sequenceDisplayPanel.add(Box.createVerticalStrut(2));
+        byte[] reference = sequences[0].getBytes(StandardCharsets.US_ASCII);
+        byte[][] others = new byte[sequences.length - 1][];
+        for (int i = 1; i < sequences.length; i++) {
+            others[i - 1] = sequences[i].getBytes(StandardCharsets.US_ASCII);
         }
-        
-        // Add conservation indicator
-        JPanel conservationPanel = createConservationPanel(conservedPositions, maxLength);
-        sequenceDisplayPanel.add(conservationPanel);
-        
-        // Add legend panel
-        JPanel legendPanel = createLegendPanel();
-        sequenceDisplayPanel.add(Box.createVerticalStrut(10));
-        sequenceDisplayPanel.add(legendPanel);
-        
-        sequenceDisplayPanel.revalidate();
-        sequenceDisplayPanel.repaint();
+
+        byte[][] rows = new PairwiseAligner(2, -1, 3, 1).alignToReference(reference, others, indelRate);
+        setAlignment(rows, labels);
     }
     
     /**
-     * Create display panel for a single sequence
-     * @param seqName Sequence name
-     * @param sequence Sequence data
-     * @param conservedPositions Array indicating conserved positions
-     * @return JPanel containing the formatted sequence display
+     * Replace one sequence, updating the column statistics of the changed positions only
+     * @param index sequence index
+     * @param sequence new aligned sequence
      */
-    private JPanel createSequencePanel(String seqName, String sequence, boolean[] conservedPositions) {
-        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
-        panel.setBackground(Color.WHITE);
-        
-        // Sequence name label
-        JLabel nameLabel = new JLabel(seqName + ": ");
-        nameLabel.setPreferredSize(new Dimension(60, 20));
-        nameLabel.setFont(MyFontConfig.getTitleFont());
-        panel.add(nameLabel);
-        
-        // Sequence characters
-        for (int i = 0; i < sequence.length(); i++) {
-            char nucleotide = sequence.charAt(i);
-            JLabel charLabel = new JLabel(String.valueOf(nucleotide));
-            charLabel.setPreferredSize(new Dimension(15, 20));
-            charLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            charLabel.setFont(MyFontConfig.getDefaultFont());
-            charLabel.setOpaque(true);
-            
-            // Set background color
-            if (conservedPositions[i]) {
-                // Conserved positions use nucleotide-specific colors
-                Color bgColor = NUCLEOTIDE_COLORS.getOrDefault(nucleotide, Color.WHITE);
-                charLabel.setBackground(bgColor);
-                charLabel.setBorder(BorderFactory.createLineBorder(Color.BLACK, 1));
-            } else {
-                // Non-conserved positions use light colors
-                charLabel.setBackground(Color.WHITE);
-                charLabel.setBorder(BorderFactory.createLineBorder(Color.GRAY, 1));
+    public void setSequence(int index, String sequence) {
+        byte[] old = sequences[index];
+        byte[] bytes = sequence.getBytes(StandardCharsets.US_ASCII);
+        int firstChange = -1;
+        int lastChange = -1;
+        for (int pos = 0; pos < Math.max(old.length, bytes.length); pos++) {
+            if (pos >= old.length || pos >= bytes.length || old[pos] != bytes[pos]) {
+                firstChange = firstChange < 0 ? pos : firstChange;
+                lastChange = pos;
             }
-            
-            panel.add(charLabel);
         }
+        int columnCount = statistics.getColumnCount();
+        statistics.updateSequence(index, bytes);
+        alignmentView.statisticsChanged();
         
-        return panel;
+        // The consensus of the changed columns may change too, so their pixels are redrawn for every sequence
+        if (statistics.getColumnCount() != columnCount) {
+            updateOverview();
+        } else if (firstChange >= 0) {
+            overview.refresh(0, shownRows.length, firstChange, lastChange + 1);
+        }
     }
     
     /**
-     * Create conservation indicator panel
-     * @param conservedPositions Array indicating conserved positions
-     * @param length Length of the sequences
-     * @return JPanel containing conservation indicators
+     * Show only the sequences whose label contains a text, and compute the column statistics over them
+     * @param text text to look for, ignoring case; empty to show all sequences
      */
-    private JPanel createConservationPanel(boolean[] conservedPositions, int length) {
-        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
-        panel.setBackground(Color.WHITE);
-        
-        // Spacer label for alignment
-        JLabel spacer = new JLabel("");
-        spacer.setPreferredSize(new Dimension(60, 20));
-        panel.add(spacer);
-        
-        // Conservation indicators
-        for (int i = 0; i < length; i++) {
-            JLabel indicator = new JLabel(conservedPositions[i] ? "*" : " ");
-            indicator.setPreferredSize(new Dimension(15, 20));
-            indicator.setHorizontalAlignment(SwingConstants.CENTER);
-            indicator.setFont(new Font(Font.MONOSPACED, Font.BOLD, 12));
-            indicator.setForeground(Color.RED);
-            panel.add(indicator);
+    public void setLabelFilter(String text) {
+        String lowerText = text.toLowerCase();
+        boolean[] included = new boolean[sequences.length];
+        int shownCount = 0;
+        for (int i = 0; i < sequences.length; i++) {
+            included[i] = labels[i].toLowerCase().contains(lowerText);
+            if (included[i]) {
+                shownCount++;
+            }
         }
-        
-        return panel;
+        shownRows = new int[shownCount];
+        for (int i = 0, k = 0; i < sequences.length; i++) {
+            if (included[i]) {
+                shownRows[k++] = i;
+            }
+        }
+        statistics.setIncluded(included);
+        alignmentView.setShownRows(shownRows);
+        alignmentView.statisticsChanged();
+        updateOverview();
     }
     
     /**
-     * Get the maximum sequence length
-     * @return Maximum length among all sequences
+     * Get the column statistics of the displayed sequences
+     * @return Column statistics
      */
-    private int getMaxSequenceLength() {
-        int maxLength = 0;
-        for (String seq : sequences) {
-            maxLength = Math.max(maxLength, seq.length());
+    public AlignmentColumnStatistics getColumnStatistics() {
+        return statistics;
+    }
+    
+    /**
+     * Display sequence alignment results
+     */
+    private void displaySequences() {
+        statistics = new AlignmentColumnStatistics(sequences);
+        shownRows = new int[sequences.length];
+        for (int i = 0; i < shownRows.length; i++) {
+            shownRows[i] = i;
         }
-        return maxLength;
+        alignmentView.setAlignment(sequences, labels, statistics);
+        updateOverview();
     }
     
     /**
-     * Find conserved positions (positions where all sequences have the same character)
-     * @param maxLength Maximum sequence length
-     * @return Boolean array indicating conserved positions
+     * Rebuild the overview of the displayed sequences in the background
      */
-    private boolean[] findConservedPositions(int maxLength) {
-        boolean[] conserved = new boolean[maxLength];
-        
-        for (int pos = 0; pos < maxLength; pos++) {
-            char firstChar = '\0';
-            boolean isConserved = true;
-            
-            for (String seq : sequences) {
-                if (pos < seq.length()) {
-                    char currentChar = seq.charAt(pos);
-                    if (firstChar == '\0') {
-                        firstChar = currentChar;
-                    } else if (firstChar != currentChar) {
-                        isConserved = false;
-                        break;
-                    }
-                } else {
-                    isConserved = false;
-                    break;
-                }
-            }
-            
-            conserved[pos] = isConserved;
+    private void updateOverview() {
+        byte[][] rows = sequences;
+        int[] overviewRows = shownRows;
+        AlignmentColumnStatistics columnStatistics = statistics;
+        overview.setData(overviewRows.length, columnStatistics.getColumnCount(),
+                (row, column) -> getOverviewColor(rows[overviewRows[row]], column, columnStatistics));
+    }
+    
+    /**
+     * Get the overview color of a residue
+     * @param sequence Aligned sequence
+     * @param column Position in the alignment
+     * @param columnStatistics Statistics with the consensus of the column
+     * @return Gap, match or mismatch color
+     */
+    private static int getOverviewColor(byte[] sequence, int column, AlignmentColumnStatistics columnStatistics) {
+        if (column >= sequence.length || sequence[column] == '-' || sequence[column] == '.') {
+            return GAP_RGB;
         }
-        
-        return conserved;
+        int residue = Character.toUpperCase(sequence[column]);
+        return residue == columnStatistics.getConsensus(column) ? MATCH_RGB : MISMATCH_RGB;
     }
     
     /**
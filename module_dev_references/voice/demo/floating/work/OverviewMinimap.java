@@ -0,0 +1,347 @@
+package demo.floating.work;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Overview of a grid of cells, such as an alignment or a heatmap, that is larger than its viewport.
+ *
+ * The whole grid is downsampled into a bitmap of at most maxBitmapWidth x maxBitmapHeight pixels on a background
+ * thread: every pixel is the mean color of the cells behind it, reading at most MAX_SAMPLES rows and columns of
+ * them evenly spread, so building takes about the same time however large the grid is. The bitmap is stretched
+ * over the component, with the visible part of the grid outlined; clicking or dragging scrolls the viewport there.
+ * After an edit only the pixels over the changed cells are rebuilt. All minimaps share one daemon builder thread,
+ * so a minimap that is discarded leaves no thread behind; the rows of a bitmap are still colored in parallel.
+ */
+public class OverviewMinimap extends JPanel {
+
+    /**
+     * Colors of single cells, called on the background thread
+     */
+    public interface CellColors {
+        /**
+         * Get the color of a cell
+         * @param row Row index
+         * @param column Column index
+         * @return Packed RGB color; the alpha is ignored
+         */
+        int rgb(int row, int column);
+    }
+
+    /** Cells read per pixel along each axis, at most */
+    private static final int MAX_SAMPLES = 16;
+    private static final Color VIEWPORT_COLOR = new Color(220, 0, 0);
+    private static final Color VIEWPORT_FILL = new Color(220, 0, 0, 40);
+    private static final int MIN_VIEWPORT_SIZE = 6;
+    /** Runs the builds of every minimap, one at a time */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Overview builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Grid being drawn and its bitmap, touched only on the background thread
+     */
+    private static final class Bitmap {
+        int rows;
+        int columns;
+        CellColors colors;
+        int width;
+        int height;
+        int[] pixels;
+        int generation;
+    }
+
+    private final int maxBitmapWidth;
+    private final int maxBitmapHeight;
+    private final AtomicInteger generation = new AtomicInteger();
+    /** Current bitmap; read and written by the background thread only */
+    private Bitmap bitmap;
+
+    private BufferedImage image;
+    private boolean building;
+    private JComponent view;
+    private Supplier<Rectangle> gridBounds;
+    private JViewport viewport;
+    private final ChangeListener viewportListener = e -> repaint();
+
+    /**
+     * Constructor for OverviewMinimap
+     * @param maxBitmapWidth Most pixel columns of the bitmap
+     * @param maxBitmapHeight Most pixel rows of the bitmap
+     * @param preferredSize Preferred size of the component
+     */
+    public OverviewMinimap(int maxBitmapWidth, int maxBitmapHeight, Dimension preferredSize) {
+        this.maxBitmapWidth = maxBitmapWidth;
+        this.maxBitmapHeight = maxBitmapHeight;
+        setPreferredSize(preferredSize);
+        setBackground(Color.WHITE);
+        setBorder(BorderFactory.createLineBorder(Color.GRAY));
+        setToolTipText("Overview - click or drag to scroll there");
+
+        MouseAdapter navigator = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                scrollTo(e.getPoint());
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                scrollTo(e.getPoint());
+            }
+        };
+        addMouseListener(navigator);
+        addMouseMotionListener(navigator);
+    }
+
+    /**
+     * Set the component the grid is drawn in; the viewport is the one it is scrolled by
+     * @param view Component inside a JViewport
+     * @param gridBounds Rectangle the cells cover in the coordinates of the view
+     */
+    public void setView(JComponent view, Supplier<Rectangle> gridBounds) {
+        this.view = view;
+        this.gridBounds = gridBounds;
+        repaint();
+    }
+
+    /**
+     * Rebuild the whole bitmap in the background, cancelling a build in progress
+     * @param rows Number of rows of the grid
+     * @param columns Number of columns of the grid
+     * @param colors Colors of the cells; it must keep reading the data it was created for
+     */
+    public void setData(int rows, int columns, CellColors colors) {
+        int buildGeneration = generation.incrementAndGet();
+        if (rows <= 0 || columns <= 0) {
+            building = false;
+            image = null;
+            EXECUTOR.execute(() -> bitmap = null);
+            repaint();
+            return;
+        }
+        building = true;
+        repaint();
+        EXECUTOR.execute(() -> {
+            if (generation.get() != buildGeneration) {
+                return;
+            }
+            Bitmap next = new Bitmap();
+            next.rows = rows;
+            next.columns = columns;
+            next.colors = colors;
+            next.width = Math.min(columns, maxBitmapWidth);
+            next.height = Math.min(rows, maxBitmapHeight);
+            next.pixels = new int[next.width * next.height];
+            next.generation = buildGeneration;
+            bitmap = next;
+            if (render(next, 0, next.height, 0, next.width)) {
+                publish(next);
+            }
+        });
+    }
+
+    /**
+     * Rebuild the pixels over a block of cells that changed, after the current build
+     * @param rowStart First changed row
+     * @param rowEnd Row after the last changed one
+     * @param columnStart First changed column
+     * @param columnEnd Column after the last changed one
+     */
+    public void refresh(int rowStart, int rowEnd, int columnStart, int columnEnd) {
+        int refreshGeneration = generation.get();
+        EXECUTOR.execute(() -> {
+            Bitmap current = bitmap;
+            if (current == null || current.generation != refreshGeneration || generation.get() != refreshGeneration) {
+                return;
+            }
+            int firstRow = Math.max(0, rowStart);
+            int lastRow = Math.min(current.rows, rowEnd) - 1;
+            int firstColumn = Math.max(0, columnStart);
+            int lastColumn = Math.min(current.columns, columnEnd) - 1;
+            if (firstRow > lastRow || firstColumn > lastColumn) {
+                return;
+            }
+            // A pixel starts at cell floor(p * cells / pixels); the one holding a cell is at most one after this
+            int yStart = (int) ((long) firstRow * current.height / current.rows);
+            int yEnd = (int) Math.min(current.height, (long) lastRow * current.height / current.rows + 2);
+            int xStart = (int) ((long) firstColumn * current.width / current.columns);
+            int xEnd = (int) Math.min(current.width, (long) lastColumn * current.width / current.columns + 2);
+            if (render(current, yStart, yEnd, xStart, xEnd)) {
+                publish(current);
+            }
+        });
+    }
+
+    /**
+     * Check whether the bitmap is being built
+     * @return Whether a full build is in progress
+     */
+    public boolean isBuilding() {
+        return building;
+    }
+
+    /**
+     * Color a block of pixels with the mean color of their cells
+     * @param target Bitmap to draw in
+     * @param yStart First pixel row
+     * @param yEnd Pixel row after the last
+     * @param xStart First pixel column
+     * @param xEnd Pixel column after the last
+     * @return Whether the block was finished, false if the bitmap was replaced meanwhile
+     */
+    private boolean render(Bitmap target, int yStart, int yEnd, int xStart, int xEnd) {
+        // Cells of every pixel column, computed once for all pixel rows
+        int[] columnStarts = new int[xEnd - xStart];
+        int[] columnEnds = new int[xEnd - xStart];
+        for (int x = xStart; x < xEnd; x++) {
+            columnStarts[x - xStart] = (int) ((long) x * target.columns / target.width);
+            columnEnds[x - xStart] = (int) ((long) (x + 1) * target.columns / target.width);
+        }
+        IntStream.range(yStart, yEnd).parallel().forEach(y -> {
+            if (generation.get() != target.generation) {
+                return;
+            }
+            int rowStart = (int) ((long) y * target.rows / target.height);
+            int rowEnd = (int) ((long) (y + 1) * target.rows / target.height);
+            int rowStep = Math.max(1, (rowEnd - rowStart) / MAX_SAMPLES);
+            for (int x = xStart; x < xEnd; x++) {
+                int columnStart = columnStarts[x - xStart];
+                int columnEnd = columnEnds[x - xStart];
+                int columnStep = Math.max(1, (columnEnd - columnStart) / MAX_SAMPLES);
+                long red = 0, green = 0, blue = 0;
+                int samples = 0;
+                for (int row = rowStart; row < rowEnd; row += rowStep) {
+                    for (int column = columnStart; column < columnEnd; column += columnStep) {
+                        int rgb = target.colors.rgb(row, column);
+                        red += (rgb >> 16) & 0xFF;
+                        green += (rgb >> 8) & 0xFF;
+                        blue += rgb & 0xFF;
+                        samples++;
+                    }
+                }
+                target.pixels[y * target.width + x] = (int) (red / samples) << 16
+                        | (int) (green / samples) << 8 | (int) (blue / samples);
+            }
+        });
+        return generation.get() == target.generation;
+    }
+
+    /**
+     * Hand a copy of the bitmap to the component, unless a new build started meanwhile
+     * @param source Bitmap to show
+     */
+    private void publish(Bitmap source) {
+        BufferedImage copy = new BufferedImage(source.width, source.height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+        System.arraycopy(source.pixels, 0, pixels, 0, pixels.length);
+        SwingUtilities.invokeLater(() -> {
+            if (generation.get() == source.generation) {
+                image = copy;
+                building = false;
+                repaint();
+            }
+        });
+    }
+
+    /**
+     * Find the viewport of the view and follow its scrolling
+     * @return Viewport, or null if the view is not in one
+     */
+    private JViewport findViewport() {
+        JViewport found = view == null ? null : (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, view);
+        if (found != viewport) {
+            if (viewport != null) {
+                viewport.removeChangeListener(viewportListener);
+            }
+            if (found != null) {
+                found.addChangeListener(viewportListener);
+            }
+            viewport = found;
+        }
+        return viewport;
+    }
+
+    /**
+     * Get the area the bitmap is stretched over
+     * @return Inside of the border
+     */
+    private Rectangle getOverviewArea() {
+        Insets insets = getInsets();
+        return new Rectangle(insets.left, insets.top, getWidth() - insets.left - insets.right,
+                getHeight() - insets.top - insets.bottom);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Rectangle area = getOverviewArea();
+        if (image != null) {
+            g.drawImage(image, area.x, area.y, area.width, area.height, null);
+        }
+        if (building) {
+            g.setColor(Color.DARK_GRAY);
+            g.setFont(MyFontConfig.getDefaultFont());
+            g.drawString("Building overview...", area.x + 5, area.y + g.getFontMetrics().getAscent() + 2);
+        }
+        if (image == null) {
+            return;
+        }
+
+        // Visible part of the grid
+        JViewport currentViewport = findViewport();
+        Rectangle grid = gridBounds == null ? null : gridBounds.get();
+        if (currentViewport == null || grid == null || grid.isEmpty()) {
+            return;
+        }
+        Rectangle visible = currentViewport.getViewRect().intersection(grid);
+        if (visible.isEmpty()) {
+            return;
+        }
+        int x = area.x + (int) ((long) (visible.x - grid.x) * area.width / grid.width);
+        int y = area.y + (int) ((long) (visible.y - grid.y) * area.height / grid.height);
+        // Kept large enough to find when the grid is far larger than the viewport
+        int width = Math.max(MIN_VIEWPORT_SIZE, (int) ((long) visible.width * area.width / grid.width));
+        int height = Math.max(MIN_VIEWPORT_SIZE, (int) ((long) visible.height * area.height / grid.height));
+        x = Math.min(x, area.x + area.width - width);
+        y = Math.min(y, area.y + area.height - height);
+        g.setColor(VIEWPORT_FILL);
+        g.fillRect(x, y, width, height);
+        g.setColor(VIEWPORT_COLOR);
+        g.drawRect(x, y, width - 1, height - 1);
+        g.drawRect(x + 1, y + 1, width - 3, height - 3);
+    }
+
+    /**
+     * Scroll the viewport so that the point of the grid under the mouse is at its center
+     * @param point Mouse position
+     */
+    private void scrollTo(Point point) {
+        JViewport currentViewport = findViewport();
+        Rectangle grid = gridBounds == null ? null : gridBounds.get();
+        Rectangle area = getOverviewArea();
+        if (currentViewport == null || grid == null || grid.isEmpty() || area.isEmpty()) {
+            return;
+        }
+        double fractionX = Math.max(0, Math.min(1, (point.x - area.x) / (double) area.width));
+        double fractionY = Math.max(0, Math.min(1, (point.y - area.y) / (double) area.height));
+        Dimension extent = currentViewport.getExtentSize();
+        Dimension size = currentViewport.getViewSize();
+        int x = (int) (grid.x + fractionX * grid.width) - extent.width / 2;
+        int y = (int) (grid.y + fractionY * grid.height) - extent.height / 2;
+        x = Math.max(0, Math.min(x, size.width - extent.width));
+        y = Math.max(0, Math.min(y, size.height - extent.height));
+        currentViewport.setViewPosition(new Point(x, y));
+    }
+}
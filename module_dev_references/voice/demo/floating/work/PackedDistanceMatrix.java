@@ -0,0 +1,192 @@
+package demo.floating.work;
+
+import java.util.stream.IntStream;
+
+/**
+ * Symmetric distance matrix with a zero diagonal, stored as its strict lower triangle.
+ *
+ * The distance between items i and j, i greater than j, is at index i * (i - 1) / 2 + j of one float array,
+ * so n items take 2 * n * (n - 1) bytes: 800 MB for 20,000 items, a quarter of a full matrix of doubles.
+ * The constructor computes the distances in parallel over square blocks of items, so the rows of a block
+ * stay in cache while they are compared.
+ */
+public class PackedDistanceMatrix {
+
+    /**
+     * Distance between two rows of values
+     */
+    public enum Metric {
+        /** Euclidean distance */
+        EUCLIDEAN,
+        /** Squared Euclidean distance, as Ward linkage expects */
+        SQUARED_EUCLIDEAN,
+        /** One minus the Pearson correlation, from 0 to 2 */
+        CORRELATION
+    }
+
+    /** Items per block side; two blocks of 100 doubles per item fit in L2 */
+    private static final int BLOCK_SIZE = 64;
+
+    private final int size;
+    private final float[] distances;
+
+    /**
+     * Constructor for PackedDistanceMatrix, computing the distances of all pairs of rows
+     * @param items Items, rows of equal length
+     * @param metric Distance between two rows
+     */
+    public PackedDistanceMatrix(double[][] items, Metric metric) {
+        this.size = items.length;
+        long pairs = (long) size * (size - 1) / 2;
+        if (pairs > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many items for a distance matrix: " + size);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        if (pairs * Float.BYTES > available) {
+            throw new IllegalStateException(String.format(
+                    "A distance matrix of %,d items needs %,d MB, %,d MB are available",
+                    size, pairs * Float.BYTES >> 20, available >> 20));
+        }
+        this.distances = new float[(int) pairs];
+
+        double[][] vectors = prepare(items, metric);
+        double[] squaredNorms = new double[size];
+        for (int i = 0; i < size; i++) {
+            squaredNorms[i] = dot(vectors[i], vectors[i]);
+        }
+
+        // Blocks of the lower triangle, numbered row by row, so the work splits evenly between threads
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long blockPairs = (long) blocks * (blocks + 1) / 2;
+        IntStream.range(0, (int) blockPairs).parallel().forEach(p -> {
+            int blockRow = (int) ((Math.sqrt(8.0 * p + 1) - 1) / 2);
+            // Guard against the square root rounding either way
+            while ((long) blockRow * (blockRow + 1) / 2 > p) {
+                blockRow--;
+            }
+            while ((long) (blockRow + 1) * (blockRow + 2) / 2 <= p) {
+                blockRow++;
+            }
+            int blockColumn = (int) (p - (long) blockRow * (blockRow + 1) / 2);
+            computeBlock(vectors, squaredNorms, metric, blockRow * BLOCK_SIZE, blockColumn * BLOCK_SIZE);
+        });
+    }
+
+    /**
+     * Turn the items into vectors whose dot products give the distances
+     * @param items Items
+     * @param metric Distance between two rows
+     * @return The items for the Euclidean metrics, centered rows of unit length for the correlation
+     */
+    private static double[][] prepare(double[][] items, Metric metric) {
+        if (metric != Metric.CORRELATION) {
+            return items;
+        }
+        double[][] vectors = new double[items.length][];
+        IntStream.range(0, items.length).parallel().forEach(i -> {
+            double[] row = items[i];
+            double mean = 0;
+            for (double value : row) {
+                mean += value;
+            }
+            mean /= Math.max(1, row.length);
+            double[] vector = new double[row.length];
+            double squares = 0;
+            for (int k = 0; k < row.length; k++) {
+                vector[k] = row[k] - mean;
+                squares += vector[k] * vector[k];
+            }
+            // A constant row is uncorrelated with everything and stays at zero
+            double scale = squares > 0 ? 1 / Math.sqrt(squares) : 0;
+            for (int k = 0; k < row.length; k++) {
+                vector[k] *= scale;
+            }
+            vectors[i] = vector;
+        });
+        return vectors;
+    }
+
+    /**
+     * Compute the distances between the items of two blocks
+     * @param vectors Prepared items
+     * @param squaredNorms Dot product of every item with itself
+     * @param metric Distance between two rows
+     * @param rowStart First item of the row block
+     * @param columnStart First item of the column block, not after rowStart
+     */
+    private void computeBlock(double[][] vectors, double[] squaredNorms, Metric metric, int rowStart, int columnStart) {
+        int rowEnd = Math.min(size, rowStart + BLOCK_SIZE);
+        int columnEnd = Math.min(size, columnStart + BLOCK_SIZE);
+        for (int i = rowStart; i < rowEnd; i++) {
+            double[] vector = vectors[i];
+            int base = (int) ((long) i * (i - 1) / 2);
+            for (int j = columnStart; j < Math.min(i, columnEnd); j++) {
+                double product = dot(vector, vectors[j]);
+                double distance;
+                if (metric == Metric.CORRELATION) {
+                    distance = 1 - product;
+                } else {
+                    // Rounding can make this slightly negative for near-identical rows
+                    distance = Math.max(0, squaredNorms[i] + squaredNorms[j] - 2 * product);
+                    if (metric == Metric.EUCLIDEAN) {
+                        distance = Math.sqrt(distance);
+                    }
+                }
+                distances[base + j] = (float) distance;
+            }
+        }
+    }
+
+    /**
+     * Dot product of two vectors
+     * @param a First vector
+     * @param b Second vector, as long as the first
+     * @return Sum of the products
+     */
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int k = 0; k < a.length; k++) {
+            sum += a[k] * b[k];
+        }
+        return sum;
+    }
+
+    /**
+     * Get the index of a pair in the packed array
+     * @param i One item
+     * @param j Another item
+     * @return Index of the pair
+     */
+    private static int index(int i, int j) {
+        return i > j ? (int) ((long) i * (i - 1) / 2) + j : (int) ((long) j * (j - 1) / 2) + i;
+    }
+
+    /**
+     * Get the distance between two items
+     * @param i One item
+     * @param j Another item
+     * @return Distance, 0 if i equals j
+     */
+    public float get(int i, int j) {
+        return i == j ? 0 : distances[index(i, j)];
+    }
+
+    /**
+     * Set the distance between two different items
+     * @param i One item
+     * @param j Another item
+     * @param distance Distance
+     */
+    public void set(int i, int j, float distance) {
+        distances[index(i, j)] = distance;
+    }
+
+    /**
+     * Get the number of items
+     * @return Item count
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,340 @@
+package demo.floating.work;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Draws scatter plots of many points on a background thread, so painting never blocks the event dispatch thread.
+ *
+ * A pass draws the points in a fixed random order, in batches of BATCH_SIZE, into back buffers. After a
+ * batch, at most every PUBLISH_INTERVAL_MS, the buffers are composed into a new {@link Frame} and handed
+ * to the consumer on the event dispatch thread; since the order is random, every intermediate frame
+ * already looks like the whole plot, only fainter. Starting a pass cancels the running one, which stops
+ * at its next batch, and frames of a cancelled pass are never delivered. The background thread is started
+ * with the first pass and stopped by {@link #dispose()}, which the owning panel calls when it is removed.
+ *
+ * Points are either stamped as glyph images or, in density mode and unless emphasized, counted per
+ * pixel and shaded by the log of the count. Emphasized points are drawn above the others. Every frame
+ * also tells which point is on top at each pixel, for picking.
+ */
+public class ProgressiveScatterRenderer {
+    public static final int BATCH_SIZE = 20000;
+    private static final long PUBLISH_INTERVAL_MS = 40;
+
+    /**
+     * Result of a pass, complete or not; immutable once delivered
+     */
+    public static final class Frame {
+        /** Points, to be drawn at (originX, originY) */
+        public final BufferedImage image;
+        /** Point on top at every image pixel, or -1 */
+        public final int[] pixelPoint;
+        public final int originX;
+        public final int originY;
+        /** Data range and screen rectangle of the plot area the pass drew for */
+        public final double minX, maxX, minY, maxY;
+        public final Rectangle plotArea;
+        public final int pointsDrawn;
+        public final int pointCount;
+
+        /**
+         * Constructor for Frame
+         * @param image Points
+         * @param pixelPoint Point on top at every pixel
+         * @param pass Pass the frame belongs to
+         * @param pointsDrawn Points drawn so far
+         */
+        private Frame(BufferedImage image, int[] pixelPoint, Pass pass, int pointsDrawn) {
+            this.image = image;
+            this.pixelPoint = pixelPoint;
+            this.originX = pass.plotArea.x - pass.glyphRadius;
+            this.originY = pass.plotArea.y - pass.glyphRadius;
+            this.minX = pass.minX;
+            this.maxX = pass.maxX;
+            this.minY = pass.minY;
+            this.maxY = pass.maxY;
+            this.plotArea = pass.plotArea;
+            this.pointsDrawn = pointsDrawn;
+            this.pointCount = pass.xValues.length;
+        }
+
+        /**
+         * Check whether every point is drawn
+         * @return Whether the pass finished
+         */
+        public boolean isComplete() {
+            return pointsDrawn == pointCount;
+        }
+
+        /**
+         * Check whether the frame was drawn for a view
+         * @param minX Lowest x value
+         * @param maxX Highest x value
+         * @param minY Lowest y value
+         * @param maxY Highest y value
+         * @param plotArea Screen rectangle of the plot area
+         * @return Whether it matches, so its pixels can be picked
+         */
+        public boolean matches(double minX, double maxX, double minY, double maxY, Rectangle plotArea) {
+            return this.minX == minX && this.maxX == maxX && this.minY == minY && this.maxY == maxY
+                    && this.plotArea.equals(plotArea);
+        }
+    }
+
+    /**
+     * Everything a pass reads, captured when it is started
+     */
+    private static final class Pass {
+        double[] xValues;
+        double[] yValues;
+        boolean[] emphasized;
+        byte[] glyphOf;
+        BufferedImage[] glyphImages;
+        int[] order;
+        int glyphRadius;
+        int densityRgb;
+        boolean density;
+        double minX, maxX, minY, maxY;
+        Rectangle plotArea;
+        int generation;
+    }
+
+    private final Consumer<Frame> frameConsumer;
+    private final AtomicInteger generation = new AtomicInteger();
+    /** Runs the passes; null until the first pass and after dispose */
+    private ExecutorService executor;
+
+    private double[] xValues = new double[0];
+    private double[] yValues = new double[0];
+    private boolean[] emphasized = new boolean[0];
+    private byte[] glyphOf = new byte[0];
+    private BufferedImage[] glyphImages = new BufferedImage[0];
+    private int[] order = new int[0];
+    private int glyphRadius;
+    private int densityRgb;
+
+    /**
+     * Constructor for ProgressiveScatterRenderer
+     * @param frameConsumer Receives the frames of the current pass, on the event dispatch thread
+     */
+    public ProgressiveScatterRenderer(Consumer<Frame> frameConsumer) {
+        this.frameConsumer = frameConsumer;
+    }
+
+    /**
+     * Set the points and how they look; call on the event dispatch thread and do not modify the arrays afterwards
+     * @param xValues X values
+     * @param yValues Y values, as many
+     * @param emphasized Points always drawn as glyphs, above the others
+     * @param glyphOf Index of the glyph image of every point
+     * @param glyphImages Glyph images of 2 * glyphRadius + 1 pixels square, the point at their center
+     * @param glyphRadius Distance from a point to the edge of its glyph
+     * @param densityRgb Color of the density shading
+     */
+    public void setPoints(double[] xValues, double[] yValues, boolean[] emphasized, byte[] glyphOf,
+                          BufferedImage[] glyphImages, int glyphRadius, int densityRgb) {
+        cancel();
+        this.xValues = xValues;
+        this.yValues = yValues;
+        this.emphasized = emphasized;
+        this.glyphOf = glyphOf;
+        this.glyphImages = glyphImages;
+        this.glyphRadius = glyphRadius;
+        this.densityRgb = densityRgb & 0xFFFFFF;
+
+        // Fixed seed, so the same data fills in the same way every time
+        int[] shuffled = new int[xValues.length];
+        for (int i = 0; i < shuffled.length; i++) {
+            shuffled[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = swap;
+        }
+        this.order = shuffled;
+    }
+
+    /**
+     * Start a pass for a view, cancelling the running one
+     * @param minX X value at the left edge of the plot area
+     * @param maxX X value at the right edge
+     * @param minY Y value at the bottom edge
+     * @param maxY Y value at the top edge
+     * @param plotArea Screen rectangle of the plot area
+     * @param density Whether points that are not emphasized are shaded by density instead of stamped
+     */
+    public void render(double minX, double maxX, double minY, double maxY, Rectangle plotArea, boolean density) {
+        Pass pass = new Pass();
+        pass.xValues = xValues;
+        pass.yValues = yValues;
+        pass.emphasized = emphasized;
+        pass.glyphOf = glyphOf;
+        pass.glyphImages = glyphImages;
+        pass.order = order;
+        pass.glyphRadius = glyphRadius;
+        pass.densityRgb = densityRgb;
+        pass.density = density;
+        pass.minX = minX;
+        pass.maxX = maxX;
+        pass.minY = minY;
+        pass.maxY = maxY;
+        pass.plotArea = new Rectangle(plotArea);
+        pass.generation = generation.incrementAndGet();
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Scatter plot renderer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        executor.execute(() -> draw(pass));
+    }
+
+    /**
+     * Cancel the running pass; its remaining frames are dropped
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Cancel the running pass and stop the background thread; call on the event dispatch thread.
+     * A later pass starts a new thread
+     */
+    public void dispose() {
+        cancel();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Draw a pass batch by batch, publishing frames, until it is done or cancelled
+     * @param pass Pass to draw
+     */
+    private void draw(Pass pass) {
+        if (generation.get() != pass.generation) {
+            return;
+        }
+        int radius = pass.glyphRadius;
+        Rectangle area = pass.plotArea;
+        int width = area.width + 2 * radius + 1;
+        int height = area.height + 2 * radius + 1;
+        // Stamped points in two layers, so emphasized points stay above whatever comes later
+        BufferedImage lowerLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage upperLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D lowerGraphics = lowerLayer.createGraphics();
+        Graphics2D upperGraphics = upperLayer.createGraphics();
+        int[] counts = pass.density ? new int[width * height] : null;
+        int maxCount = 0;
+        int[] pixelPoint = new int[width * height];
+        Arrays.fill(pixelPoint, -1);
+
+        double scaleX = area.width / (pass.maxX - pass.minX);
+        double scaleY = area.height / (pass.maxY - pass.minY);
+        int count = pass.order.length;
+        long lastPublish = System.currentTimeMillis();
+        for (int start = 0; start < count; start += BATCH_SIZE) {
+            int end = Math.min(count, start + BATCH_SIZE);
+            for (int k = start; k < end; k++) {
+                int point = pass.order[k];
+                double fx = (pass.xValues[point] - pass.minX) * scaleX;
+                double fy = (pass.yValues[point] - pass.minY) * scaleY;
+                // Outside the view, or NaN
+                if (!(fx >= 0 && fx <= area.width && fy >= 0 && fy <= area.height)) {
+                    continue;
+                }
+                // Pixel in the layers; the plot area starts at (radius, radius)
+                int x = radius + (int) fx;
+                int y = radius + area.height - (int) fy;
+                int pixel = y * width + x;
+                boolean upper = pass.emphasized[point];
+                if (upper) {
+                    upperGraphics.drawImage(pass.glyphImages[pass.glyphOf[point]], x - radius, y - radius, null);
+                    pixelPoint[pixel] = point;
+                    continue;
+                }
+                if (counts != null) {
+                    maxCount = Math.max(maxCount, ++counts[pixel]);
+                } else {
+                    lowerGraphics.drawImage(pass.glyphImages[pass.glyphOf[point]], x - radius, y - radius, null);
+                }
+                if (pixelPoint[pixel] < 0 || !pass.emphasized[pixelPoint[pixel]]) {
+                    pixelPoint[pixel] = point;
+                }
+            }
+            if (generation.get() != pass.generation) {
+                lowerGraphics.dispose();
+                upperGraphics.dispose();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (end == count || now - lastPublish >= PUBLISH_INTERVAL_MS) {
+                BufferedImage image = compose(lowerLayer, upperLayer, counts, maxCount, pass.densityRgb);
+                publish(new Frame(image, end == count ? pixelPoint : pixelPoint.clone(), pass, end), pass.generation);
+                lastPublish = now;
+            }
+        }
+        if (count == 0) {
+            publish(new Frame(compose(lowerLayer, upperLayer, counts, 0, pass.densityRgb), pixelPoint, pass, 0), pass.generation);
+        }
+        lowerGraphics.dispose();
+        upperGraphics.dispose();
+    }
+
+    /**
+     * Compose the density shading and the two glyph layers into a new image
+     * @param lowerLayer Stamped points that are not emphasized
+     * @param upperLayer Emphasized points
+     * @param counts Points per pixel, or null without density
+     * @param maxCount Largest count
+     * @param densityRgb Color of the density shading
+     * @return Frame image
+     */
+    private static BufferedImage compose(BufferedImage lowerLayer, BufferedImage upperLayer,
+                                         int[] counts, int maxCount, int densityRgb) {
+        BufferedImage image = new BufferedImage(lowerLayer.getWidth(), lowerLayer.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        if (counts != null) {
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            double scale = 1 / Math.log1p(Math.max(1, maxCount));
+            for (int p = 0; p < counts.length; p++) {
+                if (counts[p] > 0) {
+                    int alpha = 80 + (int) (175 * Math.log1p(counts[p]) * scale);
+                    pixels[p] = alpha << 24 | densityRgb;
+                }
+            }
+        }
+        Graphics2D graphics = image.createGraphics();
+        if (counts == null) {
+            graphics.drawImage(lowerLayer, 0, 0, null);
+        }
+        graphics.drawImage(upperLayer, 0, 0, null);
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * Hand a frame to the consumer, unless its pass was cancelled meanwhile
+     * @param frame Frame to deliver
+     * @param frameGeneration Generation of its pass
+     */
+    private void publish(Frame frame, int frameGeneration) {
+        SwingUtilities.invokeLater(() -> {
+            if (generation.get() == frameGeneration) {
+                frameConsumer.accept(frame);
+            }
+        });
+    }
+}
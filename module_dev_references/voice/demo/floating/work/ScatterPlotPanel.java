@@ -0,0 +1,628 @@
+package demo.floating.work;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base panel for gene scatter plots such as the MA plot and the volcano plot.
+ *
+ * Points are drawn by a {@link ProgressiveScatterRenderer} on a background thread; the panel paints the
+ * latest frame it delivered, so painting costs the same with a thousand genes as with half a million.
+ * Dragging pans, the mouse wheel zooms around the cursor and a double click resets the view; each of
+ * these, like a resize, cancels the pass in progress and starts a new one, while the previous frame is
+ * stretched to the new view until the new one arrives. The gene under the cursor is looked up in the
+ * frame's per-pixel index, within PICK_RADIUS pixels. The renderer thread is stopped when the panel is
+ * removed, e.g. when its frame is closed, and the view is drawn again if it is added back.
+ */
+public abstract class ScatterPlotPanel extends JPanel {
+
+    /**
+     * How the points are drawn
+     */
+    public enum RenderMode {
+        /** Density above DENSITY_THRESHOLD points, glyphs below */
+        AUTO,
+        /** A glyph per point */
+        POINTS,
+        /** Density of the points that are not significant, glyphs for the significant ones */
+        DENSITY
+    }
+
+    protected final int MARGIN = 50;
+    protected final int GLYPH_RADIUS = 3;
+    private final int DENSITY_THRESHOLD = 20000;
+    private final int PICK_RADIUS = 5;
+    private final double ZOOM_STEP = 1.25;
+    private final Color DENSITY_COLOR = new Color(150, 150, 150);
+    private final Font AXIS_LABEL_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 12);
+    private final Font TICK_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+
+    protected double[] xValues = new double[0];
+    protected double[] yValues = new double[0];
+    protected boolean[] significant = new boolean[0];
+    protected String[] pointNames;
+    protected int pointCount;
+    /** Data bounds with margins, and the range currently shown */
+    private double dataMinX, dataMaxX, dataMinY, dataMaxY;
+    protected double minX, maxX, minY, maxY;
+    private RenderMode renderMode = RenderMode.AUTO;
+
+    private final ProgressiveScatterRenderer renderer;
+    private ProgressiveScatterRenderer.Frame frame;
+    /** Pixel offsets within PICK_RADIUS, nearest first */
+    private final int[][] pickOffsets;
+    private int hoveredPoint = -1;
+    private int selectedPoint = -1;
+    private Point dragStart;
+    private double dragMinX, dragMaxX, dragMinY, dragMaxY;
+
+    /**
+     * Constructor for ScatterPlotPanel
+     */
+    protected ScatterPlotPanel() {
+        setLayout(new BorderLayout());
+        setPreferredSize(new Dimension(400, 300));
+        setBackground(Color.WHITE);
+
+        renderer = new ProgressiveScatterRenderer(newFrame -> {
+            frame = newFrame;
+            repaint();
+        });
+
+        List<int[]> offsets = new ArrayList<>();
+        for (int dy = -PICK_RADIUS; dy <= PICK_RADIUS; dy++) {
+            for (int dx = -PICK_RADIUS; dx <= PICK_RADIUS; dx++) {
+                if (dx * dx + dy * dy <= PICK_RADIUS * PICK_RADIUS) {
+                    offsets.add(new int[]{dx, dy});
+                }
+            }
+        }
+        offsets.sort((p, q) -> Integer.compare(p[0] * p[0] + p[1] * p[1], q[0] * q[0] + q[1] * q[1]));
+        pickOffsets = offsets.toArray(new int[0][]);
+
+        MouseAdapter mouseHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+                dragMinX = minX;
+                dragMaxX = maxX;
+                dragMinY = minY;
+                dragMaxY = maxY;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart != null) {
+                    Rectangle area = getPlotArea();
+                    double shiftX = (e.getX() - dragStart.x) * (dragMaxX - dragMinX) / area.width;
+                    double shiftY = (e.getY() - dragStart.y) * (dragMaxY - dragMinY) / area.height;
+                    setView(dragMinX - shiftX, dragMaxX - shiftX, dragMinY + shiftY, dragMaxY + shiftY);
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                setHoveredPoint(pickPoint(e.getX(), e.getY()));
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                setHoveredPoint(-1);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    resetView();
+                } else {
+                    setSelectedPoint(pickPoint(e.getX(), e.getY()));
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(Math.pow(ZOOM_STEP, e.getPreciseWheelRotation()), e.getPoint());
+            }
+        };
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+        addMouseWheelListener(mouseHandler);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                startPass();
+            }
+        });
+        // Register with the tooltip manager; the text comes from getToolTipText(MouseEvent)
+        setToolTipText("");
+    }
+
+    /**
+     * Set the points and show all of them
+     * @param xValues X values
+     * @param yValues Y values
+     * @param significant Significance flags; significant points are always drawn as glyphs, on top
+     * @param pointNames Names shown when hovering, or null
+     */
+    protected void setPoints(double[] xValues, double[] yValues, boolean[] significant, String[] pointNames) {
+        this.xValues = xValues;
+        this.yValues = yValues;
+        this.significant = significant;
+        this.pointNames = pointNames;
+        this.pointCount = xValues.length;
+
+        byte[] glyphOf = new byte[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            glyphOf[i] = (byte) getGlyphIndex(i);
+        }
+        renderer.setPoints(xValues, yValues, significant, glyphOf, createGlyphs(), GLYPH_RADIUS, DENSITY_COLOR.getRGB());
+        calculateBounds();
+
+        frame = null;
+        hoveredPoint = -1;
+        int oldSelection = selectedPoint;
+        selectedPoint = -1;
+        firePropertyChange("selectedPoint", oldSelection, -1);
+        resetView();
+    }
+
+    /**
+     * Calculate data boundaries with a margin of a tenth of the range on every side
+     */
+    private void calculateBounds() {
+        if (pointCount == 0) {
+            return;
+        }
+        dataMinX = dataMinY = Double.POSITIVE_INFINITY;
+        dataMaxX = dataMaxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < pointCount; i++) {
+            dataMinX = Math.min(dataMinX, xValues[i]);
+            dataMaxX = Math.max(dataMaxX, xValues[i]);
+            dataMinY = Math.min(dataMinY, yValues[i]);
+            dataMaxY = Math.max(dataMaxY, yValues[i]);
+        }
+
+        // Add some margins; a single value still gets a range
+        double xRange = dataMaxX > dataMinX ? dataMaxX - dataMinX : 1;
+        double yRange = dataMaxY > dataMinY ? dataMaxY - dataMinY : 1;
+        dataMinX -= xRange * 0.1;
+        dataMaxX += xRange * 0.1;
+        dataMinY -= yRange * 0.1;
+        dataMaxY += yRange * 0.1;
+    }
+
+    /**
+     * Show the whole data again
+     */
+    public void resetView() {
+        setView(dataMinX, dataMaxX, dataMinY, dataMaxY);
+    }
+
+    /**
+     * Zoom around a point of the plot area
+     * @param factor Range multiplier, below 1 to zoom in
+     * @param anchor Screen point that stays in place
+     */
+    public void zoom(double factor, Point anchor) {
+        Rectangle area = getPlotArea();
+        double fractionX = Math.max(0, Math.min(1, (anchor.x - area.x) / (double) area.width));
+        double fractionY = Math.max(0, Math.min(1, (area.y + area.height - anchor.y) / (double) area.height));
+        double anchorX = minX + fractionX * (maxX - minX);
+        double anchorY = minY + fractionY * (maxY - minY);
+        double rangeX = (maxX - minX) * factor;
+        double rangeY = (maxY - minY) * factor;
+        setView(anchorX - fractionX * rangeX, anchorX + (1 - fractionX) * rangeX,
+                anchorY - fractionY * rangeY, anchorY + (1 - fractionY) * rangeY);
+    }
+
+    /**
+     * Show a range of the data and start drawing it
+     * @param minX X value at the left edge
+     * @param maxX X value at the right edge
+     * @param minY Y value at the bottom edge
+     * @param maxY Y value at the top edge
+     */
+    private void setView(double minX, double maxX, double minY, double maxY) {
+        this.minX = minX;
+        this.maxX = maxX;
+        this.minY = minY;
+        this.maxY = maxY;
+        startPass();
+        repaint();
+    }
+
+    /**
+     * Set how the points are drawn
+     * @param renderMode Glyphs, density, or chosen by the number of points
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        this.renderMode = renderMode;
+        startPass();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        startPass();
+    }
+
+    @Override
+    public void removeNotify() {
+        renderer.dispose();
+        super.removeNotify();
+    }
+
+    /**
+     * Start drawing the current view in the background, cancelling the pass in progress
+     */
+    private void startPass() {
+        Rectangle area = getPlotArea();
+        if (pointCount == 0 || area.width <= 0 || area.height <= 0) {
+            renderer.cancel();
+            return;
+        }
+        boolean density = renderMode == RenderMode.DENSITY
+                || (renderMode == RenderMode.AUTO && pointCount > DENSITY_THRESHOLD);
+        renderer.render(minX, maxX, minY, maxY, area, density);
+    }
+
+    /**
+     * Get the screen rectangle between the axes
+     * @return Plot area
+     */
+    protected Rectangle getPlotArea() {
+        return new Rectangle(MARGIN, MARGIN, getWidth() - 2 * MARGIN, getHeight() - 2 * MARGIN);
+    }
+
+    /**
+     * Get the screen x coordinate of a value
+     * @param x X value
+     * @return X-coordinate
+     */
+    protected int toScreenX(double x) {
+        return MARGIN + (int) ((x - minX) / (maxX - minX) * (getWidth() - 2 * MARGIN));
+    }
+
+    /**
+     * Get the screen y coordinate of a value
+     * @param y Y value
+     * @return Y-coordinate
+     */
+    protected int toScreenY(double y) {
+        int height = getHeight();
+        return height - MARGIN - (int) ((y - minY) / (maxY - minY) * (height - 2 * MARGIN));
+    }
+
+    /**
+     * Get the selected point
+     * @return Point index, or -1
+     */
+    public int getSelectedPoint() {
+        return selectedPoint;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g.create();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        if (pointCount == 0) {
+            drawNoDataMessage(g2d);
+            g2d.dispose();
+            return;
+        }
+
+        drawAxes(g2d);
+        Graphics2D plotGraphics = (Graphics2D) g2d.create();
+        Rectangle area = getPlotArea();
+        plotGraphics.clipRect(area.x - GLYPH_RADIUS, area.y - GLYPH_RADIUS,
+                area.width + 2 * GLYPH_RADIUS + 1, area.height + 2 * GLYPH_RADIUS + 1);
+        drawFrame(plotGraphics);
+        drawGuides(plotGraphics);
+        drawHighlights(plotGraphics);
+        plotGraphics.dispose();
+        drawProgress(g2d);
+        drawLegend(g2d);
+
+        g2d.dispose();
+    }
+
+    /**
+     * Draw no data message when no data is available
+     * @param g2d Graphics2D object for drawing
+     */
+    private void drawNoDataMessage(Graphics2D g2d) {
+        String message = "Click import button to load data";
+        FontMetrics fm = g2d.getFontMetrics();
+        int x = (getWidth() - fm.stringWidth(message)) / 2;
+        int y = getHeight() / 2;
+        g2d.setColor(Color.GRAY);
+        g2d.drawString(message, x, y);
+    }
+
+    /**
+     * Draw the latest frame, stretched to the current view if it was drawn for another one
+     * @param g2d Graphics2D object for drawing
+     */
+    private void drawFrame(Graphics2D g2d) {
+        if (frame == null) {
+            return;
+        }
+        Rectangle area = getPlotArea();
+        if (frame.matches(minX, maxX, minY, maxY, area)) {
+            g2d.drawImage(frame.image, frame.originX, frame.originY, null);
+            return;
+        }
+        // Values at the edges of the frame image, placed where they are in the current view
+        Rectangle frameArea = frame.plotArea;
+        double valuesPerPixelX = (frame.maxX - frame.minX) / frameArea.width;
+        double valuesPerPixelY = (frame.maxY - frame.minY) / frameArea.height;
+        int width = frame.image.getWidth();
+        int height = frame.image.getHeight();
+        double leftValue = frame.minX + (frame.originX - frameArea.x) * valuesPerPixelX;
+        double rightValue = leftValue + width * valuesPerPixelX;
+        double topValue = frame.minY + (frameArea.y + frameArea.height - frame.originY) * valuesPerPixelY;
+        double bottomValue = topValue - height * valuesPerPixelY;
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2d.drawImage(frame.image, toScreenX(leftValue), toScreenY(topValue), toScreenX(rightValue), toScreenY(bottomValue),
+                0, 0, width, height, null);
+    }
+
+    /**
+     * Tell how far the current pass is, while it runs
+     * @param g2d Graphics2D object for drawing
+     */
+    private void drawProgress(Graphics2D g2d) {
+        Rectangle area = getPlotArea();
+        boolean current = frame != null && frame.matches(minX, maxX, minY, maxY, area);
+        if (current && frame.isComplete()) {
+            return;
+        }
+        String message = current
+                ? String.format("Drawing %,d of %,d points", frame.pointsDrawn, frame.pointCount)
+                : "Drawing...";
+        g2d.setFont(TICK_FONT);
+        g2d.setColor(Color.GRAY);
+        g2d.drawString(message, area.x + 5, area.y + 12);
+    }
+
+    /**
+     * Draw coordinate axes
+     * @param g2d Graphics2D object for drawing
+     */
+    private void drawAxes(Graphics2D g2d) {
+        int width = getWidth();
+        int height = getHeight();
+
+        g2d.setColor(Color.BLACK);
+        g2d.setStroke(new BasicStroke(1));
+
+        // X-axis
+        g2d.drawLine(MARGIN, height - MARGIN, width - MARGIN, height - MARGIN);
+
+        // Y-axis
+        g2d.drawLine(MARGIN, MARGIN, MARGIN, height - MARGIN);
+
+        // Draw axis labels
+        g2d.setFont(AXIS_LABEL_FONT);
+
+        // X-axis label
+        String xLabel = getXAxisLabel();
+        FontMetrics fm = g2d.getFontMetrics();
+        int xLabelX = (width - fm.stringWidth(xLabel)) / 2;
+        g2d.drawString(xLabel, xLabelX, height - 10);
+
+        // Y-axis label (rotated 90 degrees)
+        Graphics2D g2dRotated = (Graphics2D) g2d.create();
+        g2dRotated.rotate(-Math.PI / 2, 15, height / 2);
+        String yLabel = getYAxisLabel();
+        int yLabelX = -fm.stringWidth(yLabel) / 2;
+        g2dRotated.drawString(yLabel, yLabelX, 0);
+        g2dRotated.dispose();
+
+        // Draw ticks
+        drawTicks(g2d);
+    }
+
+    /**
+     * Draw axis ticks and labels
+     * @param g2d Graphics2D object for drawing
+     */
+    private void drawTicks(Graphics2D g2d) {
+        int width = getWidth();
+        int height = getHeight();
+
+        g2d.setFont(TICK_FONT);
+        g2d.setColor(Color.GRAY);
+
+        // X-axis ticks
+        for (int i = 0; i <= 5; i++) {
+            double xValue = minX + (maxX - minX) * i / 5.0;
+            int x = MARGIN + (width - 2 * MARGIN) * i / 5;
+            g2d.drawLine(x, height - MARGIN, x, height - MARGIN + 5);
+            g2d.drawString(String.format("%.1f", xValue), x - 10, height - MARGIN + 20);
+        }
+
+        // Y-axis ticks
+        for (int i = 0; i <= 5; i++) {
+            double yValue = minY + (maxY - minY) * i / 5.0;
+            int y = height - MARGIN - (height - 2 * MARGIN) * i / 5;
+            g2d.drawLine(MARGIN - 5, y, MARGIN, y);
+            g2d.drawString(String.format("%.1f", yValue), 5, y + 3);
+        }
+    }
+
+    /**
+     * Pre-render a glyph, so drawing a point copies a small image
+     * @param color Glyph color
+     * @param shape Glyph shape, centered on (GLYPH_RADIUS, GLYPH_RADIUS)
+     * @return Image of 2 * GLYPH_RADIUS + 1 pixels square
+     */
+    protected BufferedImage createGlyph(Color color, Shape shape) {
+        int size = 2 * GLYPH_RADIUS + 1;
+        BufferedImage glyph = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D glyphGraphics = glyph.createGraphics();
+        glyphGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        glyphGraphics.setColor(color);
+        glyphGraphics.fill(shape);
+        glyphGraphics.dispose();
+        return glyph;
+    }
+
+    /**
+     * Find the point drawn nearest to a screen position, by looking at the pixels around it
+     * @param x X-coordinate
+     * @param y Y-coordinate
+     * @return Point index, or -1 if none is within PICK_RADIUS pixels or the view is being redrawn
+     */
+    private int pickPoint(int x, int y) {
+        if (frame == null || !frame.matches(minX, maxX, minY, maxY, getPlotArea())) {
+            return -1;
+        }
+        int width = frame.image.getWidth();
+        int height = frame.image.getHeight();
+        for (int[] offset : pickOffsets) {
+            int px = x - frame.originX + offset[0];
+            int py = y - frame.originY + offset[1];
+            if (px >= 0 && py >= 0 && px < width && py < height && frame.pixelPoint[py * width + px] >= 0) {
+                return frame.pixelPoint[py * width + px];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the area of the highlight ring of a point
+     * @param point Point index
+     * @return Rectangle to repaint
+     */
+    private Rectangle getHighlightBounds(int point) {
+        int radius = GLYPH_RADIUS + 5;
+        return new Rectangle(toScreenX(xValues[point]) - radius, toScreenY(yValues[point]) - radius,
+                2 * radius + 1, 2 * radius + 1);
+    }
+
+    /**
+     * Highlight the point under the cursor, repainting only the old and the new ring
+     * @param point Point index, or -1
+     */
+    private void setHoveredPoint(int point) {
+        if (point == hoveredPoint) {
+            return;
+        }
+        if (hoveredPoint >= 0) {
+            repaint(getHighlightBounds(hoveredPoint));
+        }
+        hoveredPoint = point;
+        if (point >= 0) {
+            repaint(getHighlightBounds(point));
+        }
+    }
+
+    /**
+     * Select a point and notify "selectedPoint" property listeners
+     * @param point Point index, or -1 to clear the selection
+     */
+    private void setSelectedPoint(int point) {
+        int oldPoint = selectedPoint;
+        if (oldPoint >= 0) {
+            repaint(getHighlightBounds(oldPoint));
+        }
+        selectedPoint = point;
+        if (point >= 0) {
+            repaint(getHighlightBounds(point));
+        }
+        firePropertyChange("selectedPoint", oldPoint, point);
+    }
+
+    /**
+     * Draw rings around the hovered and the selected point
+     * @param g2d Graphics2D object for drawing
+     */
+    private void drawHighlights(Graphics2D g2d) {
+        if (hoveredPoint >= 0) {
+            g2d.setColor(Color.DARK_GRAY);
+            g2d.setStroke(new BasicStroke(1));
+            g2d.draw(new Ellipse2D.Double(toScreenX(xValues[hoveredPoint]) - 5, toScreenY(yValues[hoveredPoint]) - 5, 10, 10));
+        }
+        if (selectedPoint >= 0) {
+            g2d.setColor(Color.BLACK);
+            g2d.setStroke(new BasicStroke(2));
+            g2d.draw(new Ellipse2D.Double(toScreenX(xValues[selectedPoint]) - 6, toScreenY(yValues[selectedPoint]) - 6, 12, 12));
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int point = pickPoint(e.getX(), e.getY());
+        return point < 0 ? null : describePoint(point);
+    }
+
+    /**
+     * Get the name of a point
+     * @param point Point index
+     * @return Its name, or "Gene n" without names
+     */
+    protected String getPointName(int point) {
+        return pointNames != null && point < pointNames.length ? pointNames[point] : "Gene " + (point + 1);
+    }
+
+    /**
+     * Get a description of a point, for the tooltip and the selection
+     * @param point Point index
+     * @return Description
+     */
+    public abstract String describePoint(int point);
+
+    /**
+     * Get the label of the x-axis
+     * @return Label
+     */
+    protected abstract String getXAxisLabel();
+
+    /**
+     * Get the label of the y-axis
+     * @return Label
+     */
+    protected abstract String getYAxisLabel();
+
+    /**
+     * Create the glyph images, with createGlyph
+     * @return Glyphs, indexed by getGlyphIndex
+     */
+    protected abstract BufferedImage[] createGlyphs();
+
+    /**
+     * Choose the glyph of a point
+     * @param point Point index
+     * @return Index into createGlyphs()
+     */
+    protected abstract int getGlyphIndex(int point);
+
+    /**
+     * Draw threshold lines and other guides over the points, clipped to the plot area
+     * @param g2d Graphics2D object for drawing
+     */
+    protected abstract void drawGuides(Graphics2D g2d);
+
+    /**
+     * Draw legend
+     * @param g2d Graphics2D object for drawing
+     */
+    protected abstract void drawLegend(Graphics2D g2d);
+}
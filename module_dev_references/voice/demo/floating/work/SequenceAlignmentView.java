@@ -0,0 +1,456 @@
+package demo.floating.work;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+
+/**
+ * Custom-painted alignment grid, meant to be the view of a JScrollPane, with its sequence names as the row
+ * header and a position ruler with the column statistics tracks as the column header: conservation marks,
+ * consensus residue, Shannon entropy and gap fraction, read from an {@link AlignmentColumnStatistics}.
+ *
+ * Every residue is one cell. A repaint draws only the rows and columns that intersect the clip, copying
+ * each cell from a glyph atlas: one image holding a pre-rendered tile for every printable character, once
+ * plain and once in its conserved color. The cost of a repaint therefore depends on the viewport and not on
+ * the alignment, and since the grid, the headers and their viewports are opaque, scrolling blits what was
+ * already visible and paints only the strip that comes into view. The tracks are drawn the same way, from
+ * statistics computed beforehand, so they cost nothing extra however long the alignment is.
+ */
+public class SequenceAlignmentView extends JPanel implements Scrollable {
+    public static final int CELL_WIDTH = 15;
+    public static final int CELL_HEIGHT = 20;
+    /** Cell plus the gap below it */
+    public static final int ROW_HEIGHT = CELL_HEIGHT + 2;
+    /** Tops of the column header tracks, and the bottom of the last */
+    private static final int RULER_TOP = 0;
+    private static final int CONSERVED_TOP = 18;
+    private static final int CONSENSUS_TOP = 32;
+    private static final int ENTROPY_TOP = 48;
+    private static final int GAPS_TOP = 72;
+    private static final int HEADER_HEIGHT = 86;
+    private static final int MIN_LABEL_WIDTH = 60;
+    private static final int MAX_LABEL_WIDTH = 200;
+    /** Printable ASCII characters have tiles; everything else is shown as '?' */
+    private static final int FIRST_GLYPH = 32;
+    private static final int GLYPH_COUNT = 127 - FIRST_GLYPH;
+
+    private final Map<Character, Color> residueColors;
+    private final BufferedImage glyphAtlas;
+    private final JComponent rowHeader = new RowHeader();
+    private final JComponent columnHeader = new ColumnHeader();
+    private final JComponent headerCorner = new HeaderCorner();
+
+    private byte[][] rows = new byte[0][];
+    private String[] labels = new String[0];
+    private AlignmentColumnStatistics statistics;
+    /** Rows displayed, in order */
+    private int[] shownRows = new int[0];
+    private int columnCount;
+    private int labelWidth = MIN_LABEL_WIDTH;
+
+    /**
+     * Constructor for SequenceAlignmentView
+     * @param residueColors Background of conserved residues by character; others are white
+     */
+    public SequenceAlignmentView(Map<Character, Color> residueColors) {
+        this.residueColors = residueColors;
+        this.glyphAtlas = createGlyphAtlas();
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        // Register with the tooltip manager; the text comes from getToolTipText(MouseEvent)
+        setToolTipText("");
+    }
+
+    /**
+     * Set the alignment to display
+     * @param rows Aligned sequences, one byte per residue; they are referenced, not copied
+     * @param labels Sequence names, one per row
+     * @param statistics Statistics of the columns
+     */
+    public void setAlignment(byte[][] rows, String[] labels, AlignmentColumnStatistics statistics) {
+        this.rows = rows;
+        this.labels = labels;
+        this.statistics = statistics;
+        this.columnCount = statistics.getColumnCount();
+        this.shownRows = new int[rows.length];
+        for (int i = 0; i < shownRows.length; i++) {
+            shownRows[i] = i;
+        }
+
+        FontMetrics fm = getFontMetrics(MyFontConfig.getTitleFont());
+        int widest = MIN_LABEL_WIDTH;
+        for (String label : labels) {
+            widest = Math.max(widest, fm.stringWidth(label + ": ") + 4);
+        }
+        this.labelWidth = Math.min(widest, MAX_LABEL_WIDTH);
+
+        revalidate();
+        repaint();
+        rowHeader.revalidate();
+        rowHeader.repaint();
+        columnHeader.revalidate();
+        columnHeader.repaint();
+    }
+
+    /**
+     * Display only some rows, for instance those kept by a filter
+     * @param shownRows Row indexes, in display order
+     */
+    public void setShownRows(int[] shownRows) {
+        this.shownRows = shownRows;
+        revalidate();
+        repaint();
+        rowHeader.revalidate();
+        rowHeader.repaint();
+    }
+
+    /**
+     * Repaint after rows were edited or the statistics changed otherwise
+     */
+    public void statisticsChanged() {
+        if (statistics.getColumnCount() != columnCount) {
+            columnCount = statistics.getColumnCount();
+            revalidate();
+            columnHeader.revalidate();
+        }
+        repaint();
+        columnHeader.repaint();
+    }
+
+    /**
+     * Get the sequence names, to be used as the row header of the scroll pane
+     * @return Row header component
+     */
+    public JComponent getRowHeader() {
+        return rowHeader;
+    }
+
+    /**
+     * Get the position ruler and the statistics tracks, to be used as the column header of the scroll pane
+     * @return Column header component
+     */
+    public JComponent getColumnHeader() {
+        return columnHeader;
+    }
+
+    /**
+     * Get the names of the column header tracks, to be used as the upper left corner of the scroll pane
+     * @return Corner component
+     */
+    public JComponent getHeaderCorner() {
+        return headerCorner;
+    }
+
+    /**
+     * Render one tile per printable character: the plain tiles in the first row of the atlas, the conserved
+     * ones in the second
+     * @return Glyph atlas
+     */
+    private BufferedImage createGlyphAtlas() {
+        BufferedImage atlas = new BufferedImage(GLYPH_COUNT * CELL_WIDTH, 2 * CELL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = atlas.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2d.setFont(MyFontConfig.getDefaultFont());
+        FontMetrics fm = g2d.getFontMetrics();
+        int baseline = (CELL_HEIGHT - fm.getHeight()) / 2 + fm.getAscent();
+        for (int glyph = 0; glyph < GLYPH_COUNT; glyph++) {
+            char residue = (char) (FIRST_GLYPH + glyph);
+            String text = String.valueOf(residue);
+            int x = glyph * CELL_WIDTH;
+            for (int style = 0; style < 2; style++) {
+                int y = style * CELL_HEIGHT;
+                // Conserved positions use nucleotide-specific colors, non-conserved positions white
+                g2d.setColor(style == 1 ? residueColors.getOrDefault(residue, Color.WHITE) : Color.WHITE);
+                g2d.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+                g2d.setColor(style == 1 ? Color.BLACK : Color.GRAY);
+                g2d.drawRect(x, y, CELL_WIDTH - 1, CELL_HEIGHT - 1);
+                g2d.setColor(Color.BLACK);
+                g2d.drawString(text, x + (CELL_WIDTH - fm.stringWidth(text)) / 2, y + baseline);
+            }
+        }
+        g2d.dispose();
+        return atlas;
+    }
+
+    /**
+     * Get the atlas tile of a residue
+     * @param residue Residue byte
+     * @return Tile index
+     */
+    private static int glyphOf(byte residue) {
+        int code = residue & 0xFF;
+        return (code >= FIRST_GLYPH && code < FIRST_GLYPH + GLYPH_COUNT ? code : '?') - FIRST_GLYPH;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(columnCount * CELL_WIDTH, shownRows.length * ROW_HEIGHT);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (shownRows.length == 0) {
+            drawNoDataMessage(g);
+            return;
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        int firstRow = Math.max(0, clip.y / ROW_HEIGHT);
+        int lastRow = Math.min(shownRows.length - 1, (clip.y + clip.height - 1) / ROW_HEIGHT);
+        int firstColumn = Math.max(0, clip.x / CELL_WIDTH);
+        int lastColumn = Math.min(columnCount - 1, (clip.x + clip.width - 1) / CELL_WIDTH);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            byte[] sequence = rows[shownRows[row]];
+            int y = row * ROW_HEIGHT;
+            int end = Math.min(lastColumn, sequence.length - 1);
+            for (int column = firstColumn; column <= end; column++) {
+                int x = column * CELL_WIDTH;
+                int sourceX = glyphOf(sequence[column]) * CELL_WIDTH;
+                int sourceY = statistics.isConserved(column) ? CELL_HEIGHT : 0;
+                g.drawImage(glyphAtlas, x, y, x + CELL_WIDTH, y + CELL_HEIGHT,
+                        sourceX, sourceY, sourceX + CELL_WIDTH, sourceY + CELL_HEIGHT, null);
+            }
+        }
+    }
+
+    /**
+     * Draw "No Data" message when no data is available
+     * @param g Graphics object for drawing
+     */
+    private void drawNoDataMessage(Graphics g) {
+        String message = rows.length == 0 ? "No sequence data available" : "No sequences match the filter";
+        g.setFont(MyFontConfig.getDefaultFont());
+        FontMetrics fm = g.getFontMetrics();
+        Rectangle visible = getVisibleRect();
+        g.setColor(Color.GRAY);
+        g.drawString(message, visible.x + (visible.width - fm.stringWidth(message)) / 2,
+                visible.y + visible.height / 2);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int shown = e.getY() / ROW_HEIGHT;
+        int column = e.getX() / CELL_WIDTH;
+        if (shown >= shownRows.length || column >= rows[shownRows[shown]].length) {
+            return null;
+        }
+        int row = shownRows[shown];
+        return String.format("%s, position %,d: %c%s", labels[row], column + 1, (char) (rows[row][column] & 0xFF),
+                statistics.isConserved(column) ? " (conserved)" : "");
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? CELL_WIDTH : ROW_HEIGHT;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        // A page, less one cell so the last one stays in view
+        return orientation == SwingConstants.HORIZONTAL
+                ? Math.max(CELL_WIDTH, visibleRect.width - CELL_WIDTH)
+                : Math.max(ROW_HEIGHT, visibleRect.height - ROW_HEIGHT);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        // Fill the viewport when the alignment is narrower
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getHeight() > getPreferredSize().height;
+    }
+
+    /**
+     * Sequence names, aligned with the rows of the grid
+     */
+    private class RowHeader extends JPanel {
+        /**
+         * Constructor for RowHeader
+         */
+        RowHeader() {
+            setBackground(Color.WHITE);
+            setOpaque(true);
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(labelWidth, shownRows.length * ROW_HEIGHT);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setFont(MyFontConfig.getTitleFont());
+            g2d.setColor(Color.BLACK);
+            FontMetrics fm = g2d.getFontMetrics();
+            int baseline = (CELL_HEIGHT - fm.getHeight()) / 2 + fm.getAscent();
+            int firstRow = Math.max(0, clip.y / ROW_HEIGHT);
+            int lastRow = Math.min(shownRows.length - 1, (clip.y + clip.height - 1) / ROW_HEIGHT);
+            for (int row = firstRow; row <= lastRow; row++) {
+                g2d.drawString(labels[shownRows[row]] + ": ", 2, row * ROW_HEIGHT + baseline);
+            }
+        }
+    }
+
+    /**
+     * Position ruler every ten columns, a star above every conserved column, the consensus residue, the entropy
+     * as bars up to the highest possible entropy, and the gap fraction as bars up to all gaps
+     */
+    private class ColumnHeader extends JPanel {
+        /**
+         * Constructor for ColumnHeader
+         */
+        ColumnHeader() {
+            setBackground(Color.WHITE);
+            setOpaque(true);
+            setToolTipText("");
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(columnCount * CELL_WIDTH, HEADER_HEIGHT);
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            int column = e.getX() / CELL_WIDTH;
+            if (statistics == null || column >= columnCount) {
+                return null;
+            }
+            StringBuilder text = new StringBuilder(String.format("Position %,d: consensus %c, entropy %.2f bits, gaps %.0f%%; ",
+                    column + 1, (char) statistics.getConsensus(column), statistics.getEntropy(column),
+                    100 * statistics.getGapFraction(column)));
+            for (int symbol = 0; symbol < statistics.getSymbolCount(); symbol++) {
+                int count = statistics.getCount(column, symbol);
+                if (count > 0) {
+                    text.append(' ').append(statistics.getSymbol(symbol)).append('=').append(count);
+                }
+            }
+            return text.toString();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            if (statistics == null) {
+                return;
+            }
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            // Position numbers are wider than a cell; include the ones that reach into the clip
+            int firstColumn = Math.max(0, clip.x / CELL_WIDTH - 5);
+            int lastColumn = Math.min(columnCount - 1, (clip.x + clip.width - 1) / CELL_WIDTH + 5);
+
+            g2d.setFont(MyFontConfig.getDefaultFont().deriveFont(10f));
+            FontMetrics fm = g2d.getFontMetrics();
+            g2d.setColor(Color.DARK_GRAY);
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int center = column * CELL_WIDTH + CELL_WIDTH / 2;
+                if ((column + 1) % 10 == 0) {
+                    String position = String.valueOf(column + 1);
+                    g2d.drawString(position, center - fm.stringWidth(position) / 2, RULER_TOP + fm.getAscent());
+                    g2d.drawLine(center, RULER_TOP + 13, center, RULER_TOP + 17);
+                } else if ((column + 1) % 5 == 0) {
+                    g2d.drawLine(center, RULER_TOP + 15, center, RULER_TOP + 17);
+                }
+            }
+
+            // Conservation indicators
+            g2d.setFont(new Font(Font.MONOSPACED, Font.BOLD, 12));
+            fm = g2d.getFontMetrics();
+            g2d.setColor(Color.RED);
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (statistics.isConserved(column)) {
+                    g2d.drawString("*", column * CELL_WIDTH + (CELL_WIDTH - fm.stringWidth("*")) / 2, CONSENSUS_TOP - 2);
+                }
+            }
+
+            // Consensus residues, colored like conserved residues
+            g2d.setFont(MyFontConfig.getDefaultFont());
+            fm = g2d.getFontMetrics();
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                char residue = (char) statistics.getConsensus(column);
+                int x = column * CELL_WIDTH;
+                g2d.setColor(residueColors.getOrDefault(residue, Color.WHITE));
+                g2d.fillRect(x, CONSENSUS_TOP, CELL_WIDTH, ENTROPY_TOP - CONSENSUS_TOP - 2);
+                g2d.setColor(Color.BLACK);
+                String text = String.valueOf(residue);
+                g2d.drawString(text, x + (CELL_WIDTH - fm.stringWidth(text)) / 2, CONSENSUS_TOP + fm.getAscent());
+            }
+
+            // Entropy and gap fraction bars, rising from the bottom of their tracks
+            double maxEntropy = statistics.getMaxEntropy();
+            int entropyHeight = GAPS_TOP - ENTROPY_TOP - 2;
+            int gapsHeight = HEADER_HEIGHT - GAPS_TOP - 2;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int x = column * CELL_WIDTH + 1;
+                // Rounded up, so any entropy or gap shows
+                int bar = (int) Math.ceil(entropyHeight * Math.min(1, statistics.getEntropy(column) / maxEntropy));
+                g2d.setColor(new Color(90, 120, 180));
+                g2d.fillRect(x, ENTROPY_TOP + entropyHeight - bar, CELL_WIDTH - 2, bar);
+                bar = (int) Math.ceil(gapsHeight * statistics.getGapFraction(column));
+                g2d.setColor(Color.GRAY);
+                g2d.fillRect(x, GAPS_TOP + gapsHeight - bar, CELL_WIDTH - 2, bar);
+            }
+            g2d.setColor(Color.LIGHT_GRAY);
+            g2d.drawLine(clip.x, GAPS_TOP - 2, clip.x + clip.width, GAPS_TOP - 2);
+            g2d.drawLine(clip.x, HEADER_HEIGHT - 2, clip.x + clip.width, HEADER_HEIGHT - 2);
+        }
+    }
+
+    /**
+     * Names of the column header tracks
+     */
+    private class HeaderCorner extends JPanel {
+        /**
+         * Constructor for HeaderCorner
+         */
+        HeaderCorner() {
+            setBackground(Color.WHITE);
+            setOpaque(true);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setFont(MyFontConfig.getDefaultFont().deriveFont(10f));
+            g2d.setColor(Color.DARK_GRAY);
+            FontMetrics fm = g2d.getFontMetrics();
+            String[] names = {"Position", "Conserved", "Consensus", "Entropy", "Gaps"};
+            int[] tops = {RULER_TOP, CONSERVED_TOP, CONSENSUS_TOP, ENTROPY_TOP, GAPS_TOP};
+            int[] bottoms = {CONSERVED_TOP, CONSENSUS_TOP, ENTROPY_TOP, GAPS_TOP, HEADER_HEIGHT};
+            for (int k = 0; k < names.length; k++) {
+                int baseline = (tops[k] + bottoms[k] - fm.getHeight()) / 2 + fm.getAscent();
+                g2d.drawString(names[k], 2, baseline);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package demo.floating.work;
+
+import demo.dockable.sigtest.DifferentialExpressionResult;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Internal frame for Volcano Plot visualization.
+ * Provides a window for displaying volcano plots of differential expression results with toolbar controls.
+ */
+public class VolcanoPlotInternalFrame extends JInternalFrame {
+    private VolcanoPlotPanel volcanoPlotPanel;
+    private JToolBar toolBar;
+    private JComboBox<Integer> geneCountComboBox;
+    private JLabel selectionLabel;
+    
+    /**
+     * Constructor for VolcanoPlotInternalFrame
+     * Creates a new internal frame with volcano plot visualization capabilities
+     */
+    public VolcanoPlotInternalFrame() {
+        super("Volcano Plot", true, true, true, true);
+        initializeComponents();
+        setupLayout();
+        setSize(600, 400);
+        setVisible(true);
+        
+        // Load sample data on startup
+        refreshData();
+    }
+    
+    /**
+     * Initialize components including volcano plot panel and toolbar
+     */
+    private void initializeComponents() {
+        volcanoPlotPanel = new VolcanoPlotPanel();
+        
+        // Create toolbar
+        toolBar = new JToolBar("Volcano Plot Tools");
+        toolBar.setFloatable(false);
+        
+        JButton refreshButton = new JButton("Refresh Data");
+        refreshButton.setFont(MyFontConfig.getDefaultFont());
+        refreshButton.addActionListener(e -> refreshData());
+        
+        JButton resetViewButton = new JButton("Reset View");
+        resetViewButton.setFont(MyFontConfig.getDefaultFont());
+        resetViewButton.setToolTipText("Drag to pan, scroll to zoom, double-click to reset");
+        resetViewButton.addActionListener(e -> volcanoPlotPanel.resetView());
+        
+        geneCountComboBox = new JComboBox<>(new Integer[]{1000, 100000, 500000});
+        geneCountComboBox.setFont(MyFontConfig.getDefaultFont());
+        geneCountComboBox.setToolTipText("Number of genes in the sample data");
+        
+        JComboBox<ScatterPlotPanel.RenderMode> renderModeComboBox = new JComboBox<>(ScatterPlotPanel.RenderMode.values());
+        renderModeComboBox.setFont(MyFontConfig.getDefaultFont());
+        renderModeComboBox.addActionListener(e ->
+                volcanoPlotPanel.setRenderMode((ScatterPlotPanel.RenderMode) renderModeComboBox.getSelectedItem()));
+        
+        selectionLabel = new JLabel();
+        selectionLabel.setFont(MyFontConfig.getDefaultFont());
+        volcanoPlotPanel.addPropertyChangeListener("selectedPoint", e -> {
+            int gene = (Integer) e.getNewValue();
+            selectionLabel.setText(gene < 0 ? "" : " " + volcanoPlotPanel.describePoint(gene));
+        });
+        
+        toolBar.add(refreshButton);
+        toolBar.add(resetViewButton);
+        toolBar.add(geneCountComboBox);
+        toolBar.add(renderModeComboBox);
+        toolBar.addSeparator();
+        toolBar.add(selectionLabel);
+    }
+    
+    /**
+     * Set up the layout for the internal frame
+     */
+    private void setupLayout() {
+        setLayout(new BorderLayout());
+        add(new JScrollPane(volcanoPlotPanel), BorderLayout.CENTER);
+        add(toolBar, BorderLayout.SOUTH);
+    }
+    
+    /**
+     * Refresh the volcano plot with simulated differential expression results
+     */
+    private void refreshData() {
+        int numGenes = (Integer) geneCountComboBox.getSelectedItem();
+        Random random = new Random();
+        double[] logFC = new double[numGenes];
+        double[] pValues = new double[numGenes];
+        
+        for (int i = 0; i < numGenes; i++) {
+            if (random.nextDouble() < 0.1) {
+                // Differentially expressed: a real shift, and a p-value that shrinks with it
+                double shift = (random.nextBoolean() ? 1 : -1) * (1 + Math.abs(random.nextGaussian()) * 1.5);
+                logFC[i] = shift + random.nextGaussian() * 0.3;
+                pValues[i] = Math.pow(random.nextDouble(), 1 + 4 * Math.abs(shift));
+            } else {
+                logFC[i] = random.nextGaussian() * 0.4;
+                pValues[i] = random.nextDouble();
+            }
+        }
+        
+        double[] adjustedPValues = adjustPValues(pValues);
+        List<DifferentialExpressionResult> results = new ArrayList<>(numGenes);
+        for (int i = 0; i < numGenes; i++) {
+            results.add(new DifferentialExpressionResult("Gene" + (i + 1), logFC[i], pValues[i],
+                    adjustedPValues[i], random.nextDouble() * 15 + 1));
+        }
+        volcanoPlotPanel.setResults(results);
+    }
+    
+    /**
+     * Benjamini-Hochberg adjustment
+     * @param pValues Raw p-values
+     * @return Adjusted p-values
+     */
+    private static double[] adjustPValues(double[] pValues) {
+        int n = pValues.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(pValues[b], pValues[a]));
+        double[] adjusted = new double[n];
+        double minimum = 1;
+        for (int rank = 0; rank < n; rank++) {
+            int i = order[rank];
+            minimum = Math.min(minimum, pValues[i] * n / (n - rank));
+            adjusted[i] = minimum;
+        }
+        return adjusted;
+    }
+}
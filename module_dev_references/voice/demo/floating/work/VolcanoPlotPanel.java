@@ -0,0 +1,153 @@
+package demo.floating.work;
+
+import demo.dockable.sigtest.DifferentialExpressionResult;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Volcano plot panel - log2 fold change on the x-axis against -log10 of the p-value on the y-axis.
+ *
+ * Genes far from the center and high up change strongly and reliably. The plot is drawn by the same
+ * progressive background renderer as the MA plot, see {@link ScatterPlotPanel}.
+ */
+public class VolcanoPlotPanel extends ScatterPlotPanel {
+    private final Color UP_COLOR = new Color(220, 60, 60, 190);
+    private final Color DOWN_COLOR = new Color(60, 90, 220, 190);
+    private final Color NEUTRAL_COLOR = new Color(150, 150, 150, 100);
+    private final double FOLD_CHANGE_THRESHOLD = 1;
+    private final double P_VALUE_THRESHOLD = 0.05;
+
+    private double[] pValues = new double[0];
+
+    /**
+     * Constructor for VolcanoPlotPanel
+     */
+    public VolcanoPlotPanel() {
+        super();
+    }
+
+    /**
+     * Set data for the volcano plot
+     * @param logFC log fold change values
+     * @param pValues p-values, plotted as -log10(p)
+     * @param significant significance flags, usually from adjusted p-values
+     * @param geneNames gene names, or null to number the genes
+     */
+    public void setData(double[] logFC, double[] pValues, boolean[] significant, String[] geneNames) {
+        int length = Math.min(Math.min(logFC.length, pValues.length), significant.length);
+        double[] logP = new double[length];
+        for (int i = 0; i < length; i++) {
+            // A p-value of 0 would be infinitely high; show it at the smallest double instead
+            logP[i] = -Math.log10(Math.max(pValues[i], Double.MIN_VALUE));
+        }
+        this.pValues = Arrays.copyOf(pValues, length);
+        setPoints(Arrays.copyOf(logFC, length), logP, Arrays.copyOf(significant, length), geneNames);
+    }
+
+    /**
+     * Set data for the volcano plot from differential expression results
+     * @param results Results, one per gene
+     */
+    public void setResults(List<DifferentialExpressionResult> results) {
+        int count = results.size();
+        double[] logFC = new double[count];
+        double[] pValues = new double[count];
+        boolean[] significant = new boolean[count];
+        String[] geneNames = new String[count];
+        for (int i = 0; i < count; i++) {
+            DifferentialExpressionResult result = results.get(i);
+            logFC[i] = result.getLogFC();
+            pValues[i] = result.getPValue();
+            significant[i] = result.isSignificant();
+            geneNames[i] = result.getGeneName();
+        }
+        setData(logFC, pValues, significant, geneNames);
+    }
+
+    @Override
+    public String describePoint(int gene) {
+        return String.format("%s: log2FC = %.3f, p = %.3g%s", getPointName(gene), xValues[gene], pValues[gene],
+                significant[gene] ? " (significant)" : "");
+    }
+
+    @Override
+    protected String getXAxisLabel() {
+        return "Log2 Fold Change";
+    }
+
+    @Override
+    protected String getYAxisLabel() {
+        return "-Log10 (p-value)";
+    }
+
+    @Override
+    protected BufferedImage[] createGlyphs() {
+        Shape dot = new Ellipse2D.Double(0.5, 0.5, 2 * GLYPH_RADIUS, 2 * GLYPH_RADIUS);
+        return new BufferedImage[]{
+                createGlyph(UP_COLOR, dot), createGlyph(DOWN_COLOR, dot), createGlyph(NEUTRAL_COLOR, dot)};
+    }
+
+    @Override
+    protected int getGlyphIndex(int gene) {
+        if (!significant[gene]) {
+            return 2;
+        }
+        return xValues[gene] > 0 ? 0 : 1;
+    }
+
+    /**
+     * Draw the fold change and p-value threshold lines
+     * @param g2d Graphics2D object for drawing
+     */
+    @Override
+    protected void drawGuides(Graphics2D g2d) {
+        int width = getWidth();
+        int height = getHeight();
+
+        g2d.setColor(new Color(255, 0, 0, 100));
+        g2d.setStroke(new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5}, 0));
+
+        double logThreshold = -Math.log10(P_VALUE_THRESHOLD);
+        if (minY <= logThreshold && maxY >= logThreshold) {
+            int y = toScreenY(logThreshold);
+            g2d.drawLine(MARGIN, y, width - MARGIN, y);
+        }
+        double[] thresholds = {FOLD_CHANGE_THRESHOLD, -FOLD_CHANGE_THRESHOLD};
+        for (double threshold : thresholds) {
+            if (minX <= threshold && maxX >= threshold) {
+                int x = toScreenX(threshold);
+                g2d.drawLine(x, MARGIN, x, height - MARGIN);
+            }
+        }
+    }
+
+    /**
+     * Draw legend
+     * @param g2d Graphics2D object for drawing
+     */
+    @Override
+    protected void drawLegend(Graphics2D g2d) {
+        int legendX = getWidth() - 150;
+        int legendY = 20;
+
+        g2d.setColor(new Color(255, 255, 255, 200));
+        g2d.fillRect(legendX - 5, legendY - 5, 140, 65);
+        g2d.setColor(Color.BLACK);
+        g2d.drawRect(legendX - 5, legendY - 5, 140, 65);
+
+        g2d.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        Color[] colors = {UP_COLOR, DOWN_COLOR, NEUTRAL_COLOR};
+        String[] labels = {"Upregulated", "Downregulated", "Not significant"};
+        for (int k = 0; k < colors.length; k++) {
+            int y = legendY + 10 + 20 * k;
+            g2d.setColor(colors[k]);
+            g2d.fill(new Ellipse2D.Double(legendX + 7, y - 3, 7, 7));
+            g2d.setColor(Color.BLACK);
+            g2d.drawString(labels[k], legendX + 20, y + 5);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package demo.floating.work;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Zoomable heatmap panel for genome-scale matrices, meant to be placed in a JScrollPane.
+ *
+ * The zoom is the number of pixels per cell and may be far below one. Only the visible area is drawn:
+ * every pixel is mapped to the level of a {@link HeatmapPyramid} whose blocks are at least one pixel
+ * large, and colored by the mean or the maximum of its block, so the cost of a repaint depends on the
+ * viewport and not on the matrix; every cell reaches the screen through the block that holds it. The pyramid is built in the background; until it is ready, pixels
+ * sample the matrix directly. Ctrl + mouse wheel zooms around the mouse, the plain wheel scrolls.
+ * Colors come from a {@link ColorLookupTable} and are written straight into the image raster.
+ */
+public class ZoomableHeatmapPanel extends JPanel {
+    private final double MAX_ZOOM = 32;
+    private final double ZOOM_STEP = 1.25;
+
+    private double[][] data;
+    private String[] rowLabels;
+    private String[] columnLabels;
+    private double minValue, maxValue;
+    private HeatmapPyramid pyramid;
+    private HeatmapPyramid.Aggregation aggregation = HeatmapPyramid.Aggregation.MEAN;
+    private ColorLookupTable.Palette palette = ColorLookupTable.Palette.BLUE_WHITE_RED;
+    private ColorLookupTable colorTable;
+    private double zoom = 1;
+    /** Incremented with every data change, so a stale pyramid build is dropped */
+    private int dataVersion;
+
+    private BufferedImage viewportImage;
+    private int[] columnIndex = new int[0];
+
+    /**
+     * Constructor for ZoomableHeatmapPanel
+     */
+    public ZoomableHeatmapPanel() {
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        // Register with the tooltip manager; the text comes from getToolTipText(MouseEvent)
+        setToolTipText("");
+        addMouseWheelListener(this::mouseWheelMoved);
+    }
+
+    /**
+     * Set data for the heatmap and build its pyramid in the background
+     * @param data 2D data array, rows of equal length; it is referenced, not copied
+     * @param rowLabels row labels
+     * @param columnLabels column labels
+     */
+    public void setData(double[][] data, String[] rowLabels, String[] columnLabels) {
+        this.data = data;
+        this.rowLabels = rowLabels;
+        this.columnLabels = columnLabels;
+        this.pyramid = null;
+        int version = ++dataVersion;
+
+        SwingWorker<HeatmapPyramid, Void> worker = new SwingWorker<HeatmapPyramid, Void>() {
+            @Override
+            protected HeatmapPyramid doInBackground() {
+                return new HeatmapPyramid(data);
+            }
+
+            @Override
+            protected void done() {
+                if (version != dataVersion) {
+                    return;
+                }
+                try {
+                    pyramid = get();
+                    minValue = pyramid.getMinValue();
+                    maxValue = pyramid.getMaxValue();
+                    updateColorTable();
+                    firePropertyChange("pyramid", null, pyramid);
+                    repaint();
+                } catch (InterruptedException | ExecutionException e) {
+                    // Keep sampling the matrix directly
+                }
+            }
+        };
+        // A rough range from the first rows until the pyramid has the exact one
+        minValue = Double.POSITIVE_INFINITY;
+        maxValue = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < Math.min(data.length, 64); i++) {
+            for (double value : data[i]) {
+                minValue = Math.min(minValue, value);
+                maxValue = Math.max(maxValue, value);
+            }
+        }
+        updateColorTable();
+        worker.execute();
+
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Set the color palette
+     * @param palette Palette of the cells
+     */
+    public void setPalette(ColorLookupTable.Palette palette) {
+        this.palette = palette;
+        updateColorTable();
+        repaint();
+    }
+
+    /**
+     * Rebuild the color table after the value range or the palette changed
+     */
+    private void updateColorTable() {
+        colorTable = new ColorLookupTable(palette, ColorLookupTable.DEFAULT_SIZE, minValue, maxValue);
+    }
+
+    /**
+     * Whether the pyramid is built
+     * @return True once zoomed-out views show block summaries
+     */
+    public boolean isPyramidReady() {
+        return pyramid != null;
+    }
+
+    /**
+     * Set how blocks of cells are summarized when zoomed out
+     * @param aggregation Mean or maximum
+     */
+    public void setAggregation(HeatmapPyramid.Aggregation aggregation) {
+        this.aggregation = aggregation;
+        repaint();
+    }
+
+    /**
+     * Get the zoom
+     * @return Pixels per cell
+     */
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Set the zoom, keeping the cell under an anchor point of the viewport in place
+     * @param newZoom Pixels per cell
+     * @param anchor Point in panel coordinates, or null for the center of the visible area
+     */
+    public void setZoom(double newZoom, Point anchor) {
+        newZoom = Math.max(getMinimumZoom(), Math.min(MAX_ZOOM, newZoom));
+        Rectangle visible = getVisibleRect();
+        if (anchor == null) {
+            anchor = new Point(visible.x + visible.width / 2, visible.y + visible.height / 2);
+        }
+        double column = anchor.x / zoom;
+        double row = anchor.y / zoom;
+        int offsetX = anchor.x - visible.x;
+        int offsetY = anchor.y - visible.y;
+        zoom = newZoom;
+        revalidate();
+
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        if (viewport != null) {
+            // Lay out now, so the new view position is not clamped to the old size
+            viewport.validate();
+            Dimension size = getPreferredSize();
+            Dimension extent = viewport.getExtentSize();
+            int x = (int) Math.round(column * zoom) - offsetX;
+            int y = (int) Math.round(row * zoom) - offsetY;
+            x = Math.max(0, Math.min(x, size.width - extent.width));
+            y = Math.max(0, Math.min(y, size.height - extent.height));
+            viewport.setViewPosition(new Point(x, y));
+        }
+        repaint();
+    }
+
+    /**
+     * Zoom in one step around the center of the visible area
+     */
+    public void zoomIn() {
+        setZoom(zoom * ZOOM_STEP, null);
+    }
+
+    /**
+     * Zoom out one step around the center of the visible area
+     */
+    public void zoomOut() {
+        setZoom(zoom / ZOOM_STEP, null);
+    }
+
+    /**
+     * Zoom so that the whole matrix fits in the visible area
+     */
+    public void fitToWindow() {
+        if (data == null || data.length == 0) return;
+        JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        Dimension extent = viewport != null ? viewport.getExtentSize() : getSize();
+        double fit = Math.min(extent.getWidth() / data[0].length, extent.getHeight() / data.length);
+        setZoom(fit, new Point(0, 0));
+    }
+
+    /**
+     * Smallest zoom, at which the matrix is a few pixels large
+     * @return Pixels per cell
+     */
+    private double getMinimumZoom() {
+        if (data == null || data.length == 0) return 1.0 / (1 << 20);
+        return 1.0 / Math.max(data.length, data[0].length);
+    }
+
+    /**
+     * Get the pyramid level drawn at the current zoom
+     * @return Finest level whose blocks are at least one pixel, or 0 without a pyramid
+     */
+    public int getCurrentLevel() {
+        if (pyramid == null || zoom >= 1) {
+            return 0;
+        }
+        // Smaller blocks would leave cells between two pixel centers; the tolerance keeps exact powers of two
+        int level = (int) Math.ceil(Math.log(1 / zoom) / Math.log(2) - 1e-9);
+        return Math.max(0, Math.min(pyramid.getLevelCount() - 1, level));
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (data == null || data.length == 0) {
+            return new Dimension(400, 300);
+        }
+        return new Dimension((int) Math.ceil(data[0].length * zoom), (int) Math.ceil(data.length * zoom));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (data == null || data.length == 0) {
+            drawNoDataMessage(g);
+            return;
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        Dimension size = getPreferredSize();
+        clip = clip.intersection(new Rectangle(0, 0, size.width, size.height));
+        if (clip.isEmpty()) {
+            return;
+        }
+        renderViewport(clip);
+        g.drawImage(viewportImage, clip.x, clip.y, clip.x + clip.width, clip.y + clip.height,
+                0, 0, clip.width, clip.height, null);
+        if (pyramid == null) {
+            g.setColor(Color.DARK_GRAY);
+            g.drawString("Building level-of-detail pyramid...", clip.x + 10, clip.y + 20);
+        }
+    }
+
+    /**
+     * Draw "No Data" message when no data is available
+     * @param g Graphics object for drawing
+     */
+    private void drawNoDataMessage(Graphics g) {
+        String message = "Load a matrix to browse it";
+        FontMetrics fm = g.getFontMetrics();
+        g.setColor(Color.GRAY);
+        g.drawString(message, (getWidth() - fm.stringWidth(message)) / 2, getHeight() / 2);
+    }
+
+    /**
+     * Color the pixels of an area of the panel into the viewport image
+     * @param area Area in panel coordinates
+     */
+    private void renderViewport(Rectangle area) {
+        if (viewportImage == null || viewportImage.getWidth() < area.width || viewportImage.getHeight() < area.height) {
+            viewportImage = new BufferedImage(Math.max(area.width, 256), Math.max(area.height, 256), BufferedImage.TYPE_INT_RGB);
+        }
+        int[] pixels = ((DataBufferInt) viewportImage.getRaster().getDataBuffer()).getData();
+        int stride = viewportImage.getWidth();
+
+        int level = getCurrentLevel();
+        int levelRows = pyramid == null ? data.length : pyramid.getRows(level);
+        int levelColumns = pyramid == null ? data[0].length : pyramid.getColumns(level);
+        // Level cells per pixel, at most one, so the pixel centers hit every level cell
+        double scale = 1 / (zoom * (1 << level));
+
+        if (columnIndex.length < area.width) {
+            columnIndex = new int[area.width];
+        }
+        for (int x = 0; x < area.width; x++) {
+            columnIndex[x] = Math.min(levelColumns - 1, (int) ((area.x + x + 0.5) * scale));
+        }
+        float[] values = level == 0 ? null : pyramid.getLevel(level, aggregation);
+        ColorLookupTable colors = colorTable;
+
+        for (int y = 0; y < area.height; y++) {
+            int row = Math.min(levelRows - 1, (int) ((area.y + y + 0.5) * scale));
+            int offset = y * stride;
+            if (values == null) {
+                double[] dataRow = data[row];
+                for (int x = 0; x < area.width; x++) {
+                    pixels[offset + x] = colors.argb(dataRow[columnIndex[x]]);
+                }
+            } else {
+                int rowStart = row * levelColumns;
+                for (int x = 0; x < area.width; x++) {
+                    pixels[offset + x] = colors.argb(values[rowStart + columnIndex[x]]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        if (data == null || data.length == 0) return null;
+        int column = (int) (e.getX() / zoom);
+        int row = (int) (e.getY() / zoom);
+        if (row < 0 || row >= data.length || column < 0 || column >= data[0].length) return null;
+
+        int level = getCurrentLevel();
+        if (level == 0) {
+            return String.format("%s - %s: %.2f", rowLabels[row], columnLabels[column], data[row][column]);
+        }
+        int blockRow = row >> level;
+        int blockColumn = column >> level;
+        int firstRow = blockRow << level;
+        int firstColumn = blockColumn << level;
+        int lastRow = Math.min(data.length, firstRow + (1 << level)) - 1;
+        int lastColumn = Math.min(data[0].length, firstColumn + (1 << level)) - 1;
+        return String.format("%s..%s x %s..%s: mean %.2f, max %.2f",
+                rowLabels[firstRow], rowLabels[lastRow], columnLabels[firstColumn], columnLabels[lastColumn],
+                pyramid.getValue(level, blockRow, blockColumn, HeatmapPyramid.Aggregation.MEAN),
+                pyramid.getValue(level, blockRow, blockColumn, HeatmapPyramid.Aggregation.MAX));
+    }
+
+    /**
+     * Zoom with Ctrl + wheel, otherwise hand the event to the scroll pane
+     * @param e Wheel event
+     */
+    private void mouseWheelMoved(MouseWheelEvent e) {
+        if (e.isControlDown()) {
+            setZoom(zoom * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+        } else if (getParent() != null) {
+            getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+        }
+    }
+}